@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel.  Entries are dropped into the slot of the tick they
+ * expire in, so scheduling is constant time and each tick only looks at one
+ * slot, however many entries are outstanding.  Entries more than one turn of
+ * the wheel away simply stay in their slot until their deadline is reached.
+ *
+ * The wheel has no thread of its own, the owner calls {@link #advance(long)}
+ * once per tick.  Entries can't be cancelled; the owner checks whether an
+ * expired entry is still pending when the wheel hands it back.
+ *
+ * Scheduling and advancing share one lock; both only touch a single slot
+ * per tick, so the lock is held briefly.
+ *
+ * @param <T> the type of the scheduled entries
+ */
+public class TimeoutWheel<T> {
+
+    private static class Timeout<T> {
+        final T m_entry;
+        final long m_deadline;
+
+        Timeout(final T entry, final long deadline) {
+            m_entry = entry;
+            m_deadline = deadline;
+        }
+    }
+
+    private final long m_tickNanos;
+    private final List<Timeout<T>>[] m_slots;
+    private final int m_mask;
+    private long m_currentTick;
+
+    /**
+     * @param tickNanos resolution of the wheel in nanoseconds
+     * @param slots the number of slots, rounded up to a power of two
+     * @param now the current time in nanoseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimeoutWheel(final long tickNanos, final int slots, final long now) {
+        int size = 1;
+        while (size < slots) {
+            size <<= 1;
+        }
+        m_tickNanos = tickNanos;
+        m_slots = new List[size];
+        for (int i = 0; i < size; i++) {
+            m_slots[i] = new ArrayList<Timeout<T>>();
+        }
+        m_mask = size - 1;
+        m_currentTick = now / tickNanos;
+    }
+
+    /**
+     * Schedules an entry to expire at the given time.
+     *
+     * @param entry the entry
+     * @param deadline the expiry time in nanoseconds
+     */
+    public synchronized void schedule(final T entry, final long deadline) {
+        // the cursor is read under the same lock advance() moves it under,
+        // so an entry can never land in a slot that is being processed
+        final long tick = Math.max(deadline / m_tickNanos, m_currentTick + 1);
+        m_slots[(int)(tick & m_mask)].add(new Timeout<T>(entry, deadline));
+    }
+
+    /**
+     * Processes all ticks up to the given time and returns the entries that
+     * have expired.
+     *
+     * @param now the current time in nanoseconds
+     * @return the expired entries
+     */
+    public synchronized List<T> advance(final long now) {
+        final List<T> expired = new ArrayList<T>();
+        final long nowTick = now / m_tickNanos;
+        // a full turn visits every slot once
+        final long lastTick = Math.min(nowTick, m_currentTick + m_slots.length);
+        for (long tick = m_currentTick; tick <= lastTick; tick++) {
+            final Iterator<Timeout<T>> it = m_slots[(int)(tick & m_mask)].iterator();
+            while (it.hasNext()) {
+                final Timeout<T> timeout = it.next();
+                if (timeout.m_deadline <= now) {
+                    expired.add(timeout.m_entry);
+                    it.remove();
+                }
+            }
+        }
+        m_currentTick = Math.max(m_currentTick, nowTick);
+        return expired;
+    }
+}
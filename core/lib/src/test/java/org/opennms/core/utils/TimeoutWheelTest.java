@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimeoutWheelTest {
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testExpiry() {
+        final TimeoutWheel<String> wheel = new TimeoutWheel<String>(TICK, 8, 0);
+        wheel.schedule("a", 25 * TICK / 10);
+        wheel.schedule("b", 5 * TICK);
+        wheel.schedule("c", 5 * TICK + 1);
+
+        assertTrue(wheel.advance(TICK).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(3 * TICK));
+        assertTrue(wheel.advance(4 * TICK).isEmpty());
+        assertEquals(Collections.singletonList("b"), wheel.advance(5 * TICK));
+        assertEquals(Collections.singletonList("c"), wheel.advance(6 * TICK));
+    }
+
+    @Test
+    public void testMoreThanOneTurn() {
+        final TimeoutWheel<String> wheel = new TimeoutWheel<String>(TICK, 8, 0);
+        wheel.schedule("near", 3 * TICK);
+        // lands in the same slot as "near", one turn later
+        wheel.schedule("far", 11 * TICK);
+
+        assertEquals(Collections.singletonList("near"), wheel.advance(3 * TICK));
+        assertTrue(wheel.advance(10 * TICK).isEmpty());
+        assertEquals(Collections.singletonList("far"), wheel.advance(11 * TICK));
+    }
+
+    @Test
+    public void testLateAdvance() {
+        final TimeoutWheel<String> wheel = new TimeoutWheel<String>(TICK, 8, 0);
+        wheel.schedule("a", 2 * TICK);
+        wheel.schedule("b", 7 * TICK);
+        wheel.schedule("c", 30 * TICK);
+
+        // a single call long after the deadlines still finds them all
+        final List<String> expired = wheel.advance(20 * TICK);
+        Collections.sort(expired);
+        assertEquals(Arrays.asList("a", "b"), expired);
+        assertEquals(Collections.singletonList("c"), wheel.advance(30 * TICK));
+    }
+
+    @Test
+    public void testScheduleInThePast() {
+        final TimeoutWheel<String> wheel = new TimeoutWheel<String>(TICK, 8, 10 * TICK);
+        wheel.schedule("a", 5 * TICK);
+        assertEquals(Collections.singletonList("a"), wheel.advance(11 * TICK));
+    }
+}
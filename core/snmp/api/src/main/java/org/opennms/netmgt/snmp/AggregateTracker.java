@@ -149,6 +149,12 @@ public class AggregateTracker extends CollectionTracker {
         private final int m_nonRepeaters;
     
         private final List<ChildTrackerPduBuilder> m_childPduBuilders;
+
+        /**
+         * The child builder responsible for each canonical index, so that
+         * responses are routed without scanning all the child builders.
+         */
+        private final ChildTrackerPduBuilder[] m_childBuilderByIndex;
         
         private int m_currResponseIndex = 0;
         
@@ -157,6 +163,16 @@ public class AggregateTracker extends CollectionTracker {
             m_pduBuilder = pduBuilder;
             m_nonRepeaters = nonRepeaters;
             m_childPduBuilders = builders;
+
+            m_childBuilderByIndex = new ChildTrackerPduBuilder[Math.max(1, nonRepeaters + repeaters)];
+            for (int i = 0; i < m_childBuilderByIndex.length; i++) {
+                for (ChildTrackerPduBuilder childBuilder : m_childPduBuilders) {
+                    if (childBuilder.isNonRepeater(i) || childBuilder.isRepeater(i)) {
+                        m_childBuilderByIndex[i] = childBuilder;
+                        break;
+                    }
+                }
+            }
         }
     
         @Override
@@ -174,10 +190,8 @@ public class AggregateTracker extends CollectionTracker {
     
         private ChildTrackerPduBuilder getChildBuilder(int zeroBasedIndex) {
             int canonicalIndex = getCanonicalIndex(zeroBasedIndex);
-            for (ChildTrackerPduBuilder childBuilder : m_childPduBuilders) {
-                if (childBuilder.isNonRepeater(canonicalIndex) || childBuilder.isRepeater(canonicalIndex)) {
-                    return childBuilder;
-                }
+            if (canonicalIndex < m_childBuilderByIndex.length && m_childBuilderByIndex[canonicalIndex] != null) {
+                return m_childBuilderByIndex[canonicalIndex];
             }
     
             throw new IllegalStateException("Unable to find childBuilder for index "+zeroBasedIndex);
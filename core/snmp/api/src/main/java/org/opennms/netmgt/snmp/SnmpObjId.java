@@ -29,15 +29,32 @@
 package org.opennms.netmgt.snmp;
 
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SnmpObjId implements Comparable<SnmpObjId> {
     
-    /* FIXME: Change the implementation of this to cache oids and share common prefixes
-     * This should enhance the amount of garbage we generate a great deal at least for
-     * this class.
+    /**
+     * The maximum number of parsed oids kept by {@link #get(String)}. Configured
+     * oids are parsed over and over again, so instances are shared once parsed.
+     * The cache stops growing when full so that oids containing instances from
+     * walks cannot fill up the heap.
+     */
+    private static final int MAX_CACHED_OIDS = 10000;
+
+    private static final ConcurrentMap<String, SnmpObjId> s_oidCache = new ConcurrentHashMap<String, SnmpObjId>();
+
+    private final int[] m_ids;
+
+    /**
+     * The hash code, computed on first use. 0 means not computed yet.
      */
+    private int m_hashCode;
 
-    private int[] m_ids;
+    /**
+     * The string representation, computed on first use.
+     */
+    private String m_string;
     
     /**
      * These constructors are private.  The get method should be called to create a new oid
@@ -131,32 +148,57 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
 
     @Override
     public boolean equals(Object obj) {
-        if (obj instanceof SnmpObjId)
-            return compareTo((SnmpObjId)obj) == 0;
-        else
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof SnmpObjId)) {
+            return false;
+        }
+        final SnmpObjId other = (SnmpObjId)obj;
+        if (m_ids.length != other.m_ids.length || hashCode() != other.hashCode()) {
             return false;
+        }
+        // oids sharing a prefix usually differ near the end, so compare from there
+        for (int i = m_ids.length - 1; i >= 0; i--) {
+            if (m_ids[i] != other.m_ids[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        int h = 31;
-        for(int i = 0; i < m_ids.length; i++) {
-            h = h + 37*m_ids[i];
+        int h = m_hashCode;
+        if (h == 0) {
+            h = 31;
+            for(int i = 0; i < m_ids.length; i++) {
+                h = 37*h + m_ids[i];
+            }
+            if (h == 0) {
+                h = 1;
+            }
+            m_hashCode = h;
         }
         return h;
     }
 
     @Override
     public String toString() {
-        StringBuffer buf = new StringBuffer(length()*2+10); // a guess at the str len
-        for(int i = 0; i < length(); i++) {
-            if (i > 0 || addPrefixDotInToString()) {
-                buf.append('.');  
+        String str = m_string;
+        if (str == null) {
+            final StringBuilder buf = new StringBuilder(length()*2+10); // a guess at the str len
+            for(int i = 0; i < length(); i++) {
+                if (i > 0 || addPrefixDotInToString()) {
+                    buf.append('.');  
+                }
+                // we use toLong to account for unsigned ints > Integer.MAX_INT
+                buf.append(toLong(m_ids[i]));
             }
-            // we use toLong to account for unsigned ints > Integer.MAX_INT
-            buf.append(toLong(m_ids[i]));
+            str = buf.toString();
+            m_string = str;
         }
-        return buf.toString();
+        return str;
     }
 
     private long toLong(int subid) {
@@ -171,15 +213,18 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
     public int compareTo(SnmpObjId o) {
         if (o == null) throw new NullPointerException("o is null");
         SnmpObjId other = (SnmpObjId)o;
+        if (other == this) {
+            return 0;
+        }
 
         // compare each element in order for as much length as they have in common
         // which is the entire length of one or both oids
         int minLen = Math.min(length(), other.length());
         for(int i = 0; i < minLen; i++) {
-            long diff = toLong(m_ids[i]) - toLong(other.m_ids[i]);
             // the first one that is not equal indicates which is bigger
-            if (diff != 0) {
-                return diff > 0 ? 1 : -1;
+            if (m_ids[i] != other.m_ids[i]) {
+                // flipping the sign bit compares the subids as unsigned ints
+                return (m_ids[i] ^ Integer.MIN_VALUE) > (other.m_ids[i] ^ Integer.MIN_VALUE) ? 1 : -1;
             }
         }
         
@@ -210,7 +255,14 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
     }
 
     public static SnmpObjId get(String oid) {
-        return new SnmpObjId(oid);
+        SnmpObjId objId = s_oidCache.get(oid);
+        if (objId == null) {
+            objId = new SnmpObjId(oid);
+            if (s_oidCache.size() < MAX_CACHED_OIDS) {
+                s_oidCache.putIfAbsent(oid, objId);
+            }
+        }
+        return objId;
     }
 
     public static SnmpObjId get(int[] ids) {
@@ -236,8 +288,10 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
     public boolean isPrefixOf(final SnmpObjId other) {
     	if (other == null || length() > other.length())
             return false;
+        if (other == this)
+            return true;
         
-        for(int i = 0; i < m_ids.length; i++) {
+        for(int i = m_ids.length - 1; i >= 0; i--) {
             if (m_ids[i] != other.m_ids[i])
                 return false;
         }
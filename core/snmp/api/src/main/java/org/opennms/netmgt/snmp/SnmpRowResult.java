@@ -84,13 +84,8 @@ public class SnmpRowResult {
      * @return
      */
     public SnmpValue getValue(SnmpObjId base) {
-        for(SnmpResult result : getResults()) {
-            if (base.equals(result.getBase())) {
-                return result.getValue();
-            }
-        }
-        
-        return null;
+        SnmpResult result = m_results.get(base);
+        return result == null ? null : result.getValue();
     }
 
     private void assertTrue(boolean b, String fmt, Object... args) {
@@ -31,7 +31,7 @@ package org.opennms.netmgt.snmp;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 
 /**
@@ -44,7 +44,7 @@ public class SnmpTableResult implements RowResultFactory {
     private final RowResultFactory m_rowResultFactory;
 
     private final List<SnmpObjId> m_finishedColumns;
-    private final Map<SnmpInstId,SnmpRowResult> m_pendingData;
+    private final NavigableMap<SnmpInstId,SnmpRowResult> m_pendingData;
     private volatile boolean m_finished = false;
     
     public SnmpTableResult(RowCallback callback, SnmpObjId... columns) {
@@ -66,10 +66,11 @@ public class SnmpTableResult implements RowResultFactory {
 
     void storeResult(SnmpResult result) {
         SnmpInstId instId = result.getInstance();
-        if ( !m_pendingData.containsKey( instId ) ) {
-            m_pendingData.put( instId, m_rowResultFactory.createRowResult( getColumnCount(), instId ) );
-        }
         SnmpRowResult row = m_pendingData.get( instId );
+        if ( row == null ) {
+            row = m_rowResultFactory.createRowResult( getColumnCount(), instId );
+            m_pendingData.put( instId, row );
+        }
         row.addResult( result.getBase(), result );
 
         handleCompleteRows();
@@ -86,9 +87,12 @@ public class SnmpTableResult implements RowResultFactory {
     void handleCompleteRows() {
         SnmpInstId lastInstance = null;
 
-        for (SnmpRowResult row : m_pendingData.values()) {
-            if (row.isComplete(m_finishedColumns.toArray(new SnmpObjId[m_finishedColumns.size()]))) {
+        // find the last complete row, starting from the end
+        final SnmpObjId[] finishedColumns = m_finishedColumns.toArray(new SnmpObjId[m_finishedColumns.size()]);
+        for (SnmpRowResult row : m_pendingData.descendingMap().values()) {
+            if (row.isComplete(finishedColumns)) {
                 lastInstance = row.getInstance();
+                break;
             }
         }
         
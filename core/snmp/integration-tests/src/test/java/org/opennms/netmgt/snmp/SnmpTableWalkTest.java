@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.snmp.SnmpTrackerTest.SnmpTableConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks a large synthetic ifTable through a {@link TableTracker} without an
+ * agent, to measure the cost of the tracker and the oid handling alone.
+ */
+public class SnmpTableWalkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnmpTableWalkTest.class);
+
+    private static final int ROWS = 10000;
+
+    private static final int MAX_REPETITIONS = 10;
+
+    private static final SnmpObjId[] COLUMNS = new SnmpObjId[] {
+        SnmpTableConstants.ifIndex,
+        SnmpTableConstants.ifDescr,
+        SnmpTableConstants.ifType,
+        SnmpTableConstants.ifInOctets,
+        SnmpTableConstants.ifOutOctets
+    };
+
+    /**
+     * The first oid after the walked columns.
+     */
+    private static final SnmpObjId END_OF_TABLE = SnmpObjId.get(".1.3.6.1.2.1.2.2.1.17.1");
+
+    private static class CollectingPduBuilder extends PduBuilder {
+        private final List<SnmpObjId> m_oids = new ArrayList<SnmpObjId>();
+        private int m_nonRepeaters;
+        private int m_maxRepetitions = 1;
+
+        public CollectingPduBuilder(int maxVarsPerPdu) {
+            super(maxVarsPerPdu);
+        }
+
+        @Override
+        public void addOid(SnmpObjId snmpObjId) {
+            m_oids.add(snmpObjId);
+        }
+
+        @Override
+        public void setNonRepeaters(int numNonRepeaters) {
+            m_nonRepeaters = numNonRepeaters;
+        }
+
+        @Override
+        public void setMaxRepetitions(int maxRepetitions) {
+            m_maxRepetitions = maxRepetitions;
+        }
+    }
+
+    private int m_rows;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+        m_rows = 0;
+    }
+
+    @Test
+    public void testWalkLargeIfTable() {
+        // warm up
+        walk(1000);
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final long allocatedBefore = getAllocatedBytes(threadBean);
+        final long start = System.currentTimeMillis();
+
+        m_rows = 0;
+        final int pdus = walk(ROWS);
+
+        final long elapsed = System.currentTimeMillis() - start;
+        final long allocated = getAllocatedBytes(threadBean) - allocatedBefore;
+        LOG.info("Walked {} rows of {} columns in {} PDUs, {}ms, {} bytes allocated per varbind", ROWS, COLUMNS.length, pdus, elapsed,
+                 allocatedBefore < 0 ? "unknown" : Long.toString(allocated / (ROWS * COLUMNS.length)));
+
+        assertEquals(ROWS, m_rows);
+        // every PDU fetches MAX_REPETITIONS rows, plus one to find the end of the table
+        assertEquals(ROWS / MAX_REPETITIONS + 1, pdus);
+    }
+
+    /**
+     * @return the number of PDUs sent
+     */
+    private int walk(final int rows) {
+        final SnmpValueFactory valueFactory = SnmpUtils.getValueFactory();
+        final TableTracker tracker = new TableTracker(new RowCallback() {
+            @Override
+            public void rowCompleted(SnmpRowResult row) {
+                for (SnmpObjId column : COLUMNS) {
+                    assertNotNull(row.getValue(column));
+                }
+                m_rows++;
+            }
+        }, MAX_REPETITIONS, COLUMNS);
+
+        int pdus = 0;
+        while (!tracker.isFinished()) {
+            pdus++;
+            final CollectingPduBuilder pdu = new CollectingPduBuilder(50);
+            final ResponseProcessor processor = tracker.buildNextPdu(pdu);
+
+            // answer the get-bulk request like an agent would
+            final SnmpObjId[] current = pdu.m_oids.toArray(new SnmpObjId[pdu.m_oids.size()]);
+            for (int i = 0; i < pdu.m_nonRepeaters; i++) {
+                current[i] = getNext(current[i], rows);
+                processor.processResponse(current[i], valueFactory.getInt32(current[i].getLastSubId()));
+            }
+            for (int r = 0; r < pdu.m_maxRepetitions; r++) {
+                for (int i = pdu.m_nonRepeaters; i < current.length; i++) {
+                    current[i] = getNext(current[i], rows);
+                    processor.processResponse(current[i], valueFactory.getInt32(current[i].getLastSubId()));
+                }
+            }
+        }
+        return pdus;
+    }
+
+    private static SnmpObjId getNext(final SnmpObjId oid, final int rows) {
+        for (SnmpObjId column : COLUMNS) {
+            if (oid.compareTo(column) <= 0) {
+                return column.append(new int[] { 1 });
+            } else if (column.isPrefixOf(oid) && oid.getLastSubId() < rows) {
+                return column.append(new int[] { oid.getLastSubId() + 1 });
+            }
+        }
+        return END_OF_TABLE;
+    }
+
+    private static long getAllocatedBytes(final ThreadMXBean threadBean) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -28,18 +28,15 @@
 
 package org.opennms.core.tasks;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.slf4j.Logger;
@@ -50,6 +47,11 @@ import org.springframework.util.Assert;
 /**
  * TaskCoordinator
  *
+ * Tasks keep an atomic count of their unfinished prerequisites.  When a task
+ * completes, the thread that completed it counts down its dependents and
+ * submits each one whose count reached zero straight to its executor, so
+ * there is no central scheduling thread to become a bottleneck.
+ *
  * @author brozow
  * @version $Id: $
  */
@@ -57,52 +59,27 @@ public class DefaultTaskCoordinator implements InitializingBean {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(DefaultTaskCoordinator.class);
 
+    private final String m_name;
+    private final ConcurrentHashMap<String, Executor> m_executors = new ConcurrentHashMap<String, Executor>();
+    
+    private String m_defaultExecutor ;
+    private Executor m_defaultExecutorInstance;
+
     /**
-     * A RunnableActor class is a thread that simple removes Future<Runnable> from a queue
-     * and executes them.  This
-     *
-     * @author brozow
+     * Completions and schedules triggered while a thread is already processing
+     * one are queued here and processed in a loop, rather than recursively,
+     * so long chains of dependent tasks cannot overflow the stack.
      */
-    private class RunnableActor extends Thread {
-        private final BlockingQueue<Future<Runnable>> m_queue;
-        public RunnableActor(String name, BlockingQueue<Future<Runnable>> queue) {
-            super(name);
-            m_queue = queue;
-            start();
-        }
-        
-        @Override
-        public void run() {
-            while(true) {
-                try {
-                    Runnable r = m_queue.take().get();
-                    if (r != null) {
-                        r.run();
-                    }
-                    if (m_loopDelay != null) {
-                        sleep(m_loopDelay);
-                    }
-                } catch (InterruptedException e) {
-                	LOG.warn("runnable actor interrupted", e);
-                    Thread.currentThread().interrupt();
-                } catch (ExecutionException e) {
-                	LOG.warn("runnable actor execution failed", e);
-                } catch (Throwable e) {
-                	LOG.error("an unknown error occurred in the runnable actor", e);
-                }
-            }
-        }
-    }
-    
+    private final ThreadLocal<Deque<Runnable>> m_pendingWork = new ThreadLocal<Deque<Runnable>>();
 
-    private final BlockingQueue<Future<Runnable>> m_queue;
-    private final ConcurrentHashMap<String, CompletionService<Runnable>> m_taskCompletionServices = new ConcurrentHashMap<String, CompletionService<Runnable>>();
-    
-    private String m_defaultExecutor ;
-    private CompletionService<Runnable> m_defaultCompletionService;
-    
-    // This is used to adjust timing during testing
-    private Long m_loopDelay;
+    private final AtomicLong m_scheduledCount = new AtomicLong();
+    private final AtomicLong m_submittedCount = new AtomicLong();
+    private final AtomicLong m_completedCount = new AtomicLong();
+    private final AtomicLong m_readyQueueDepth = new AtomicLong();
+
+    private long m_rateSampleTime = System.nanoTime();
+    private long m_rateSampleCount = 0;
+    private double m_completionRate = 0.0;
 
     /**
      * <p>Constructor for DefaultTaskCoordinator.</p>
@@ -110,9 +87,7 @@ public class DefaultTaskCoordinator implements InitializingBean {
      * @param name a {@link java.lang.String} object.
      */
     public DefaultTaskCoordinator(String name) {
-        m_queue = new LinkedBlockingQueue<Future<Runnable>>();
-        // Create a new actor and add it to the queue
-        new RunnableActor(name+"-TaskScheduler", m_queue);
+        m_name = name;
         addExecutor(SyncTask.ADMIN_EXECUTOR, Executors.newSingleThreadExecutor(
             new LogPreservingThreadFactory(SyncTask.ADMIN_EXECUTOR, 1)
         ));
@@ -147,9 +122,9 @@ public class DefaultTaskCoordinator implements InitializingBean {
     public void afterPropertiesSet() {
         Assert.notNull(m_defaultExecutor, "defaultExecutor must be set");
         
-        m_defaultCompletionService = getCompletionService(m_defaultExecutor);
+        m_defaultExecutorInstance = m_executors.get(m_defaultExecutor);
         
-        Assert.notNull(m_defaultCompletionService, "defaultExecutor must be set to the name of an added executor");
+        Assert.notNull(m_defaultExecutorInstance, "defaultExecutor must be set to the name of an added executor");
         
     }
     
@@ -278,10 +253,13 @@ public class DefaultTaskCoordinator implements InitializingBean {
     /**
      * <p>setLoopDelay</p>
      *
+     * There is no longer a coordinator thread to slow down, so this has no
+     * effect.
+     *
      * @param millis a long.
      */
+    @Deprecated
     public void setLoopDelay(long millis) {
-        m_loopDelay = millis;
     }
     
     /**
@@ -290,7 +268,7 @@ public class DefaultTaskCoordinator implements InitializingBean {
      * @param task a {@link org.opennms.core.tasks.Task} object.
      */
     public void schedule(final Task task) {
-        onProcessorThread(scheduler(task));
+        onCurrentThread(scheduler(task));
     }
     
     /**
@@ -299,54 +277,77 @@ public class DefaultTaskCoordinator implements InitializingBean {
      * @param prereq a {@link org.opennms.core.tasks.Task} object.
      * @param dependent a {@link org.opennms.core.tasks.Task} object.
      */
-    public void addDependency(Task prereq, Task dependent) {
-        // this is only needed when add dependencies while running
+    public void addDependency(final Task prereq, final Task dependent) {
+        Assert.notNull(prereq, "prereq must not be null");
+        Assert.notNull(dependent, "dependent must not be null");
+
         dependent.incrPendingPrereqCount();
-        onProcessorThread(dependencyAdder(prereq, dependent));
+        if (prereq.doAddDependent(dependent)) {
+            dependent.doAddPrerequisite(prereq);
+        } else {
+            /**
+             *  the prereq has already completed (or the dependency already exists) so
+             *  nothing will count this one down... do it here.  If it was the last
+             *  prerequisite the dependent may need to be submitted now.
+             */
+            onCurrentThread(prerequisiteReleaser(dependent));
+        }
     }
-    
-    private void onProcessorThread(final Runnable r) {
-        Future<Runnable> now = new Future<Runnable>() {
-            @Override
-            public boolean cancel(boolean mayInterruptIfRunning) {
-                return false;
-            }
-            @Override
-            public Runnable get() {
-                return r;
-            }
-            @Override
-            public Runnable get(long timeout, TimeUnit unit) {
-                return get();
-            }
-            @Override
-            public boolean isCancelled() {
-                return false;
+
+    /**
+     * Runs the work on the current thread, unless the current thread is
+     * already processing coordinator work, in which case it is queued and
+     * run when the outer work is done.
+     */
+    private void onCurrentThread(Runnable r) {
+        Deque<Runnable> pending = m_pendingWork.get();
+        if (pending != null) {
+            pending.addLast(r);
+            return;
+        }
+
+        pending = new ArrayDeque<Runnable>();
+        m_pendingWork.set(pending);
+        try {
+            while (r != null) {
+                try {
+                    r.run();
+                } catch (Throwable e) {
+                    LOG.error("an unknown error occurred while processing {} for task coordinator {}", r, m_name, e);
+                }
+                r = pending.pollFirst();
             }
+        } finally {
+            m_pendingWork.remove();
+        }
+    }
+
+    private Runnable scheduler(final Task task) {
+        return new Runnable() {
             @Override
-            public boolean isDone() {
-                return true;
+            public void run() {
+                if (task.scheduled()) {
+                    m_scheduledCount.incrementAndGet();
+                }
+                task.submitIfReady(); 
             }
             @Override
             public String toString() {
-                return "Future<"+r+">";
+                return String.format("schedule(%s)", task);
             }
         };
-        m_queue.add(now);
     }
 
-    
-
-    private Runnable scheduler(final Task task) {
+    private Runnable prerequisiteReleaser(final Task dependent) {
         return new Runnable() {
             @Override
             public void run() {
-                task.scheduled();
-                task.submitIfReady(); 
+                dependent.decrPendingPrereqCount();
+                dependent.submitIfReady();
             }
             @Override
             public String toString() {
-                return String.format("schedule(%s)", task);
+                return String.format("releasePrerequisite(%s)", dependent);
             }
         };
     }
@@ -366,71 +367,51 @@ public class DefaultTaskCoordinator implements InitializingBean {
     
     
     private void notifyDependents(Task completed) {
-        // log().debug(String.format("Task %s completed!", completed));
+        m_completedCount.incrementAndGet();
         completed.onComplete();
 
-        final Set<Task> dependents = completed.getDependents();
+        final Set<Task> dependents = completed.takeDependents();
         for(Task dependent : dependents) {
             dependent.doCompletePrerequisite(completed);
-            if (dependent.isReady()) {
-                // log().debug(String.format("Task %s %s ready.", dependent, dependent.isReady() ? "is" : "is not"));
-            }
-            
             dependent.submitIfReady();
         }
-
-        // log().debug(String.format("CLEAN: removing dependents of %s", completed));
-        completed.clearDependents();
-        
-        
     }
 
-    /**
-     * The returns a runnable that is run on the taskCoordinator thread.. This is 
-     * done to keep the Task data structures thread safe.
-     */
-    private Runnable dependencyAdder(final Task prereq, final Task dependent) {
-        Assert.notNull(prereq, "prereq must not be null");
-        Assert.notNull(dependent, "dependent must not be null");
-        return new Runnable() {
-            @Override
-            public void run() {
-                prereq.doAddDependent(dependent);
-                dependent.doAddPrerequisite(prereq);
-                dependent.decrPendingPrereqCount();
-
-                /**
-                 *  the prereq task may have completed between the time this adder was enqueued
-                 *  and the time we got here.  In this case there will be no tasks to kick this
-                 *  one off... so check it here. 
-                 */
-                dependent.submitIfReady();
-            }
-            @Override
-            public String toString() {
-                return String.format("%s.addPrerequisite(%s)", dependent, prereq);
-            }
-        };
+    void taskSubmitted() {
+        m_submittedCount.incrementAndGet();
     }
     
-    
-    private CompletionService<Runnable> getCompletionService(String name) {
-        CompletionService<Runnable> completionService = m_taskCompletionServices.get(name);
-        CompletionService<Runnable> selected = completionService != null ? completionService : m_defaultCompletionService;
-        // log().debug(String.format("USING COMPLETION SERVICE %s : %s!", name, selected));
-        return selected;
+    private Executor getExecutor(String name) {
+        Executor executor = name == null ? null : m_executors.get(name);
+        return executor != null ? executor : m_defaultExecutorInstance;
     }
     
     void markTaskAsCompleted(Task task) {
-        onProcessorThread(taskCompleter(task));
+        onCurrentThread(taskCompleter(task));
     }
 
     void submitToExecutor(String executorPreference, Runnable workToBeDone, Task owningTask) {
         submitToExecutor(executorPreference, workToBeDone, taskCompleter(owningTask));
     }
     
-    void submitToExecutor(String executorPreference, final Runnable workToBeDone, Runnable completionProcessor) {
-        getCompletionService(executorPreference).submit(workToBeDone, completionProcessor);
+    void submitToExecutor(String executorPreference, final Runnable workToBeDone, final Runnable completionProcessor) {
+        m_readyQueueDepth.incrementAndGet();
+        getExecutor(executorPreference).execute(new Runnable() {
+            @Override
+            public void run() {
+                m_readyQueueDepth.decrementAndGet();
+                try {
+                    workToBeDone.run();
+                } catch (Throwable e) {
+                    LOG.warn("task execution failed: {}", workToBeDone, e);
+                }
+                onCurrentThread(completionProcessor);
+            }
+            @Override
+            public String toString() {
+                return String.valueOf(workToBeDone);
+            }
+        });
     }
     
     /**
@@ -440,7 +421,7 @@ public class DefaultTaskCoordinator implements InitializingBean {
      * @param executor a {@link java.util.concurrent.Executor} object.
      */
     public void addExecutor(String executorName, Executor executor) {
-        m_taskCompletionServices.put(executorName, new ExecutorCompletionService<Runnable>(executor, m_queue));
+        m_executors.put(executorName, executor);
     }
 
     /**
@@ -449,10 +430,77 @@ public class DefaultTaskCoordinator implements InitializingBean {
      * @param executors a {@link java.util.Map} object.
      */
     public void setExecutors(Map<String,Executor> executors) {
-        m_taskCompletionServices.clear();
+        m_executors.clear();
         for (Map.Entry<String, Executor> e : executors.entrySet()) {
             addExecutor(e.getKey(), e.getValue());
         }
     }
 
+    /**
+     * <p>getReadyQueueDepth</p>
+     *
+     * @return the number of tasks whose prerequisites are complete and that are
+     * waiting for a thread of their executor
+     */
+    public long getReadyQueueDepth() {
+        return m_readyQueueDepth.get();
+    }
+
+    /**
+     * <p>getWaitingTaskCount</p>
+     *
+     * @return the number of scheduled tasks that are waiting for prerequisites
+     */
+    public long getWaitingTaskCount() {
+        return m_scheduledCount.get() - m_submittedCount.get();
+    }
+
+    /**
+     * <p>getActiveTaskCount</p>
+     *
+     * @return the number of submitted tasks that have not completed
+     */
+    public long getActiveTaskCount() {
+        return m_submittedCount.get() - m_completedCount.get();
+    }
+
+    /**
+     * <p>getCompletedTaskCount</p>
+     *
+     * @return the number of tasks completed since the coordinator was created
+     */
+    public long getCompletedTaskCount() {
+        return m_completedCount.get();
+    }
+
+    /**
+     * <p>getCompletionRate</p>
+     *
+     * The rate is measured between samples at least a second apart, the
+     * sample being taken when this is called.
+     *
+     * @return the number of tasks completed per second
+     */
+    public synchronized double getCompletionRate() {
+        final long now = System.nanoTime();
+        final long elapsed = now - m_rateSampleTime;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            final long completed = m_completedCount.get();
+            m_completionRate = (completed - m_rateSampleCount) * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+            m_rateSampleCount = completed;
+            m_rateSampleTime = now;
+        }
+        return m_completionRate;
+    }
+
+    /**
+     * <p>toString</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s[waiting=%d, ready=%d, active=%d, completed=%d]", m_name, getWaitingTaskCount(), getReadyQueueDepth(), getActiveTaskCount(), getCompletedTaskCount());
+    }
+
 }
@@ -65,7 +65,7 @@ public abstract class Task {
     
     private final AtomicInteger m_pendingPrereqs = new AtomicInteger(0);
     private final Set<Task> m_dependents = new HashSet<Task>();
-    private final Set<Task> m_prerequisites = new HashSet<Task>();
+    private boolean m_dependentsNotified = false;
     
     private final TaskMonitor m_monitor;
     
@@ -103,31 +103,32 @@ public abstract class Task {
     
     /**
      * These are final and package protected because they should ONLY be accessed by the TaskCoordinator
-     * This is for thread safety and efficiency.  use 'addDependency' to update these.
+     * use 'addDependency' to update these.
+     *
+     * @return true if the dependent will be notified when this task completes, false if this
+     * task has already completed or the dependent was already added
      */
-    final Set<Task> getDependents() {
-        return m_dependents;
-    }
-    
-    final void doAddDependent(final Task dependent) {
-        if (!isFinished()) {
-            m_dependents.add(dependent);
+    final boolean doAddDependent(final Task dependent) {
+        synchronized (m_dependents) {
+            return !m_dependentsNotified && m_dependents.add(dependent);
         }
     }
     
     /**
-     * These are final and package protected because they should ONLY be accessed by the TAskCoordinator
-     * This is for thread safety and efficiency.  use 'addDependency' to update these
+     * Returns the dependents to be notified of the completion of this task.  Dependents added
+     * after this has been called are not recorded, as there is nothing left to wait for.
      */
-    final Set<Task> getPrerequisites() {
-        return m_prerequisites;
+    final Set<Task> takeDependents() {
+        synchronized (m_dependents) {
+            m_dependentsNotified = true;
+            final Set<Task> dependents = new HashSet<Task>(m_dependents);
+            m_dependents.clear();
+            return dependents;
+        }
     }
     
     final void doAddPrerequisite(final Task prereq) {
-        if (!prereq.isFinished()) {
-            m_prerequisites.add(prereq);
-            notifyPrerequisteAdded(prereq);
-        }
+        notifyPrerequisteAdded(prereq);
     }
 
     private void notifyPrerequisteAdded(final Task prereq) {
@@ -171,30 +172,35 @@ public abstract class Task {
     }
         
     final void doCompletePrerequisite(final Task prereq) {
-        m_prerequisites.remove(prereq);
         notifyPrerequisteCompleted(prereq);
-    }
-    
-    final void clearDependents() {
-        m_dependents.clear();
+        decrPendingPrereqCount();
     }
 
  
-    final void scheduled() {
-        setState(State.NEW, State.SCHEDULED);
+    final boolean scheduled() {
+        final boolean scheduled = setState(State.NEW, State.SCHEDULED);
         notifyScheduled();
+        return scheduled;
     }
     
-    private final void setState(final State oldState, final State newState) {
+    private final boolean setState(final State oldState, final State newState) {
         if (!m_state.compareAndSet(oldState, newState)) {
         	LOG.debug("Attempted to move to state {} with state not {} (actual value {})", newState, oldState, m_state.get());
+        	return false;
         } else {
         	LOG.trace("Set state to {}", newState);
+        	return true;
         }
     }
     
+    /**
+     * Submits the task if it is scheduled and all of its prerequisites have completed.  This
+     * may be called concurrently by the thread scheduling the task and by the threads completing
+     * its prerequisites; moving from SCHEDULED to SUBMITTED ensures only one of them submits it.
+     */
     void submitIfReady() {
-        if (isReady()) {
+        if (getPendingPrereqCount() == 0 && m_state.compareAndSet(State.SCHEDULED, State.SUBMITTED)) {
+            getCoordinator().taskSubmitted();
             doSubmit();
             submitted();
             completeSubmit();
@@ -211,7 +217,6 @@ public abstract class Task {
     }
 
     final void submitted() {
-        setState(State.SCHEDULED, State.SUBMITTED);
         notifySubmitted();
     }
 
@@ -229,10 +234,10 @@ public abstract class Task {
     
     /**
      * These are final and package protected because they should ONLY be accessed by the TaskCoordinator
-     * This is for thread safety and efficiency.  use 'addDependency' to update these
+     * use 'addDependency' to update these
      */
     final boolean isReady() {
-        return isInReadyState() && m_prerequisites.isEmpty() && getPendingPrereqCount() == 0;
+        return isInReadyState() && getPendingPrereqCount() == 0;
     }
 
     private int getPendingPrereqCount() {
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs deep and wide task graphs through the coordinator, checking that they
+ * complete and logging how many tasks per second were completed.
+ */
+public class TaskGraphTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaskGraphTest.class);
+
+    private ExecutorService m_executor;
+    private DefaultTaskCoordinator m_coordinator;
+
+    @Before
+    public void setUp() {
+        m_executor = Executors.newFixedThreadPool(8,
+            new LogPreservingThreadFactory(getClass().getSimpleName(), 8)
+        );
+        m_coordinator = new DefaultTaskCoordinator("TaskGraphTest", m_executor);
+    }
+
+    @After
+    public void tearDown() {
+        m_executor.shutdownNow();
+    }
+
+    private static Runnable adder(final AtomicLong result, final long value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                result.addAndGet(value);
+            }
+        };
+    }
+
+    private void runAndReport(final String name, final Task root, final long taskCount) throws Exception {
+        final long start = System.nanoTime();
+        root.schedule();
+        root.waitFor(60, TimeUnit.SECONDS);
+        final long elapsed = System.nanoTime() - start;
+
+        assertTrue(name + " did not complete", root.isFinished());
+        LOG.info("{}: {} tasks in {} ms ({} tasks/s), {}", name, taskCount, TimeUnit.NANOSECONDS.toMillis(elapsed), taskCount * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed), m_coordinator);
+    }
+
+    /**
+     * A single sequence of many tasks, each waiting for the one before it.
+     */
+    @Test
+    public void testDeepSequence() throws Exception {
+        final int count = 100000;
+        final AtomicLong result = new AtomicLong(0);
+
+        final SequenceTask sequence = m_coordinator.createSequence().get();
+        for (int i = 1; i <= count; i++) {
+            sequence.add(adder(result, i));
+        }
+
+        runAndReport("deep sequence", sequence, count);
+        assertEquals((long)count * (count + 1) / 2, result.get());
+    }
+
+    /**
+     * Sequences nested inside each other as they run, the way scan phases
+     * add their own sub-phases, so the completion of the innermost task
+     * completes every enclosing container in turn.
+     */
+    @Test
+    public void testDeepNesting() throws Exception {
+        final int depth = 10000;
+        final AtomicLong result = new AtomicLong(0);
+
+        final SequenceTask root = m_coordinator.createSequence().get();
+        root.add(nester(root, result, depth - 1));
+
+        runAndReport("deep nesting", root, 2 * depth);
+        assertEquals(depth, result.get());
+    }
+
+    private Runnable nester(final ContainerTask<?> container, final AtomicLong result, final int remaining) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                result.incrementAndGet();
+                if (remaining > 0) {
+                    final SequenceTask child = new SequenceTask(m_coordinator, container);
+                    child.add(nester(child, result, remaining - 1));
+                    container.add(child);
+                }
+            }
+        };
+    }
+
+    /**
+     * A single batch of many independent tasks.
+     */
+    @Test
+    public void testWideBatch() throws Exception {
+        final int count = 100000;
+        final AtomicLong result = new AtomicLong(0);
+
+        final BatchTask batch = m_coordinator.createBatch().get();
+        for (int i = 1; i <= count; i++) {
+            batch.add(adder(result, i));
+        }
+
+        runAndReport("wide batch", batch, count);
+        assertEquals((long)count * (count + 1) / 2, result.get());
+        assertEquals(0, m_coordinator.getReadyQueueDepth());
+        assertTrue(m_coordinator.getCompletedTaskCount() >= count);
+    }
+
+    /**
+     * Layers of tasks where every task depends on every task of the layer
+     * before it.
+     */
+    @Test
+    public void testLayeredGraph() throws Exception {
+        final int width = 50;
+        final int layers = 50;
+        final AtomicLong result = new AtomicLong(0);
+
+        final BatchTask graph = m_coordinator.createBatch().get();
+        List<Task> previous = new ArrayList<Task>();
+        for (int l = 0; l < layers; l++) {
+            final List<Task> layer = new ArrayList<Task>();
+            for (int w = 0; w < width; w++) {
+                final Task task = m_coordinator.createTask(graph, adder(result, 1));
+                for (final Task prereq : previous) {
+                    task.addPrerequisite(prereq);
+                }
+                graph.add(task);
+                layer.add(task);
+            }
+            previous = layer;
+        }
+
+        runAndReport("layered graph", graph, width * layers);
+        assertEquals(width * layers, result.get());
+    }
+}
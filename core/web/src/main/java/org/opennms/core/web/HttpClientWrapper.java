@@ -31,11 +31,7 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.HttpClientConnectionManager;
-import org.apache.http.conn.socket.ConnectionSocketFactory;
-import org.apache.http.conn.socket.PlainConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.impl.NoConnectionReuseStrategy;
@@ -56,10 +52,14 @@ import org.slf4j.LoggerFactory;
 public class HttpClientWrapper implements Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(HttpClientWrapper.class);
 
+    private static SSLContext s_relaxedSSLContext;
+    private static SSLContext s_selfSignedSSLContext;
+
     private CloseableHttpClient m_httpClient;
     private CookieStore m_cookieStore;
 
     private boolean m_reuseConnections = true;
+    private boolean m_useConnectionPool = false;
     private boolean m_usePreemptiveAuth = false;
     private boolean m_useSystemProxySettings;
     private String m_cookieSpec;
@@ -132,6 +132,19 @@ public class HttpClientWrapper implements Closeable {
         return this;
     }
 
+    /**
+     * Lease connections from the shared {@link HttpConnectionPool} instead of
+     * opening a new connection for every client.  Connections are kept alive
+     * between requests, across clients, and closing the client returns them
+     * to the pool.
+     */
+    public HttpClientWrapper useConnectionPool() {
+        LOG.debug("useConnectionPool()");
+        assertNotInitialized();
+        m_useConnectionPool = true;
+        return this;
+    }
+
     /**
      * Configure HttpClient to honor the system java proxy settings (-Dhttp.proxyHost= -Dhttp.proxyPort=)
      */
@@ -159,7 +172,7 @@ public class HttpClientWrapper implements Closeable {
     public HttpClientWrapper useRelaxedSSL(final String scheme) throws GeneralSecurityException {
         LOG.debug("useRelaxedSSL: scheme={}", scheme);
         assertNotInitialized();
-        m_sslContext.put(scheme, SSLContext.getInstance(EmptyKeyRelaxedTrustSSLContext.ALGORITHM));
+        m_sslContext.put(scheme, getRelaxedSSLContext());
         return this;
     }
 
@@ -170,10 +183,7 @@ public class HttpClientWrapper implements Closeable {
     public HttpClientWrapper trustSelfSigned(final String scheme) throws GeneralSecurityException {
         LOG.debug("trustSelfSigned: scheme={}", scheme);
         assertNotInitialized();
-        m_sslContext.put(scheme, SSLContexts.custom()
-                         .loadTrustMaterial(null, new TrustSelfSignedStrategy())
-                         .useTLS()
-                         .build());
+        m_sslContext.put(scheme, getSelfSignedSSLContext());
         return this;
     }
 
@@ -274,7 +284,6 @@ public class HttpClientWrapper implements Closeable {
      * Note that when you are done with the response, you must call {@link #closeResponse()} so that it gets cleaned up properly.
      */
     public CloseableHttpResponse execute(final HttpUriRequest method) throws ClientProtocolException, IOException {
-        System.err.println("execute: " + this.toString());
         // override some headers with our versions
         final HttpRequestWrapper requestWrapper = HttpRequestWrapper.wrap(method);
         if (m_userAgent != null && !m_userAgent.trim().isEmpty()) {
@@ -287,7 +296,13 @@ public class HttpClientWrapper implements Closeable {
             requestWrapper.setProtocolVersion(m_version);
         }
 
-        return getClient().execute(requestWrapper);
+        if (!m_useConnectionPool) {
+            return getClient().execute(requestWrapper);
+        }
+        final long start = System.currentTimeMillis();
+        final CloseableHttpResponse response = getClient().execute(requestWrapper);
+        HttpConnectionPool.getInstance().recordRequest(System.currentTimeMillis() - start);
+        return response;
     }
 
     /**
@@ -299,6 +314,7 @@ public class HttpClientWrapper implements Closeable {
         final HttpClientWrapper ret = HttpClientWrapper.create();
         ret.m_cookieStore = m_cookieStore;
         ret.m_reuseConnections = m_reuseConnections;
+        ret.m_useConnectionPool = m_useConnectionPool;
         ret.m_usePreemptiveAuth = m_usePreemptiveAuth;
         ret.m_useSystemProxySettings = m_useSystemProxySettings;
         ret.m_cookieSpec = m_cookieSpec;
@@ -307,7 +323,7 @@ public class HttpClientWrapper implements Closeable {
         ret.m_socketTimeout = m_socketTimeout;
         ret.m_connectionTimeout = m_connectionTimeout;
         ret.m_retries = m_retries;
-        for (final Map.Entry<String,SSLContext> entry : ret.m_sslContext.entrySet()) {
+        for (final Map.Entry<String,SSLContext> entry : m_sslContext.entrySet()) {
             ret.m_sslContext.put(entry.getKey(), entry.getValue());
         }
         for (final HttpRequestInterceptor interceptor : m_requestInterceptors) {
@@ -350,11 +366,17 @@ public class HttpClientWrapper implements Closeable {
             }
             if (m_connectionTimeout != null) {
                 requestConfigBuilder.setConnectTimeout(m_connectionTimeout);
+                if (m_useConnectionPool) {
+                    // don't wait forever for a busy host's connections
+                    requestConfigBuilder.setConnectionRequestTimeout(m_connectionTimeout);
+                }
             }
             if (m_retries != null) {
                 httpClientBuilder.setRetryHandler(new DefaultHttpRequestRetryHandler(m_retries, false));
             }
-            if (m_sslContext.size() != 0) {
+            if (m_useConnectionPool) {
+                httpClientBuilder.setConnectionManager(HttpConnectionPool.getInstance().getConnectionManager(m_sslContext));
+            } else if (m_sslContext.size() != 0) {
                 configureSSLContext(httpClientBuilder);
             }
             for (final HttpRequestInterceptor interceptor : m_requestInterceptors) {
@@ -417,26 +439,37 @@ public class HttpClientWrapper implements Closeable {
     }
 
     protected void configureSSLContext(final HttpClientBuilder builder) {
-        final RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create();
-        for (final Map.Entry<String,SSLContext> entry : m_sslContext.entrySet()) {
-            final SSLConnectionSocketFactory sslConnectionFactory = new SSLConnectionSocketFactory(entry.getValue(), SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-            registryBuilder.register(entry.getKey(), sslConnectionFactory);
-        }
-        if (!m_sslContext.containsKey("http")) {
-            registryBuilder.register("http", PlainConnectionSocketFactory.INSTANCE);
-        }
-        if (!m_sslContext.containsKey("https")) {
-            registryBuilder.register("https", SSLConnectionSocketFactory.getSystemSocketFactory());
+        final HttpClientConnectionManager ccm = new BasicHttpClientConnectionManager(HttpConnectionPool.createRegistry(m_sslContext));
+        builder.setConnectionManager(ccm);
+    }
+
+    /**
+     * The SSL contexts are shared so that their TLS session caches are, too,
+     * and a client can resume the session of an earlier client instead of
+     * doing a full handshake.
+     */
+    private static synchronized SSLContext getRelaxedSSLContext() throws GeneralSecurityException {
+        if (s_relaxedSSLContext == null) {
+            s_relaxedSSLContext = SSLContext.getInstance(EmptyKeyRelaxedTrustSSLContext.ALGORITHM);
         }
+        return s_relaxedSSLContext;
+    }
 
-        final HttpClientConnectionManager ccm = new BasicHttpClientConnectionManager(registryBuilder.build());
-        builder.setConnectionManager(ccm);
+    private static synchronized SSLContext getSelfSignedSSLContext() throws GeneralSecurityException {
+        if (s_selfSignedSSLContext == null) {
+            s_selfSignedSSLContext = SSLContexts.custom()
+                    .loadTrustMaterial(null, new TrustSelfSignedStrategy())
+                    .useTLS()
+                    .build();
+        }
+        return s_selfSignedSSLContext;
     }
 
     @Override
     public String toString() {
         return "HttpClientWrapper ["
                 + "reuseConnections=" + m_reuseConnections
+                + ", useConnectionPool=" + m_useConnectionPool
                 + ", usePreemptiveAuth=" + m_usePreemptiveAuth
                 + ", useSystemProxySettings=" + m_useSystemProxySettings
                 + ", cookieSpec=" + m_cookieSpec
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keep-alive HTTP connections shared by all {@link HttpClientWrapper}s that
+ * call {@link HttpClientWrapper#useConnectionPool()}.
+ *
+ * There is one pool per set of SSL contexts, since a connection can only be
+ * handed to clients that would have opened it the same way.  Closing a
+ * wrapper, or its client, returns its connections to the pool rather than
+ * closing them.  Connections that have been idle for longer than the idle
+ * timeout are closed in the background.
+ *
+ * The pools are sized with the following system properties:
+ * <ul>
+ * <li><code>org.opennms.core.web.pool.maxTotal</code>: the maximum number of connections per pool (default 200)</li>
+ * <li><code>org.opennms.core.web.pool.maxPerRoute</code>: the maximum number of connections to the same host and port (default 4)</li>
+ * <li><code>org.opennms.core.web.pool.idleTimeout</code>: how long an unused connection is kept, in milliseconds (default 30000)</li>
+ * </ul>
+ */
+public class HttpConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    private static final HttpConnectionPool s_instance = new HttpConnectionPool(
+            Integer.getInteger("org.opennms.core.web.pool.maxTotal", 200),
+            Integer.getInteger("org.opennms.core.web.pool.maxPerRoute", 4),
+            Long.getLong("org.opennms.core.web.pool.idleTimeout", 30000L));
+
+    private final int m_maxTotal;
+    private final int m_maxPerRoute;
+    private final long m_idleTimeout;
+
+    private final Map<Map<String,SSLContext>,PoolingHttpClientConnectionManager> m_managers = new HashMap<Map<String,SSLContext>,PoolingHttpClientConnectionManager>();
+
+    private final AtomicLong m_connectCount = new AtomicLong();
+    private final AtomicLong m_requestCount = new AtomicLong();
+    private final AtomicLong m_responseTime = new AtomicLong();
+
+    private ScheduledExecutorService m_evictor;
+
+    public static HttpConnectionPool getInstance() {
+        return s_instance;
+    }
+
+    protected HttpConnectionPool(final int maxTotal, final int maxPerRoute, final long idleTimeout) {
+        m_maxTotal = maxTotal;
+        m_maxPerRoute = maxPerRoute;
+        m_idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns a connection manager for the given SSL contexts.  Shutting the
+     * connection manager down does not close the pooled connections.
+     *
+     * @param sslContexts the SSL contexts to use, keyed by URI scheme
+     */
+    public synchronized HttpClientConnectionManager getConnectionManager(final Map<String,SSLContext> sslContexts) {
+        final Map<String,SSLContext> key = Collections.unmodifiableMap(new HashMap<String,SSLContext>(sslContexts));
+        PoolingHttpClientConnectionManager manager = m_managers.get(key);
+        if (manager == null) {
+            LOG.debug("getConnectionManager: creating a connection pool for SSL contexts {}", key);
+            manager = new PoolingHttpClientConnectionManager(createRegistry(key));
+            manager.setMaxTotal(m_maxTotal);
+            manager.setDefaultMaxPerRoute(m_maxPerRoute);
+            m_managers.put(key, manager);
+            startEvictor();
+        }
+        return new SharedConnectionManager(manager);
+    }
+
+    /**
+     * Closes all pooled connections.
+     */
+    public synchronized void clear() {
+        for (final PoolingHttpClientConnectionManager manager : m_managers.values()) {
+            manager.shutdown();
+        }
+        m_managers.clear();
+        if (m_evictor != null) {
+            m_evictor.shutdownNow();
+            m_evictor = null;
+        }
+    }
+
+    /**
+     * Records a request that was executed over a pooled connection.
+     *
+     * @param responseTime the time until the response headers were received, in milliseconds
+     */
+    void recordRequest(final long responseTime) {
+        m_requestCount.incrementAndGet();
+        m_responseTime.addAndGet(responseTime);
+    }
+
+    /**
+     * @return the number of connections that have been opened
+     */
+    public long getConnectCount() {
+        return m_connectCount.get();
+    }
+
+    /**
+     * @return the number of requests that have been executed
+     */
+    public long getRequestCount() {
+        return m_requestCount.get();
+    }
+
+    /**
+     * @return the average time until the response headers were received, in milliseconds
+     */
+    public double getAverageResponseTime() {
+        final long count = m_requestCount.get();
+        return count == 0 ? 0d : (double)m_responseTime.get() / count;
+    }
+
+    /**
+     * @return the number of connections that are currently in use
+     */
+    public int getLeasedCount() {
+        int leased = 0;
+        for (final PoolStats stats : getStats()) {
+            leased += stats.getLeased();
+        }
+        return leased;
+    }
+
+    /**
+     * @return the number of idle connections that are kept alive
+     */
+    public int getAvailableCount() {
+        int available = 0;
+        for (final PoolStats stats : getStats()) {
+            available += stats.getAvailable();
+        }
+        return available;
+    }
+
+    /**
+     * @return the number of requests that are waiting for a connection
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (final PoolStats stats : getStats()) {
+            pending += stats.getPending();
+        }
+        return pending;
+    }
+
+    private synchronized List<PoolStats> getStats() {
+        final List<PoolStats> stats = new ArrayList<PoolStats>(m_managers.size());
+        for (final PoolingHttpClientConnectionManager manager : m_managers.values()) {
+            stats.add(manager.getTotalStats());
+        }
+        return stats;
+    }
+
+    private void startEvictor() {
+        if (m_evictor != null) {
+            return;
+        }
+        m_evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "HttpConnectionPool-Evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final long period = Math.max(1000L, m_idleTimeout / 2);
+        m_evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void evictIdleConnections() {
+        for (final PoolingHttpClientConnectionManager manager : m_managers.values()) {
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(m_idleTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Builds the socket factory registry for the given SSL contexts, falling
+     * back to plain sockets for http and the system defaults for https.
+     */
+    static Registry<ConnectionSocketFactory> createRegistry(final Map<String,SSLContext> sslContexts) {
+        final RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create();
+        for (final Map.Entry<String,SSLContext> entry : sslContexts.entrySet()) {
+            final SSLConnectionSocketFactory sslConnectionFactory = new SSLConnectionSocketFactory(entry.getValue(), SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            registryBuilder.register(entry.getKey(), sslConnectionFactory);
+        }
+        if (!sslContexts.containsKey("http")) {
+            registryBuilder.register("http", PlainConnectionSocketFactory.INSTANCE);
+        }
+        if (!sslContexts.containsKey("https")) {
+            registryBuilder.register("https", SSLConnectionSocketFactory.getSystemSocketFactory());
+        }
+        return registryBuilder.build();
+    }
+
+    /**
+     * Hands out connections of a shared pool, counting new connections and
+     * ignoring shutdown requests from the clients that use it.
+     */
+    private class SharedConnectionManager implements HttpClientConnectionManager {
+        private final HttpClientConnectionManager m_delegate;
+
+        SharedConnectionManager(final HttpClientConnectionManager delegate) {
+            m_delegate = delegate;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+            return m_delegate.requestConnection(route, state);
+        }
+
+        @Override
+        public void releaseConnection(final HttpClientConnection conn, final Object newState, final long validDuration, final TimeUnit timeUnit) {
+            m_delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+        }
+
+        @Override
+        public void connect(final HttpClientConnection conn, final HttpRoute route, final int connectTimeout, final HttpContext context) throws IOException {
+            m_connectCount.incrementAndGet();
+            m_delegate.connect(conn, route, connectTimeout, context);
+        }
+
+        @Override
+        public void upgrade(final HttpClientConnection conn, final HttpRoute route, final HttpContext context) throws IOException {
+            m_delegate.upgrade(conn, route, context);
+        }
+
+        @Override
+        public void routeComplete(final HttpClientConnection conn, final HttpRoute route, final HttpContext context) throws IOException {
+            m_delegate.routeComplete(conn, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(final long idletime, final TimeUnit tunit) {
+            m_delegate.closeIdleConnections(idletime, tunit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            m_delegate.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            // the pool outlives the clients that use it
+        }
+    }
+}
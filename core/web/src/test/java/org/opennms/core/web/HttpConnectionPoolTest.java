@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpConnectionPoolTest {
+    private HttpServer m_server;
+    private final Set<Integer> m_clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws Exception {
+        m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        m_server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                m_clientPorts.add(exchange.getRemoteAddress().getPort());
+                final byte[] body = "hello".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        m_server.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_server.stop(0);
+        HttpConnectionPool.getInstance().clear();
+    }
+
+    private String get(final HttpClientWrapper clientWrapper) throws IOException {
+        final HttpGet method = new HttpGet("http://127.0.0.1:" + m_server.getAddress().getPort() + "/");
+        final CloseableHttpResponse response = clientWrapper.execute(method);
+        try {
+            return EntityUtils.toString(response.getEntity());
+        } finally {
+            clientWrapper.close(response);
+        }
+    }
+
+    @Test
+    public void testConnectionReusedAcrossClients() throws Exception {
+        final HttpConnectionPool pool = HttpConnectionPool.getInstance();
+        final long connects = pool.getConnectCount();
+        final long requests = pool.getRequestCount();
+
+        for (int i = 0; i < 5; i++) {
+            final HttpClientWrapper clientWrapper = HttpClientWrapper.create()
+                    .setConnectionTimeout(3000)
+                    .setSocketTimeout(3000)
+                    .useConnectionPool();
+            try {
+                assertEquals("hello", get(clientWrapper));
+            } finally {
+                IOUtils.closeQuietly(clientWrapper);
+            }
+        }
+
+        assertEquals(1, pool.getConnectCount() - connects);
+        assertEquals(5, pool.getRequestCount() - requests);
+        assertEquals(1, m_clientPorts.size());
+        assertEquals(0, pool.getLeasedCount());
+        assertEquals(1, pool.getAvailableCount());
+    }
+
+    @Test
+    public void testDuplicateSharesPool() throws Exception {
+        final HttpClientWrapper parent = HttpClientWrapper.create().useConnectionPool();
+        final HttpClientWrapper child = parent.duplicate();
+        try {
+            assertEquals("hello", get(parent));
+            assertEquals("hello", get(child));
+        } finally {
+            IOUtils.closeQuietly(child);
+            IOUtils.closeQuietly(parent);
+        }
+        assertEquals(1, m_clientPorts.size());
+    }
+
+    @Test
+    public void testWithoutPool() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final HttpClientWrapper clientWrapper = HttpClientWrapper.create();
+            try {
+                assertEquals("hello", get(clientWrapper));
+            } finally {
+                IOUtils.closeQuietly(clientWrapper);
+            }
+        }
+        // every client opens its own connection
+        assertEquals(3, m_clientPorts.size());
+    }
+}
@@ -44,6 +44,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -94,13 +96,115 @@ public abstract class JaxbUtils {
         }
     }
 
+    private static final ValidationEventHandler LOGGING_VALIDATION_EVENT_HANDLER = new LoggingValidationEventHandler();
+
     private static final MarshallingExceptionTranslator EXCEPTION_TRANSLATOR = new MarshallingExceptionTranslator();
-    private static ThreadLocal<Map<Class<?>, Marshaller>> m_marshallers = new ThreadLocal<Map<Class<?>, Marshaller>>();
-    private static ThreadLocal<Map<Class<?>, Unmarshaller>> m_unMarshallers = new ThreadLocal<Map<Class<?>, Unmarshaller>>();
-    private static final Map<Class<?>,JAXBContext> m_contexts = Collections.synchronizedMap(new WeakHashMap<Class<?>,JAXBContext>());
-    private static final Map<Class<?>,Schema> m_schemas = Collections.synchronizedMap(new WeakHashMap<Class<?>,Schema>());
     private static final Map<String,Class<?>> m_elementClasses = Collections.synchronizedMap(new WeakHashMap<String,Class<?>>());
-    private static final boolean VALIDATE_IF_POSSIBLE = true;
+
+    /**
+     * Whether the overloads without a <code>validate</code> argument validate
+     * against the XSD of the class.  Set the
+     * <code>org.opennms.core.xml.validate</code> system property to
+     * <code>false</code> to skip schema validation altogether.
+     */
+    private static final boolean VALIDATE_IF_POSSIBLE = Boolean.parseBoolean(System.getProperty("org.opennms.core.xml.validate", "true"));
+
+    /**
+     * Maximum number of idle marshallers and unmarshallers kept per class.
+     */
+    private static final int MAX_POOLED = Integer.getInteger("org.opennms.core.xml.poolSize", 16);
+
+    /**
+     * The JAXB context, schema and idle (un)marshallers of every class that
+     * has been marshalled so far.  A {@link ClassValue} does not prevent
+     * the classes from being unloaded, and unlike the old synchronized map
+     * lookups do not contend with each other.
+     */
+    private static final ClassValue<ClassState> s_classStates = new ClassValue<ClassState>() {
+        @Override
+        protected ClassState computeValue(final Class<?> clazz) {
+            return new ClassState(clazz);
+        }
+    };
+
+    private static final class ClassState {
+        private final Class<?> m_class;
+        private final BlockingQueue<Marshaller> m_marshallers = new ArrayBlockingQueue<Marshaller>(MAX_POOLED);
+        private final BlockingQueue<Unmarshaller> m_unmarshallers = new ArrayBlockingQueue<Unmarshaller>(MAX_POOLED);
+        private volatile JAXBContext m_context;
+        private volatile boolean m_schemaLoaded = false;
+        private Schema m_schema;
+
+        private ClassState(final Class<?> clazz) {
+            m_class = clazz;
+        }
+
+        public JAXBContext getContext() throws JAXBException {
+            JAXBContext context = m_context;
+            if (context == null) {
+                synchronized (this) {
+                    context = m_context;
+                    if (context == null) {
+                        context = createContextFor(m_class);
+                        m_context = context;
+                    }
+                }
+            }
+            return context;
+        }
+
+        /**
+         * Classes without an XSD are remembered as well, so that the
+         * filesystem and classpath are only searched once per class.
+         */
+        public Schema getSchema() {
+            if (!m_schemaLoaded) {
+                synchronized (this) {
+                    if (!m_schemaLoaded) {
+                        m_schema = createValidatorFor(m_class);
+                        m_schemaLoaded = true;
+                    }
+                }
+            }
+            return m_schema;
+        }
+
+        public Marshaller createMarshaller() {
+            try {
+                return JaxbUtils.createMarshaller(m_class, getContext());
+            } catch (final JAXBException e) {
+                throw EXCEPTION_TRANSLATOR.translate("creating XML marshaller", e);
+            }
+        }
+
+        public Marshaller borrowMarshaller() {
+            final Marshaller marshaller = m_marshallers.poll();
+            return marshaller == null ? createMarshaller() : marshaller;
+        }
+
+        public void returnMarshaller(final Marshaller marshaller) {
+            m_marshallers.offer(marshaller);
+        }
+
+        public Unmarshaller borrowUnmarshaller(final boolean validate) {
+            Unmarshaller unmarshaller = m_unmarshallers.poll();
+            if (unmarshaller == null) {
+                try {
+                    unmarshaller = getContext().createUnmarshaller();
+                } catch (final JAXBException e) {
+                    throw EXCEPTION_TRANSLATOR.translate("creating XML unmarshaller", e);
+                }
+                LOG.trace("created unmarshaller for {}", m_class);
+            }
+            // pooled unmarshallers may have been used with the other setting
+            setSchema(unmarshaller, m_class, validate);
+            return unmarshaller;
+        }
+
+        public void returnUnmarshaller(final Unmarshaller unmarshaller) {
+            m_unmarshallers.offer(unmarshaller);
+        }
+    }
 
     private JaxbUtils() {
     }
@@ -152,13 +256,16 @@ public abstract class JaxbUtils {
     }
 
     public static void marshal(final Object obj, final Writer writer) {
-        final Marshaller jaxbMarshaller = getMarshallerFor(obj, null);
+        final ClassState state = s_classStates.get(obj.getClass());
+        final Marshaller jaxbMarshaller = state.borrowMarshaller();
         try {
             jaxbMarshaller.marshal(obj, writer);
         } catch (final JAXBException e) {
             throw EXCEPTION_TRANSLATOR.translate("marshalling " + obj.getClass().getSimpleName(), e);
         } catch (final FactoryConfigurationError e) {
             throw EXCEPTION_TRANSLATOR.translate("marshalling " + obj.getClass().getSimpleName(), e);
+        } finally {
+            state.returnMarshaller(jaxbMarshaller);
         }
     }
 
@@ -225,14 +332,15 @@ public abstract class JaxbUtils {
     }
 
     public static <T> T unmarshal(final Class<T> clazz, final InputSource inputSource, final JAXBContext jaxbContext, final boolean validate) {
-        final Unmarshaller um = getUnmarshallerFor(clazz, jaxbContext, validate);
+        final ClassState state = jaxbContext == null ? s_classStates.get(clazz) : null;
+        final Unmarshaller um = state == null ? getUnmarshallerFor(clazz, jaxbContext, validate) : state.borrowUnmarshaller(validate);
 
         LOG.trace("unmarshalling class {} from input source {} with unmarshaller {}", clazz.getSimpleName(), inputSource, um);
         try {
             final XMLFilter filter = getXMLFilterForClass(clazz);
             final SAXSource source = new SAXSource(filter, inputSource);
 
-            um.setEventHandler(new LoggingValidationEventHandler());
+            um.setEventHandler(LOGGING_VALIDATION_EVENT_HANDLER);
 
             final JAXBElement<T> element = um.unmarshal(source, clazz);
             return element.getValue();
@@ -240,6 +348,10 @@ public abstract class JaxbUtils {
             throw EXCEPTION_TRANSLATOR.translate("creating an XML reader object", e);
         } catch (final JAXBException e) {
             throw EXCEPTION_TRANSLATOR.translate("unmarshalling an object (" + clazz.getSimpleName() + ")", e);
+        } finally {
+            if (state != null) {
+                state.returnUnmarshaller(um);
+            }
         }
     }
 
@@ -268,27 +380,16 @@ public abstract class JaxbUtils {
 
     public static Marshaller getMarshallerFor(final Object obj, final JAXBContext jaxbContext) {
         final Class<?> clazz = (Class<?>)(obj instanceof Class<?> ? obj : obj.getClass());
-
-        Map<Class<?>, Marshaller> marshallers = m_marshallers.get();
         if (jaxbContext == null) {
-            if (marshallers == null) {
-                marshallers = new WeakHashMap<Class<?>, Marshaller>();
-                m_marshallers.set(marshallers);
-            }
-            if (marshallers.containsKey(clazz)) {
-                LOG.trace("found unmarshaller for {}", clazz);
-                return marshallers.get(clazz);
-            }
+            return s_classStates.get(clazz).createMarshaller();
+        } else {
+            return createMarshaller(clazz, jaxbContext);
         }
-        LOG.trace("creating unmarshaller for {}", clazz);
+    }
 
+    private static Marshaller createMarshaller(final Class<?> clazz, final JAXBContext context) {
+        LOG.trace("creating marshaller for {}", clazz);
         try {
-            final JAXBContext context;
-            if (jaxbContext == null) {
-                context = getContextFor(clazz);
-            } else {
-                context = jaxbContext;
-            }
             final Marshaller marshaller = context.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
@@ -297,10 +398,7 @@ public abstract class JaxbUtils {
                 marshaller.setProperty(MarshallerProperties.NAMESPACE_PREFIX_MAPPER, new EmptyNamespacePrefixMapper());
                 marshaller.setProperty(MarshallerProperties.JSON_MARSHAL_EMPTY_COLLECTIONS, true);
             }
-            final Schema schema = getValidatorFor(clazz);
-            marshaller.setSchema(schema);
-            if (jaxbContext == null) marshallers.put(clazz, marshaller);
-
+            marshaller.setSchema(getValidatorFor(clazz));
             return marshaller;
         } catch (final JAXBException e) {
             throw EXCEPTION_TRANSLATOR.translate("creating XML marshaller", e);
@@ -312,52 +410,35 @@ public abstract class JaxbUtils {
      * JAXBUtils will create and cache a context for the given object.
      * @param obj The object type to be unmarshaled.
      * @param jaxbContext An optional JAXB context to create the unmarshaller from.
-     * @param validate TODO
+     * @param validate whether to validate against the XSD of the class, if one can be found
      * @return an Unmarshaller
      */
     public static Unmarshaller getUnmarshallerFor(final Object obj, final JAXBContext jaxbContext, boolean validate) {
         final Class<?> clazz = (Class<?>)(obj instanceof Class<?> ? obj : obj.getClass());
 
-        Unmarshaller unmarshaller = null;
-
-        Map<Class<?>, Unmarshaller> unmarshallers = m_unMarshallers.get();
-        if (jaxbContext == null) {
-            if (unmarshallers == null) {
-                unmarshallers = new WeakHashMap<Class<?>, Unmarshaller>();
-                m_unMarshallers.set(unmarshallers);
-            }
-            if (unmarshallers.containsKey(clazz)) {
-                LOG.trace("found unmarshaller for {}", clazz);
-                unmarshaller = unmarshallers.get(clazz);
-            }
-        }
-
-        if (unmarshaller == null) {
-            try {
-                final JAXBContext context;
-                if (jaxbContext == null) {
-                    context = getContextFor(clazz);
-                } else {
-                    context = jaxbContext;
-                }
-                unmarshaller = context.createUnmarshaller();
-            } catch (final JAXBException e) {
-                throw EXCEPTION_TRANSLATOR.translate("creating XML marshaller", e);
-            }
+        final Unmarshaller unmarshaller;
+        try {
+            final JAXBContext context = jaxbContext == null ? getContextFor(clazz) : jaxbContext;
+            unmarshaller = context.createUnmarshaller();
+        } catch (final JAXBException e) {
+            throw EXCEPTION_TRANSLATOR.translate("creating XML unmarshaller", e);
         }
-
         LOG.trace("created unmarshaller for {}", clazz);
 
+        setSchema(unmarshaller, clazz, validate);
+        return unmarshaller;
+    }
+
+    private static void setSchema(final Unmarshaller unmarshaller, final Class<?> clazz, final boolean validate) {
         if (validate) {
             final Schema schema = getValidatorFor(clazz);
             if (schema == null) {
                 LOG.trace("Validation is enabled, but no XSD found for class {}", clazz.getSimpleName());
             }
             unmarshaller.setSchema(schema);
+        } else {
+            unmarshaller.setSchema(null);
         }
-        if (jaxbContext == null) unmarshallers.put(clazz, unmarshaller);
-
-        return unmarshaller;
     }
 
     private static List<Class<?>> getAllRelatedClasses(final Class<?> clazz) {
@@ -377,16 +458,15 @@ public abstract class JaxbUtils {
 
     public static JAXBContext getContextFor(final Class<?> clazz) throws JAXBException {
         LOG.trace("Getting context for class {}", clazz);
-        final JAXBContext context;
-        if (m_contexts.containsKey(clazz)) {
-            context = m_contexts.get(clazz);
-        } else {
-            final List<Class<?>> allRelatedClasses = getAllRelatedClasses(clazz);
-            LOG.trace("Creating new context for classes: {}", allRelatedClasses);
-            context = org.eclipse.persistence.jaxb.JAXBContextFactory.createContext(allRelatedClasses.toArray(EMPTY_CLASS_LIST), null);
-            LOG.trace("Context for {}: {}", allRelatedClasses, context);
-            m_contexts.put(clazz, context);
-        }
+        return s_classStates.get(clazz).getContext();
+    }
+
+    private static JAXBContext createContextFor(final Class<?> clazz) throws JAXBException {
+        final List<Class<?>> allRelatedClasses = getAllRelatedClasses(clazz);
+        LOG.trace("Creating new context for classes: {}", allRelatedClasses);
+        final long start = System.currentTimeMillis();
+        final JAXBContext context = org.eclipse.persistence.jaxb.JAXBContextFactory.createContext(allRelatedClasses.toArray(EMPTY_CLASS_LIST), null);
+        LOG.debug("Created JAXB context for {} in {} ms", clazz.getSimpleName(), System.currentTimeMillis() - start);
         return context;
     }
 
@@ -405,11 +485,11 @@ public abstract class JaxbUtils {
     }
 
     private static Schema getValidatorFor(final Class<?> clazz) {
-        LOG.trace("finding XSD for class {}", clazz);
+        return s_classStates.get(clazz).getSchema();
+    }
 
-        if (m_schemas.containsKey(clazz)) {
-            return m_schemas.get(clazz);
-        }
+    private static Schema createValidatorFor(final Class<?> clazz) {
+        LOG.trace("finding XSD for class {}", clazz);
 
         final List<Source> sources = new ArrayList<Source>();
         final SchemaFactory factory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
@@ -460,9 +540,7 @@ public abstract class JaxbUtils {
         LOG.trace("Schema sources: {}", sources);
 
         try {
-            final Schema schema = factory.newSchema(sources.toArray(EMPTY_SOURCE_LIST));
-            m_schemas.put(clazz, schema);
-            return schema;
+            return factory.newSchema(sources.toArray(EMPTY_SOURCE_LIST));
         } catch (final SAXException e) {
             LOG.warn("an error occurred while attempting to load schema validation files for class {}", clazz, e);
             return null;
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.trapd;
 
 import java.net.InetAddress;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -58,9 +59,11 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private IpInterfaceDao m_ipInterfaceDao;
     
     /**
-     * A Map of IP addresses and node IDs
+     * An immutable Map of IP addresses and node IDs. Lookups read it without
+     * locking; updates are serialized and replace it with a modified copy,
+     * since updates are rare compared to the lookups done for every trap.
      */
-    private Map<InetAddress, Integer> m_knownips = new HashMap<InetAddress, Integer>();
+    private volatile Map<InetAddress, Integer> m_knownips = Collections.emptyMap();
 
     /**
      * Default construct for the instance.
@@ -77,7 +80,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     @Transactional(readOnly = true)
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips = m_ipInterfaceDao.getInterfacesForNodes();
+        m_knownips = Collections.unmodifiableMap(new HashMap<InetAddress, Integer>(m_ipInterfaceDao.getInterfacesForNodes()));
     }
 
     /* (non-Javadoc)
@@ -85,7 +88,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
+    public long getNodeId(String addr) {
         if (addr == null) {
             return -1;
         }
@@ -108,7 +111,13 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
             add = intf != null && intf.isPrimary();
             LOG.info("setNodeId: address found {}. Should be added? {}", intf, add);
         }
-        return add ? longValue(m_knownips.put(InetAddressUtils.getInetAddress(addr), Integer.valueOf((int) nodeid))) : -1;
+        if (!add) {
+            return -1;
+        }
+        final Map<InetAddress, Integer> knownips = new HashMap<InetAddress, Integer>(m_knownips);
+        final Integer previous = knownips.put(InetAddressUtils.getInetAddress(addr), Integer.valueOf((int) nodeid));
+        m_knownips = Collections.unmodifiableMap(knownips);
+        return longValue(previous);
     }
 
     /* (non-Javadoc)
@@ -120,7 +129,14 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(InetAddressUtils.getInetAddress(addr)));
+        final InetAddress inetAddr = InetAddressUtils.getInetAddress(addr);
+        if (!m_knownips.containsKey(inetAddr)) {
+            return -1;
+        }
+        final Map<InetAddress, Integer> knownips = new HashMap<InetAddress, Integer>(m_knownips);
+        final Integer previous = knownips.remove(inetAddr);
+        m_knownips = Collections.unmodifiableMap(knownips);
+        return longValue(previous);
     }
 
     private static long longValue(Integer result) {
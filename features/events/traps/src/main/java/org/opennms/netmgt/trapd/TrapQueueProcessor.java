@@ -31,6 +31,8 @@ package org.opennms.netmgt.trapd;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.opennms.core.concurrent.WaterfallCallable;
@@ -40,6 +42,8 @@ import org.opennms.netmgt.events.api.EventIpcManager;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.TrapNotification;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
 import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.opennms.netmgt.xml.eventconf.Snmp;
 import org.slf4j.Logger;
@@ -84,7 +88,11 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
      */
     private EventConfDao m_eventConfDao;
 
-    private TrapNotification m_trapNotification;
+    /**
+     * The traps converted by this processor. The resulting events are sent
+     * to eventd together, in the order the traps were received.
+     */
+    private List<TrapNotification> m_trapNotifications;
     
     private static long s_v1TrapsReceived = 0;
     
@@ -165,13 +173,28 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
      */
     @Override
     public Callable<Void> call() {
-        try {
-            processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent());
-        } catch (IllegalArgumentException e) {
-            LOG.info(e.getMessage());
-        } catch (Throwable e) {
-            LOG.error("Unexpected error processing trap: {}", e, e);
-            s_trapsErrored++;
+        final Events events = new Events();
+        for (final TrapNotification trapNotification : m_trapNotifications) {
+            try {
+                processTrapEvent(((EventCreator)trapNotification.getTrapProcessor()).getEvent(), events);
+            } catch (IllegalArgumentException e) {
+                LOG.info(e.getMessage());
+            } catch (Throwable e) {
+                LOG.error("Unexpected error processing trap: {}", e, e);
+                s_trapsErrored++;
+            }
+        }
+
+        if (events.getEventCount() > 0) {
+            // send the events to eventd
+            final Log log = new Log();
+            log.setEvents(events);
+            try {
+                m_eventMgr.sendNow(log);
+            } catch (Throwable e) {
+                LOG.error("Unexpected error sending {} trap events to eventd: {}", events.getEventCount(), e, e);
+                s_trapsErrored += events.getEventCount();
+            }
         }
         return null;
     }
@@ -180,8 +203,9 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
      * <p>processTrapEvent</p>
      *
      * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @param events the events to send to eventd, to which the event is added unless discarded.
      */
-    private void processTrapEvent(final Event event) {
+    private void processTrapEvent(final Event event, final Events events) {
     	final InetAddress trapInterface = event.getInterfaceAddress();
 
     	final org.opennms.netmgt.xml.eventconf.Event econf = m_eventConfDao.findByEvent(event);
@@ -213,34 +237,31 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
             }
         }
 
-        // send the event to eventd
-        m_eventMgr.sendNow(event);
+        events.addEvent(event);
 
-        LOG.debug("Trap successfully converted and sent to eventd with UEI {}", event.getUei());
+        LOG.debug("Trap successfully converted with UEI {}", event.getUei());
 
         if (!event.hasNodeid() && m_newSuspect) {
-            sendNewSuspectEvent(InetAddressUtils.str(trapInterface));
+            events.addEvent(createNewSuspectEvent(InetAddressUtils.str(trapInterface)));
 
-            LOG.debug("Sent newSuspectEvent for interface: {}", trapInterface);
+            LOG.debug("Created newSuspectEvent for interface: {}", trapInterface);
 
         }
     }
 
     /**
-     * Send a newSuspect event for the interface
+     * Create a newSuspect event for the interface
      * 
      * @param trapInterface
      *            The interface for which the newSuspect event is to be
      *            generated
      */
-    private void sendNewSuspectEvent(String trapInterface) {
+    private static Event createNewSuspectEvent(String trapInterface) {
         // construct event with 'trapd' as source
         EventBuilder bldr = new EventBuilder(org.opennms.netmgt.events.api.EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, "trapd");
         bldr.setInterface(addr(trapInterface));
         bldr.setHost(LOCALHOST_ADDRESS);
-
-        // send the event to eventd
-        m_eventMgr.sendNow(bldr.getEvent());
+        return bldr.getEvent();
     }
 
     /**
@@ -304,11 +325,19 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
     }
 
     public TrapNotification getTrapNotification() {
-        return m_trapNotification;
+        return m_trapNotifications == null || m_trapNotifications.isEmpty() ? null : m_trapNotifications.get(0);
     }
 
     public void setTrapNotification(TrapNotification info) {
-        m_trapNotification = info;
+        m_trapNotifications = info == null ? null : Collections.singletonList(info);
+    }
+
+    public List<TrapNotification> getTrapNotifications() {
+        return m_trapNotifications;
+    }
+
+    public void setTrapNotifications(List<TrapNotification> infos) {
+        m_trapNotifications = infos;
     }
 
     @Override
@@ -316,7 +345,7 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
         Assert.state(m_eventConfDao != null, "property eventConfDao must be set");
         Assert.state(m_eventMgr != null, "property eventMgr must be set");
         Assert.state(m_newSuspect != null, "property newSuspect must be set");
-        Assert.state(m_trapNotification != null, "property trapNotification must be set");
+        Assert.state(m_trapNotifications != null, "property trapNotifications must be set");
     }
     
     public static long getV1TrapsReceived() {
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.util.List;
+
 import javax.annotation.Resource;
 
 import org.opennms.core.spring.BeanUtils;
@@ -105,6 +107,20 @@ public class TrapQueueProcessorFactory implements InitializingBean {
         return retval;
     }
 
+    /**
+     * Returns a processor that converts the traps and sends the resulting
+     * events to eventd in a single event log.
+     */
+    public TrapQueueProcessor getInstance(List<TrapNotification> infos) {
+        TrapQueueProcessor retval = new TrapQueueProcessor();
+        retval.setEventConfDao(m_eventConfDao);
+        retval.setEventManager(m_eventManager);
+        retval.setNewSuspect(m_newSuspectOnTrap);
+        retval.setTrapNotifications(infos);
+        retval.afterPropertiesSet();
+        return retval;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
@@ -32,8 +32,12 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Resource;
 
@@ -81,6 +85,12 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     private static final Logger LOG = LoggerFactory.getLogger(Trapd.class);
 
     private static final String LOG4J_CATEGORY = "trapd";
+
+    /**
+     * The maximum number of traps that are converted and sent to eventd
+     * in a single event log.
+     */
+    private static final int MAX_TRAPS_PER_BATCH = 100;
     
     /**
      * The last status sent to the service control manager.
@@ -92,6 +102,16 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
      */
     private ExecutorService m_backlogQ;
 
+    /**
+     * Traps received but not yet handed to the backlog queue.
+     */
+    private final BlockingQueue<TrapNotification> m_pendingTraps = new LinkedBlockingQueue<TrapNotification>();
+
+    /**
+     * Whether a task draining m_pendingTraps is queued or running.
+     */
+    private final AtomicBoolean m_drainScheduled = new AtomicBoolean(false);
+
     /**
      * The queue processing thread
      */
@@ -148,7 +168,37 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     /** {@inheritDoc} */
     @Override
     public void trapReceived(TrapNotification trapNotification) {
-        m_backlogQ.submit(m_processorFactory.getInstance(trapNotification));
+        m_pendingTraps.offer(trapNotification);
+        if (m_drainScheduled.compareAndSet(false, true)) {
+            m_backlogQ.submit(new Runnable() {
+                @Override
+                public void run() {
+                    drainPendingTraps();
+                }
+            });
+        }
+    }
+
+    /**
+     * Converts the pending traps in batches of up to MAX_TRAPS_PER_BATCH,
+     * so that a trap storm results in few large event logs instead of one
+     * eventd round trip per trap.
+     */
+    private void drainPendingTraps() {
+        final List<TrapNotification> batch = new ArrayList<TrapNotification>(MAX_TRAPS_PER_BATCH);
+        while (true) {
+            m_pendingTraps.drainTo(batch, MAX_TRAPS_PER_BATCH);
+            if (batch.isEmpty()) {
+                m_drainScheduled.set(false);
+                // a trap may have been queued after the drain but before the flag was cleared
+                if (m_pendingTraps.isEmpty() || !m_drainScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            m_processorFactory.getInstance(new ArrayList<TrapNotification>(batch)).call();
+            batch.clear();
+        }
     }
 
     /**
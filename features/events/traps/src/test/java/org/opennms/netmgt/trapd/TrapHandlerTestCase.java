@@ -64,6 +64,8 @@ import org.opennms.netmgt.snmp.SnmpValueFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.test.JUnitConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
@@ -81,6 +83,10 @@ import org.springframework.test.context.ContextConfiguration;
 @JUnitConfigurationEnvironment
 public class TrapHandlerTestCase implements InitializingBean {
 
+    private static final Logger LOG = LoggerFactory.getLogger(TrapHandlerTestCase.class);
+
+    private static final int TRAP_STORM_SIZE = 1000;
+
     @Autowired
     private Trapd m_trapd = null;
 
@@ -461,6 +467,39 @@ public class TrapHandlerTestCase implements InitializingBean {
         finishUp();
     }
 
+    @Test
+    @DirtiesContext
+    public void testV1TrapStorm() throws Exception {
+        sendTrapStorm("v1");
+    }
+
+    @Test
+    @DirtiesContext
+    public void testV2TrapStorm() throws Exception {
+        sendTrapStorm("v2c");
+    }
+
+    /**
+     * Sends TRAP_STORM_SIZE traps as fast as possible and logs how long it
+     * takes until all of them were received by eventd.
+     */
+    private void sendTrapStorm(String version) throws Exception {
+        m_processorFactory.setNewSuspect(false);
+        for (int i = 0; i < TRAP_STORM_SIZE; i++) {
+            anticipateEvent("uei.opennms.org/default/trap");
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < TRAP_STORM_SIZE; i++) {
+            sendTrap(version, null, 6, 1);
+        }
+        m_anticipator.verifyAnticipated(30000, 0, 0, 0, 0);
+        long elapsed = System.currentTimeMillis() - start;
+
+        LOG.info("Converted {} {} traps in {}ms ({} traps/s)", TRAP_STORM_SIZE, version, elapsed, TRAP_STORM_SIZE * 1000L / Math.max(1, elapsed));
+        m_eventMgr.finishProcessingEvents();
+    }
+
     public Event anticipateEvent(String uei) {
         return anticipateEvent(uei, m_ip, m_nodeId);
     }
@@ -31,20 +31,31 @@ package org.opennms.netmgt.collectd;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.collectd.jdbc.JdbcAgentState;
 import org.opennms.netmgt.collectd.jdbc.JdbcCollectionAttributeType;
 import org.opennms.netmgt.collectd.jdbc.JdbcCollectionResource;
 import org.opennms.netmgt.collectd.jdbc.JdbcCollectionSet;
+import org.opennms.netmgt.collectd.jdbc.JdbcCollectorException;
+import org.opennms.netmgt.collectd.jdbc.JdbcConnectionPool;
 import org.opennms.netmgt.collectd.jdbc.JdbcMultiInstanceCollectionResource;
 import org.opennms.netmgt.collectd.jdbc.JdbcSingleInstanceCollectionResource;
 import org.opennms.netmgt.collection.api.AttributeGroupType;
@@ -68,6 +79,7 @@ public class JdbcCollector implements ServiceCollector {
     private final Map<Integer, JdbcAgentState> m_scheduledNodes = new HashMap<Integer, JdbcAgentState>();
     private Map<String, AttributeGroupType> m_groupTypeList = new HashMap<String, AttributeGroupType>();
     private Map<String, JdbcCollectionAttributeType> m_attribTypeList = new HashMap<String, JdbcCollectionAttributeType>();
+    private ExecutorService m_queryExecutor;
     
     public JdbcDataCollectionConfigDao getJdbcCollectionDao() {
         return m_jdbcCollectionDao;
@@ -120,13 +132,18 @@ public class JdbcCollector implements ServiceCollector {
         }
     }
 
-    private void initDatabaseConnectionFactory(String dataSourceName) {
-        DataSourceFactory.init(dataSourceName);
-    }
-
     @Override
     public void release() {
+        for (JdbcAgentState agentState : m_scheduledNodes.values()) {
+            agentState.close();
+        }
         m_scheduledNodes.clear();
+        synchronized (this) {
+            if (m_queryExecutor != null) {
+                m_queryExecutor.shutdown();
+                m_queryExecutor = null;
+            }
+        }
     }
 
     @Override
@@ -160,6 +177,7 @@ public class JdbcCollector implements ServiceCollector {
         JdbcAgentState nodeState = m_scheduledNodes.get(scheduledNodeKey);
         if (nodeState != null) {
             m_scheduledNodes.remove(scheduledNodeKey);
+            nodeState.close();
         }
     }
 
@@ -170,119 +188,256 @@ public class JdbcCollector implements ServiceCollector {
             LOG.error("Null parameters is now allowed in JdbcCollector!!");
         }
         
-        Connection con = null;
-        ResultSet results = null;
-        Statement stmt = null;
-        
-        try {
-            String collectionName = ParameterMap.getKeyedString(parameters, "collection", null);
-            if (collectionName == null) {
-                //Look for the old configuration style:
-                collectionName = ParameterMap.getKeyedString(parameters, "jdbc-collection", null);
+        String collectionName = ParameterMap.getKeyedString(parameters, "collection", null);
+        if (collectionName == null) {
+            //Look for the old configuration style:
+            collectionName = ParameterMap.getKeyedString(parameters, "jdbc-collection", null);
+        }
+    
+        JdbcDataCollection collection = m_jdbcCollectionDao.getDataCollectionByName(collectionName);
+    
+        agentState = m_scheduledNodes.get(agent.getNodeId());
+        agentState.setupDatabaseConnections(parameters);
+    
+        // Load the attribute group types.
+        loadAttributeGroupList(collection);
+
+        // Load the attribute types.
+        loadAttributeTypeList(collection);
+    
+        // Create a new collection set.
+        JdbcCollectionSet collectionSet = new JdbcCollectionSet();
+        collectionSet.setCollectionTimestamp(new Date());
+
+        // Creating a single resource object, because all node-level metric must belong to the exact same resource.
+        final JdbcSingleInstanceCollectionResource nodeResource = new JdbcSingleInstanceCollectionResource(agent);
+    
+        // Cycle through all of the queries for this collection
+        final List<JdbcQuery> queries = new ArrayList<JdbcQuery>();
+        for(JdbcQuery query : collection.getQueries()) {
+            // Verify if we should check for availability of a query.
+            if (agentState.shouldCheckAvailability(query.getQueryName(), query.getRecheckInterval())) {
+                // Check to see if the query is available.
+                if (!isGroupAvailable(agentState, query)) {
+                    LOG.warn("Group is not available.");
+                    continue;
+                }
             }
-        
-            JdbcDataCollection collection = m_jdbcCollectionDao.getDataCollectionByName(collectionName);
-        
-            agentState = m_scheduledNodes.get(agent.getNodeId());
-            agentState.setupDatabaseConnections(parameters);
-        
-            // Load the attribute group types.
-            loadAttributeGroupList(collection);
+            
+            // If the query is available, lets collect it.
+            if (agentState.groupIsAvailable(query.getQueryName())) {
+                queries.add(query);
+            }
+        }
 
-            // Load the attribute types.
-            loadAttributeTypeList(collection);
-        
-            // Create a new collection set.
-            JdbcCollectionSet collectionSet = new JdbcCollectionSet();
-            collectionSet.setCollectionTimestamp(new Date());
+        final AtomicReferenceArray<List<String[]>> results = runQueries(agentState, queries, ParameterMap.getKeyedInteger(parameters, "parallel-queries", 1));
 
-            // Creating a single resource object, because all node-level metric must belong to the exact same resource.
-            final JdbcSingleInstanceCollectionResource nodeResource = new JdbcSingleInstanceCollectionResource(agent);
-        
-            // Cycle through all of the queries for this collection
-            for(JdbcQuery query : collection.getQueries()) {
-                // Verify if we should check for availability of a query.
-                if (agentState.shouldCheckAvailability(query.getQueryName(), query.getRecheckInterval())) {
-                    // Check to see if the query is available.
-                    if (!isGroupAvailable(agentState, query)) {
-                        LOG.warn("Group is not available.");
-                        continue;
-                    }
+        for (int i = 0; i < queries.size(); i++) {
+            final JdbcQuery query = queries.get(i);
+            final List<String[]> rows = results.get(i);
+            if (rows == null) {
+                // The query failed, the reason has been logged already.
+                continue;
+            }
+
+            // Determine if there were any results for this query to                    
+            if (rows.isEmpty()) {
+                LOG.warn("Query '{}' returned no results.", query.getQueryName());
+                continue;
+            }
+
+            boolean singleInstance = (rows.size()==1)?true:false;
+            
+            // Iterate through each row.
+            for (String[] row : rows) {
+                JdbcCollectionResource resource = null;
+                
+                // Create the appropriate resource container.
+                if(singleInstance) {
+                    resource = nodeResource;
+                } else {
+                    resource = new JdbcMultiInstanceCollectionResource(agent, row[0], query.getResourceType());
                 }
                 
-                try {
-                    // If the query is available, lets collect it.
-                    if (agentState.groupIsAvailable(query.getQueryName())) {
-                        if(agentState.getUseDataSourceName()) {
-                            initDatabaseConnectionFactory(agentState.getDataSourceName());
-                            con = DataSourceFactory.getInstance(agentState.getDataSourceName()).getConnection();
-                        } else {
-                            con = agentState.getJdbcConnection();
-                        }
-                        stmt = agentState.createStatement(con);
-                        results = agentState.executeJdbcQuery(stmt, query);
-                    
-                        // Determine if there were any results for this query to                    
-                        if (results.isBeforeFirst() && results.isAfterLast()) {
-                            LOG.warn("Query '{}' returned no results.", query.getQueryName());
-                            // Close the statement, but retain the connection.
-                            agentState.closeResultSet(results);
-                            agentState.closeStmt(stmt);
-                            continue;
-                        }
-                        
-                        // Determine if there are results and how many.
-                        results.last();
-                        boolean singleInstance = (results.getRow()==1)?true:false;
-                        results.beforeFirst();
-                        
-                        // Iterate through each row.
-                        while(results.next() ) {
-                            JdbcCollectionResource resource = null;
-                            
-                            // Create the appropriate resource container.
-                            if(singleInstance) {
-                                resource = nodeResource;
-                            } else {
-                                // Retrieve the name of the column to use as the instance key for multi-row queries.
-                                String instance = results.getString(query.getInstanceColumn());
-                                resource = new JdbcMultiInstanceCollectionResource(agent,instance, query.getResourceType());
-                            }
-                            
-                            for(JdbcColumn curColumn : query.getJdbcColumns()) {
-                                String columnName = null;
-                                if(curColumn.getDataSourceName() != null && curColumn.getDataSourceName().length() != 0) {
-                                    columnName = curColumn.getDataSourceName();
-                                } else {
-                                    columnName = curColumn.getColumnName();
-                                }
-                                
-                                JdbcCollectionAttributeType attribType = m_attribTypeList.get(curColumn.getColumnName());
-                                resource.setAttributeValue(attribType, results.getString(columnName));
-                            }
-
-                            collectionSet.getCollectionResources().add(resource);
+                for (int c = 0; c < query.getJdbcColumns().size(); c++) {
+                    JdbcCollectionAttributeType attribType = m_attribTypeList.get(query.getJdbcColumns().get(c).getColumnName());
+                    resource.setAttributeValue(attribType, row[c + 1]);
+                }
+
+                collectionSet.getCollectionResources().add(resource);
+            }
+        }
+
+        final JdbcConnectionPool pool = agentState.getConnectionPool();
+        LOG.debug("collect: {}: {} connections opened in {} ms, {} reused, {} statements reused, {} queries in {} ms, {} connections in use, {} idle",
+                  agentState.getAddress(), pool.getConnectCount(), pool.getConnectTime(), pool.getReuseCount(), pool.getStatementReuseCount(),
+                  pool.getQueryCount(), pool.getQueryTime(), pool.getActiveCount(), pool.getIdleCount());
+
+        collectionSet.setStatus(ServiceCollector.COLLECTION_SUCCEEDED);
+        return collectionSet;
+    }
+
+    /**
+     * Runs the queries of a collection, on up to <code>parallel</code>
+     * connections at the same time.
+     *
+     * @return the rows of each query, null for the queries that failed
+     */
+    private AtomicReferenceArray<List<String[]>> runQueries(JdbcAgentState agentState, List<JdbcQuery> queries, int parallel) {
+        final AtomicReferenceArray<List<String[]>> results = new AtomicReferenceArray<List<String[]>>(queries.size());
+        final QueryRunner runner = new QueryRunner(agentState, queries, results);
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 1; i < Math.min(parallel, queries.size()); i++) {
+            futures.add(getQueryExecutor().submit(runner));
+        }
+
+        RuntimeException failure = null;
+        try {
+            runner.call();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new JdbcCollectorException(e.getCause().getMessage(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new JdbcCollectorException("Interrupted while waiting for the queries of " + agentState.getAddress(), e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private synchronized ExecutorService getQueryExecutor() {
+        if (m_queryExecutor == null) {
+            m_queryExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger m_count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JdbcCollector-Query-" + m_count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return m_queryExecutor;
+    }
+
+    /**
+     * Takes the next query that hasn't been started yet until all of them
+     * have been run, using one connection of the agent for all of them.
+     */
+    private static class QueryRunner implements Callable<Void> {
+        private final JdbcAgentState m_agentState;
+        private final List<JdbcQuery> m_queries;
+        private final AtomicReferenceArray<List<String[]>> m_results;
+        private final AtomicInteger m_next = new AtomicInteger();
+
+        public QueryRunner(JdbcAgentState agentState, List<JdbcQuery> queries, AtomicReferenceArray<List<String[]>> results) {
+            m_agentState = agentState;
+            m_queries = queries;
+            m_results = results;
+        }
+
+        @Override
+        public Void call() {
+            Connection con = null;
+            try {
+                int i;
+                while ((i = m_next.getAndIncrement()) < m_queries.size()) {
+                    if (con == null) {
+                        con = m_agentState.getConnection();
+                    }
+                    JdbcQuery query = m_queries.get(i);
+                    PreparedStatement stmt = null;
+                    ResultSet results = null;
+                    boolean failed = true;
+                    boolean broken = false;
+                    try {
+                        stmt = m_agentState.prepareStatement(con, query);
+                        results = m_agentState.executeJdbcQuery(stmt, query);
+                        m_results.set(i, readResults(query, results));
+                        failed = false;
+                    } catch(SQLException e) {
+                        // Log the exception and continue to the next query.
+                        LOG.warn("There was a problem executing query '{}' Please review the query or configuration. Reason: {}", query.getQueryName(), e.getMessage());
+                        broken = isBroken(con, e);
+                    } catch(JdbcCollectorException e) {
+                        broken = isBroken(con, e.getCause());
+                        throw e;
+                    } finally {
+                        m_agentState.closeResultSet(results);
+                        m_agentState.releaseStatement(con, query, stmt, failed);
+                        if (broken) {
+                            m_agentState.releaseConnection(con, true);
+                            con = null;
                         }
                     }
-                } catch(SQLException e) {
-                    // Close the statement but retain the connection, log the exception and continue to the next query.
-                    LOG.warn("There was a problem executing query '{}' Please review the query or configuration. Reason: {}", query.getQueryName(), e.getMessage());
-                    agentState.closeResultSet(results);
-                    agentState.closeStmt(stmt);
-                    agentState.closeConnection(con);
-                    continue;
                 }
+            } finally {
+                m_agentState.releaseConnection(con, false);
             }
-            collectionSet.setStatus(ServiceCollector.COLLECTION_SUCCEEDED);
-            return collectionSet;
-        } finally {
-            // Make sure that when we're done we close all results, statements and connections.
-            agentState.closeResultSet(results);
-            agentState.closeStmt(stmt);
-            agentState.closeConnection(con);
-            
-            if(agentState != null) {
-                //agentState.closeAgentConnection();
+            return null;
+        }
+
+        /**
+         * Reads the rows of a query, each one holding the instance of the row
+         * followed by the values of the columns of the query.
+         */
+        private static List<String[]> readResults(JdbcQuery query, ResultSet results) throws SQLException {
+            List<String[]> rows = new ArrayList<String[]>();
+            if (results.isBeforeFirst() && results.isAfterLast()) {
+                return rows;
+            }
+
+            // Determine if there are results and how many.
+            results.last();
+            boolean singleInstance = (results.getRow()==1)?true:false;
+            results.beforeFirst();
+
+            List<JdbcColumn> columns = query.getJdbcColumns();
+            while(results.next()) {
+                String[] row = new String[columns.size() + 1];
+                if (!singleInstance) {
+                    // Retrieve the name of the column to use as the instance key for multi-row queries.
+                    row[0] = results.getString(query.getInstanceColumn());
+                }
+                for (int c = 0; c < columns.size(); c++) {
+                    JdbcColumn curColumn = columns.get(c);
+                    String columnName = null;
+                    if(curColumn.getDataSourceName() != null && curColumn.getDataSourceName().length() != 0) {
+                        columnName = curColumn.getDataSourceName();
+                    } else {
+                        columnName = curColumn.getColumnName();
+                    }
+                    row[c + 1] = results.getString(columnName);
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        /**
+         * Checks if a connection failed, rather than the query.
+         */
+        private static boolean isBroken(Connection con, Throwable cause) {
+            if (cause instanceof SQLException && ((SQLException)cause).getSQLState() != null && ((SQLException)cause).getSQLState().startsWith("08")) {
+                return true;
+            }
+            try {
+                return con.isClosed();
+            } catch (SQLException e) {
+                return true;
             }
         }
     }
@@ -296,12 +451,7 @@ public class JdbcCollector implements ServiceCollector {
         Connection con = null;
         
         try {
-            if(agentState.getUseDataSourceName()) {
-                initDatabaseConnectionFactory(agentState.getDataSourceName());
-                con = DataSourceFactory.getInstance(agentState.getDataSourceName()).getConnection();
-            } else {
-                con = agentState.getJdbcConnection();
-            }
+            con = agentState.getConnection();
             
             DatabaseMetaData metadata = con.getMetaData();
             resultset = metadata.getCatalogs();
@@ -319,7 +469,7 @@ public class JdbcCollector implements ServiceCollector {
             status=false;
         } finally {
             agentState.closeResultSet(resultset);
-            agentState.closeConnection(con);
+            agentState.releaseConnection(con, !status);
         }
         LOG.debug("Group {} is {} available", query.getQueryName(), (status ? "" : "not"));
         agentState.setGroupIsAvailable(query.getQueryName(), status);
@@ -31,14 +31,15 @@ package org.opennms.netmgt.collectd.jdbc;
 import java.net.InetAddress;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
+import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.DBTools;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.config.jdbc.JdbcQuery;
@@ -60,6 +61,8 @@ public class JdbcAgentState {
     
     private String m_address;
     private Map<String, JdbcGroupState> m_groupStates = new HashMap<String, JdbcGroupState>();
+
+    private final JdbcConnectionPool m_pool;
     
     public JdbcAgentState(InetAddress address, Map<String, Object> parameters) {
         // Save the target's address or hostname.
@@ -70,10 +73,18 @@ public class JdbcAgentState {
             throw new NullPointerException("parameter cannot be null");
         }
         
+        m_pool = new JdbcConnectionPool(m_address);
         //setupDatabaseConnections(parameters);
     }
     
     public void setupDatabaseConnections(Map<String, Object> parameters) {
+        // Connections opened from a JDBC URL are pooled per agent, data sources are pooled by the DataSourceFactory.
+        m_pool.setLimits(ParameterMap.getKeyedInteger(parameters, "max-connections", Math.max(1, ParameterMap.getKeyedInteger(parameters, "parallel-queries", 1))),
+                         ParameterMap.getKeyedLong(parameters, "idle-timeout", 600000L),
+                         ParameterMap.getKeyedLong(parameters, "validate-after", 30000L),
+                         ParameterMap.getKeyedLong(parameters, "connection-wait", 30000L),
+                         ParameterMap.getKeyedBoolean(parameters, "statement-cache", true));
+
         String dataSourceName = ParameterMap.getKeyedString(parameters, "data-source", JAS_NO_DATASOURCE_FOUND);
         if(dataSourceName.equals(JAS_NO_DATASOURCE_FOUND)) {
             // No 'data-source' parameter was set in the configuration file.
@@ -90,14 +101,16 @@ public class JdbcAgentState {
         m_useDataSourceName = false;
         
         // Extract the driver class name and create a driver class instance.
-        try {
-            String driverClass = ParameterMap.getKeyedString(parameters, "driver", DBTools.DEFAULT_JDBC_DRIVER);
-            m_driver = (Driver)Class.forName(driverClass).newInstance();
-        } catch (Throwable exp) {
-            throw new RuntimeException("Unable to load driver class: "+exp.toString(), exp);
+        String driverClass = ParameterMap.getKeyedString(parameters, "driver", DBTools.DEFAULT_JDBC_DRIVER);
+        if (m_driver == null || !m_driver.getClass().getName().equals(driverClass)) {
+            try {
+                m_driver = (Driver)Class.forName(driverClass).newInstance();
+            } catch (Throwable exp) {
+                throw new RuntimeException("Unable to load driver class: "+exp.toString(), exp);
+            }
+
+            LOG.info("Loaded JDBC driver");
         }
-        
-        LOG.info("Loaded JDBC driver");
 
         // Get the JDBC url host part
         m_dbUrl = DBTools.constructUrl(ParameterMap.getKeyedString(parameters, "url", DBTools.DEFAULT_URL), m_address);
@@ -109,38 +122,100 @@ public class JdbcAgentState {
         m_dbProps = new Properties();
         m_dbProps.setProperty("user", dbUser);
         m_dbProps.setProperty("password", dbPass);
+
+        m_pool.setDatabase(m_driver, m_dbUrl, m_dbProps);
     }
     
+    /**
+     * Gets a connection from the pool of the agent. It must be handed back
+     * with {@link #releaseConnection(Connection, boolean)}.
+     */
     public Connection getJdbcConnection() throws JdbcCollectorException {
         if(m_useDataSourceName) {
             throw new JdbcCollectorException("Attempt to retrieve a JDBC Connection when the collector should be using the DataSourceFactory!");
         }
         
         try {
-            return m_driver.connect(m_dbUrl, m_dbProps);
+            return m_pool.getConnection();
         } catch(SQLException e) {
             throw new JdbcCollectorException("Unable to connect to JDBC URL: '" + m_dbUrl +"'", e);
         }
     }
-    
-    public Statement createStatement(Connection con) {
+
+    /**
+     * Gets a connection from the configured data source, or from the pool
+     * of the agent.
+     */
+    public Connection getConnection() throws JdbcCollectorException {
+        if (!m_useDataSourceName) {
+            return getJdbcConnection();
+        }
+        try {
+            DataSourceFactory.init(m_dataSourceName);
+            return DataSourceFactory.getInstance(m_dataSourceName).getConnection();
+        } catch (SQLException e) {
+            throw new JdbcCollectorException("Unable to get a connection from data source '" + m_dataSourceName + "'", e);
+        }
+    }
+
+    /**
+     * Hands back a connection obtained from {@link #getConnection()}.
+     *
+     * @param broken true if the connection failed and must not be reused
+     */
+    public void releaseConnection(Connection con, boolean broken) {
+        if (con == null) return;
+        if (m_useDataSourceName) {
+            closeConnection(con);
+        } else {
+            m_pool.releaseConnection(con, broken);
+        }
+    }
+
+    /**
+     * Gets the prepared statement of a query, reusing the one prepared on a
+     * pooled connection before.
+     */
+    public PreparedStatement prepareStatement(Connection con, JdbcQuery query) {
         try {
-            return con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            return m_pool.prepareStatement(con, query.getJdbcStatement().getJdbcQuery());
         } catch(SQLException e) {
             LOG.warn("Unable to create SQL statement: {}", e.getMessage());
             throw new JdbcCollectorException("Unable to create SQL statement: " + e.getMessage(), e);
         }
     }
-    
-    public ResultSet executeJdbcQuery(Statement stmt, JdbcQuery query) {
+
+    /**
+     * Hands back a statement obtained from {@link #prepareStatement(Connection, JdbcQuery)}.
+     *
+     * @param failed true if the query failed
+     */
+    public void releaseStatement(Connection con, JdbcQuery query, PreparedStatement stmt, boolean failed) {
+        if (stmt == null) return;
+        m_pool.releaseStatement(con, query.getJdbcStatement().getJdbcQuery(), stmt, failed);
+    }
+
+    public ResultSet executeJdbcQuery(PreparedStatement stmt, JdbcQuery query) {
+        long start = System.nanoTime();
         try {
-            return stmt.executeQuery(query.getJdbcStatement().getJdbcQuery());
+            return stmt.executeQuery();
         } catch(SQLException e) {
-            //closeAgentConnection();
-            
             throw new JdbcCollectorException("Unable to execute query '" + query.getQueryName() + "'! Check your jdbc-datacollection-config.xml configuration!", e);
+        } finally {
+            m_pool.recordQuery(System.nanoTime() - start);
         }
     }
+
+    public JdbcConnectionPool getConnectionPool() {
+        return m_pool;
+    }
+
+    /**
+     * Closes the pooled connections of the agent.
+     */
+    public void close() {
+        m_pool.close();
+    }
     
     public void closeConnection(Connection con) {
         if (con == null) return;
@@ -151,15 +226,6 @@ public class JdbcAgentState {
         
     }
 
-    public void closeStmt(Statement statement) {
-        if (statement != null) {
-            try {
-                statement.close();
-            } catch (SQLException ignore) {
-            }
-        }
-    }
-
     public void closeResultSet(ResultSet resultset) {
         if (resultset != null) {
             try {
@@ -0,0 +1,521 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd.jdbc;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of JDBC connections to the database of one agent.
+ *
+ * <p>Idle connections are validated before they are handed out again when
+ * they have been idle for longer than the validation interval, and closed
+ * once they have been idle for longer than the idle timeout. Each pooled
+ * connection keeps the statements prepared on it, so the queries of a
+ * collection are only parsed by the server once per connection.</p>
+ */
+public class JdbcConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcConnectionPool.class);
+
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    private static class PooledConnection {
+        final Connection m_connection;
+        final int m_generation;
+        final Map<String, PreparedStatement> m_statements = new HashMap<String, PreparedStatement>();
+        long m_lastUsed = System.currentTimeMillis();
+        // set when it is taken from the idle connections and must be validated first
+        boolean m_validate = false;
+
+        PooledConnection(final Connection connection, final int generation) {
+            m_connection = connection;
+            m_generation = generation;
+        }
+    }
+
+    private final String m_name;
+
+    private Driver m_driver;
+    private String m_url;
+    private Properties m_properties;
+    private int m_generation = 0;
+
+    private int m_maxConnections = 2;
+    private long m_idleTimeout = 600000;
+    private long m_validateAfter = 30000;
+    private long m_waitTimeout = 30000;
+    private boolean m_cacheStatements = true;
+
+    private final Deque<PooledConnection> m_idle = new ArrayDeque<PooledConnection>();
+    private final Map<Connection, PooledConnection> m_active = new IdentityHashMap<Connection, PooledConnection>();
+    private int m_opening = 0;
+
+    private long m_connectCount = 0;
+    private long m_connectTime = 0;
+    private long m_reuseCount = 0;
+    private long m_statementReuseCount = 0;
+    private long m_queryCount = 0;
+    private long m_queryTime = 0;
+
+    /**
+     * <p>Constructor for JdbcConnectionPool.</p>
+     *
+     * @param name the name used in log messages, usually the agent address
+     */
+    public JdbcConnectionPool(final String name) {
+        m_name = name;
+    }
+
+    /**
+     * Sets the database the connections are opened to. Connections to a
+     * previous database are closed when they are released.
+     *
+     * @param driver the driver
+     * @param url the JDBC URL
+     * @param properties the connection properties, including the credentials
+     */
+    public void setDatabase(final Driver driver, final String url, final Properties properties) {
+        final List<PooledConnection> closing;
+        synchronized (this) {
+            if (m_driver != null && driver.getClass() == m_driver.getClass() && url.equals(m_url) && properties.equals(m_properties)) {
+                return;
+            }
+            if (m_url != null) {
+                LOG.info("setDatabase: the database of {} changed, closing its pooled connections", m_name);
+            }
+            m_driver = driver;
+            m_url = url;
+            m_properties = properties;
+            m_generation++;
+            closing = new ArrayList<PooledConnection>(m_idle);
+            m_idle.clear();
+            notifyAll();
+        }
+        closeAll(closing);
+    }
+
+    /**
+     * Sets the limits of the pool.
+     *
+     * @param maxConnections the maximum number of open connections
+     * @param idleTimeout the time in milliseconds after which an idle connection is closed
+     * @param validateAfter the idle time in milliseconds after which a connection is validated before reuse
+     * @param waitTimeout the time in milliseconds to wait for a connection when all of them are in use
+     * @param cacheStatements false to close the prepared statements after each query
+     */
+    public synchronized void setLimits(final int maxConnections, final long idleTimeout, final long validateAfter, final long waitTimeout, final boolean cacheStatements) {
+        m_maxConnections = Math.max(1, maxConnections);
+        m_idleTimeout = idleTimeout;
+        m_validateAfter = validateAfter;
+        m_waitTimeout = waitTimeout;
+        m_cacheStatements = cacheStatements;
+        notifyAll();
+    }
+
+    /**
+     * Gets a connection, waiting for one to be released if all of them are
+     * in use.
+     *
+     * @return the connection, to be handed back with {@link #releaseConnection(Connection, boolean)}
+     * @throws java.sql.SQLException if no connection could be opened
+     */
+    public Connection getConnection() throws SQLException {
+        final List<PooledConnection> expired;
+        final long deadline;
+        synchronized (this) {
+            if (m_url == null) {
+                throw new SQLException("No database has been set for " + m_name);
+            }
+            expired = evictIdle(System.currentTimeMillis());
+            deadline = System.currentTimeMillis() + m_waitTimeout;
+        }
+        closeAll(expired);
+
+        while (true) {
+            final PooledConnection pooled = take(deadline);
+            if (pooled == null) {
+                return connect();
+            }
+            if (!pooled.m_validate) {
+                return pooled.m_connection;
+            }
+
+            // validate outside of the lock, it is a round trip to the server
+            final boolean valid = isValid(pooled.m_connection);
+            synchronized (this) {
+                m_opening--;
+                if (valid && pooled.m_generation == m_generation) {
+                    m_reuseCount++;
+                    m_active.put(pooled.m_connection, pooled);
+                    return pooled.m_connection;
+                }
+                notifyAll();
+            }
+            LOG.debug("getConnection: discarding a connection to {} that failed validation", m_name);
+            close(pooled);
+        }
+    }
+
+    /**
+     * Takes an idle connection, waiting for one to be released if all of
+     * them are in use. A connection that has been idle for long enough to
+     * need validation, or a null return asking for a new connection to be
+     * opened, counts as being opened until the caller is done with it.
+     */
+    private synchronized PooledConnection take(final long deadline) throws SQLException {
+        while (true) {
+            final PooledConnection pooled = m_idle.pollLast();
+            if (pooled != null) {
+                pooled.m_validate = System.currentTimeMillis() - pooled.m_lastUsed >= m_validateAfter;
+                if (pooled.m_validate) {
+                    m_opening++;
+                } else {
+                    m_reuseCount++;
+                    m_active.put(pooled.m_connection, pooled);
+                }
+                return pooled;
+            }
+            if (m_active.size() + m_opening < m_maxConnections) {
+                m_opening++;
+                return null;
+            }
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new SQLException("Timed out waiting for a connection to " + m_name + ", all " + m_maxConnections + " connections are in use");
+            }
+            try {
+                wait(wait);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection to " + m_name, e);
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        final Driver driver;
+        final String url;
+        final Properties properties;
+        final int generation;
+        synchronized (this) {
+            driver = m_driver;
+            url = m_url;
+            properties = m_properties;
+            generation = m_generation;
+        }
+
+        // connect outside of the lock, a login can take a while
+        Connection connection = null;
+        final long start = System.nanoTime();
+        try {
+            connection = driver.connect(url, properties);
+            if (connection == null) {
+                throw new SQLException("The JDBC driver does not accept the URL " + url);
+            }
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                m_opening--;
+                if (connection != null) {
+                    m_connectCount++;
+                    m_connectTime += elapsed;
+                    m_active.put(connection, new PooledConnection(connection, generation));
+                } else {
+                    notifyAll();
+                }
+            }
+        }
+        LOG.debug("getConnection: connected to {} in {} ms", m_name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return connection;
+    }
+
+    /**
+     * Hands a connection back to the pool.
+     *
+     * @param connection the connection
+     * @param broken true if the connection failed and must not be reused
+     */
+    public void releaseConnection(final Connection connection, final boolean broken) {
+        PooledConnection closing = null;
+        synchronized (this) {
+            final PooledConnection pooled = m_active.remove(connection);
+            if (pooled == null) {
+                return;
+            }
+            pooled.m_lastUsed = System.currentTimeMillis();
+            if (broken || pooled.m_generation != m_generation) {
+                closing = pooled;
+            } else {
+                m_idle.addLast(pooled);
+            }
+            notifyAll();
+        }
+        if (closing != null) {
+            close(closing);
+        }
+    }
+
+    /**
+     * Gets a prepared statement for a query on a pooled connection. The
+     * statement is reused for the same SQL on the same connection.
+     *
+     * @param connection a connection of this pool
+     * @param sql the query
+     * @return the statement, to be handed back with {@link #releaseStatement(Connection, String, PreparedStatement, boolean)}
+     * @throws java.sql.SQLException if the statement can't be prepared
+     */
+    public PreparedStatement prepareStatement(final Connection connection, final String sql) throws SQLException {
+        final PooledConnection pooled;
+        synchronized (this) {
+            pooled = m_active.get(connection);
+        }
+        // the statements of a connection are only used by its borrower
+        if (pooled != null && m_cacheStatements) {
+            final PreparedStatement statement = pooled.m_statements.get(sql);
+            if (statement != null) {
+                synchronized (this) {
+                    m_statementReuseCount++;
+                }
+                return statement;
+            }
+        }
+        final PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        if (pooled != null && m_cacheStatements) {
+            pooled.m_statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Hands a prepared statement back. It stays open for the next use unless
+     * caching is disabled or the query failed.
+     *
+     * @param connection the connection the statement was prepared on
+     * @param sql the query
+     * @param statement the statement
+     * @param failed true if the query failed
+     */
+    public void releaseStatement(final Connection connection, final String sql, final PreparedStatement statement, final boolean failed) {
+        final PooledConnection pooled;
+        synchronized (this) {
+            pooled = m_active.get(connection);
+        }
+        if (pooled != null && m_cacheStatements && !failed) {
+            return;
+        }
+        if (pooled != null) {
+            pooled.m_statements.remove(sql);
+        }
+        closeStatement(statement);
+    }
+
+    /**
+     * Records the execution of a query.
+     *
+     * @param nanos the time it took in nanoseconds
+     */
+    public synchronized void recordQuery(final long nanos) {
+        m_queryCount++;
+        m_queryTime += nanos;
+    }
+
+    /**
+     * Closes the idle connections. Connections in use are closed when they
+     * are released.
+     */
+    public void close() {
+        final List<PooledConnection> closing;
+        synchronized (this) {
+            m_generation++;
+            closing = new ArrayList<PooledConnection>(m_idle);
+            m_idle.clear();
+        }
+        closeAll(closing);
+    }
+
+    /**
+     * Removes the connections that have been idle for too long; the caller
+     * closes them once it has released the lock.
+     */
+    private List<PooledConnection> evictIdle(final long now) {
+        final List<PooledConnection> expired = new ArrayList<PooledConnection>();
+        for (final Iterator<PooledConnection> it = m_idle.iterator(); it.hasNext();) {
+            final PooledConnection pooled = it.next();
+            if (now - pooled.m_lastUsed >= m_idleTimeout) {
+                LOG.debug("evictIdle: closing a connection to {} that has been idle for {} ms", m_name, now - pooled.m_lastUsed);
+                it.remove();
+                expired.add(pooled);
+            }
+        }
+        return expired;
+    }
+
+    private static boolean isValid(final Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT);
+        } catch (final AbstractMethodError e) {
+            // a pre JDBC 4 driver
+            return isValidByMetaData(connection);
+        } catch (final SQLFeatureNotSupportedException e) {
+            return isValidByMetaData(connection);
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValidByMetaData(final Connection connection) {
+        ResultSet catalogs = null;
+        try {
+            catalogs = connection.getMetaData().getCatalogs();
+            return true;
+        } catch (final SQLException e) {
+            return false;
+        } finally {
+            if (catalogs != null) {
+                try {
+                    catalogs.close();
+                } catch (final SQLException ignore) {
+                }
+            }
+        }
+    }
+
+    private static void closeAll(final Iterable<PooledConnection> connections) {
+        for (final PooledConnection pooled : connections) {
+            close(pooled);
+        }
+    }
+
+    private static void close(final PooledConnection pooled) {
+        for (final PreparedStatement statement : pooled.m_statements.values()) {
+            closeStatement(statement);
+        }
+        pooled.m_statements.clear();
+        try {
+            pooled.m_connection.close();
+        } catch (final SQLException ignore) {
+        }
+    }
+
+    private static void closeStatement(final PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (final SQLException ignore) {
+        }
+    }
+
+    /**
+     * <p>getActiveCount</p>
+     *
+     * @return the number of connections in use
+     */
+    public synchronized int getActiveCount() {
+        return m_active.size();
+    }
+
+    /**
+     * <p>getIdleCount</p>
+     *
+     * @return the number of idle connections
+     */
+    public synchronized int getIdleCount() {
+        return m_idle.size();
+    }
+
+    /**
+     * <p>getConnectCount</p>
+     *
+     * @return the number of connections opened
+     */
+    public synchronized long getConnectCount() {
+        return m_connectCount;
+    }
+
+    /**
+     * <p>getConnectTime</p>
+     *
+     * @return the total time spent opening connections in milliseconds
+     */
+    public synchronized long getConnectTime() {
+        return TimeUnit.NANOSECONDS.toMillis(m_connectTime);
+    }
+
+    /**
+     * <p>getReuseCount</p>
+     *
+     * @return the number of times an idle connection was handed out again
+     */
+    public synchronized long getReuseCount() {
+        return m_reuseCount;
+    }
+
+    /**
+     * <p>getStatementReuseCount</p>
+     *
+     * @return the number of times a cached prepared statement was used again
+     */
+    public synchronized long getStatementReuseCount() {
+        return m_statementReuseCount;
+    }
+
+    /**
+     * <p>getQueryCount</p>
+     *
+     * @return the number of queries executed
+     */
+    public synchronized long getQueryCount() {
+        return m_queryCount;
+    }
+
+    /**
+     * <p>getQueryTime</p>
+     *
+     * @return the total time spent executing queries in milliseconds
+     */
+    public synchronized long getQueryTime() {
+        return TimeUnit.NANOSECONDS.toMillis(m_queryTime);
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.collectd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.collectd.jdbc.JdbcAgentState;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionAttribute;
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.collection.api.CollectionSet;
+import org.opennms.netmgt.collection.api.ServiceCollector;
+import org.opennms.netmgt.collection.support.AbstractCollectionSetVisitor;
+import org.opennms.netmgt.config.jdbc.JdbcColumn;
+import org.opennms.netmgt.config.jdbc.JdbcDataCollection;
+import org.opennms.netmgt.config.jdbc.JdbcDataCollectionConfig;
+import org.opennms.netmgt.config.jdbc.JdbcQuery;
+import org.opennms.netmgt.config.jdbc.JdbcStatement;
+import org.opennms.netmgt.dao.JdbcDataCollectionConfigDao;
+
+/**
+ * Runs the queries of a collection on several connections to an in-memory
+ * HSQLDB database and checks that the results are merged as if they had
+ * been run one after the other.
+ */
+public class JdbcCollectorTest {
+
+    private static final int QUERIES = 8;
+
+    private final JdbcDataCollection m_collection = new JdbcDataCollection();
+    private JdbcCollector m_collector;
+    private CollectionAgent m_agent;
+    private Map<String, Object> m_parameters;
+
+    @Before
+    public void setUp() throws Exception {
+        m_parameters = new HashMap<String, Object>();
+        m_parameters.put("collection", "default");
+        m_parameters.put("driver", "org.hsqldb.jdbcDriver");
+        m_parameters.put("url", "jdbc:hsqldb:mem:jdbccollectortest");
+        m_parameters.put("user", "sa");
+        m_parameters.put("password", "");
+
+        m_collection.setName("default");
+        for (int q = 0; q < QUERIES; q++) {
+            // even queries return a row per instance, odd ones a single row
+            m_collection.addQuery(q % 2 == 0
+                ? createQuery("instances" + q, "SELECT name, value * " + (q + 1) + " AS v" + q + " FROM counters", "name", "v" + q)
+                : createQuery("total" + q, "SELECT SUM(value) + " + q + " AS v" + q + " FROM counters", null, "v" + q));
+        }
+
+        m_agent = EasyMock.createNiceMock(CollectionAgent.class);
+        EasyMock.expect(m_agent.getNodeId()).andReturn(1).anyTimes();
+        EasyMock.expect(m_agent.getAddress()).andReturn(InetAddress.getLoopbackAddress()).anyTimes();
+        EasyMock.replay(m_agent);
+
+        m_collector = new JdbcCollector();
+        m_collector.setJdbcCollectionDao(new JdbcDataCollectionConfigDao() {
+            @Override
+            public JdbcDataCollectionConfig getConfig() {
+                return null;
+            }
+
+            @Override
+            public JdbcDataCollection getDataCollectionByName(String name) {
+                return m_collection;
+            }
+
+            @Override
+            public JdbcDataCollection getDataCollectionByIndex(int idx) {
+                return m_collection;
+            }
+        });
+        m_collector.initialize(m_agent, m_parameters);
+
+        JdbcAgentState agentState = new JdbcAgentState(InetAddress.getLoopbackAddress(), m_parameters);
+        agentState.setupDatabaseConnections(m_parameters);
+        Connection con = agentState.getConnection();
+        Statement stmt = con.createStatement();
+        stmt.execute("CREATE TABLE counters (name VARCHAR(32), value INTEGER)");
+        stmt.execute("INSERT INTO counters VALUES ('a', 1)");
+        stmt.execute("INSERT INTO counters VALUES ('b', 2)");
+        stmt.execute("INSERT INTO counters VALUES ('c', 3)");
+        stmt.close();
+        agentState.releaseConnection(con, false);
+        agentState.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_collector.release();
+        JdbcAgentState agentState = new JdbcAgentState(InetAddress.getLoopbackAddress(), m_parameters);
+        agentState.setupDatabaseConnections(m_parameters);
+        Connection con = agentState.getConnection();
+        Statement stmt = con.createStatement();
+        stmt.execute("DROP TABLE counters");
+        stmt.close();
+        agentState.releaseConnection(con, true);
+        agentState.close();
+    }
+
+    private static JdbcQuery createQuery(String name, String sql, String instanceColumn, String column) {
+        JdbcQuery query = new JdbcQuery();
+        query.setQueryName(name);
+        query.setIfType("ignore");
+        query.setRecheckInterval(3600000);
+        query.setResourceType("counter");
+        query.setInstanceColumn(instanceColumn);
+        JdbcStatement statement = new JdbcStatement();
+        statement.setJdbcQuery(sql);
+        query.setJdbcStatement(statement);
+        JdbcColumn jdbcColumn = new JdbcColumn();
+        jdbcColumn.setColumnName(column);
+        jdbcColumn.setAlias(column);
+        jdbcColumn.setDataType("gauge");
+        query.addJdbcColumn(jdbcColumn);
+        return query;
+    }
+
+    /**
+     * Collects and returns the collected values as
+     * <code>resource-type/instance/attribute=value</code>, sorted.
+     */
+    private List<String> collect(int parallel) throws Exception {
+        m_parameters.put("parallel-queries", Integer.toString(parallel));
+        CollectionSet collectionSet = m_collector.collect(m_agent, null, m_parameters);
+        assertEquals(ServiceCollector.COLLECTION_SUCCEEDED, collectionSet.getStatus());
+
+        final List<String> values = new ArrayList<String>();
+        collectionSet.visit(new AbstractCollectionSetVisitor() {
+            private CollectionResource m_resource;
+
+            @Override
+            public void visitResource(CollectionResource resource) {
+                m_resource = resource;
+            }
+
+            @Override
+            public void visitAttribute(CollectionAttribute attribute) {
+                values.add(m_resource.getResourceTypeName() + "/" + m_resource.getInstance() + "/" + attribute.getName() + "=" + attribute.getStringValue());
+            }
+        });
+        Collections.sort(values);
+        return values;
+    }
+
+    @Test
+    public void testParallelQueriesAreMerged() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        for (int q = 0; q < QUERIES; q++) {
+            if (q % 2 == 0) {
+                expected.add("counter/a/v" + q + "=" + (q + 1));
+                expected.add("counter/b/v" + q + "=" + 2 * (q + 1));
+                expected.add("counter/c/v" + q + "=" + 3 * (q + 1));
+            } else {
+                expected.add("node/null/v" + q + "=" + (6 + q));
+            }
+        }
+        Collections.sort(expected);
+
+        List<String> serial = collect(1);
+        assertEquals(expected, serial);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(serial, collect(4));
+        }
+    }
+
+    @Test
+    public void testMoreRunnersThanConnections() throws Exception {
+        List<String> serial = collect(1);
+
+        // the runners that don't get one of the two connections wait for one
+        m_parameters.put("max-connections", "2");
+        assertEquals(serial, collect(QUERIES));
+    }
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.jdbc.JdbcQuery;
+import org.opennms.netmgt.config.jdbc.JdbcStatement;
+
+/**
+ * Tests the per-agent connection pool against an in-memory HSQLDB database.
+ */
+public class JdbcConnectionPoolTest {
+
+    private JdbcAgentState m_agentState;
+    private Map<String, Object> m_parameters;
+
+    @Before
+    public void setUp() throws Exception {
+        m_parameters = new HashMap<String, Object>();
+        m_parameters.put("driver", "org.hsqldb.jdbcDriver");
+        m_parameters.put("url", "jdbc:hsqldb:mem:jdbccollector");
+        m_parameters.put("user", "sa");
+        m_parameters.put("password", "");
+        m_agentState = new JdbcAgentState(InetAddress.getLoopbackAddress(), m_parameters);
+        m_agentState.setupDatabaseConnections(m_parameters);
+
+        Connection con = m_agentState.getConnection();
+        Statement stmt = con.createStatement();
+        stmt.execute("CREATE TABLE counters (name VARCHAR(32), value INTEGER)");
+        stmt.execute("INSERT INTO counters VALUES ('a', 1)");
+        stmt.execute("INSERT INTO counters VALUES ('b', 2)");
+        stmt.close();
+        m_agentState.releaseConnection(con, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Connection con = m_agentState.getConnection();
+        Statement stmt = con.createStatement();
+        stmt.execute("DROP TABLE counters");
+        stmt.close();
+        m_agentState.releaseConnection(con, true);
+        m_agentState.close();
+    }
+
+    private static JdbcQuery createQuery(String name, String sql) {
+        JdbcQuery query = new JdbcQuery();
+        query.setQueryName(name);
+        JdbcStatement statement = new JdbcStatement();
+        statement.setJdbcQuery(sql);
+        query.setJdbcStatement(statement);
+        return query;
+    }
+
+    private int count(JdbcQuery query) throws SQLException {
+        Connection con = m_agentState.getConnection();
+        PreparedStatement stmt = m_agentState.prepareStatement(con, query);
+        ResultSet results = m_agentState.executeJdbcQuery(stmt, query);
+        int rows = 0;
+        while (results.next()) {
+            rows++;
+        }
+        m_agentState.closeResultSet(results);
+        m_agentState.releaseStatement(con, query, stmt, false);
+        m_agentState.releaseConnection(con, false);
+        return rows;
+    }
+
+    @Test
+    public void testConnectionAndStatementReuse() throws Exception {
+        JdbcConnectionPool pool = m_agentState.getConnectionPool();
+        JdbcQuery query = createQuery("counters", "SELECT name, value FROM counters");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, count(query));
+            // the parameters are read again on every collection
+            m_agentState.setupDatabaseConnections(m_parameters);
+        }
+        assertEquals(1, pool.getConnectCount());
+        assertEquals(9, pool.getStatementReuseCount());
+        assertEquals(10, pool.getQueryCount());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        m_parameters.put("max-connections", "2");
+        m_parameters.put("connection-wait", "100");
+        m_agentState.setupDatabaseConnections(m_parameters);
+        JdbcConnectionPool pool = m_agentState.getConnectionPool();
+
+        Connection c1 = m_agentState.getConnection();
+        Connection c2 = m_agentState.getConnection();
+        assertNotSame(c1, c2);
+        try {
+            m_agentState.getConnection();
+            fail("the pool should be exhausted");
+        } catch (JdbcCollectorException e) {
+            // expected
+        }
+        m_agentState.releaseConnection(c2, false);
+        assertSame(c2, m_agentState.getConnection());
+        m_agentState.releaseConnection(c2, false);
+
+        // a broken connection is closed instead of being pooled
+        m_agentState.releaseConnection(c1, true);
+        assertTrue(c1.isClosed());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testValidationAndEviction() throws Exception {
+        m_parameters.put("validate-after", "0");
+        m_agentState.setupDatabaseConnections(m_parameters);
+        JdbcConnectionPool pool = m_agentState.getConnectionPool();
+
+        Connection c1 = m_agentState.getConnection();
+        m_agentState.releaseConnection(c1, false);
+        c1.close();
+        Connection c2 = m_agentState.getConnection();
+        assertNotSame(c1, c2);
+        assertFalse(c2.isClosed());
+        m_agentState.releaseConnection(c2, false);
+
+        m_parameters.put("idle-timeout", "0");
+        m_agentState.setupDatabaseConnections(m_parameters);
+        long connects = pool.getConnectCount();
+        Connection c3 = m_agentState.getConnection();
+        assertNotSame(c2, c3);
+        assertTrue(c2.isClosed());
+        assertEquals(connects + 1, pool.getConnectCount());
+        m_agentState.releaseConnection(c3, false);
+    }
+
+    @Test
+    public void testDatabaseChange() throws Exception {
+        Connection c1 = m_agentState.getConnection();
+        m_parameters.put("user", "SA");
+        m_agentState.setupDatabaseConnections(m_parameters);
+        // connections to the old database are closed when they come back
+        m_agentState.releaseConnection(c1, false);
+        assertTrue(c1.isClosed());
+        assertEquals(0, m_agentState.getConnectionPool().getIdleCount());
+    }
+
+    @Test
+    public void testFailedStatement() throws Exception {
+        JdbcQuery query = createQuery("missing", "SELECT value FROM counters WHERE name = 'a'");
+        assertEquals(1, count(query));
+        Connection con = m_agentState.getConnection();
+        PreparedStatement stmt = m_agentState.prepareStatement(con, query);
+        m_agentState.releaseStatement(con, query, stmt, true);
+        // a failed statement is closed and prepared again next time
+        assertNotSame(stmt, m_agentState.prepareStatement(con, query));
+        m_agentState.releaseConnection(con, false);
+    }
+}
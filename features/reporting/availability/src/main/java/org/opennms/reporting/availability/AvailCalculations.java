@@ -111,6 +111,16 @@ public class AvailCalculations extends Object {
      */
     private List<Node> m_nodes;
 
+    /**
+     * Downtime of all the services of m_nodes.
+     */
+    private DowntimeIndex m_downtimeIndex;
+
+    /**
+     * Number of services of m_nodes.
+     */
+    private int m_serviceCount;
+
     /**
      * Monitored Services for the category
      */
@@ -180,6 +190,8 @@ public class AvailCalculations extends Object {
                 m_report = report;
 
                 m_nodes = nodes;
+                m_downtimeIndex = new DowntimeIndex(nodes);
+                m_serviceCount = serviceCount;
 
                 String label;
                 String descr;
@@ -736,15 +748,11 @@ public class AvailCalculations extends Object {
         while (numdays++ < days) {
 
             LOG.debug("Computing for {}", new Date(endTime));
-            int serviceCount = 0;
-            long outage = 0;
             //
             // get the outage and service count.
             //
-            for(Node node : m_nodes) {
-                outage += node.getOutage(endTime, ROLLING_WINDOW);
-                serviceCount += node.getServiceCount();
-            }
+            long outage = m_downtimeIndex.getDownTime(endTime, ROLLING_WINDOW);
+            int serviceCount = m_serviceCount;
             double percentAvail;
             if (serviceCount > 0){
 
@@ -815,15 +823,11 @@ public class AvailCalculations extends Object {
         while (numdays++ < days) {
 
             LOG.debug("Computing for {}", new Date(endTime));
-            int serviceCount = 0;
-            long outage = 0;
             //
             // get the outage and service count.
             //
-            for(Node node : m_nodes) {
-                outage += node.getOutage(endTime, ROLLING_WINDOW);
-                serviceCount += node.getServiceCount();
-            }
+            long outage = m_downtimeIndex.getDownTime(endTime, ROLLING_WINDOW);
+            int serviceCount = m_serviceCount;
             double percentAvail;
             if (serviceCount > 0)
                 percentAvail = 100.0 * (1 - (outage * 1.0) / (1.0 * serviceCount * ROLLING_WINDOW));
@@ -901,10 +905,8 @@ public class AvailCalculations extends Object {
             //
             // get the outage and service count.
             //
-            for(Node node : m_nodes) {
-                serviceCount += node.getServiceCount();
-                outage += node.getOutage(endTime, ROLLING_WINDOW);
-            }
+            serviceCount += m_serviceCount;
+            outage += m_downtimeIndex.getDownTime(endTime, ROLLING_WINDOW);
             periodFrom = fmt.format(new java.util.Date(endTime)) + " to " + periodEnd;
             endTime -= ROLLING_WINDOW;
         }
@@ -979,17 +981,13 @@ public class AvailCalculations extends Object {
         String periodFrom = null;
 
         while (numMonths++ < nMonths) {
-            int serviceCount = 0;
-            long outage = 0;
             LOG.debug("Number of days {} in month of {}", numDays, new Date(endTime));
             long rollingWindow = numDays * ROLLING_WINDOW * 1L;
             //
             // get the outage and service count.
             //
-            for(Node node : m_nodes) {
-                serviceCount += node.getServiceCount();
-                outage += node.getOutage(endTime, rollingWindow);
-            }
+            int serviceCount = m_serviceCount;
+            long outage = m_downtimeIndex.getDownTime(endTime, rollingWindow);
             double percentAvail;
             if (serviceCount > 0)
                 percentAvail = 100.0 * (1 - (outage * 1.0) / (1.0 * serviceCount * rollingWindow));
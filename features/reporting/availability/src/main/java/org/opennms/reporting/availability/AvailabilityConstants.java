@@ -63,6 +63,21 @@ public abstract class AvailabilityConstants {
                                                                                                                                                                                                         // > ?)
                                                                                                                                                                                                         // )";
 
+    /**
+     * The sql statement for getting the nodes, active services and the
+     * outages that overlap the report period for an IP address in a single
+     * round trip. Services without such outages are returned once with
+     * null outage times.
+     */
+    public static final String DB_GET_SVC_OUTAGE_ENTRIES = "SELECT node.nodeid, node.nodelabel, ifServices.serviceid, service.servicename, outages.ifLostService, outages.ifRegainedService "
+            + "FROM ipInterface JOIN node ON (node.nodeid = ipInterface.nodeid) "
+            + "JOIN ifServices ON (ifServices.nodeid = ipInterface.nodeid AND ifServices.ipaddr = ipInterface.ipaddr) "
+            + "JOIN service ON (service.serviceid = ifServices.serviceid) "
+            + "LEFT JOIN outages ON (outages.nodeid = ifServices.nodeid AND outages.ipaddr = ifServices.ipaddr AND outages.serviceid = ifServices.serviceid "
+            + "AND outages.ifLostService < ? AND (outages.ifRegainedService IS NULL OR outages.ifRegainedService > ?)) "
+            + "WHERE ipInterface.ipaddr = ? AND ipInterface.isManaged = 'M' AND node.nodeType = 'A' AND ifServices.status = 'A' "
+            + "ORDER BY node.nodeid, ifServices.serviceid, outages.ifLostService";
+
     /**
      * The list of Availability Report Constants that are needed to display
      * appropriate messages on the report.
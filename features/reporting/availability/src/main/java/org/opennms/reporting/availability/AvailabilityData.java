@@ -39,6 +39,10 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
@@ -199,26 +203,38 @@ public class AvailabilityData {
                 
                 LOG.debug("CATEGORY {}", categoryName);
                 
+                final boolean allCategories = categoryName.equals("") || categoryName.equals("all");
+                final List<org.opennms.netmgt.config.categories.Category> cats = new ArrayList<org.opennms.netmgt.config.categories.Category>();
+                if (allCategories) {
+                    for(final Categorygroup cg : config.getCategorygroupCollection()) {
+                        cats.addAll(cg.getCategories().getCategoryCollection());
+                    }
+                }
+
+                /*
+                 * The nodes of every category are loaded concurrently, before
+                 * taking the read lock here: the data service takes it in each
+                 * loader thread, and a queued writer would otherwise block them.
+                 */
+                final List<List<Node>> catNodes = getNodes(cats);
+
                 m_catFactory.getReadLock().lock();
                 try {
-                    if (categoryName.equals("") || categoryName.equals("all")) {
+                    if (allCategories) {
                         int catCount = 0;
                         LOG.debug("catCount {}", catCount);
                         
-                        for(final Categorygroup cg : config.getCategorygroupCollection()) {
-                        
-                            for(org.opennms.netmgt.config.categories.Category cat : cg.getCategories().getCategoryCollection()) {
-                
-                                LOG.debug("CATEGORY {}", cat.getLabel());
-                                catCount++;
-                                populateDataStructures(cat, report, format, monthFormat, catCount);
-                            }
+                        for(org.opennms.netmgt.config.categories.Category cat : cats) {
+                            LOG.debug("CATEGORY {}", cat.getLabel());
+                            // sections are numbered in category order, so the report is built sequentially
+                            populateDataStructures(cat, catNodes.get(catCount), report, format, monthFormat, catCount + 1);
+                            catCount++;
                         }
                         LOG.debug("catCount {}", catCount);
                     } else {
                         org.opennms.netmgt.config.categories.Category cat = (org.opennms.netmgt.config.categories.Category) m_catFactory.getCategory(categoryName);
                         LOG.debug("CATEGORY - now populating data structures {}", cat.getLabel());
-                        populateDataStructures(cat, report, format, monthFormat, 1);
+                        populateDataStructures(cat, getNodes(cat), report, format, monthFormat, 1);
                     }
                 
                     final SimpleDateFormat simplePeriod = new SimpleDateFormat("MMMMMMMMMMM dd, yyyy");
@@ -240,20 +256,69 @@ public class AvailabilityData {
 
     }
 
+    /**
+     * Loads the nodes of each category using a bounded pool of threads.
+     * The result holds the nodes of each category in the same order as
+     * cats.
+     */
+    private List<List<Node>> getNodes(final List<org.opennms.netmgt.config.categories.Category> cats) throws Exception {
+        final List<List<Node>> catNodes = new ArrayList<List<Node>>(cats.size());
+        if (cats.isEmpty()) {
+            return catNodes;
+        }
+
+        final int threads = Math.min(cats.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<Node>>> futures = new ArrayList<Future<List<Node>>>(cats.size());
+            for (final org.opennms.netmgt.config.categories.Category cat : cats) {
+                futures.add(executor.submit(new Callable<List<Node>>() {
+                    @Override
+                    public List<Node> call() throws Exception {
+                        return getNodes(cat);
+                    }
+                }));
+            }
+            for (final Future<List<Node>> future : futures) {
+                try {
+                    catNodes.add(future.get());
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception)e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return catNodes;
+    }
+
+    private List<Node> getNodes(final org.opennms.netmgt.config.categories.Category cat) throws Exception {
+        if (m_availabilityDataService == null) {
+            LOG.debug("DATA SERVICE IS NULL");
+            throw new IllegalStateException("Data service is null");
+        }
+        return m_availabilityDataService.getNodes(cat, m_startTime, m_endTime);
+    }
+
     /**
      * Populates the data structure for this category. This method only
      * computes for monitored services in this category.
      * 
      * @param cat
      *            Category
+     * @param nodes
+     *            Nodes of the category
      * @param report
      *            Report Castor class
      * @param format
      *            SVG-specific/all reports
      */
     private void populateDataStructures(
-            org.opennms.netmgt.config.categories.Category cat, Report report,
-            String format, String monthFormat, int catIndex) throws Exception {
+            org.opennms.netmgt.config.categories.Category cat, List<Node> nodes,
+            Report report, String format, String monthFormat, int catIndex) throws Exception {
 
         LOG.debug("Inside populate data Structures {}", catIndex);
         report.setCatCount(catIndex);
@@ -262,11 +327,7 @@ public class AvailabilityData {
 
             List<String> monitoredServices = new ArrayList<String>(cat.getServiceCollection());
 
-            if (m_availabilityDataService == null) {
-                LOG.debug("DATA SERVICE IS NULL");
-                throw new IllegalStateException("Data service is null");
-            }
-            m_nodes = m_availabilityDataService.getNodes(cat, m_startTime, m_endTime);
+            m_nodes = nodes;
             
             LOG.debug("Nodes {}", m_nodes);
             
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.reporting.availability;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opennms.reporting.datablock.Interface;
+import org.opennms.reporting.datablock.Node;
+import org.opennms.reporting.datablock.Outage;
+import org.opennms.reporting.datablock.OutageSvcTimesList;
+import org.opennms.reporting.datablock.Service;
+
+/**
+ * Total service downtime of a set of nodes for arbitrary windows.
+ *
+ * The outages of every service are walked once to build the step function
+ * "number of services down at time t" and its running integral. The
+ * downtime of any window is then the difference of the integral at both
+ * ends of the window, found with a binary search, instead of a walk over
+ * every outage of every node for each window of the report.
+ *
+ * The result is the same as summing {@link Node#getOutage(long, long)}
+ * over the nodes.
+ */
+public class DowntimeIndex {
+
+    /**
+     * Times at which the number of services down changes, in ascending order.
+     */
+    private final long[] m_times;
+
+    /**
+     * Number of services down between m_times[i] and m_times[i + 1].
+     */
+    private final int[] m_down;
+
+    /**
+     * Accumulated downtime from m_times[0] to m_times[i].
+     */
+    private final long[] m_downtime;
+
+    /**
+     * Number of change points in use in the arrays above.
+     */
+    private final int m_points;
+
+    /**
+     * <p>Constructor for DowntimeIndex.</p>
+     *
+     * @param nodes the nodes whose outages are indexed.
+     */
+    public DowntimeIndex(final List<Node> nodes) {
+        int count = 0;
+        for (final Node node : nodes) {
+            if (node == null) continue;
+            for (final Interface intf : node.getInterfaces()) {
+                if (intf == null || intf.getServices() == null) continue;
+                for (final Service svc : intf.getServices()) {
+                    count += svc.getOutages() == null ? 0 : svc.getOutages().size();
+                }
+            }
+        }
+
+        long[] lost = new long[count];
+        long[] regained = new long[count];
+        int lostCount = 0;
+        int regainedCount = 0;
+        for (final Node node : nodes) {
+            if (node == null) continue;
+            for (final Interface intf : node.getInterfaces()) {
+                if (intf == null || intf.getServices() == null) continue;
+                for (final Service svc : intf.getServices()) {
+                    final OutageSvcTimesList outages = svc.getOutages();
+                    if (outages == null) continue;
+                    for (final Outage outage : outages) {
+                        if (outage.getRegainedTime() == -1) {
+                            // still down, never contributes a regained time
+                            lost[lostCount++] = outage.getLostTime();
+                        } else if (outage.getRegainedTime() > outage.getLostTime()) {
+                            lost[lostCount++] = outage.getLostTime();
+                            regained[regainedCount++] = outage.getRegainedTime();
+                        }
+                    }
+                }
+            }
+        }
+        Arrays.sort(lost, 0, lostCount);
+        Arrays.sort(regained, 0, regainedCount);
+
+        // merge both sorted arrays into the change points of the step function
+        m_times = new long[lostCount + regainedCount];
+        m_down = new int[lostCount + regainedCount];
+        m_downtime = new long[lostCount + regainedCount];
+        int points = 0;
+        int down = 0;
+        int l = 0;
+        int r = 0;
+        while (l < lostCount || r < regainedCount) {
+            final long time;
+            if (r >= regainedCount || (l < lostCount && lost[l] <= regained[r])) {
+                time = lost[l++];
+                down++;
+            } else {
+                time = regained[r++];
+                down--;
+            }
+            if (points > 0 && m_times[points - 1] == time) {
+                m_down[points - 1] = down;
+            } else {
+                if (points > 0) {
+                    m_downtime[points] = m_downtime[points - 1] + (long)m_down[points - 1] * (time - m_times[points - 1]);
+                }
+                m_times[points] = time;
+                m_down[points] = down;
+                points++;
+            }
+        }
+        m_points = points;
+    }
+
+    /**
+     * Returns the total downtime of all services in the window of
+     * <code>rollingWindow</code> milliseconds that ends at <code>endTime</code>.
+     *
+     * @param endTime end of the window in milliseconds.
+     * @param rollingWindow length of the window in milliseconds.
+     * @return the total downtime in milliseconds.
+     */
+    public long getDownTime(final long endTime, final long rollingWindow) {
+        return getAccumulatedDowntime(endTime) - getAccumulatedDowntime(endTime - rollingWindow);
+    }
+
+    private long getAccumulatedDowntime(final long time) {
+        int index = Arrays.binarySearch(m_times, 0, m_points, time);
+        if (index < 0) {
+            // index of the last change point before time
+            index = -index - 2;
+            if (index < 0) {
+                return 0;
+            }
+        }
+        return m_downtime[index] + (long)m_down[index] * (time - m_times[index]);
+    }
+}
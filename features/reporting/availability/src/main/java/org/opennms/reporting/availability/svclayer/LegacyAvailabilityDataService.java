@@ -37,9 +37,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.opennms.core.db.DataSourceFactory;
@@ -50,8 +52,6 @@ import org.opennms.netmgt.config.categories.CatFactory;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.reporting.availability.AvailabilityConstants;
 import org.opennms.reporting.datablock.Node;
-import org.opennms.reporting.datablock.Outage;
-import org.opennms.reporting.datablock.OutageSvcTimesList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,10 +63,6 @@ public class LegacyAvailabilityDataService implements AvailabilityDataService {
 
     CatFactory m_catFactory;
 
-    private Connection m_availConn;
-
-    private List<Node> m_nodes;
-
     private static final String LOG4J_CATEGORY = "reports";
 
     /**
@@ -82,111 +78,65 @@ public class LegacyAvailabilityDataService implements AvailabilityDataService {
             return Logging.withPrefix(LOG4J_CATEGORY, new Callable<List<Node>>() {
                 @Override public List<Node> call() throws Exception {
                     final DBUtils db = new DBUtils();
-                    m_nodes = new ArrayList<Node>();
-
-                    PreparedStatement ipInfoGetStmt = null;
-                    PreparedStatement servicesGetStmt = null;
-                    PreparedStatement outagesGetStmt = null;
+                    // keyed by node ID, kept local so that categories can be loaded concurrently
+                    final Map<Integer, Node> nodes = new LinkedHashMap<Integer, Node>();
 
+                    final CatFactory catFactory;
                     String categoryName = category.getLabel();
                     try {
                         CategoryFactory.init();
-                        m_catFactory = CategoryFactory.getInstance();
+                        catFactory = CategoryFactory.getInstance();
+                        m_catFactory = catFactory;
                     } catch (final Exception e) {
                         LOG.error("Failed to initialize CategoryFactory", e);
                         throw new AvailabilityDataServiceException("failed to init catFactory");
                     }
 
-                    m_catFactory.getReadLock().lock();
+                    catFactory.getReadLock().lock();
 
                     try {
-                        String commonRule = m_catFactory.getEffectiveRule(categoryName);
+                        String commonRule = catFactory.getEffectiveRule(categoryName);
 
                         FilterDaoFactory.getInstance().flushActiveIpAddressListCache();
                         final List<InetAddress> nodeIPs = FilterDaoFactory.getInstance().getActiveIPAddressList(commonRule);
                         LOG.debug("Number of IPs satisfying rule: {}", nodeIPs.size());
 
-                        final List<String> monitoredServices = new ArrayList<String>(category.getServiceCollection());
+                        final Set<String> monitoredServices = new HashSet<String>(category.getServiceCollection());
                         LOG.debug("categories in monitoredServices = {}", monitoredServices);
 
-                        initialiseConnection();
-                        db.watch(m_availConn);
-                        // Prepare the statement to get service entries for each IP
+                        final Connection conn = initialiseConnection();
+                        db.watch(conn);
 
-                        // Prepared statement to get node info for an IP
-                        ipInfoGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_INFO_FOR_IP);
-                        db.watch(ipInfoGetStmt);
-
-                        // Prepared statedment to get services info for an IP address
-                        servicesGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_SVC_ENTRIES);
-                        db.watch(servicesGetStmt);
-
-                        // Prepared statement to get outages entries
-                        outagesGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_OUTAGE_ENTRIES);
-                        db.watch(outagesGetStmt);
+                        // Prepared statement to get the nodes, services and outages for an IP
+                        final PreparedStatement svcOutagesGetStmt = conn.prepareStatement(AvailabilityConstants.DB_GET_SVC_OUTAGE_ENTRIES);
+                        db.watch(svcOutagesGetStmt);
+                        svcOutagesGetStmt.setTimestamp(1, new Timestamp(endTime));
+                        svcOutagesGetStmt.setTimestamp(2, new Timestamp(startTime));
 
                         /*
                          * For each of these IP addresses, get the details from the
-                         * ifServices and services tables.
+                         * ifServices, services and outages tables.
                          */
-                        Iterator<InetAddress> ipIter = nodeIPs.iterator();
-                        String ip = null;
-                        ResultSet ipRS = null;
-
-                        // Prepared statement to get node info for an IP
-                        ipInfoGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_INFO_FOR_IP);
-                        db.watch(ipInfoGetStmt);
+                        for (final InetAddress addr : nodeIPs) {
+                            final String ip = str(addr);
+                            LOG.debug("ecexuting {} for {}", ip, AvailabilityConstants.DB_GET_SVC_OUTAGE_ENTRIES);
 
-                        while (ipIter.hasNext()) {
-                            ip = str(ipIter.next());
-                            LOG.debug("ecexuting {} for {}", ip, AvailabilityConstants.DB_GET_INFO_FOR_IP);
+                            svcOutagesGetStmt.setString(3, ip);
+                            final ResultSet rs = svcOutagesGetStmt.executeQuery();
+                            db.watch(rs);
 
-                            // get node info for this ip
-                            ipInfoGetStmt.setString(1, ip);
-
-                            ipRS = ipInfoGetStmt.executeQuery();
-                            db.watch(ipRS);
-
-                            // now handle all the results from this
-                            while (ipRS.next()) {
-                                int nodeid = ipRS.getInt(1);
-                                final String nodeName = ipRS.getString(2);
-
-                                // get the services for this IP address
-                                ResultSet svcRS = null;
-                                servicesGetStmt.setLong(1, nodeid);
-                                servicesGetStmt.setString(2, ip);
-                                servicesGetStmt.setString(3, ip);
-                                servicesGetStmt.setLong(4, nodeid);
-                                svcRS = servicesGetStmt.executeQuery();
-                                db.watch(svcRS);
-
-                                // create node objects for this nodeID/IP/service
-                                while (svcRS.next()) {
-                                    // read data from the resultSet
-                                    final int svcid = svcRS.getInt(1);
-                                    final String svcname = svcRS.getString(2);
-
-                                    /*
-                                     * If the list is empty, we assume all services are
-                                     * monitored. If it has any, we use it as a filter
-                                     */
-                                    if (monitoredServices.isEmpty() || monitoredServices.contains(svcname)) {
-                                        final OutageSvcTimesList outageSvcTimesList = new OutageSvcTimesList();
-                                        getOutagesNodeIpSvc(nodeid, nodeName, ip, svcid, svcname, outageSvcTimesList, outagesGetStmt, startTime, endTime);
-                                    }
-                                }
-                            }
+                            getOutagesIp(nodes, ip, rs, monitoredServices);
+                            rs.close();
                         }
                     } catch (final Exception e) {
                         LOG.debug("Failed to get nodes for category {}", category, e);
                         throw new AvailabilityDataServiceException("Failed to get nodes for category " + category, e);
                     } finally {
                         db.cleanUp();
-                        m_catFactory.getReadLock().unlock();
+                        catFactory.getReadLock().unlock();
                     }
 
-                    return m_nodes;
+                    return new ArrayList<Node>(nodes.values());
                 }
             });
         } catch (final Exception e) {
@@ -197,158 +147,70 @@ public class LegacyAvailabilityDataService implements AvailabilityDataService {
     }
 
     /**
-     * Get all outages for this nodeid/ipaddr/service combination and add it
-     * to m_nodes.
+     * Add every monitored service of this IP address and its outages to
+     * nodes. The rows are ordered by node and service, with one row per
+     * outage, or a single row with null outage times when there is none.
      */
-    private void getOutagesNodeIpSvc(int nodeid, String nodeName, String ipaddr, int serviceid, String serviceName, OutageSvcTimesList outageSvcTimesList, PreparedStatement outagesGetStmt, long startTime,long endTime) throws SQLException {
-        // Get outages for this node/ip/svc pair
+    private static void getOutagesIp(final Map<Integer, Node> nodes, final String ipaddr, final ResultSet rs, final Set<String> monitoredServices) throws SQLException {
         try {
-            outagesGetStmt.setInt(1, nodeid);
-            outagesGetStmt.setString(2, ipaddr);
-            outagesGetStmt.setInt(3, serviceid);
-
-            ResultSet rs = outagesGetStmt.executeQuery();
-
-
-            if (m_nodes != null && m_nodes.size() > 0) {
-                ListIterator<Node> lstIter = m_nodes.listIterator();
-                boolean foundFlag = false;
-                Node oldNode = null;
-                while (lstIter.hasNext()) {
-                    oldNode = (Node) lstIter.next();
-                    if (oldNode != null && oldNode.getNodeID() == nodeid) {
-                        foundFlag = true;
-                        break;
-                    }
+            int lastNodeid = -1;
+            int lastServiceid = -1;
+            while (rs.next()) {
+                final int nodeid = rs.getInt(1);
+                final String nodeName = rs.getString(2);
+                final int serviceid = rs.getInt(3);
+                final String serviceName = rs.getString(4);
+
+                /*
+                 * If the list is empty, we assume all services are
+                 * monitored. If it has any, we use it as a filter
+                 */
+                if (!monitoredServices.isEmpty() && !monitoredServices.contains(serviceName)) {
+                    continue;
                 }
-                if (!foundFlag) {
-                    Node newNode = new Node(nodeName, nodeid);
-                    newNode.addInterface(ipaddr, serviceName);
-                    m_nodes.add(newNode);
-                } else {
-                    oldNode.addInterface(ipaddr, serviceName);
+
+                Node node = nodes.get(nodeid);
+                if (node == null) {
+                    node = new Node(nodeName, nodeid);
+                    nodes.put(nodeid, node);
                 }
-            } else {
-                Node newNode = new Node(nodeName, nodeid);
-                newNode.addInterface(ipaddr, serviceName);
-                if (m_nodes == null) {
-                    LOG.debug("NODES IS NULL");
+                if (nodeid != lastNodeid || serviceid != lastServiceid) {
+                    node.addInterface(ipaddr, serviceName);
+                    lastNodeid = nodeid;
+                    lastServiceid = serviceid;
                 }
-                m_nodes.add(newNode);
-            }
 
-            while (rs.next()) {
-                Timestamp lost = rs.getTimestamp(1);
-                Timestamp regained = rs.getTimestamp(2);
-                long losttime = lost.getTime();
-                long regainedtime = 0;
-
-                if (regained != null) {
-                    regainedtime = regained.getTime();
+                final Timestamp lost = rs.getTimestamp(5);
+                if (lost == null) {
+                    continue;
                 }
+                final Timestamp regained = rs.getTimestamp(6);
+                final long losttime = lost.getTime();
+                final long regainedtime = regained == null ? 0 : regained.getTime();
 
-                if (regainedtime > 0) {
-                    if (regainedtime <= startTime
-                            || losttime >= endTime) {
-                        continue;
-                    }
-                } else {
-                    if (losttime >= endTime) {
-                        continue;
+                if (losttime > 0) {
+                    if (regainedtime > 0) {
+                        node.addInterface(ipaddr, serviceName, losttime, regainedtime);
+                    } else {
+                        node.addInterface(ipaddr, serviceName, losttime);
                     }
                 }
-                Outage outage = new Outage(losttime, regainedtime);
-                outageSvcTimesList.add(outage);
-                addNode(nodeName, nodeid, ipaddr, serviceName, losttime, regainedtime);
-            }
-            if (rs != null) {
-                rs.close();
             }
-
         } catch (SQLException e) {
             LOG.error("SQL Error occured while getting the outages ", e);
             throw e;
         }
     }
 
-    /**
-     * This method adds a unique tuple to the list of nodes m_nodes.
-     *
-     * @param nodeName a {@link java.lang.String} object.
-     * @param nodeid a int.
-     * @param ipaddr a {@link java.lang.String} object.
-     * @param serviceid a {@link java.lang.String} object.
-     * @param losttime a long.
-     * @param regainedtime a long.
-     */
-    public void addNode(final String nodeName, final int nodeid, final String ipaddr, final String serviceid, final long losttime, final long regainedtime) {
-        if (m_nodes == null) {
-            m_nodes = new ArrayList<Node>();
-        } else {
-            if (m_nodes.size() <= 0) {
-                Node newNode = new Node(nodeName, nodeid);
-                // if(log.isDebugEnabled())
-                // LOG.debug("Created the new node.");
-                if (losttime > 0) {
-                    if (regainedtime > 0) {
-                        newNode.addInterface(ipaddr, serviceid, losttime, regainedtime);
-                    } else {
-                        newNode.addInterface(ipaddr, serviceid, losttime);
-                    }
-                } else {
-                    newNode.addInterface(ipaddr, serviceid);
-                }
-                m_nodes.add(newNode);
-                return;
-            } else // look for the node with the nodeName
-            {
-                Node newNode = null;
-                boolean foundFlag = false;
-                ListIterator<Node> lstIter = m_nodes.listIterator();
-                while (lstIter.hasNext()) {
-                    newNode = lstIter.next();
-                    if (newNode.getNodeID() == nodeid) {
-                        foundFlag = true;
-                        break;
-                    }
-                }
-                if (!foundFlag) {
-                    newNode = new Node(nodeName, nodeid);
-                    if (losttime > 0) {
-                        if (regainedtime > 0) {
-                            newNode.addInterface(ipaddr, serviceid, losttime, regainedtime);
-                        } else {
-                            newNode.addInterface(ipaddr, serviceid, losttime);
-                        }
-                    } else {
-                        newNode.addInterface(ipaddr, serviceid);
-                    }
-                    m_nodes.add(newNode);
-                    return;
-                } else {
-                    if (losttime > 0) {
-                        if (regainedtime > 0) {
-                            newNode.addInterface(ipaddr, serviceid, losttime, regainedtime);
-                        } else {
-                            newNode.addInterface(ipaddr, serviceid, losttime);
-                        }
-                    } else {
-                        newNode.addInterface(ipaddr, serviceid);
-                    }
-                    return;
-                }
-            }
-        }
-    }
     /**
      * Initializes the database connection.
      */
-    private void initialiseConnection() throws AvailabilityDataServiceException {
+    private static Connection initialiseConnection() throws AvailabilityDataServiceException {
         //
         // Initialize the DataCollectionConfigFactory
         //
         try {
-            m_availConn = DataSourceFactory.getInstance().getConnection();
+            return DataSourceFactory.getInstance().getConnection();
         } catch (SQLException e) {
             LOG.error("initialize: Failed getting connection to the database.", e);
             throw new AvailabilityDataServiceException("failed to load data collection configuration");
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.reporting.availability;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.reporting.datablock.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DowntimeIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DowntimeIndexTest.class);
+
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    private static final long END_TIME = 1400000000000L;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+    }
+
+    @Test
+    public void testEmpty() {
+        DowntimeIndex index = new DowntimeIndex(new ArrayList<Node>());
+        assertEquals(0, index.getDownTime(END_TIME, 30 * DAY));
+    }
+
+    @Test
+    public void testOverlappingOutages() {
+        List<Node> nodes = new ArrayList<Node>();
+        Node node = new Node("node1", 1);
+        node.addInterface("192.168.1.1", "ICMP", END_TIME - 10 * DAY, END_TIME - 5 * DAY);
+        node.addInterface("192.168.1.1", "HTTP", END_TIME - 7 * DAY, END_TIME - 2 * DAY);
+        // still down
+        node.addInterface("192.168.1.2", "ICMP", END_TIME - DAY);
+        nodes.add(node);
+
+        DowntimeIndex index = new DowntimeIndex(nodes);
+        assertEquals(node.getOutage(END_TIME, 30 * DAY), index.getDownTime(END_TIME, 30 * DAY));
+        assertEquals(11 * DAY, index.getDownTime(END_TIME, 30 * DAY));
+        assertEquals(node.getOutage(END_TIME - 6 * DAY, DAY), index.getDownTime(END_TIME - 6 * DAY, DAY));
+        assertEquals(2 * DAY, index.getDownTime(END_TIME - 6 * DAY, DAY));
+    }
+
+    @Test
+    public void testMatchesNodeOutages() {
+        Random random = new Random(42);
+        List<Node> nodes = createNodes(random, 50, 20);
+        DowntimeIndex index = new DowntimeIndex(nodes);
+
+        for (int i = 0; i < 1000; i++) {
+            long endTime = END_TIME - (long)(random.nextDouble() * 400 * DAY);
+            long rollingWindow = (long)(random.nextDouble() * 60 * DAY);
+            assertEquals(getOutage(nodes, endTime, rollingWindow), index.getDownTime(endTime, rollingWindow));
+        }
+    }
+
+    @Test
+    public void testScale() {
+        Random random = new Random(1);
+        List<Node> nodes = createNodes(random, 2000, 50);
+
+        long start = System.currentTimeMillis();
+        DowntimeIndex index = new DowntimeIndex(nodes);
+        long[] downTimes = new long[365];
+        long total = 0;
+        // one window per day of the last year, like the daily availability tables
+        for (int day = 0; day < 365; day++) {
+            downTimes[day] = index.getDownTime(END_TIME - day * DAY, DAY);
+            total += downTimes[day];
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        LOG.info("Computed 365 daily windows over {} nodes in {}ms", nodes.size(), elapsed);
+
+        assertEquals(getOutage(nodes, END_TIME, 365 * DAY), total);
+        for (int day = 0; day < 365; day += 30) {
+            assertEquals("day " + day, getOutage(nodes, END_TIME - day * DAY, DAY), downTimes[day]);
+        }
+    }
+
+    private static long getOutage(List<Node> nodes, long endTime, long rollingWindow) {
+        long outage = 0;
+        for (Node node : nodes) {
+            outage += node.getOutage(endTime, rollingWindow);
+        }
+        return outage;
+    }
+
+    private static List<Node> createNodes(Random random, int nodeCount, int outagesPerNode) {
+        List<Node> nodes = new ArrayList<Node>(nodeCount);
+        for (int nodeId = 1; nodeId <= nodeCount; nodeId++) {
+            Node node = new Node("node" + nodeId, nodeId);
+            for (int i = 0; i < outagesPerNode; i++) {
+                String ipaddr = "10.0." + (nodeId % 256) + "." + (i % 4 + 1);
+                String service = (i % 2 == 0) ? "ICMP" : "HTTP";
+                long lost = END_TIME - (long)(random.nextDouble() * 400 * DAY);
+                if (random.nextInt(20) == 0) {
+                    node.addInterface(ipaddr, service, lost);
+                } else {
+                    node.addInterface(ipaddr, service, lost, lost + (long)(random.nextDouble() * 3 * DAY));
+                }
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+}
@@ -291,6 +291,13 @@ public class MockNodeDao implements NodeDao {
         return null;
     }
 
+    @Override
+    public SurveillanceStatus[][] findSurveillanceStatusMatrix(
+            List<? extends Collection<OnmsCategory>> rowCategories,
+            List<? extends Collection<OnmsCategory>> columnCategories) {
+        return null;
+    }
+
     @Override
     public Integer getNextNodeId(Integer nodeId) {
         // TODO Auto-generated method stub
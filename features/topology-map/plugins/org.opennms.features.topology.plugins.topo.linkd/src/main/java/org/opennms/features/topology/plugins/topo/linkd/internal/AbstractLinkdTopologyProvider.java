@@ -212,6 +212,13 @@ public abstract class AbstractLinkdTopologyProvider extends AbstractTopologyProv
 
     }
 
+    /**
+     * Used as a destroy-method in the OSGi blueprint, releases whatever the
+     * provider registered when it was initialized.
+     */
+    public void destroy() {
+    }
+
     public String getConfigurationFile() {
         return m_configurationFile;
     }
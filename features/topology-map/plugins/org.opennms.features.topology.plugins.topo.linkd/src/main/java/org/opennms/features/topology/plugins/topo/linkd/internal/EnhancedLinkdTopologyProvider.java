@@ -32,15 +32,20 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import org.apache.commons.lang.StringUtils;
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.features.topology.api.GraphContainer;
 import org.opennms.features.topology.api.OperationContext;
 import org.opennms.features.topology.api.support.VertexHopGraphProvider;
 import org.opennms.features.topology.api.support.VertexHopGraphProvider.VertexHopCriteria;
 import org.opennms.features.topology.api.topo.*;
 import org.opennms.netmgt.dao.api.*;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.model.*;
 import org.opennms.netmgt.model.topology.BridgeMacTopologyLink;
 import org.opennms.netmgt.model.topology.CdpTopologyLink;
+import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
@@ -49,8 +54,10 @@ import javax.xml.bind.JAXBException;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider {
+public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider implements EventListener {
 
     public CdpLinkDao getCdpLinkDao() {
         return m_cdpLinkDao;
@@ -370,12 +377,28 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     private BridgeBridgeLinkDao m_bridgeBridgeLinkDao;
     private BridgeMacLinkDao m_bridgeMacLinkDao;
     private CdpLinkDao m_cdpLinkDao;
+    private EventSubscriptionService m_eventSubscriptionService;
+
+    private final AtomicBoolean m_topologyChanged = new AtomicBoolean(true);
+    private final Queue<Integer> m_deletedNodeIds = new ConcurrentLinkedQueue<Integer>();
+    private final Map<Integer, AbstractVertex> m_nodeVertices = new HashMap<Integer, AbstractVertex>();
+    private volatile List<Vertex> m_cachedVertices;
+    private volatile List<Edge> m_cachedEdges;
+
     public final static String LLDP_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::LLDP";
     public final static String OSPF_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::OSPF";
     public final static String ISIS_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::ISIS";
     public final static String BRIDGE_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::BRIDGE";
     public final static String CDP_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::CDP";
 
+    private static final String[] TOPOLOGY_CHANGED_UEIS = new String[] {
+            "uei.opennms.org/internal/linkd/nodeLinkDiscoveryCompleted",
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI
+    };
+
     public EnhancedLinkdTopologyProvider() { }
 
     /**
@@ -386,6 +409,20 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     public void onInit() throws MalformedURLException, JAXBException {
         LOG.debug("init: loading topology.");
         load(null);
+        if (m_eventSubscriptionService != null) {
+            m_eventSubscriptionService.addEventListener(this, Arrays.asList(TOPOLOGY_CHANGED_UEIS));
+        }
+    }
+
+    /**
+     * Stops listening for topology changes, so that a provider of a stopped
+     * bundle isn't kept alive by eventd.
+     */
+    @Override
+    public void destroy() {
+        if (m_eventSubscriptionService != null) {
+            m_eventSubscriptionService.removeEventListener(this);
+        }
     }
 
     @Override
@@ -394,21 +431,28 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         if (filename != null) {
             LOG.warn("Filename that was specified for linkd topology will be ignored: " + filename + ", using " + getConfigurationFile() + " instead");
         }
-        try{
-            //TODO: change to one query from the database that will return all links plus elements joined
-            //This reset container is set in here for the demo, don't commit
-
-            resetContainer();
+        // Clear the change markers before querying so that changes that arrive while
+        // loading trigger another full load on the next refresh
+        m_topologyChanged.set(false);
+        m_deletedNodeIds.clear();
 
+        resetContainer();
+        try{
             getLldpLinks();
             getOspfLinks();
-            getIsIsLinks();
-            getBridgeLinks();
-            getCdpLinks();
 
+            List<Object[]> isisLinks = m_isisLinkDao.getLinksForTopology();
+            List<BridgeMacTopologyLink> bridgeMacLinks = m_bridgeMacLinkDao.getAllBridgeLinksToIpAddrToNodes();
+            List<CdpTopologyLink> cdpLinks = m_cdpLinkDao.findLinksForTopology();
+            loadNodeVertices(getReferencedNodeIds(isisLinks, bridgeMacLinks, cdpLinks));
 
+            getIsIsLinks(isisLinks);
+            getBridgeLinks(bridgeMacLinks);
+            getCdpLinks(cdpLinks);
         } catch (Exception e){
             LOG.debug(e.getStackTrace().toString());
+        } finally {
+            m_nodeVertices.clear();
         }
 
         LOG.debug("loadtopology: adding nodes without links: " + isAddNodeWithoutLink());
@@ -427,6 +471,54 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
         }
 
+        m_cachedVertices = new ArrayList<Vertex>(getVertices());
+        m_cachedEdges = new ArrayList<Edge>(getEdges());
+
+        loadGroups();
+    }
+
+    /**
+     * Rebuilds the container from the vertices and edges of the last {@link #load(String)}
+     * after applying the node deletions received since then. The groups are still read
+     * from the configuration file since they can be edited from the UI.
+     */
+    private void reloadFromCache() throws MalformedURLException, JAXBException {
+        Set<String> deletedNodeIds = new HashSet<String>();
+        for (Integer nodeId = m_deletedNodeIds.poll(); nodeId != null; nodeId = m_deletedNodeIds.poll()) {
+            deletedNodeIds.add(nodeId.toString());
+        }
+        if (!deletedNodeIds.isEmpty()) {
+            LOG.debug("loadtopology: removing deleted nodes from cached topology: {}", deletedNodeIds);
+            List<Vertex> vertices = new ArrayList<Vertex>();
+            for (Vertex vertex : m_cachedVertices) {
+                if (!deletedNodeIds.contains(vertex.getId())) {
+                    vertices.add(vertex);
+                }
+            }
+            List<Edge> edges = new ArrayList<Edge>();
+            for (Edge edge : m_cachedEdges) {
+                if (!deletedNodeIds.contains(edge.getSource().getVertex().getId()) && !deletedNodeIds.contains(edge.getTarget().getVertex().getId())) {
+                    edges.add(edge);
+                }
+            }
+            m_cachedVertices = vertices;
+            m_cachedEdges = edges;
+        }
+
+        resetContainer();
+        for (Vertex vertex : m_cachedVertices) {
+            // Parents are reapplied from the configuration file
+            if (vertex instanceof AbstractVertex) {
+                ((AbstractVertex)vertex).setParent(null);
+            }
+        }
+        addVertices(m_cachedVertices.toArray(new Vertex[m_cachedVertices.size()]));
+        addEdges(m_cachedEdges.toArray(new Edge[m_cachedEdges.size()]));
+
+        loadGroups();
+    }
+
+    private void loadGroups() throws MalformedURLException, JAXBException {
         File configFile = new File(getConfigurationFile());
         if (configFile.exists() && configFile.canRead()) {
             LOG.debug("loadtopology: loading topology from configuration file: " + getConfigurationFile());
@@ -478,32 +570,43 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         LOG.debug("Found " + getGroups().size() + " groups");
         LOG.debug("Found " + getVerticesWithoutGroups().size() + " vertices");
         LOG.debug("Found " + getEdges().size() + " edges");
+    }
 
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
 
-
+    /**
+     * Node deletions are applied to the cached topology directly; every other
+     * change invalidates it so that the next refresh reloads it from the database.
+     */
+    @Override
+    public void onEvent(Event e) {
+        if (EventConstants.NODE_DELETED_EVENT_UEI.equals(e.getUei()) && e.hasNodeid()) {
+            m_deletedNodeIds.add(e.getNodeid().intValue());
+        } else {
+            LOG.debug("onEvent: topology changed by event {} for node {}", e.getUei(), e.getNodeid());
+            m_topologyChanged.set(true);
+        }
     }
 
     private void getOspfLinks() {
         List<OspfLink> allLinks =  getOspfLinkDao().findAll();
         Set<OspfLinkDetail> combinedLinkDetails = new HashSet<OspfLinkDetail>();
-        for(OspfLink sourceLink : allLinks) {
-
-            for (OspfLink targetLink : allLinks) {
-                boolean ipAddrCheck = sourceLink.getOspfRemIpAddr().equals(targetLink.getOspfIpAddr()) && targetLink.getOspfRemIpAddr().equals(sourceLink.getOspfIpAddr());
-                if(ipAddrCheck) {
-                    String id = "ospf::" + Math.min(sourceLink.getId(), targetLink.getId()) + "||" + Math.max(sourceLink.getId(), targetLink.getId());
-                    AbstractVertex source = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, sourceLink.getNode().getNodeId(), sourceLink.getNode().getLabel());
-                    source.setIpAddress(sourceLink.getOspfIpAddr().getHostAddress());
-
-                    AbstractVertex target = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, targetLink.getNode().getNodeId(), targetLink.getNode().getLabel());
-                    target.setIpAddress(targetLink.getOspfIpAddr().getHostAddress());
-
-                    OspfLinkDetail linkDetail = new OspfLinkDetail(
-                            Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
-                            source, sourceLink, target, targetLink);
-                    combinedLinkDetails.add(linkDetail);
-                }
-            }
+        for (LinkPairMatcher.LinkPair<OspfLink> pair : LinkPairMatcher.matchOspfLinks(allLinks)) {
+            OspfLink sourceLink = pair.getSource();
+            OspfLink targetLink = pair.getTarget();
+            AbstractVertex source = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, sourceLink.getNode().getNodeId(), sourceLink.getNode().getLabel());
+            source.setIpAddress(sourceLink.getOspfIpAddr().getHostAddress());
+
+            AbstractVertex target = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, targetLink.getNode().getNodeId(), targetLink.getNode().getLabel());
+            target.setIpAddress(targetLink.getOspfIpAddr().getHostAddress());
+
+            OspfLinkDetail linkDetail = new OspfLinkDetail(
+                    Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
+                    source, sourceLink, target, targetLink);
+            combinedLinkDetails.add(linkDetail);
         }
 
         for (OspfLinkDetail linkDetail : combinedLinkDetails) {
@@ -518,7 +621,6 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         for (LldpLink sourceLink : allLinks) {
             LOG.debug("loadtopology: parsing link: " + sourceLink);
             OnmsNode sourceNode = sourceLink.getNode();
-            LldpElement sourceElement = sourceNode.getLldpElement();
             LOG.debug("loadtopology: found source node: " + sourceNode.getLabel());
             Vertex source = getVertex(getVertexNamespace(), sourceNode.getNodeId());
             if (source == null) {
@@ -526,31 +628,21 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
                 source = getVertex(sourceNode);
                 addVertices(source);
             }
+        }
 
-            for (LldpLink targetLink : allLinks) {
-                OnmsNode targetNode = targetLink.getNode();
-                LldpElement targetLldpElement = targetNode.getLldpElement();
-
-                //Compare the remote data to the targetNode element data
-                boolean bool1 = sourceLink.getLldpRemPortId().equals(targetLink.getLldpPortId()) && targetLink.getLldpRemPortId().equals(sourceLink.getLldpPortId());
-                boolean bool2 = sourceLink.getLldpRemPortDescr().equals(targetLink.getLldpPortDescr()) && targetLink.getLldpRemPortDescr().equals(sourceLink.getLldpPortDescr());
-                boolean bool3 = sourceLink.getLldpRemChassisId().equals(targetLldpElement.getLldpChassisId()) && targetLink.getLldpRemChassisId().equals(sourceElement.getLldpChassisId());
-                boolean bool4 = sourceLink.getLldpRemSysname().equals(targetLldpElement.getLldpSysname()) && targetLink.getLldpRemSysname().equals(sourceElement.getLldpSysname());
-                boolean bool5 = sourceLink.getLldpRemPortIdSubType() == targetLink.getLldpPortIdSubType() && targetLink.getLldpRemPortIdSubType() == sourceLink.getLldpPortIdSubType();
-
-                if (bool1 && bool2 && bool3 && bool4 && bool5) {
-                    Vertex target = getVertex(getVertexNamespace(), targetNode.getNodeId());
-                    if (target == null) {
-                        target = getVertex(targetNode);
-                    }
-
-                    LldpLinkDetail linkDetail = new LldpLinkDetail(
-                            Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
-                            source, sourceLink, target, targetLink);
-                    combinedLinkDetails.add(linkDetail);
-                }
+        for (LinkPairMatcher.LinkPair<LldpLink> pair : LinkPairMatcher.matchLldpLinks(allLinks)) {
+            LldpLink sourceLink = pair.getSource();
+            LldpLink targetLink = pair.getTarget();
+            Vertex source = getVertex(getVertexNamespace(), sourceLink.getNode().getNodeId());
+            Vertex target = getVertex(getVertexNamespace(), targetLink.getNode().getNodeId());
+            if (target == null) {
+                target = getVertex(targetLink.getNode());
             }
 
+            LldpLinkDetail linkDetail = new LldpLinkDetail(
+                    Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
+                    source, sourceLink, target, targetLink);
+            combinedLinkDetails.add(linkDetail);
         }
 
         for (LldpLinkDetail linkDetail : combinedLinkDetails) {
@@ -559,16 +651,20 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         }
     }
 
-    private void getCdpLinks() {
-        List<CdpTopologyLink> cdpLinks = m_cdpLinkDao.findLinksForTopology();
-
+    private void getCdpLinks(List<CdpTopologyLink> cdpLinks) {
         for (CdpTopologyLink link : cdpLinks) {
+            AbstractVertex source = getNodeVertex(link.getSrcNodeId());
+            AbstractVertex target = getNodeVertex(link.getTargetNodeId());
+            if (source == null || target == null) {
+                LOG.debug("loadtopology: skipping CDP link with unknown endpoint: {} -> {}", link.getSrcNodeId(), link.getTargetNodeId());
+                continue;
+            }
             String id = Math.min(link.getSourceId(), link.getTargetId()) + "|" + Math.max(link.getSourceId(), link.getTargetId());
             CdpLinkDetail linkDetail = new CdpLinkDetail(id,
-                    getVertex(m_nodeDao.get(link.getSrcNodeId())),
+                    source,
                     link.getSrcIfIndex(),
                     link.getSrcIfName(),
-                    getVertex(m_nodeDao.get(link.getTargetNodeId())),
+                    target,
                     link.getTargetIfName());
 
             AbstractEdge edge = connectVertices(linkDetail.getId(), linkDetail.getSource(), linkDetail.getTarget(), CDP_EDGE_NAMESPACE);
@@ -577,9 +673,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         }
     }
 
-    private void getIsIsLinks(){
-        List<Object[]> isislinks = m_isisLinkDao.getLinksForTopology();
-
+    private void getIsIsLinks(List<Object[]> isislinks){
         for (Object[] linkObj : isislinks) {
             Integer link1Id = (Integer) linkObj[1];
             Integer link1Nodeid = (Integer) linkObj[2];
@@ -587,12 +681,18 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             Integer link2Id = (Integer) linkObj[4];
             Integer link2Nodeid = (Integer) linkObj[5];
             Integer link2IfIndex = (Integer) linkObj[6];
+            AbstractVertex source = getNodeVertex(link1Nodeid);
+            AbstractVertex target = getNodeVertex(link2Nodeid);
+            if (source == null || target == null) {
+                LOG.debug("loadtopology: skipping IS-IS link with unknown endpoint: {} -> {}", link1Nodeid, link2Nodeid);
+                continue;
+            }
             IsIsLinkDetail linkDetail = new IsIsLinkDetail(
                     Math.min(link1Id, link2Id) + "|" + Math.max(link1Id, link2Id),
-                    getVertex(m_nodeDao.get(link1Nodeid)),
+                    source,
                     link1Id,
                     link1IfIndex,
-                    getVertex(m_nodeDao.get(link2Nodeid)),
+                    target,
                     link2Id,
                     link2IfIndex
             );
@@ -602,9 +702,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         }
     }
 
-    private void getBridgeLinks(){
-
-        List<BridgeMacTopologyLink> bridgeMacLinks = m_bridgeMacLinkDao.getAllBridgeLinksToIpAddrToNodes();
+    private void getBridgeLinks(List<BridgeMacTopologyLink> bridgeMacLinks){
 
         Multimap<String, BridgeMacTopologyLink> multimap = HashMultimap.create();
         for (BridgeMacTopologyLink macLink : bridgeMacLinks) {
@@ -620,9 +718,15 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             } else{
                 //add single connection
                 BridgeMacTopologyLink topoLink = links.iterator().next();
+                AbstractVertex source = getNodeVertex(topoLink.getNodeId());
+                AbstractVertex target = getNodeVertex(topoLink.getTargetNodeId());
+                if (source == null || target == null) {
+                    LOG.debug("loadtopology: skipping bridge link with unknown endpoint: {} -> {}", topoLink.getNodeId(), topoLink.getTargetNodeId());
+                    continue;
+                }
                 String id = Math.min(topoLink.getNodeId(), topoLink.getTargetNodeId()) + "|" + Math.max(topoLink.getNodeId(), topoLink.getTargetNodeId());
                 BridgeLinkDetail detail = new BridgeLinkDetail(id, EnhancedLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD,
-                        getVertex(m_nodeDao.get(topoLink.getNodeId())), topoLink.getId(), getVertex(m_nodeDao.get(topoLink.getTargetNodeId())), topoLink.getId());
+                        source, topoLink.getId(), target, topoLink.getId());
 
                 AbstractEdge edge = connectVertices(detail.getId(), detail.getSource(), detail.getTarget(), BRIDGE_EDGE_NAMESPACE);
                 //TODO: fix tooltip for bridge topology
@@ -639,7 +743,11 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         int parentNodeId = Integer.parseInt(keyParts[0]);
         String bridgePort = keyParts[1];
 
-        AbstractVertex parentVertex = getVertex(m_nodeDao.get(parentNodeId));
+        AbstractVertex parentVertex = getNodeVertex(parentNodeId);
+        if (parentVertex == null) {
+            LOG.debug("loadtopology: skipping bridge links of unknown node: {}", parentNodeId);
+            return;
+        }
 
         AbstractVertex cloudVertex = addVertex(bridgeLinkKey, 0, 0);
         cloudVertex.setLabel("");
@@ -648,6 +756,10 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
         for (BridgeMacTopologyLink topoLink : topoLinks) {
             if(topoLink.getTargetNodeId() != null) {
+                AbstractVertex target = getNodeVertex(topoLink.getTargetNodeId());
+                if (target == null) {
+                    continue;
+                }
 
                 //Check to see if there are any edges with the cloudVertex, if not add it
                 if (getEdgeIdsForVertex(cloudVertex).length == 0) {
@@ -656,7 +768,6 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
                 }
 
                 String edgeId = Math.min(topoLink.getNodeId(), topoLink.getTargetNodeId()) + "|" + Math.max(topoLink.getNodeId(), topoLink.getTargetNodeId());
-                AbstractVertex target = getVertex(m_nodeDao.get(topoLink.getTargetNodeId()));
                 AbstractEdge edge = connectVertices(edgeId, cloudVertex, target, BRIDGE_EDGE_NAMESPACE);
 
 
@@ -677,10 +788,52 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
     }
 
+    /**
+     * Loads all of the given nodes with a single query so that the CDP, IS-IS and
+     * bridge links do not have to look up their endpoints one at a time.
+     */
+    private void loadNodeVertices(Collection<Integer> nodeIds) {
+        m_nodeVertices.clear();
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        List<OnmsNode> nodes = m_nodeDao.findMatching(new CriteriaBuilder(OnmsNode.class).in("id", nodeIds).toCriteria());
+        for (OnmsNode node : nodes) {
+            m_nodeVertices.put(node.getId(), getVertex(node));
+        }
+        LOG.debug("loadtopology: loaded {} of {} referenced nodes", nodes.size(), nodeIds.size());
+    }
+
+    private AbstractVertex getNodeVertex(Integer nodeId) {
+        return nodeId == null ? null : m_nodeVertices.get(nodeId);
+    }
+
+    private static Set<Integer> getReferencedNodeIds(List<Object[]> isisLinks, List<BridgeMacTopologyLink> bridgeMacLinks, List<CdpTopologyLink> cdpLinks) {
+        Set<Integer> nodeIds = new HashSet<Integer>();
+        for (Object[] linkObj : isisLinks) {
+            nodeIds.add((Integer) linkObj[2]);
+            nodeIds.add((Integer) linkObj[5]);
+        }
+        for (BridgeMacTopologyLink link : bridgeMacLinks) {
+            nodeIds.add(link.getNodeId());
+            nodeIds.add(link.getTargetNodeId());
+        }
+        for (CdpTopologyLink link : cdpLinks) {
+            nodeIds.add(link.getSrcNodeId());
+            nodeIds.add(link.getTargetNodeId());
+        }
+        nodeIds.remove(null);
+        return nodeIds;
+    }
+
     @Override
     public void refresh() {
         try {
-            load(null);
+            if (m_cachedVertices == null || m_topologyChanged.get()) {
+                load(null);
+            } else {
+                reloadFromCache();
+            }
         } catch (MalformedURLException e) {
             LOG.error(e.getMessage(), e);
         } catch (JAXBException e) {
@@ -811,6 +964,14 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         m_bridgeBridgeLinkDao = bridgeBridgeLinkDao;
     }
 
+    public EventSubscriptionService getEventSubscriptionService() {
+        return m_eventSubscriptionService;
+    }
+
+    public void setEventSubscriptionService(EventSubscriptionService eventSubscriptionService) {
+        m_eventSubscriptionService = eventSubscriptionService;
+    }
+
     //Search Provider methods
     @Override
     public String getSearchProviderNamespace() {
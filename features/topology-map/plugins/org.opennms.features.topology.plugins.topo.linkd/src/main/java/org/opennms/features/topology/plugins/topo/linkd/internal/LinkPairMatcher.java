@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.topology.plugins.topo.linkd.internal;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opennms.netmgt.model.LldpElement;
+import org.opennms.netmgt.model.LldpLink;
+import org.opennms.netmgt.model.OspfLink;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Pairs up the two halves of LLDP and OSPF links discovered by Enlinkd.
+ *
+ * Each link is indexed by the key that identifies its local end, and then
+ * looked up by the key describing its remote end, so pairing is linear in
+ * the number of links instead of comparing every link with every other one.
+ */
+public abstract class LinkPairMatcher {
+
+    public static class LinkPair<L> {
+        private final L m_source;
+        private final L m_target;
+
+        public LinkPair(L source, L target) {
+            m_source = source;
+            m_target = target;
+        }
+
+        public L getSource() {
+            return m_source;
+        }
+
+        public L getTarget() {
+            return m_target;
+        }
+    }
+
+    /**
+     * Returns every (source, target) pair where the remote port, port
+     * description, chassis id, sysname and port id subtype seen by each
+     * link matches the local data of the other one. Both orientations of
+     * a matching pair are returned.
+     */
+    public static List<LinkPair<LldpLink>> matchLldpLinks(List<LldpLink> links) {
+        Multimap<List<Object>, LldpLink> byLocalKey = ArrayListMultimap.create();
+        for (LldpLink link : links) {
+            List<Object> localKey = getLldpLocalKey(link);
+            if (localKey != null) {
+                byLocalKey.put(localKey, link);
+            }
+        }
+
+        List<LinkPair<LldpLink>> pairs = new ArrayList<LinkPair<LldpLink>>();
+        for (LldpLink sourceLink : links) {
+            List<Object> sourceLocalKey = getLldpLocalKey(sourceLink);
+            if (sourceLocalKey == null) {
+                continue;
+            }
+            for (LldpLink targetLink : byLocalKey.get(getLldpRemoteKey(sourceLink))) {
+                if (sourceLocalKey.equals(getLldpRemoteKey(targetLink))) {
+                    pairs.add(new LinkPair<LldpLink>(sourceLink, targetLink));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns every (source, target) pair where the remote IP address of
+     * each link is the local IP address of the other one. Both orientations
+     * of a matching pair are returned.
+     */
+    public static List<LinkPair<OspfLink>> matchOspfLinks(List<OspfLink> links) {
+        Multimap<InetAddress, OspfLink> byIpAddr = ArrayListMultimap.create();
+        for (OspfLink link : links) {
+            if (link.getOspfIpAddr() != null) {
+                byIpAddr.put(link.getOspfIpAddr(), link);
+            }
+        }
+
+        List<LinkPair<OspfLink>> pairs = new ArrayList<LinkPair<OspfLink>>();
+        for (OspfLink sourceLink : links) {
+            if (sourceLink.getOspfIpAddr() == null || sourceLink.getOspfRemIpAddr() == null) {
+                continue;
+            }
+            for (OspfLink targetLink : byIpAddr.get(sourceLink.getOspfRemIpAddr())) {
+                if (sourceLink.getOspfIpAddr().equals(targetLink.getOspfRemIpAddr())) {
+                    pairs.add(new LinkPair<OspfLink>(sourceLink, targetLink));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static List<Object> getLldpLocalKey(LldpLink link) {
+        LldpElement element = link.getNode() == null ? null : link.getNode().getLldpElement();
+        if (element == null) {
+            return null;
+        }
+        return Arrays.<Object>asList(link.getLldpPortId(), link.getLldpPortDescr(), element.getLldpChassisId(), element.getLldpSysname(), link.getLldpPortIdSubType());
+    }
+
+    private static List<Object> getLldpRemoteKey(LldpLink link) {
+        return Arrays.<Object>asList(link.getLldpRemPortId(), link.getLldpRemPortDescr(), link.getLldpRemChassisId(), link.getLldpRemSysname(), link.getLldpRemPortIdSubType());
+    }
+}
@@ -40,6 +40,7 @@ import org.opennms.netmgt.dao.api.DataLinkInterfaceDao;
 import org.opennms.netmgt.dao.api.LldpLinkDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.OspfLinkDao;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
@@ -96,6 +97,19 @@ public class EnhancedLinkdTopologyProviderTest {
         assertEquals(2, ospfLinks.size());
     }
 
+    @Test
+    public void testDestroyRemovesEventListener() {
+        final EnhancedLinkdTopologyProvider provider = new EnhancedLinkdTopologyProvider();
+        final EventSubscriptionService eventSubscriptionService = EasyMock.createMock(EventSubscriptionService.class);
+        eventSubscriptionService.removeEventListener(provider);
+        EasyMock.replay(eventSubscriptionService);
+
+        provider.setEventSubscriptionService(eventSubscriptionService);
+        provider.destroy();
+
+        EasyMock.verify(eventSubscriptionService);
+    }
+
     @Test
     public void testGetIcon() {
         Assert.assertTrue("linkd:system:snmp:1.3.6.1.4.1.5813.1.25".equals(EnhancedLinkdTopologyProvider.getIconName(m_databasePopulator.getNode1())));
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.topology.plugins.topo.linkd.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.features.topology.plugins.topo.linkd.internal.LinkPairMatcher.LinkPair;
+import org.opennms.netmgt.model.LldpElement;
+import org.opennms.netmgt.model.LldpLink;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OspfLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class LinkPairMatcherTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LinkPairMatcherTest.class);
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+    }
+
+    @Test
+    public void testMatchLldpLinks() {
+        List<LldpLink> links = createLldpLinks(2);
+        // A link that points to a port nobody reports
+        OnmsNode orphan = createNode(100);
+        links.add(createLldpLink(1000, orphan, "orphanPort", links.get(0).getNode().getLldpElement(), "missingPort"));
+
+        List<LinkPair<LldpLink>> pairs = LinkPairMatcher.matchLldpLinks(links);
+
+        // Both orientations of each of the two links
+        assertEquals(4, pairs.size());
+        for (LinkPair<LldpLink> pair : pairs) {
+            assertEquals(pair.getSource().getLldpRemPortId(), pair.getTarget().getLldpPortId());
+            assertEquals(pair.getTarget().getLldpRemPortId(), pair.getSource().getLldpPortId());
+        }
+        assertSame(links.get(0), pairs.get(0).getSource());
+        assertSame(links.get(1), pairs.get(0).getTarget());
+    }
+
+    @Test
+    public void testMatchOspfLinks() {
+        List<OspfLink> links = createOspfLinks(2);
+        links.add(createOspfLink(1000, createNode(100), "10.255.0.1", "10.255.0.2"));
+
+        List<LinkPair<OspfLink>> pairs = LinkPairMatcher.matchOspfLinks(links);
+
+        assertEquals(4, pairs.size());
+        for (LinkPair<OspfLink> pair : pairs) {
+            assertEquals(pair.getSource().getOspfRemIpAddr(), pair.getTarget().getOspfIpAddr());
+            assertEquals(pair.getTarget().getOspfRemIpAddr(), pair.getSource().getOspfIpAddr());
+        }
+    }
+
+    @Test
+    public void testMatchLldpLinksScale() {
+        for (int linkCount : new int[] { 10000, 50000 }) {
+            List<LldpLink> links = createLldpLinks(linkCount / 2);
+            long start = System.currentTimeMillis();
+            List<LinkPair<LldpLink>> pairs = LinkPairMatcher.matchLldpLinks(links);
+            long elapsed = System.currentTimeMillis() - start;
+            LOG.info("Matched {} LLDP links in {}ms", linkCount, elapsed);
+
+            // every link is matched exactly once, and with its own peer
+            assertEquals(linkCount, pairs.size());
+            Set<LldpLink> sources = Collections.newSetFromMap(new IdentityHashMap<LldpLink, Boolean>());
+            for (LinkPair<LldpLink> pair : pairs) {
+                assertTrue(sources.add(pair.getSource()));
+                assertEquals(pair.getSource().getLldpRemPortId(), pair.getTarget().getLldpPortId());
+                assertEquals(pair.getTarget().getLldpRemPortId(), pair.getSource().getLldpPortId());
+            }
+        }
+    }
+
+    @Test
+    public void testMatchOspfLinksScale() {
+        for (int linkCount : new int[] { 10000, 50000 }) {
+            List<OspfLink> links = createOspfLinks(linkCount / 2);
+            long start = System.currentTimeMillis();
+            List<LinkPair<OspfLink>> pairs = LinkPairMatcher.matchOspfLinks(links);
+            long elapsed = System.currentTimeMillis() - start;
+            LOG.info("Matched {} OSPF links in {}ms", linkCount, elapsed);
+
+            // every link is matched exactly once, and with its own peer
+            assertEquals(linkCount, pairs.size());
+            Set<OspfLink> sources = Collections.newSetFromMap(new IdentityHashMap<OspfLink, Boolean>());
+            for (LinkPair<OspfLink> pair : pairs) {
+                assertTrue(sources.add(pair.getSource()));
+                assertEquals(pair.getSource().getOspfRemIpAddr(), pair.getTarget().getOspfIpAddr());
+                assertEquals(pair.getTarget().getOspfRemIpAddr(), pair.getSource().getOspfIpAddr());
+            }
+        }
+    }
+
+    private static OnmsNode createNode(int nodeId) {
+        OnmsNode node = new OnmsNode();
+        node.setId(nodeId);
+        node.setLabel("node" + nodeId);
+        node.setLldpElement(new LldpElement(node, "chassis" + nodeId, "sysname" + nodeId, LldpElement.LldpChassisIdSubType.LLDP_CHASSISID_SUBTYPE_LOCAL));
+        return node;
+    }
+
+    /**
+     * Creates the two halves of each point-to-point link between node 2n and node 2n+1.
+     */
+    private static List<LldpLink> createLldpLinks(int pairCount) {
+        List<LldpLink> links = new ArrayList<LldpLink>();
+        for (int i = 0; i < pairCount; i++) {
+            OnmsNode nodeA = createNode(2 * i);
+            OnmsNode nodeB = createNode(2 * i + 1);
+            links.add(createLldpLink(2 * i, nodeA, "port" + (2 * i), nodeB.getLldpElement(), "port" + (2 * i + 1)));
+            links.add(createLldpLink(2 * i + 1, nodeB, "port" + (2 * i + 1), nodeA.getLldpElement(), "port" + (2 * i)));
+        }
+        return links;
+    }
+
+    private static LldpLink createLldpLink(int id, OnmsNode node, String portId, LldpElement remoteElement, String remotePortId) {
+        LldpLink link = new LldpLink(node, 1, 1, portId, portId + "Descr", LldpLink.LldpPortIdSubType.LLDP_PORTID_SUBTYPE_LOCAL,
+                                     remoteElement.getLldpChassisId(), remoteElement.getLldpSysname(), remoteElement.getLldpChassisIdSubType(),
+                                     remotePortId, LldpLink.LldpPortIdSubType.LLDP_PORTID_SUBTYPE_LOCAL, remotePortId + "Descr");
+        link.setId(id);
+        return link;
+    }
+
+    private static List<OspfLink> createOspfLinks(int pairCount) {
+        List<OspfLink> links = new ArrayList<OspfLink>();
+        for (int i = 0; i < pairCount; i++) {
+            String addrA = "10." + (i >> 14) + "." + ((i >> 6) & 0xff) + "." + ((i & 0x3f) << 2 | 1);
+            String addrB = "10." + (i >> 14) + "." + ((i >> 6) & 0xff) + "." + ((i & 0x3f) << 2 | 2);
+            links.add(createOspfLink(2 * i, createNode(2 * i), addrA, addrB));
+            links.add(createOspfLink(2 * i + 1, createNode(2 * i + 1), addrB, addrA));
+        }
+        return links;
+    }
+
+    private static OspfLink createOspfLink(int id, OnmsNode node, String ipAddr, String remIpAddr) {
+        OspfLink link = new OspfLink();
+        link.setId(id);
+        link.setNode(node);
+        link.setOspfIpAddr(InetAddressUtils.addr(ipAddr));
+        link.setOspfRemIpAddr(InetAddressUtils.addr(remIpAddr));
+        return link;
+    }
+}
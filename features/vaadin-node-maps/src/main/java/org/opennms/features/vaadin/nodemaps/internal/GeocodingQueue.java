@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.features.geocoder.Coordinates;
+import org.opennms.features.geocoder.GeocoderException;
+import org.opennms.features.geocoder.GeocoderService;
+import org.opennms.features.geocoder.TemporaryGeocoderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks up the coordinates of node addresses in the background, so that
+ * building the node map never waits for the geocoder.
+ *
+ * Results, including addresses that could not be found, are kept by address
+ * and written to a properties file whenever the queue runs empty, so the same
+ * address is only ever sent to the geocoder once, across restarts.  Lookups
+ * that fail temporarily are not cached; the caller submits the node again on
+ * its next pass.
+ */
+public class GeocodingQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(GeocodingQueue.class);
+
+    /** The coordinates recorded for an address that could not be geocoded. */
+    public static final Coordinates BAD_COORDINATES = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+
+    public interface Callback {
+        /**
+         * Called from the geocoding thread once an address has been resolved.
+         *
+         * @param coordinates the coordinates, or {@link GeocodingQueue#BAD_COORDINATES}
+         */
+        void geocoded(int nodeId, String address, Coordinates coordinates);
+    }
+
+    private static final class Request {
+        final int m_nodeId;
+        final String m_address;
+        final Callback m_callback;
+
+        Request(final int nodeId, final String address, final Callback callback) {
+            m_nodeId = nodeId;
+            m_address = address;
+            m_callback = callback;
+        }
+    }
+
+    private final GeocoderService m_geocoderService;
+    private final File m_cacheFile;
+
+    private final BlockingQueue<Request> m_queue = new LinkedBlockingQueue<Request>();
+    private final Set<Integer> m_pending = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+    private final Map<String,Coordinates> m_cache = new ConcurrentHashMap<String,Coordinates>();
+    private volatile boolean m_cacheDirty = false;
+
+    private final AtomicLong m_lookups = new AtomicLong();
+    private final AtomicLong m_cacheHits = new AtomicLong();
+
+    private Thread m_thread;
+
+    /**
+     * @param cacheFile the file the results are kept in, or null to only keep them in memory
+     */
+    public GeocodingQueue(final GeocoderService geocoderService, final File cacheFile) {
+        m_geocoderService = geocoderService;
+        m_cacheFile = cacheFile;
+    }
+
+    public synchronized void start() {
+        if (m_thread != null) {
+            return;
+        }
+        loadCache();
+        m_thread = new Thread(new Runnable() {
+            @Override public void run() {
+                processRequests();
+            }
+        }, "NodeMapGeocoder-Thread");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    public synchronized void stop() {
+        if (m_thread == null) {
+            return;
+        }
+        m_thread.interrupt();
+        m_thread = null;
+        m_queue.clear();
+        m_pending.clear();
+        saveCache();
+    }
+
+    /**
+     * @return the cached coordinates of the address, or null if it has not been looked up yet
+     */
+    public Coordinates getCachedCoordinates(final String address) {
+        return address == null ? null : m_cache.get(address);
+    }
+
+    /**
+     * Queues the address of a node to be looked up.  Nodes that are already
+     * queued are not queued again.
+     *
+     * @return true if the node was queued
+     */
+    public boolean submit(final int nodeId, final String address, final Callback callback) {
+        if (!m_pending.add(nodeId)) {
+            return false;
+        }
+        m_queue.add(new Request(nodeId, address, callback));
+        return true;
+    }
+
+    public int getQueueSize() {
+        return m_queue.size();
+    }
+
+    /** @return the number of addresses that have been sent to the geocoder */
+    public long getLookupCount() {
+        return m_lookups.get();
+    }
+
+    /** @return the number of requests that were answered from the cache */
+    public long getCacheHitCount() {
+        return m_cacheHits.get();
+    }
+
+    private void processRequests() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Request request;
+            try {
+                if (m_queue.isEmpty() && m_cacheDirty) {
+                    saveCache();
+                }
+                request = m_queue.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                final Coordinates coordinates = lookup(request.m_address);
+                if (coordinates != null) {
+                    request.m_callback.geocoded(request.m_nodeId, request.m_address, coordinates);
+                }
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to geocode address '{}' for node {}.", request.m_address, request.m_nodeId, e);
+            } finally {
+                m_pending.remove(request.m_nodeId);
+            }
+        }
+    }
+
+    /**
+     * @return the coordinates, {@link #BAD_COORDINATES} if the address cannot
+     *         be found, or null if the lookup failed temporarily
+     */
+    Coordinates lookup(final String address) {
+        final Coordinates cached = m_cache.get(address);
+        if (cached != null) {
+            m_cacheHits.incrementAndGet();
+            return cached;
+        }
+
+        m_lookups.incrementAndGet();
+        Coordinates coordinates;
+        try {
+            coordinates = m_geocoderService.getCoordinates(address);
+            if (coordinates == null) {
+                coordinates = BAD_COORDINATES;
+            }
+        } catch (final TemporaryGeocoderException e) {
+            LOG.debug("Failed to find coordinates for address '{}' due to a temporary failure.", address);
+            return null;
+        } catch (final GeocoderException e) {
+            LOG.debug("Failed to find coordinates for address '{}'.", address);
+            coordinates = BAD_COORDINATES;
+        }
+        m_cache.put(address, coordinates);
+        m_cacheDirty = true;
+        return coordinates;
+    }
+
+    private void loadCache() {
+        if (m_cacheFile == null || !m_cacheFile.exists()) {
+            return;
+        }
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(m_cacheFile);
+            properties.load(in);
+        } catch (final IOException e) {
+            LOG.warn("Failed to read the geocoder cache from {}.", m_cacheFile, e);
+            return;
+        } finally {
+            closeQuietly(in);
+        }
+        for (final String address : properties.stringPropertyNames()) {
+            try {
+                m_cache.put(address, new Coordinates(properties.getProperty(address)));
+            } catch (final GeocoderException e) {
+                LOG.debug("Ignoring bad geocoder cache entry for address '{}'.", address);
+            }
+        }
+        LOG.debug("Loaded {} cached addresses from {}.", m_cache.size(), m_cacheFile);
+    }
+
+    private synchronized void saveCache() {
+        if (m_cacheFile == null || !m_cacheDirty) {
+            return;
+        }
+        m_cacheDirty = false;
+
+        final Properties properties = new Properties();
+        for (final Map.Entry<String,Coordinates> entry : m_cache.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+
+        final File tmpFile = new File(m_cacheFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            final File dir = m_cacheFile.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            out = new FileOutputStream(tmpFile);
+            properties.store(out, "Geocoded node addresses");
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(m_cacheFile) && !(m_cacheFile.delete() && tmpFile.renameTo(m_cacheFile))) {
+                throw new IOException("Unable to rename " + tmpFile + " to " + m_cacheFile);
+            }
+        } catch (final IOException e) {
+            LOG.warn("Failed to write the geocoder cache to {}.", m_cacheFile, e);
+            m_cacheDirty = true;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -30,260 +30,119 @@ package org.opennms.features.vaadin.nodemaps.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import org.opennms.core.criteria.CriteriaBuilder;
-import org.opennms.features.geocoder.Coordinates;
-import org.opennms.features.geocoder.GeocoderException;
-import org.opennms.features.geocoder.GeocoderService;
-import org.opennms.features.geocoder.TemporaryGeocoderException;
 import org.opennms.features.topology.api.geo.GeoAssetProvider;
 import org.opennms.features.topology.api.topo.AbstractVertex;
 import org.opennms.features.topology.api.topo.VertexRef;
-import org.opennms.netmgt.dao.api.AlarmDao;
-import org.opennms.netmgt.dao.api.AssetRecordDao;
-import org.opennms.netmgt.dao.api.NodeDao;
-import org.opennms.netmgt.model.OnmsAlarm;
-import org.opennms.netmgt.model.OnmsAssetRecord;
-import org.opennms.netmgt.model.OnmsGeolocation;
-import org.opennms.netmgt.model.OnmsNode;
-import org.opennms.netmgt.model.OnmsSeverity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.TransactionCallbackWithoutResult;
-import org.springframework.transaction.support.TransactionOperations;
 
 /**
+ * Shows the nodes of the shared {@link NodeMapIndex}.  The index is checked
+ * for changes every few seconds, and the node list is only sent to the
+ * client when it actually changed.
+ *
  * @author Marcus Hellberg (marcus@vaadin.com)
  */
 public class MapWidgetComponent extends NodeMapComponent implements GeoAssetProvider {
     private static final long serialVersionUID = -6364929103619363239L;
     private static final Logger LOG = LoggerFactory.getLogger(MapWidgetComponent.class);
 
-    private final ScheduledExecutorService m_executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
-        @Override public Thread newThread(final Runnable runnable) {
-            return new Thread(runnable, "NodeMapUpdater-Thread");
-        }
-    });
-
-    private NodeDao m_nodeDao;
-    private AssetRecordDao m_assetDao;
-    private AlarmDao m_alarmDao;
-    private GeocoderService m_geocoderService;
-    private TransactionOperations m_transaction;
-
-    private Map<Integer,NodeEntry> m_activeNodes = new HashMap<Integer,NodeEntry>();
+    private NodeMapIndex m_nodeMapIndex;
+    private long m_refreshInterval = 10000;
 
-    public NodeDao getNodeDao() {
-        return m_nodeDao;
-    }
-
-    public void setNodeDao(final NodeDao nodeDao) {
-        m_nodeDao = nodeDao;
-    }
+    private transient ScheduledFuture<?> m_refreshTask;
+    private long m_shownGeneration = -1;
 
-    public AssetRecordDao getAssetRecordDao() {
-        return m_assetDao;
+    public NodeMapIndex getNodeMapIndex() {
+        return m_nodeMapIndex;
     }
 
-    public void setAssetRecordDao(final AssetRecordDao assetDao) {
-        m_assetDao = assetDao;
+    public void setNodeMapIndex(final NodeMapIndex nodeMapIndex) {
+        m_nodeMapIndex = nodeMapIndex;
     }
 
-    public AlarmDao getAlarmDao() {
-        return m_alarmDao;
-    }
-
-    public void setAlarmDao(final AlarmDao alarmDao) {
-        m_alarmDao = alarmDao;
+    /**
+     * @param refreshInterval how often the index is checked for changes, in milliseconds
+     */
+    public void setRefreshInterval(final long refreshInterval) {
+        m_refreshInterval = refreshInterval;
     }
 
-    public GeocoderService getGeocoderService() {
-        return m_geocoderService;
+    public void init() {
+        scheduleRefresh();
     }
 
-    public void setGeocoderService(final GeocoderService geocoderService) {
-        m_geocoderService = geocoderService;
+    @Override
+    public void attach() {
+        super.attach();
+        // detaching cancels the refresh, so start it again when the component comes back
+        scheduleRefresh();
     }
 
-    public void setTransactionOperations(final TransactionOperations tx) {
-        m_transaction = tx;
+    @Override
+    public void detach() {
+        super.detach();
+        synchronized (this) {
+            if (m_refreshTask != null) {
+                m_refreshTask.cancel(false);
+                m_refreshTask = null;
+            }
+        }
     }
 
-    public void init() {
-        m_executor.scheduleWithFixedDelay(new Runnable() {
+    private synchronized void scheduleRefresh() {
+        if (m_refreshTask != null) {
+            return;
+        }
+        if (m_nodeMapIndex == null) {
+            LOG.warn("No node map index!  Can't refresh node data.");
+            return;
+        }
+        m_refreshTask = m_nodeMapIndex.scheduleWithFixedDelay(new Runnable() {
             @Override public void run() {
-                refreshNodeData();
+                refreshNodeData(false);
             }
-        }, 0, 5, TimeUnit.MINUTES);
+        }, 0, m_refreshInterval, TimeUnit.MILLISECONDS);
     }
 
     public void refresh() {
-        m_executor.schedule(new Runnable() {
+        if (m_nodeMapIndex == null) {
+            return;
+        }
+        m_nodeMapIndex.refresh(new Runnable() {
             @Override public void run() {
-                refreshNodeData();
+                refreshNodeData(true);
             }
-        }, 0, TimeUnit.MINUTES);
+        });
     }
 
     @Override
     public Collection<VertexRef> getNodesWithCoordinates() {
         final List<VertexRef> nodes = new ArrayList<VertexRef>();
-        for (final Map.Entry<Integer,NodeEntry> entry : m_activeNodes.entrySet()) {
+        if (m_nodeMapIndex == null) {
+            return nodes;
+        }
+        for (final Map.Entry<Integer,NodeEntry> entry : m_nodeMapIndex.getNodes().entrySet()) {
             nodes.add(new AbstractVertex("nodes", entry.getKey().toString(), entry.getValue().getNodeLabel()));
         }
         return nodes;
     }
 
-    private void refreshNodeData() {
-        if (getNodeDao() == null) {
-            LOG.warn("No node DAO!  Can't refresh node data.");
+    private void refreshNodeData(final boolean force) {
+        final long generation = m_nodeMapIndex.getGeneration();
+        if (!force && generation == m_shownGeneration) {
             return;
         }
-
         LOG.debug("Refreshing node data.");
-
-        final CriteriaBuilder cb = new CriteriaBuilder(OnmsNode.class);
-        cb.alias("assetRecord", "asset");
-        cb.orderBy("id").asc();
-
-        final List<OnmsAssetRecord> updatedAssets = new ArrayList<OnmsAssetRecord>();
-        final Map<Integer, NodeEntry> nodes = new HashMap<Integer, NodeEntry>();
-
-        m_transaction.execute(new TransactionCallbackWithoutResult() {
-            @Override
-            protected void doInTransactionWithoutResult(final TransactionStatus status) {
-                for (final OnmsNode node : getNodeDao().findMatching(cb.toCriteria())) {
-                    LOG.trace("processing node {}", node.getId());
-
-                    // pass 1: get the nodes with asset data
-                    final OnmsAssetRecord assets = node.getAssetRecord();
-                    if (assets != null && assets.getGeolocation() != null) {
-                        final OnmsGeolocation geolocation = assets.getGeolocation();
-                        final String addressString = geolocation.asAddressString();
-
-                        final Float longitude = geolocation.getLongitude();
-                        final Float latitude = geolocation.getLatitude();
-
-                        if (longitude != null && latitude != null) {
-                            if (longitude == Float.NEGATIVE_INFINITY || latitude == Float.NEGATIVE_INFINITY) {
-                                // we've already cached it as bad, skip it
-                                continue;
-                            } else {
-                                // we've already got good coordinates, return the node
-                                nodes.put(node.getId(), new NodeEntry(node));
-                                continue;
-                            }
-                        } else if (addressString == null || "".equals(addressString)) {
-                            // no real address info, skip it
-                            continue;
-                        } else {
-                            LOG.debug("Node {} has an asset record with address \"{}\", but no coordinates.", new Object[]{node.getId(), addressString});
-                            final Coordinates coordinates = getCoordinates(addressString);
-
-                            if (coordinates == null) {
-                                LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
-                                continue;
-                            }
-
-                            geolocation.setLongitude(coordinates.getLongitude());
-                            geolocation.setLatitude(coordinates.getLatitude());
-                            updatedAssets.add(assets);
-
-                            if (coordinates.getLongitude() == Float.NEGATIVE_INFINITY || coordinates.getLatitude() == Float.NEGATIVE_INFINITY) {
-                                // we got bad coordinates
-                                LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
-                                continue;
-                            } else {
-                                // valid coordinates, add to the list
-                                nodes.put(node.getId(), new NodeEntry(node));
-                            }
-                        }
-                    } else {
-                        // no asset information
-                    }
-                }
-
-                int lastId = -1;
-                int unackedCount = 0;
-
-                // pass 2: get alarm data for anything that's been grabbed from the DB
-                if (!nodes.isEmpty()) {
-                    LOG.debug("getting alarms for nodes");
-                    final CriteriaBuilder ab = new CriteriaBuilder(OnmsAlarm.class);
-                    ab.alias("node", "node");
-                    ab.ge("severity", OnmsSeverity.WARNING);
-                    ab.in("node.id", nodes.keySet());
-                    ab.orderBy("node.id").asc();
-                    ab.orderBy("severity").desc();
-
-                    for (final OnmsAlarm alarm : getAlarmDao().findMatching(ab.toCriteria())) {
-                        final int nodeId = alarm.getNodeId();
-                        LOG.debug("nodeId = {}, lastId = {}, unackedCount = {}", new Object[]{nodeId, lastId, unackedCount});
-                        if (nodeId != lastId) {
-                            LOG.debug("  setting severity for node {} to {}", new Object[]{nodeId, alarm.getSeverity().getLabel()});
-                            final NodeEntry nodeEntry = nodes.get(nodeId);
-                            nodeEntry.setSeverity(alarm.getSeverity());
-                            if (lastId != -1) {
-                                nodeEntry.setUnackedCount(unackedCount);
-                                unackedCount = 0;
-                            }
-                        }
-                        if (alarm.getAckUser() == null) {
-                            unackedCount++;
-                        }
-
-                        lastId = nodeId;
-                    }
-                }
-
-                if (lastId != -1) {
-                    nodes.get(lastId).setUnackedCount(unackedCount);
-                }
-
-                // pass 3: save any asset updates to the database
-                LOG.debug("saving {} updated asset records to the database", updatedAssets.size());
-                for (final OnmsAssetRecord asset : updatedAssets) {
-                    getAssetRecordDao().saveOrUpdate(asset);
-                }
-            }
-        });
-
-
-        m_activeNodes = nodes;
-        showNodes(nodes);
+        m_shownGeneration = generation;
+        showNodes(m_nodeMapIndex.getNodes());
     }
 
-    /**
-     * Given an address, return the coordinates for that address.
-     *
-     * @param address the complete address, in a format a geolocator can understand
-     * @return the coordinates for the given address
-     */
-    private Coordinates getCoordinates(final String address) {
-        Coordinates coordinates = null;
-        try {
-            coordinates = getGeocoderService().getCoordinates(address);
-            if (coordinates == null) {
-                coordinates = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
-            }
-        } catch (final TemporaryGeocoderException e) {
-            LOG.debug("Failed to find coordinates for address '{}' due to a temporary failure.", address);
-        } catch (final GeocoderException e) {
-            LOG.debug("Failed to find coordinates for address '{}'.", address);
-            coordinates = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
-        }
-        return coordinates;
-    }
-
-
     public void setSearchString(final String searchString) {
         getState().searchString = searchString;
     }
@@ -163,10 +163,26 @@ public class NodeMapComponent extends AbstractComponent {
             return m_nodeLabel;
         }
 
+        public Float getLongitude() {
+            return m_longitude;
+        }
+
+        public Float getLatitude() {
+            return m_latitude;
+        }
+
+        public OnmsSeverity getSeverity() {
+            return m_severity;
+        }
+
         public void setSeverity(final OnmsSeverity severity) {
             m_severity = severity;
         }
 
+        public int getUnackedCount() {
+            return m_unackedCount;
+        }
+
         public MapNode createNode() {
             final MapNode node = new MapNode();
 
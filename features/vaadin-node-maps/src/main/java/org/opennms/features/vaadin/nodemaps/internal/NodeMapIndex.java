@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.features.geocoder.Coordinates;
+import org.opennms.features.geocoder.GeocoderService;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapComponent.NodeEntry;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AssetRecordDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsAssetRecord;
+import org.opennms.netmgt.model.OnmsGeolocation;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * The geolocated nodes and their alarm status, shared by all node map UIs.
+ *
+ * The index is loaded from the database once and then kept up to date from
+ * events: node and asset changes reload the affected nodes, and any other
+ * event for an indexed node reloads the alarms of that node only.  Since not
+ * every alarm change produces an event (acknowledgements, for instance), the
+ * whole index is still reconciled with the database, but only every
+ * <code>reconcileInterval</code> milliseconds and once for all UIs.
+ *
+ * Nodes with an address but no coordinates are handed to a
+ * {@link GeocodingQueue} and show up once their address has been resolved.
+ *
+ * The index does not cluster the nodes.  The map client clusters its
+ * markers itself and searches and filters over the whole node list, so
+ * every UI is sent the full snapshot.
+ */
+public class NodeMapIndex implements EventListener, GeocodingQueue.Callback {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeMapIndex.class);
+
+    private static final Set<String> NODE_CHANGED_UEIS = new HashSet<String>(Arrays.asList(
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+            EventConstants.ASSET_INFO_CHANGED_EVENT_UEI
+    ));
+
+    private final ScheduledExecutorService m_executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+        @Override public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "NodeMapIndex-Thread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private NodeDao m_nodeDao;
+    private AssetRecordDao m_assetDao;
+    private AlarmDao m_alarmDao;
+    private GeocoderService m_geocoderService;
+    private TransactionOperations m_transaction;
+    private EventSubscriptionService m_eventSubscriptionService;
+    private String m_geocoderCacheFile;
+    private long m_updateInterval = 15000;
+    private long m_reconcileInterval = 300000;
+
+    private GeocodingQueue m_geocodingQueue;
+
+    /** Only touched on the index thread. */
+    private final Map<Integer,NodeEntry> m_nodes = new HashMap<Integer,NodeEntry>();
+
+    private volatile Map<Integer,NodeEntry> m_snapshot = Collections.emptyMap();
+
+    private final AtomicLong m_generation = new AtomicLong();
+
+    private final Set<Integer> m_changedNodes = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+
+    private final Set<Integer> m_changedAlarms = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+
+    public void setNodeDao(final NodeDao nodeDao) {
+        m_nodeDao = nodeDao;
+    }
+
+    public void setAssetRecordDao(final AssetRecordDao assetDao) {
+        m_assetDao = assetDao;
+    }
+
+    public void setAlarmDao(final AlarmDao alarmDao) {
+        m_alarmDao = alarmDao;
+    }
+
+    public void setGeocoderService(final GeocoderService geocoderService) {
+        m_geocoderService = geocoderService;
+    }
+
+    public void setTransactionOperations(final TransactionOperations tx) {
+        m_transaction = tx;
+    }
+
+    public void setEventSubscriptionService(final EventSubscriptionService eventSubscriptionService) {
+        m_eventSubscriptionService = eventSubscriptionService;
+    }
+
+    /**
+     * @param geocoderCacheFile the file geocoded addresses are kept in, defaults to
+     *        <code>${opennms.home}/share/geocoder-cache.properties</code>
+     */
+    public void setGeocoderCacheFile(final String geocoderCacheFile) {
+        m_geocoderCacheFile = geocoderCacheFile;
+    }
+
+    /**
+     * @param updateInterval how often changes signalled by events are applied, in milliseconds
+     */
+    public void setUpdateInterval(final long updateInterval) {
+        m_updateInterval = updateInterval;
+    }
+
+    /**
+     * @param reconcileInterval how often the whole index is reloaded, in milliseconds
+     */
+    public void setReconcileInterval(final long reconcileInterval) {
+        m_reconcileInterval = reconcileInterval;
+    }
+
+    public void init() {
+        String cacheFile = m_geocoderCacheFile;
+        if (cacheFile == null || "".equals(cacheFile.trim())) {
+            cacheFile = System.getProperty("opennms.home", ".") + File.separator + "share" + File.separator + "geocoder-cache.properties";
+        }
+        m_geocodingQueue = new GeocodingQueue(m_geocoderService, new File(cacheFile));
+        m_geocodingQueue.start();
+
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                reconcile();
+            }
+        }, 0, m_reconcileInterval, TimeUnit.MILLISECONDS);
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                update();
+            }
+        }, m_updateInterval, m_updateInterval, TimeUnit.MILLISECONDS);
+
+        if (m_eventSubscriptionService != null) {
+            // alarms can be raised by any event, so listen to all of them
+            m_eventSubscriptionService.addEventListener(this);
+        }
+    }
+
+    public void destroy() {
+        if (m_eventSubscriptionService != null) {
+            m_eventSubscriptionService.removeEventListener(this);
+        }
+        m_executor.shutdownNow();
+        if (m_geocodingQueue != null) {
+            m_geocodingQueue.stop();
+        }
+    }
+
+    /**
+     * Reloads the whole index and then runs the callback, on the index thread.
+     *
+     * @param callback a {@link java.lang.Runnable} object, may be null
+     */
+    public void refresh(final Runnable callback) {
+        m_executor.execute(new Runnable() {
+            @Override public void run() {
+                reconcile();
+                if (callback != null) {
+                    callback.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the index thread, so that it never sees a half-applied
+     * update.  Tasks are expected to be short.
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable task, final long initialDelay, final long delay, final TimeUnit unit) {
+        return m_executor.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+    }
+
+    /**
+     * @return an unmodifiable snapshot of the nodes on the map, keyed by node ID
+     */
+    public Map<Integer,NodeEntry> getNodes() {
+        return m_snapshot;
+    }
+
+    /**
+     * @return a number that changes every time the nodes on the map change
+     */
+    public long getGeneration() {
+        return m_generation.get();
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public void onEvent(final Event e) {
+        if (!e.hasNodeid()) {
+            return;
+        }
+        final Integer nodeId = e.getNodeid().intValue();
+        if (NODE_CHANGED_UEIS.contains(e.getUei())) {
+            m_changedNodes.add(nodeId);
+        } else if (m_snapshot.containsKey(nodeId)) {
+            m_changedAlarms.add(nodeId);
+        }
+    }
+
+    @Override
+    public void geocoded(final int nodeId, final String address, final Coordinates coordinates) {
+        m_transaction.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                final OnmsNode node = m_nodeDao.get(nodeId);
+                if (node == null || node.getAssetRecord() == null || node.getAssetRecord().getGeolocation() == null) {
+                    return;
+                }
+                final OnmsAssetRecord assets = node.getAssetRecord();
+                if (!address.equals(assets.getGeolocation().asAddressString())) {
+                    // the address changed while it was being looked up
+                    return;
+                }
+                assets.getGeolocation().setLongitude(coordinates.getLongitude());
+                assets.getGeolocation().setLatitude(coordinates.getLatitude());
+                m_assetDao.saveOrUpdate(assets);
+            }
+        });
+        m_changedNodes.add(nodeId);
+    }
+
+    /**
+     * Reloads every geolocated node and its alarms.
+     */
+    protected void reconcile() {
+        if (m_nodeDao == null) {
+            LOG.warn("No node DAO!  Can't refresh node data.");
+            return;
+        }
+        LOG.debug("Reloading the node map index.");
+
+        // everything that changed so far is covered by the full reload
+        m_changedNodes.clear();
+        m_changedAlarms.clear();
+
+        try {
+            final Map<Integer,NodeEntry> nodes = new HashMap<Integer,NodeEntry>();
+            m_transaction.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    final CriteriaBuilder cb = new CriteriaBuilder(OnmsNode.class);
+                    cb.alias("assetRecord", "asset");
+                    cb.orderBy("id").asc();
+                    for (final OnmsNode node : m_nodeDao.findMatching(cb.toCriteria())) {
+                        final NodeEntry entry = createEntry(node);
+                        if (entry != null) {
+                            nodes.put(node.getId(), entry);
+                        }
+                    }
+                    applyAlarms(nodes, nodes.keySet());
+                }
+            });
+
+            m_nodes.clear();
+            for (final NodeEntry entry : nodes.values()) {
+                put(entry);
+            }
+            publish();
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to reload the node map index.", e);
+        }
+    }
+
+    /**
+     * Applies the changes signalled by events since the last update.
+     */
+    protected void update() {
+        if (m_changedNodes.isEmpty() && m_changedAlarms.isEmpty()) {
+            return;
+        }
+        final Set<Integer> changedNodes = drain(m_changedNodes);
+        final Set<Integer> changedAlarms = drain(m_changedAlarms);
+        LOG.debug("Updating {} nodes and the alarms of {} nodes in the node map index.", changedNodes.size(), changedAlarms.size());
+
+        try {
+            final Map<Integer,NodeEntry> updated = new HashMap<Integer,NodeEntry>();
+            m_transaction.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    final Set<Integer> nodeIds = new HashSet<Integer>(changedNodes);
+                    for (final Integer nodeId : changedAlarms) {
+                        if (m_nodes.containsKey(nodeId)) {
+                            nodeIds.add(nodeId);
+                        }
+                    }
+                    if (nodeIds.isEmpty()) {
+                        return;
+                    }
+                    final CriteriaBuilder cb = new CriteriaBuilder(OnmsNode.class);
+                    cb.alias("assetRecord", "asset");
+                    cb.in("id", nodeIds);
+                    for (final OnmsNode node : m_nodeDao.findMatching(cb.toCriteria())) {
+                        final NodeEntry entry = createEntry(node);
+                        if (entry != null) {
+                            updated.put(node.getId(), entry);
+                        }
+                    }
+                    applyAlarms(updated, updated.keySet());
+                    // nodes that are gone or no longer have coordinates
+                    for (final Integer nodeId : nodeIds) {
+                        if (!updated.containsKey(nodeId)) {
+                            updated.put(nodeId, null);
+                        }
+                    }
+                }
+            });
+
+            boolean changed = false;
+            for (final Map.Entry<Integer,NodeEntry> entry : updated.entrySet()) {
+                if (entry.getValue() == null) {
+                    changed |= m_nodes.remove(entry.getKey()) != null;
+                } else {
+                    put(entry.getValue());
+                    changed = true;
+                }
+            }
+            if (changed) {
+                publish();
+            }
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to update the node map index.", e);
+            m_changedNodes.addAll(changedNodes);
+            m_changedAlarms.addAll(changedAlarms);
+        }
+    }
+
+    /**
+     * Returns the map entry for a node, or null if the node has no usable
+     * coordinates (yet).  Must be called inside a transaction.
+     */
+    private NodeEntry createEntry(final OnmsNode node) {
+        final OnmsAssetRecord assets = node.getAssetRecord();
+        if (assets == null || assets.getGeolocation() == null) {
+            // no asset information
+            return null;
+        }
+
+        final OnmsGeolocation geolocation = assets.getGeolocation();
+        final Float longitude = geolocation.getLongitude();
+        final Float latitude = geolocation.getLatitude();
+        if (longitude != null && latitude != null) {
+            if (longitude == Float.NEGATIVE_INFINITY || latitude == Float.NEGATIVE_INFINITY) {
+                // we've already cached it as bad, skip it
+                return null;
+            }
+            return new NodeEntry(node);
+        }
+
+        final String addressString = geolocation.asAddressString();
+        if (addressString == null || "".equals(addressString)) {
+            // no real address info, skip it
+            return null;
+        }
+
+        final Coordinates coordinates = m_geocodingQueue.getCachedCoordinates(addressString);
+        if (coordinates == null) {
+            LOG.debug("Node {} has an asset record with address \"{}\", but no coordinates.", node.getId(), addressString);
+            m_geocodingQueue.submit(node.getId(), addressString, this);
+            return null;
+        }
+
+        geolocation.setLongitude(coordinates.getLongitude());
+        geolocation.setLatitude(coordinates.getLatitude());
+        m_assetDao.saveOrUpdate(assets);
+        if (coordinates.getLongitude() == Float.NEGATIVE_INFINITY || coordinates.getLatitude() == Float.NEGATIVE_INFINITY) {
+            LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
+            return null;
+        }
+        return new NodeEntry(node);
+    }
+
+    /**
+     * Sets the severity of each node to that of its worst outstanding alarm
+     * and counts its unacknowledged alarms.  Must be called inside a transaction.
+     */
+    private void applyAlarms(final Map<Integer,NodeEntry> nodes, final Collection<Integer> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        final CriteriaBuilder ab = new CriteriaBuilder(OnmsAlarm.class);
+        ab.alias("node", "node");
+        ab.ge("severity", OnmsSeverity.WARNING);
+        ab.in("node.id", nodeIds);
+
+        final Map<Integer,Integer> unacked = new HashMap<Integer,Integer>();
+        for (final OnmsAlarm alarm : m_alarmDao.findMatching(ab.toCriteria())) {
+            final NodeEntry entry = nodes.get(alarm.getNodeId());
+            if (entry == null) {
+                continue;
+            }
+            if (alarm.getSeverity().isGreaterThan(entry.getSeverity())) {
+                entry.setSeverity(alarm.getSeverity());
+            }
+            if (alarm.getAckUser() == null) {
+                final Integer count = unacked.get(alarm.getNodeId());
+                unacked.put(alarm.getNodeId(), count == null ? 1 : count + 1);
+            }
+        }
+        for (final Map.Entry<Integer,Integer> count : unacked.entrySet()) {
+            nodes.get(count.getKey()).setUnackedCount(count.getValue());
+        }
+    }
+
+    private void put(final NodeEntry entry) {
+        m_nodes.put(entry.getNodeId(), entry);
+    }
+
+    private void publish() {
+        m_snapshot = Collections.unmodifiableMap(new HashMap<Integer,NodeEntry>(m_nodes));
+        m_generation.incrementAndGet();
+        LOG.debug("The node map index now has {} nodes.", m_nodes.size());
+    }
+
+    private static Set<Integer> drain(final Set<Integer> set) {
+        final Set<Integer> drained = new HashSet<Integer>();
+        final Iterator<Integer> it = set.iterator();
+        while (it.hasNext()) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+}
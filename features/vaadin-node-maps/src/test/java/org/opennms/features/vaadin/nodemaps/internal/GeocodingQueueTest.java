@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.features.geocoder.Coordinates;
+import org.opennms.features.geocoder.GeocoderException;
+import org.opennms.features.geocoder.GeocoderService;
+import org.opennms.features.geocoder.TemporaryGeocoderException;
+
+public class GeocodingQueueTest {
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private final AtomicInteger m_calls = new AtomicInteger();
+
+    private final GeocoderService m_geocoder = new GeocoderService() {
+        @Override
+        public Coordinates getCoordinates(final String address) throws GeocoderException {
+            m_calls.incrementAndGet();
+            if ("nowhere".equals(address)) {
+                throw new GeocoderException("not found");
+            } else if ("later".equals(address)) {
+                throw new TemporaryGeocoderException("try again");
+            }
+            return new Coordinates(-78.64f, 35.78f);
+        }
+    };
+
+    @Test
+    public void testLookup() throws Exception {
+        final GeocodingQueue queue = new GeocodingQueue(m_geocoder, null);
+        assertEquals(-78.64f, queue.lookup("Raleigh").getLongitude(), 0.001f);
+        assertEquals(-78.64f, queue.lookup("Raleigh").getLongitude(), 0.001f);
+        assertEquals(GeocodingQueue.BAD_COORDINATES, queue.lookup("nowhere"));
+        assertEquals(GeocodingQueue.BAD_COORDINATES, queue.lookup("nowhere"));
+        assertNull(queue.lookup("later"));
+        assertNull(queue.lookup("later"));
+        assertEquals(4, m_calls.get());
+        assertEquals(2, queue.getCacheHitCount());
+    }
+
+    @Test
+    public void testPersistentCache() throws Exception {
+        final File cacheFile = new File(m_folder.getRoot(), "geocoder-cache.properties");
+        final GeocodingQueue queue = new GeocodingQueue(m_geocoder, cacheFile);
+        queue.start();
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final GeocodingQueue.Callback callback = new GeocodingQueue.Callback() {
+            @Override
+            public void geocoded(final int nodeId, final String address, final Coordinates coordinates) {
+                latch.countDown();
+            }
+        };
+        assertTrue(queue.submit(1, "Raleigh", callback));
+        assertTrue(queue.submit(2, "nowhere", callback));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        queue.stop();
+        assertTrue(cacheFile.exists());
+        assertEquals(2, m_calls.get());
+
+        // a new queue answers from the file without asking the geocoder
+        final GeocodingQueue reloaded = new GeocodingQueue(m_geocoder, cacheFile);
+        reloaded.start();
+        try {
+            assertEquals(35.78f, reloaded.getCachedCoordinates("Raleigh").getLatitude(), 0.001f);
+            assertEquals(Float.NEGATIVE_INFINITY, reloaded.getCachedCoordinates("nowhere").getLongitude(), 0f);
+            assertNull(reloaded.getCachedCoordinates("somewhere else"));
+            assertEquals(2, m_calls.get());
+        } finally {
+            reloaded.stop();
+        }
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.alarmd.api;
 
+import java.io.Serializable;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.HashMap;
@@ -47,7 +48,8 @@ import org.opennms.netmgt.model.TroubleTicketState;
  * 
  * @author <a mailto:david@opennms.org>David Hustace</a>
  */
-public class NorthboundAlarm implements Preservable {
+public class NorthboundAlarm implements Preservable, Serializable {
+	private static final long serialVersionUID = 5315209326418460917L;
 	
 	public static final NorthboundAlarm SYNC_LOST_ALARM = new NorthboundAlarm(-1, "uei.opennms.org/alarmd/northbounderSyncLost");
 
@@ -535,6 +537,11 @@ public class NorthboundAlarm implements Preservable {
     	m_preserved = preserved;
     }
 
+    // keep the 'special event' a singleton when it is read back from the alarm journal
+    private Object readResolve() {
+        return SYNC_LOST_ALARM.m_id.equals(m_id) ? SYNC_LOST_ALARM : this;
+    }
+
 	public Integer getNodeId() {
 		return m_nodeId;
 	}
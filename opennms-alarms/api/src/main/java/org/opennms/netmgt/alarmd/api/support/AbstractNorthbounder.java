@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd.api.support;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.opennms.netmgt.alarmd.api.NorthboundAlarm;
@@ -45,6 +47,10 @@ import org.opennms.netmgt.alarmd.api.NorthbounderException;
  * 
  * preserve, accept and discard are called to add the Alarms to the queue as appropriate.  
  * 
+ * If a journal directory is set, or the org.opennms.netmgt.alarmd.northbounder.journalDirectory
+ * system property names a directory for all northbounders, preserved Alarms are spilled to a
+ * journal on disk while forwarding fails and survive a restart.
+ * 
  * @author <a mailto:david@opennms.org>David Hustace</a>
  */
 
@@ -56,6 +62,10 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
     private volatile boolean m_stopped = true;
 
     private long m_retryInterval = 1000;
+
+    private File m_journalDirectory;
+    private int m_journalSegmentSize = Integer.getInteger("org.opennms.netmgt.alarmd.northbounder.journalSegmentSize", 16 * 1024 * 1024);
+    private long m_maxJournalSize = Long.getLong("org.opennms.netmgt.alarmd.northbounder.maxJournalSize", 1024L * 1024 * 1024);
     
     protected AbstractNorthbounder(String name) {
     	m_name = name;
@@ -83,6 +93,18 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
         m_queue.setMaxPreservedAlarms(maxPreservedAlarms);
     }
 
+    public void setJournalDirectory(File journalDirectory) {
+        m_journalDirectory = journalDirectory;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        m_journalSegmentSize = journalSegmentSize;
+    }
+
+    public void setMaxJournalSize(long maxJournalSize) {
+        m_maxJournalSize = maxJournalSize;
+    }
+
     /** Override this to perform actions before startup. **/
     protected void onPreStart() {}
 
@@ -94,12 +116,28 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
         if (! m_stopped) return;
         this.onPreStart();
         m_stopped = false;
+        openJournal();
         m_queue.init();
         Thread thread = new Thread(this, getName()+"-Thread");
         thread.start();
         this.onPostStart();
     }
     
+    private void openJournal() throws NorthbounderException {
+        File directory = m_journalDirectory;
+        if (directory == null && System.getProperty("org.opennms.netmgt.alarmd.northbounder.journalDirectory") != null) {
+            directory = new File(System.getProperty("org.opennms.netmgt.alarmd.northbounder.journalDirectory"), getName());
+        }
+        if (directory == null || m_queue.getJournal() != null) {
+            return;
+        }
+        try {
+            m_queue.setJournal(new AlarmJournal(directory, m_journalSegmentSize, m_maxJournalSize));
+        } catch (IOException e) {
+            throw new NorthbounderException("Unable to open alarm journal " + directory, e);
+        }
+    }
+
     @Override
     public final void onAlarm(NorthboundAlarm alarm) throws NorthbounderException {
         if (accepts(alarm)) {
@@ -126,6 +164,9 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
     public final void stop() throws NorthbounderException {
         this.onStop();
         m_stopped = true;
+        if (m_queue.getJournal() != null) {
+            m_queue.getJournal().flush();
+        }
     }
     
     @Override
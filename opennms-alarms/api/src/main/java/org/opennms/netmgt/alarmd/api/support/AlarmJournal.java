@@ -0,0 +1,447 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.alarmd.api.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk backed queue for the alarms that are preserved while a northbounder
+ * is unable to forward.
+ *
+ * Alarms are serialized and appended to memory-mapped segment files of a
+ * fixed size.  Each record is written as its length, a CRC of its contents
+ * and the contents, and the length is written last so a record that was only
+ * partially written is never read back.  Records are read in the order they
+ * were appended; reading does not remove them, only a commit does.  The
+ * position of the first record that has not been committed is kept in its own
+ * small mapped file, so after a restart every record that was not yet
+ * committed is replayed.  Segments that only hold committed records are
+ * unmapped and deleted.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+class AlarmJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String POSITION_FILE = "position";
+
+    // record length and CRC
+    private static final int HEADER_SIZE = 8;
+
+    private static class Segment {
+        final long m_sequence;
+        final File m_file;
+        final MappedByteBuffer m_buffer;
+        int m_writeOffset = 0;
+
+        Segment(final long sequence, final File file, final MappedByteBuffer buffer) {
+            m_sequence = sequence;
+            m_file = file;
+            m_buffer = buffer;
+        }
+    }
+
+    private final File m_directory;
+    private final int m_segmentSize;
+    private final long m_maxSize;
+
+    private final TreeMap<Long, Segment> m_segments = new TreeMap<Long, Segment>();
+    private final MappedByteBuffer m_position;
+
+    // the next record to be read
+    private Segment m_readSegment;
+    private int m_readOffset;
+
+    // the first record that has not been committed
+    private Segment m_commitSegment;
+    private int m_commitOffset;
+
+    private int m_unreadCount = 0;
+    private int m_uncommittedCount = 0;
+    private long m_mappedSize = 0;
+
+    /**
+     * Opens the journal in the given directory, recovering the records that
+     * were not committed before it was last closed.
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentSize the size of each segment file in bytes
+     * @param maxSize the maximum size of all segment files together in bytes
+     * @throws java.io.IOException if the journal cannot be opened
+     */
+    public AlarmJournal(final File directory, final int segmentSize, final long maxSize) throws IOException {
+        m_directory = directory;
+        m_segmentSize = segmentSize;
+        m_maxSize = maxSize;
+
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + m_directory);
+        }
+        m_position = map(new File(m_directory, POSITION_FILE), 12);
+
+        recover();
+    }
+
+    private void recover() throws IOException {
+        final File[] files = m_directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        for (final File file : files) {
+            final String name = file.getName();
+            final long sequence;
+            try {
+                sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (final NumberFormatException e) {
+                LOG.warn("Ignoring unexpected file {} in alarm journal {}", file, m_directory);
+                continue;
+            }
+            final Segment segment = new Segment(sequence, file, map(file, (int)file.length()));
+            m_segments.put(sequence, segment);
+            m_mappedSize += segment.m_buffer.capacity();
+        }
+
+        final long commitSequence = m_position.getLong(0);
+        final int commitOffset = m_position.getInt(8);
+
+        // segments before the committed position only hold committed records
+        for (final Iterator<Segment> it = m_segments.values().iterator(); it.hasNext(); ) {
+            final Segment segment = it.next();
+            if (segment.m_sequence < commitSequence) {
+                it.remove();
+                delete(segment);
+            }
+        }
+
+        if (m_segments.isEmpty()) {
+            roll(commitSequence);
+            m_commitSegment = m_segments.firstEntry().getValue();
+            m_commitOffset = 0;
+        } else {
+            m_commitSegment = m_segments.firstEntry().getValue();
+            m_commitOffset = m_commitSegment.m_sequence == commitSequence ? commitOffset : 0;
+        }
+
+        // find the end of each segment and count the records to replay
+        for (final Segment segment : m_segments.values()) {
+            int offset = segment == m_commitSegment ? m_commitOffset : 0;
+            byte[] bytes;
+            while ((bytes = readRecord(segment, offset)) != null) {
+                offset += HEADER_SIZE + bytes.length;
+                m_unreadCount++;
+            }
+            segment.m_writeOffset = offset;
+        }
+
+        m_readSegment = m_commitSegment;
+        m_readOffset = m_commitOffset;
+
+        if (m_unreadCount > 0) {
+            LOG.info("Recovered {} alarms from journal {}", m_unreadCount, m_directory);
+        }
+    }
+
+    /**
+     * Appends an alarm to the journal.
+     *
+     * @param alarm the alarm
+     * @return false if the journal is full
+     */
+    public synchronized boolean append(final Serializable alarm) {
+        final byte[] bytes;
+        try {
+            bytes = serialize(alarm);
+        } catch (final IOException e) {
+            LOG.warn("Unable to serialize alarm {}, it will not be preserved", alarm, e);
+            return true;
+        }
+
+        Segment segment = m_segments.lastEntry().getValue();
+        if (segment.m_writeOffset + HEADER_SIZE + bytes.length > segment.m_buffer.capacity()) {
+            final int size = Math.max(m_segmentSize, HEADER_SIZE + bytes.length);
+            if (m_mappedSize + size > m_maxSize) {
+                return false;
+            }
+            try {
+                segment = roll(segment.m_sequence + 1, size);
+            } catch (final IOException e) {
+                LOG.warn("Unable to create a new segment in alarm journal {}", m_directory, e);
+                return false;
+            }
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        final int offset = segment.m_writeOffset;
+        segment.m_buffer.position(offset + HEADER_SIZE);
+        segment.m_buffer.put(bytes);
+        segment.m_buffer.putInt(offset + 4, (int)crc.getValue());
+        segment.m_buffer.putInt(offset, bytes.length);
+        segment.m_writeOffset = offset + HEADER_SIZE + bytes.length;
+
+        m_unreadCount++;
+        return true;
+    }
+
+    /**
+     * Reads the next alarms in the order they were appended.
+     *
+     * @param alarms the list the alarms are added to
+     * @param max the maximum number of alarms to read
+     * @return the number of alarms read
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> int read(final List<T> alarms, final int max) {
+        int read = 0;
+        while (read < max && m_unreadCount > 0) {
+            final byte[] bytes = readRecord(m_readSegment, m_readOffset);
+            if (bytes == null) {
+                m_readSegment = m_segments.higherEntry(m_readSegment.m_sequence).getValue();
+                m_readOffset = 0;
+                continue;
+            }
+            m_readOffset += HEADER_SIZE + bytes.length;
+            m_unreadCount--;
+            m_uncommittedCount++;
+
+            try {
+                alarms.add((T)deserialize(bytes));
+                read++;
+            } catch (final Exception e) {
+                LOG.warn("Skipping alarm in journal {} that cannot be read", m_directory, e);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Commits all alarms that were read, they will not be read again.
+     */
+    public synchronized void commit() {
+        m_commitSegment = m_readSegment;
+        m_commitOffset = m_readOffset;
+        m_uncommittedCount = 0;
+
+        m_position.putLong(0, m_commitSegment.m_sequence);
+        m_position.putInt(8, m_commitOffset);
+
+        // compact the segments that have been completely committed
+        for (final Iterator<Map.Entry<Long, Segment>> it = m_segments.entrySet().iterator(); it.hasNext(); ) {
+            final Segment segment = it.next().getValue();
+            if (segment.m_sequence >= m_commitSegment.m_sequence) {
+                break;
+            }
+            it.remove();
+            delete(segment);
+        }
+    }
+
+    /**
+     * Removes all alarms from the journal.
+     */
+    public synchronized void clear() {
+        final long sequence = m_segments.lastKey() + 1;
+        for (final Segment segment : m_segments.values()) {
+            delete(segment);
+        }
+        m_segments.clear();
+        try {
+            m_readSegment = roll(sequence);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to create a new segment in alarm journal " + m_directory, e);
+        }
+        m_readOffset = 0;
+        m_unreadCount = 0;
+        commit();
+    }
+
+    /**
+     * @return true if all alarms have been read
+     */
+    public synchronized boolean isEmpty() {
+        return m_unreadCount == 0;
+    }
+
+    /**
+     * @return the number of alarms that have not been read yet
+     */
+    public synchronized int getUnreadCount() {
+        return m_unreadCount;
+    }
+
+    /**
+     * @return the number of alarms that have not been committed yet
+     */
+    public synchronized int size() {
+        return m_unreadCount + m_uncommittedCount;
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public synchronized int getSegmentCount() {
+        return m_segments.size();
+    }
+
+    /**
+     * Writes all changes through to disk.
+     */
+    public synchronized void flush() {
+        for (final Segment segment : m_segments.values()) {
+            segment.m_buffer.force();
+        }
+        m_position.force();
+    }
+
+    private Segment roll(final long sequence) throws IOException {
+        return roll(sequence, m_segmentSize);
+    }
+
+    private Segment roll(final long sequence, final int size) throws IOException {
+        final File file = new File(m_directory, String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        final Segment segment = new Segment(sequence, file, map(file, size));
+        m_segments.put(sequence, segment);
+        m_mappedSize += size;
+        return segment;
+    }
+
+    private void delete(final Segment segment) {
+        m_mappedSize -= segment.m_buffer.capacity();
+        unmap(segment.m_buffer);
+        if (!segment.m_file.delete()) {
+            LOG.warn("Unable to delete alarm journal segment {}", segment.m_file);
+        }
+    }
+
+    /**
+     * @return the contents of the record at the offset, or null at the end of the segment
+     */
+    private static byte[] readRecord(final Segment segment, final int offset) {
+        final MappedByteBuffer buffer = segment.m_buffer;
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        final int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.position(offset + HEADER_SIZE);
+        buffer.get(bytes);
+        // a record with a bad CRC was torn by a crash, nothing after it was written
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return buffer.getInt(offset + 4) == (int)crc.getValue() ? bytes : null;
+    }
+
+    private static MappedByteBuffer map(final File file, final int size) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Releases the mapping of a segment before its file is deleted, rather
+     * than whenever the buffer happens to be collected.  There is no public
+     * API for this, so the buffer's cleaner is invoked reflectively; if the
+     * JVM does not allow it the mapping is left to the garbage collector.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9 and later
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (final NoSuchMethodException e) {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    final Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            }
+        } catch (final Exception e) {
+            LOG.debug("Unable to unmap alarm journal segment, it will be released when collected", e);
+        }
+    }
+
+    private static byte[] serialize(final Serializable alarm) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(alarm);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(final byte[] bytes) throws IOException, ClassNotFoundException {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.alarmd.api.support;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -43,6 +44,9 @@ import org.opennms.netmgt.alarmd.api.Preservable;
  * Based on Matt's queue implementation of event forwarding in opennmsd (OVAPI daemon)
  * When in forwarding state, uses Nagle's algorithm to batch up alarms for forwarding by the NBI.
  * 
+ * When a journal is set, alarms preserved during a forwarding failure are spilled to it instead
+ * of being kept in memory, and alarms left in it by a previous run are replayed first.
+ * 
  * FIXME: Need to make sure the are reasonable defaults in the configuration just-in-case
  * the NBI implementations don't set the batch size, etc. 
  * 
@@ -58,6 +62,16 @@ class AlarmQueue<T extends Preservable> {
         abstract void forwardFailed(List<T> alarms);
 
         protected void addToPreservedQueue(T a) {
+            if (m_journal != null) {
+                if (!m_journal.append((Serializable)a)) {
+                    LOG.warn("Alarm journal is full, discarding {} preserved alarms", m_journal.size());
+                    m_nextBatch.clear();
+                    m_journal.clear();
+                    m_journal.append((Serializable)m_statusFactory.createSyncLostMessage());
+                    m_journal.append((Serializable)a);
+                }
+                return;
+            }
             if (m_preservedQueue.size() >= m_maxPreservedAlarms) {
                 m_nextBatch.clear();
                 m_preservedQueue.clear();
@@ -83,7 +97,22 @@ class AlarmQueue<T extends Preservable> {
         }
 
         protected void loadNextBatch() {
-            m_preservedQueue.drainTo(m_nextBatch, m_maxBatchSize - m_nextBatch.size());
+            if (m_journal != null) {
+                m_journal.read(m_nextBatch, m_maxBatchSize - m_nextBatch.size());
+            } else {
+                m_preservedQueue.drainTo(m_nextBatch, m_maxBatchSize - m_nextBatch.size());
+            }
+        }
+
+        protected boolean isPreservedQueueEmpty() {
+            return m_journal != null ? m_journal.isEmpty() : m_preservedQueue.isEmpty();
+        }
+
+        protected void batchForwarded() {
+            m_nextBatch.clear();
+            if (m_journal != null) {
+                m_journal.commit();
+            }
         }
         
     }
@@ -131,7 +160,7 @@ class AlarmQueue<T extends Preservable> {
             
             addPreservedToPreservedQueue(alarms);
             
-            if (!m_preservedQueue.isEmpty()) {
+            if (!isPreservedQueueEmpty()) {
                setState(FAILING);
             }
         }
@@ -161,8 +190,8 @@ class AlarmQueue<T extends Preservable> {
 
         @Override
         public void forwardSuccessful(List<T> alarms) {
-            m_nextBatch.clear();
-            if (m_preservedQueue.isEmpty()) {
+            batchForwarded();
+            if (isPreservedQueueEmpty()) {
                 setState(FORWARDING);
             } else {
                 setState(RECOVERING);
@@ -189,8 +218,8 @@ class AlarmQueue<T extends Preservable> {
 
         @Override
         public void forwardSuccessful(List<T> alarms) {
-            m_nextBatch.clear();
-            if (m_preservedQueue.isEmpty()) {
+            batchForwarded();
+            if (isPreservedQueueEmpty()) {
                 setState(FORWARDING);
             }
         }
@@ -213,6 +242,9 @@ class AlarmQueue<T extends Preservable> {
     // queue for preserving alarms that are being saved during a forwarding failure
     private BlockingQueue<T> m_preservedQueue = new LinkedBlockingQueue<T>();
     
+    // disk backed replacement for the preserved queue, if set
+    private AlarmJournal m_journal;
+
     // a list of alarms that are pending due to a forwarding failure
     private List<T> m_nextBatch;
     
@@ -258,8 +290,25 @@ class AlarmQueue<T extends Preservable> {
         m_maxBatchSize = maxBatchSize;
     }
     
+    public AlarmJournal getJournal() {
+        return m_journal;
+    }
+
+    /**
+     * The alarms must be {@link java.io.Serializable} to be journaled.  The
+     * journal is not bounded by {@link #getMaxPreservedAlarms()} but by its
+     * own maximum size.
+     */
+    public void setJournal(AlarmJournal journal) {
+        m_journal = journal;
+    }
+
     public void init() {
        m_nextBatch = new ArrayList<T>(m_maxBatchSize); 
+       if (m_journal != null && !m_journal.isEmpty()) {
+           // replay what was left over from the last run before anything new
+           setState(RECOVERING);
+       }
     }
 
     public void discard(T a) {
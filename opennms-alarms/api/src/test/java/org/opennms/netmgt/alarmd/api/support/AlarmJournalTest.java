@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.alarmd.api.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the AlarmJournal for NBI
+ */
+public class AlarmJournalTest {
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    @Test
+    public void testReadAndCommit() throws Exception {
+        AlarmJournal journal = new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024);
+        assertTrue(journal.isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(journal.append("alarm" + i));
+        }
+        assertEquals(10, journal.size());
+
+        List<Object> alarms = new ArrayList<Object>();
+        assertEquals(4, journal.read(alarms, 4));
+        assertEquals("alarm0", alarms.get(0));
+        assertEquals("alarm3", alarms.get(3));
+        assertEquals(6, journal.getUnreadCount());
+        assertEquals(10, journal.size());
+
+        journal.commit();
+        assertEquals(6, journal.size());
+
+        alarms.clear();
+        assertEquals(6, journal.read(alarms, 100));
+        assertEquals("alarm4", alarms.get(0));
+        assertEquals("alarm9", alarms.get(5));
+        assertTrue(journal.isEmpty());
+        journal.commit();
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void testRestartRecovery() throws Exception {
+        AlarmJournal journal = new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            journal.append(i);
+        }
+
+        // forward the first 300, then read another batch that is never committed
+        List<Object> alarms = new ArrayList<Object>();
+        journal.read(alarms, 300);
+        journal.commit();
+        journal.read(alarms, 100);
+        journal.flush();
+
+        journal = new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024);
+        assertEquals(700, journal.getUnreadCount());
+        alarms.clear();
+        assertEquals(700, journal.read(alarms, 1000));
+        for (int i = 0; i < 700; i++) {
+            assertEquals(300 + i, alarms.get(i));
+        }
+
+        // appends after a restart go after the recovered alarms
+        journal.append(1000);
+        alarms.clear();
+        assertEquals(1, journal.read(alarms, 10));
+        assertEquals(1000, alarms.get(0));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        AlarmJournal journal = new AlarmJournal(m_folder.getRoot(), 1024, 1024 * 1024);
+        for (int i = 0; i < 500; i++) {
+            journal.append(i);
+        }
+        assertTrue(journal.getSegmentCount() > 1);
+
+        List<Object> alarms = new ArrayList<Object>();
+        journal.read(alarms, 500);
+        journal.commit();
+        assertEquals(1, journal.getSegmentCount());
+        assertEquals(2, m_folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        AlarmJournal journal = new AlarmJournal(m_folder.getRoot(), 1024, 4096);
+        int appended = 0;
+        while (journal.append(appended)) {
+            appended++;
+        }
+        assertTrue(appended > 0);
+        assertEquals(appended, journal.size());
+
+        journal.clear();
+        assertTrue(journal.isEmpty());
+        assertEquals(0, journal.size());
+        assertTrue(journal.append("alarm"));
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        AlarmJournal journal = new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024);
+        journal.append("alarm0");
+        journal.append("alarm1");
+        journal.append("alarm2");
+        journal.flush();
+
+        // garble the contents of the second record as if the write had been torn by a crash
+        File segment = m_folder.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".journal");
+            }
+        })[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            long offset = 8 + raf.readInt() + 8 + 10;
+            raf.seek(offset);
+            byte b = raf.readByte();
+            raf.seek(offset);
+            raf.writeByte(~b);
+        } finally {
+            raf.close();
+        }
+
+        journal = new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024);
+        assertEquals(1, journal.getUnreadCount());
+        List<Object> alarms = new ArrayList<Object>();
+        journal.read(alarms, 10);
+        assertEquals("alarm0", alarms.get(0));
+    }
+
+    @Test(timeout=60000)
+    public void testThroughput() throws Exception {
+        final int count = 100000;
+        AlarmJournal journal = new AlarmJournal(m_folder.getRoot(), 1024 * 1024, 1024L * 1024 * 1024);
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(journal.append("uei.opennms.org/test/alarm/" + i));
+        }
+
+        List<Object> alarms = new ArrayList<Object>(100);
+        int read = 0;
+        while (!journal.isEmpty()) {
+            alarms.clear();
+            read += journal.read(alarms, 100);
+            journal.commit();
+        }
+
+        assertEquals(count, read);
+        assertEquals(1, journal.getSegmentCount());
+    }
+}
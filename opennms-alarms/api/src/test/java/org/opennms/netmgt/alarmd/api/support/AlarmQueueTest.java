@@ -32,7 +32,9 @@ import static org.junit.Assert.*;
 
 import java.util.List;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.opennms.netmgt.alarmd.api.NorthboundAlarm;
 import org.opennms.netmgt.alarmd.api.support.AlarmQueue;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -47,6 +49,9 @@ import org.opennms.netmgt.model.OnmsAlarm;
 public class AlarmQueueTest implements StatusFactory<NorthboundAlarm>{
 
     public int alarmNumber = 0;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
     
     private NorthboundAlarm createAlarm() {
         OnmsAlarm alarm = new OnmsAlarm();
@@ -163,6 +168,59 @@ public class AlarmQueueTest implements StatusFactory<NorthboundAlarm>{
         
     }
 
+    @Test
+    public void testJournaledFailureAndRestart() throws Exception {
+        AlarmQueue<NorthboundAlarm> queue = new AlarmQueue<NorthboundAlarm>(this);
+        queue.setMaxBatchSize(3);
+        queue.setJournal(new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024));
+        queue.init();
+
+        queue.preserve(createAlarm()); // 1
+        queue.accept(createAlarm());  // 2
+        queue.preserve(createAlarm()); // 3
+
+        List<NorthboundAlarm> alarms = queue.getAlarmsToForward();
+        assertEquals(3, alarms.size());
+        queue.forwardFailed(alarms);
+
+        queue.preserve(createAlarm()); // 4
+        queue.accept(createAlarm());  // 5
+
+        alarms = queue.getAlarmsToForward();
+        assertEquals(3, alarms.size());
+        assertPreservedAlarm(alarms, 0, 1);
+        assertPreservedAlarm(alarms, 1, 3);
+        assertPreservedAlarm(alarms, 2, 4);
+        queue.forwardSuccessful(alarms);
+
+        queue.preserve(createAlarm()); // 6
+        queue.preserve(createAlarm()); // 7
+
+        alarms = queue.getAlarmsToForward();
+        assertEquals(2, alarms.size());
+        queue.forwardFailed(alarms);
+
+        // restart with the same journal, the alarms that were not forwarded are replayed
+        queue.getJournal().flush();
+        queue = new AlarmQueue<NorthboundAlarm>(this);
+        queue.setMaxBatchSize(3);
+        queue.setJournal(new AlarmJournal(m_folder.getRoot(), 4096, 1024 * 1024));
+        queue.init();
+
+        queue.accept(createAlarm()); // 8
+
+        alarms = queue.getAlarmsToForward();
+        assertEquals(2, alarms.size());
+        assertPreservedAlarm(alarms, 0, 6);
+        assertPreservedAlarm(alarms, 1, 7);
+        queue.forwardSuccessful(alarms);
+
+        alarms = queue.getAlarmsToForward();
+        assertEquals(1, alarms.size());
+        assertEquals(8, alarms.get(0).getId().intValue());
+        queue.forwardSuccessful(alarms);
+    }
+
     private void assertPreservedAlarm(List<NorthboundAlarm> alarms, int index, int id) {
         assertTrue(alarms.get(index).isPreserved());
         assertEquals(id, alarms.get(index).getId().intValue());
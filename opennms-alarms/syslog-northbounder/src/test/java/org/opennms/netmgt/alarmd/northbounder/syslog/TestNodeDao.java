@@ -258,6 +258,13 @@ public class TestNodeDao implements NodeDao {
 		return null;
 	}
 
+	@Override
+	public SurveillanceStatus[][] findSurveillanceStatusMatrix(
+			List<? extends Collection<OnmsCategory>> rowCategories,
+			List<? extends Collection<OnmsCategory>> columnCategories) {
+		return null;
+	}
+
 	@Override
 	public Integer getNextNodeId(Integer nodeId) {
 		return null;
@@ -87,6 +87,13 @@ public interface DiscoveryConfigurationFactory {
 	 */
 	int getIntraPacketDelay();
 	
+	/**
+	 * <p>getPacketsPerSecond</p>
+	 * 
+	 * @return an int
+	 */
+	int getPacketsPerSecond();
+	
 	/**
 	 * <p>getExcludingInterator</p>
 	 * 
@@ -28,14 +28,20 @@
 
 package org.opennms.netmgt.xml.eventconf;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -44,8 +50,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -56,6 +65,8 @@ import javax.xml.bind.annotation.XmlType;
 
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.core.xml.ValidateUsing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.dao.DataAccessResourceFailureException;
@@ -81,6 +92,8 @@ public class Events implements Serializable {
 
 	private static final long serialVersionUID = -3725006529763434264L;
 
+	private static final Logger LOG = LoggerFactory.getLogger(Events.class);
+
 	private static final String[] EMPTY_STRING_ARRAY = new String[0];
 	private static final Event[] EMPTY_EVENT_ARRAY = new Event[0];
 
@@ -116,6 +129,25 @@ public class Events implements Serializable {
 	@XmlTransient
 	private EventOrdering m_ordering;
 	
+	/**
+	 * Last modification time and size of the event file this was loaded
+	 * from, used to skip unchanged files on reload.
+	 */
+	@XmlTransient
+	private transient long m_lastModified = -1;
+
+	@XmlTransient
+	private transient long m_contentLength = -1;
+
+	/**
+	 * Serialized copy of the events as they were parsed from the file.  An
+	 * unchanged file is restored from this on reload, so the new
+	 * configuration never shares objects with the one that is in use, and
+	 * changes made to the loaded events in memory are discarded as before.
+	 */
+	@XmlTransient
+	private transient byte[] m_snapshot;
+
 	public EventOrdering getOrdering() {
 	    return m_ordering;
 	}
@@ -335,22 +367,143 @@ public class Events implements Serializable {
 	
 
 	public void loadEventFiles(Resource configResource) throws IOException {
+		loadEventFiles(configResource, null);
+	}
+
+	/**
+	 * Loads the included event files.  The files are parsed in parallel, and
+	 * files that have not changed on disk since they were loaded into
+	 * <code>previous</code> are taken over from it instead of being parsed
+	 * again.
+	 *
+	 * @param configResource the root event configuration resource
+	 * @param previous the previously loaded root configuration, or null
+	 * @throws IOException if an event file cannot be read
+	 */
+	public void loadEventFiles(final Resource configResource, final Events previous) throws IOException {
+		final long start = System.currentTimeMillis();
+		final Map<String, Events> loadedEventFiles = new LinkedHashMap<String, Events>();
+		final Map<String, Future<Events>> pending = new LinkedHashMap<String, Future<Events>>();
+		int unchanged = 0;
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(m_eventFiles.size(), Runtime.getRuntime().availableProcessors())));
+		try {
+			for(final String eventFile : m_eventFiles) {
+				final Resource eventResource = getRelative(configResource, eventFile);
+				final long lastModified = getLastModified(eventResource);
+				final long contentLength = getContentLength(eventResource);
+
+				final Events existing = previous == null ? null : previous.getLoadEventsByFile(eventFile);
+				if (existing != null && existing.m_snapshot != null && lastModified > 0 && existing.m_lastModified == lastModified && existing.m_contentLength == contentLength) {
+					LOG.debug("Event file {} is unchanged, restoring it from the previous load", eventFile);
+					unchanged++;
+					loadedEventFiles.put(eventFile, null);
+					pending.put(eventFile, executor.submit(new Callable<Events>() {
+						@Override
+						public Events call() throws IOException {
+							return restore(existing.m_snapshot, lastModified, contentLength);
+						}
+					}));
+					continue;
+				}
+
+				loadedEventFiles.put(eventFile, null);
+				pending.put(eventFile, executor.submit(new Callable<Events>() {
+					@Override
+					public Events call() throws IOException {
+						final Events events = loadEventFile(eventResource);
+						events.m_snapshot = snapshot(events);
+						events.m_lastModified = lastModified;
+						events.m_contentLength = contentLength;
+						return events;
+					}
+				}));
+			}
+
+			for(final Entry<String, Future<Events>> entry : pending.entrySet()) {
+				loadedEventFiles.put(entry.getKey(), waitFor(entry.getValue()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
 		m_loadedEventFiles.clear();
-		
-		for(String eventFile : m_eventFiles) {
-			Resource eventResource = getRelative(configResource, eventFile);
-			Events events = JaxbUtils.unmarshal(Events.class, eventResource);
-			if (events.getEventCount() <= 0) {
-				throw new IllegalStateException("Uh oh! An event file "+eventResource.getFile()+" with no events has been laoded!");
+		m_loadedEventFiles.putAll(loadedEventFiles);
+		LOG.info("Loaded {} event files ({} unchanged) in {} ms", loadedEventFiles.size(), unchanged, System.currentTimeMillis() - start);
+	}
+
+	private static Events loadEventFile(final Resource eventResource) throws IOException {
+		Events events = JaxbUtils.unmarshal(Events.class, eventResource);
+		if (events.getEventCount() <= 0) {
+			throw new IllegalStateException("Uh oh! An event file "+eventResource.getFile()+" with no events has been laoded!");
+		}
+		if (events.getGlobal() != null) {
+			throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot have a 'global' element", null);
+		}
+		if (events.getEventFileCollection().size() > 0) {
+			throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot include other configuration files: " + StringUtils.collectionToCommaDelimitedString(events.getEventFileCollection()), null);
+		}
+		return events;
+	}
+
+	private static byte[] snapshot(final Events events) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		try {
+			out.writeObject(events);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Events restore(final byte[] snapshot, final long lastModified, final long contentLength) throws IOException {
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(snapshot));
+		try {
+			final Events events = (Events)in.readObject();
+			events.m_snapshot = snapshot;
+			events.m_lastModified = lastModified;
+			events.m_contentLength = contentLength;
+			return events;
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("Unable to restore event file snapshot", e);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Events waitFor(final Future<Events> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading event files");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
 			}
-            if (events.getGlobal() != null) {
-                throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot have a 'global' element", null);
-            }
-            if (events.getEventFileCollection().size() > 0) {
-                throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot include other configuration files: " + StringUtils.collectionToCommaDelimitedString(events.getEventFileCollection()), null);
-            }
-
-			m_loadedEventFiles.put(eventFile, events);
+			throw new UndeclaredThrowableException(cause);
+		}
+	}
+
+	private static long getLastModified(final Resource resource) {
+		try {
+			return resource.lastModified();
+		} catch (final IOException e) {
+			return -1;
+		}
+	}
+
+	private static long getContentLength(final Resource resource) {
+		try {
+			return resource.contentLength();
+		} catch (final IOException e) {
+			return -1;
 		}
 	}
 
@@ -385,17 +538,26 @@ public class Events implements Serializable {
 	
 	public Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
 		String key = m_partition.group(matchingEvent);
-		SortedSet<Event> potentialMatches = new TreeSet<Event>(m_nullPartitionedEvents);
-		if (key != null) {
-			List<Event> events = m_partitionedEvents.get(key);
-			if (events != null) {
-			    potentialMatches.addAll(events);
-			}
+		List<Event> partitionEvents = key == null ? null : m_partitionedEvents.get(key);
+		if (partitionEvents == null) {
+			partitionEvents = Collections.emptyList();
 		}
-			
-			
-		
-		for(Event event : potentialMatches) {
+
+		// Both lists are in event order already, so walk them merged
+		// rather than building a sorted set for every lookup
+		int nullIndex = 0;
+		int partitionIndex = 0;
+		while (nullIndex < m_nullPartitionedEvents.size() || partitionIndex < partitionEvents.size()) {
+			Event event;
+			if (partitionIndex >= partitionEvents.size()) {
+				event = m_nullPartitionedEvents.get(nullIndex++);
+			} else if (nullIndex >= m_nullPartitionedEvents.size()) {
+				event = partitionEvents.get(partitionIndex++);
+			} else if (m_nullPartitionedEvents.get(nullIndex).compareTo(partitionEvents.get(partitionIndex)) < 0) {
+				event = m_nullPartitionedEvents.get(nullIndex++);
+			} else {
+				event = partitionEvents.get(partitionIndex++);
+			}
 			if (event.matches(matchingEvent)) {
 				return event;
 			}
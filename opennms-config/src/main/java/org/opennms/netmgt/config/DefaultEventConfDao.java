@@ -48,12 +48,15 @@ import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
 import org.opennms.netmgt.xml.eventconf.Events.EventCriteria;
 import org.opennms.netmgt.xml.eventconf.Field;
 import org.opennms.netmgt.xml.eventconf.Partition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataRetrievalFailureException;
 
 public class DefaultEventConfDao implements EventConfDao, InitializingBean {
+	private static final Logger LOG = LoggerFactory.getLogger(DefaultEventConfDao.class);
 	private static final String DEFAULT_PROGRAMMATIC_STORE_RELATIVE_PATH = "events/programmatic.events.xml";
 
     /**
@@ -62,11 +65,11 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
      */
     private String m_programmaticStoreRelativePath = DEFAULT_PROGRAMMATIC_STORE_RELATIVE_PATH;
 
-	private Events m_events;
+	private volatile Events m_events;
 
 	private Resource m_configResource;
 
-	private Partition m_partition;
+	private volatile Partition m_partition;
 	
     private static class EventLabelComparator implements Comparator<Event>, Serializable {
 
@@ -275,13 +278,15 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	
 	private synchronized void loadConfig() throws DataAccessException {
 		try {
+			final long start = System.currentTimeMillis();
 			Events events = JaxbUtils.unmarshal(Events.class, m_configResource);
-			events.loadEventFiles(m_configResource);
+			events.loadEventFiles(m_configResource, m_events);
 			
 			m_partition = new EnterpriseIdPartition();
 			events.initialize(m_partition, new EventOrdering());
 
 			m_events = events;
+			LOG.info("Loaded {} in {} ms", m_configResource, System.currentTimeMillis() - start);
 
 		} catch (Exception e) {
 			throw new DataRetrievalFailureException("Unabled to load " + m_configResource, e);
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.config;
 
+import java.beans.PropertyDescriptor;
 import java.beans.PropertyEditorSupport;
 import java.beans.PropertyVetoException;
 import java.io.ByteArrayInputStream;
@@ -38,12 +39,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,6 +65,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.ConfigFileConstants;
 import org.opennms.core.utils.MatchTable;
@@ -69,6 +82,7 @@ import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.FatalBeanException;
 import org.springframework.beans.PropertyAccessorFactory;
@@ -87,6 +101,31 @@ import org.springframework.beans.PropertyAccessorFactory;
  */
 public final class EventTranslatorConfigFactory implements EventTranslatorConfig {
     private static final Logger LOG = LoggerFactory.getLogger(EventTranslatorConfigFactory.class);
+
+    /**
+     * Maximum number of cached sql-value lookup results
+     */
+    private static final int SQL_CACHE_SIZE = Integer.getInteger("org.opennms.netmgt.translator.sqlCacheSize", 1000);
+
+    /**
+     * How long a cached sql-value lookup result is used, in milliseconds
+     */
+    private static final long SQL_CACHE_TTL = Long.getLong("org.opennms.netmgt.translator.sqlCacheTtl", 30000);
+
+    /**
+     * Number of threads used to evaluate the mappings of one translation spec
+     */
+    private static final int TRANSLATION_THREADS = Integer.getInteger("org.opennms.netmgt.translator.threads", Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Minimum number of mappings in one translation spec before they are
+     * evaluated on the translator pool; smaller specs are translated on the
+     * calling thread
+     */
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("org.opennms.netmgt.translator.parallelThreshold", 8);
+
+    private static ExecutorService s_executor = null;
+
     /**
      * The singleton instance of this factory
      */
@@ -97,7 +136,12 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
      */
     private EventTranslatorConfiguration m_config;
 
-    private List<TranslationSpec> m_translationSpecs;
+    /**
+     * The translation specs compiled from the config
+     */
+    private volatile TranslationSpecs m_translationSpecs;
+
+    private volatile SqlResultCache m_sqlResultCache;
 
     /**
      * This member is set to true if the configuration file has been loaded.
@@ -146,8 +190,14 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     }
 
     private synchronized void unmarshall(InputStream stream, DataSource dbConnFactory) throws MarshalException, ValidationException {
-        m_config = CastorUtils.unmarshal(EventTranslatorConfiguration.class, stream);
+        final EventTranslatorConfiguration config = CastorUtils.unmarshal(EventTranslatorConfiguration.class, stream);
+        if (m_translationSpecs != null) {
+            logTranslationStatistics();
+        }
+        m_config = config;
         m_dbConnFactory = dbConnFactory;
+        m_sqlResultCache = new SqlResultCache(SQL_CACHE_SIZE, SQL_CACHE_TTL);
+        m_translationSpecs = new TranslationSpecs(constructTranslationSpecs());
     }
 
     private synchronized void unmarshall(InputStream stream) throws MarshalException, ValidationException {
@@ -304,7 +354,7 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     /** {@inheritDoc} */
     @Override
     public boolean isTranslationEvent(Event e) {
-        for (TranslationSpec spec : getTranslationSpecs()) {
+        for (TranslationSpec spec : getTranslationSpecs().getSpecs(e.getUei())) {
             if (spec.matches(e))
                 return true;
         }
@@ -315,48 +365,254 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     @Override
     public List<Event> translateEvent(Event e) {
         ArrayList<Event> events = new ArrayList<Event>();
-        for (TranslationSpec spec : getTranslationSpecs()) {
+        for (TranslationSpec spec : getTranslationSpecs().getSpecs(e.getUei())) {
             events.addAll(spec.translate(e));
         }
         return events;
     }
 
-    private List<TranslationSpec> getTranslationSpecs() {
-        if (m_translationSpecs == null)
-            m_translationSpecs = constructTranslationSpecs();
+    /**
+     * Returns the hit counts and timings of the translation specs since the
+     * configuration was last loaded, in configuration order.
+     *
+     * @return a {@link java.util.List} object.
+     */
+    public List<TranslationStatistics> getTranslationStatistics() {
+        final List<TranslationStatistics> stats = new ArrayList<TranslationStatistics>();
+        for (TranslationSpec spec : getTranslationSpecs().getSpecs()) {
+            stats.add(spec.getStatistics());
+        }
+        return stats;
+    }
+
+    /**
+     * <p>getSqlCacheHits</p>
+     *
+     * @return the number of sql-value lookups answered from the cache
+     */
+    public long getSqlCacheHits() {
+        return m_sqlResultCache.getHits();
+    }
+
+    /**
+     * <p>getSqlCacheMisses</p>
+     *
+     * @return the number of sql-value lookups that went to the database
+     */
+    public long getSqlCacheMisses() {
+        return m_sqlResultCache.getMisses();
+    }
+
+    private void logTranslationStatistics() {
+        for (TranslationStatistics stats : getTranslationStatistics()) {
+            LOG.info("Translation spec {}: {} events, {} translated events, {} ms", stats.getUei(), stats.getEventCount(), stats.getTranslatedCount(), stats.getTotalTime());
+        }
+    }
 
+    private TranslationSpecs getTranslationSpecs() {
         return m_translationSpecs;
     }
 
     private List<TranslationSpec> constructTranslationSpecs() {
         List<TranslationSpec> specs = new ArrayList<TranslationSpec>();
+        if (m_config.getTranslation() == null) return specs;
+
         for (EventTranslationSpec eventTrans : m_config.getTranslation().getEventTranslationSpecCollection()) {
-            specs.add(new TranslationSpec(eventTrans));
+            specs.add(new TranslationSpec(eventTrans, specs.size()));
         }
         return specs;
     }
 
-    class TranslationSpec {
-        private EventTranslationSpec m_spec;
-        private List<TranslationMapping> m_translationMappings;
-        TranslationSpec(EventTranslationSpec spec) {
+    private static synchronized ExecutorService getExecutor() {
+        if (s_executor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(TRANSLATION_THREADS, TRANSLATION_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new LogPreservingThreadFactory("EventTranslator", TRANSLATION_THREADS));
+            executor.allowCoreThreadTimeOut(true);
+            s_executor = executor;
+        }
+        return s_executor;
+    }
+
+    /**
+     * The hit count and timing of one translation spec.
+     */
+    public static class TranslationStatistics {
+        private final String m_uei;
+        private final long m_eventCount;
+        private final long m_translatedCount;
+        private final long m_totalTime;
+
+        TranslationStatistics(String uei, long eventCount, long translatedCount, long totalTime) {
+            m_uei = uei;
+            m_eventCount = eventCount;
+            m_translatedCount = translatedCount;
+            m_totalTime = totalTime;
+        }
+
+        /**
+         * @return the UEI of the spec
+         */
+        public String getUei() {
+            return m_uei;
+        }
+
+        /**
+         * @return the number of events with a matching UEI that were run through the spec
+         */
+        public long getEventCount() {
+            return m_eventCount;
+        }
+
+        /**
+         * @return the number of events the spec translated them into
+         */
+        public long getTranslatedCount() {
+            return m_translatedCount;
+        }
+
+        /**
+         * @return the time spent translating, in milliseconds
+         */
+        public long getTotalTime() {
+            return m_totalTime;
+        }
+    }
+
+    /**
+     * The compiled translation specs, indexed by UEI.  Specs whose UEI ends
+     * with a slash match every UEI starting with it and are kept apart.
+     */
+    static class TranslationSpecs {
+        private final List<TranslationSpec> m_specs;
+        private final Map<String, List<TranslationSpec>> m_specsByUei = new HashMap<String, List<TranslationSpec>>();
+        private final List<TranslationSpec> m_prefixSpecs = new ArrayList<TranslationSpec>();
+
+        TranslationSpecs(List<TranslationSpec> specs) {
+            m_specs = Collections.unmodifiableList(specs);
+            for (TranslationSpec spec : specs) {
+                List<TranslationSpec> ueiSpecs = m_specsByUei.get(spec.getUei());
+                if (ueiSpecs == null) {
+                    ueiSpecs = new ArrayList<TranslationSpec>(1);
+                    m_specsByUei.put(spec.getUei(), ueiSpecs);
+                }
+                ueiSpecs.add(spec);
+                if (spec.getUei().endsWith("/")) {
+                    m_prefixSpecs.add(spec);
+                }
+            }
+        }
+
+        List<TranslationSpec> getSpecs() {
+            return m_specs;
+        }
+
+        /**
+         * @return the specs matching the UEI, in configuration order
+         */
+        List<TranslationSpec> getSpecs(String uei) {
+            if (uei == null) return Collections.emptyList();
+
+            final List<TranslationSpec> exact = m_specsByUei.get(uei);
+            List<TranslationSpec> specs = null;
+            for (TranslationSpec spec : m_prefixSpecs) {
+                if (uei.startsWith(spec.getUei()) && !uei.equals(spec.getUei())) {
+                    if (specs == null) {
+                        specs = new ArrayList<TranslationSpec>();
+                    }
+                    specs.add(spec);
+                }
+            }
+            if (specs == null) {
+                return exact == null ? Collections.<TranslationSpec>emptyList() : exact;
+            }
+            if (exact != null) {
+                specs.addAll(exact);
+                Collections.sort(specs);
+            }
+            return specs;
+        }
+    }
+
+    class TranslationSpec implements Comparable<TranslationSpec> {
+        private final EventTranslationSpec m_spec;
+        private final int m_index;
+        private final List<TranslationMapping> m_translationMappings;
+        private final AtomicLong m_eventCount = new AtomicLong();
+        private final AtomicLong m_translatedCount = new AtomicLong();
+        private final AtomicLong m_totalNanos = new AtomicLong();
+        TranslationSpec(EventTranslationSpec spec, int index) {
             m_spec = spec;
-            m_translationMappings = null; // lazy init
+            m_index = index;
+            m_translationMappings = constructTranslationMappings();
         }
         public List<Event> translate(Event e) {
             // short circuit here is the uei doesn't match
             if (!ueiMatches(e)) return Collections.emptyList();
 
             // uei matches now go thru the mappings
+            final long start = System.nanoTime();
+            try {
+                final List<Event> events = TRANSLATION_THREADS > 1 && m_translationMappings.size() >= Math.max(2, PARALLEL_THRESHOLD) ? translateConcurrently(e) : translateSerially(e);
+                m_translatedCount.addAndGet(events.size());
+                return events;
+            } finally {
+                m_eventCount.incrementAndGet();
+                m_totalNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        private List<Event> translateSerially(Event e) {
             ArrayList<Event> events = new ArrayList<Event>();
-            for (TranslationMapping mapping : getTranslationMappings()) {
+            for (TranslationMapping mapping : m_translationMappings) {
                 Event translatedEvent = mapping.translate(e);
                 if (translatedEvent != null)
                     events.add(translatedEvent);
             }
+            return events;
+        }
+
+        /*
+         * The mappings are independent of each other; evaluate them on the
+         * translator pool and collect the results in mapping order.
+         */
+        private List<Event> translateConcurrently(final Event e) {
+            List<Callable<Event>> tasks = new ArrayList<Callable<Event>>(m_translationMappings.size());
+            for (final TranslationMapping mapping : m_translationMappings) {
+                tasks.add(new Callable<Event>() {
+                    @Override
+                    public Event call() {
+                        return mapping.translate(e);
+                    }
+                });
+            }
 
+            ArrayList<Event> events = new ArrayList<Event>();
+            try {
+                for (Future<Event> future : getExecutor().invokeAll(tasks)) {
+                    Event translatedEvent = future.get();
+                    if (translatedEvent != null)
+                        events.add(translatedEvent);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new TranslationFailedException("Interrupted while translating event "+e.getUei());
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)ex.getCause();
+                }
+                throw new TranslationFailedException("Unable to translate event "+e.getUei()+": "+ex.getCause());
+            }
             return events;
         }
+
+        TranslationStatistics getStatistics() {
+            return new TranslationStatistics(getUei(), m_eventCount.get(), m_translatedCount.get(), TimeUnit.NANOSECONDS.toMillis(m_totalNanos.get()));
+        }
+
+        @Override
+        public int compareTo(TranslationSpec o) {
+            return m_index < o.m_index ? -1 : (m_index == o.m_index ? 0 : 1);
+        }
         String getUei() { return m_spec.getUei(); }
         public EventTranslationSpec getEventTranslationSpec() {
             return m_spec;
@@ -377,9 +633,7 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
         }
 
         List<TranslationMapping> getTranslationMappings() {
-            if (m_translationMappings == null)
-                m_translationMappings = constructTranslationMappings();
-            return Collections.unmodifiableList(m_translationMappings);
+            return m_translationMappings;
         }
         boolean matches(Event e) {
             // short circuit if the eui doesn't match
@@ -390,7 +644,7 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
 
             // uei matches to go thru the mappings
             LOG.debug("TransSpec.matches: checking mappings for spec.");
-            for (TranslationMapping transMap : getTranslationMappings()) {
+            for (TranslationMapping transMap : m_translationMappings) {
                 if (transMap.matches(e)) 
                     return true;
             }
@@ -407,11 +661,11 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     }
 
     class TranslationMapping {
-        Mapping m_mapping;
-        List<AssignmentSpec> m_assignments;
+        final Mapping m_mapping;
+        final List<AssignmentSpec> m_assignments;
         TranslationMapping(Mapping mapping) { 
             m_mapping = mapping;
-            m_assignments = null; // lazy init
+            m_assignments = constructAssignmentSpecs();
         }
 
         public Event translate(Event srcEvent) {
@@ -445,8 +699,6 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
         }
 
         private List<AssignmentSpec> getAssignmentSpecs() {
-            if (m_assignments == null)
-                m_assignments = constructAssignmentSpecs();
             return m_assignments;
         }
 
@@ -482,11 +734,11 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     }
 
     abstract class AssignmentSpec {
-        private Assignment m_assignment;
-        private ValueSpec m_valueSpec;
+        private final Assignment m_assignment;
+        private final ValueSpec m_valueSpec;
         AssignmentSpec(Assignment assignment) {
             m_assignment = assignment; 
-            m_valueSpec = null; // lazy init
+            m_valueSpec = constructValueSpec();
         }
 
         public void apply(Event srcEvent, Event targetEvent) {
@@ -507,8 +759,6 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
         protected abstract void setValue(Event targetEvent, String value);
 
         private ValueSpec getValueSpec() {
-            if (m_valueSpec == null)
-                m_valueSpec = constructValueSpec();
             return m_valueSpec;
         }
         boolean matches(Event e) {
@@ -630,16 +880,14 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     }
 
     class SqlValueSpec extends ValueSpec {
-        Value m_val;
-        List<ValueSpec> m_nestedValues;
+        final Value m_val;
+        final List<ValueSpec> m_nestedValues;
         public SqlValueSpec(Value val) {
             m_val = val;
-            m_nestedValues = null; // lazy init
+            m_nestedValues = constructNestedValues();
         }
 
         public List<ValueSpec> getNestedValues() {
-            if (m_nestedValues == null)
-                m_nestedValues = constructNestedValues();
             return m_nestedValues;
         }
 
@@ -659,9 +907,9 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
             }
 
             Query query = createQuery(e);
-            int rowCount = query.execute();
+            SqlResultCache.Result result = query.execute();
 
-            if (rowCount < 1) {
+            if (result.getRowCount() < 1) {
                 LOG.info("No results found for query {}. No match.", query.reproduceStatement());
                 return false;
             }
@@ -670,67 +918,67 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
         }
 
         private class Query {
-            SingleResultQuerier m_querier;
-            Object[] m_args;
+            final Object[] m_args;
 
-            Query(SingleResultQuerier querier, Object[] args) {
-                m_querier = querier;
+            Query(Object[] args) {
                 m_args = Arrays.copyOf(args, args.length);
             }
 
-            public int getRowCount() {
-                return m_querier.getCount();
-            }
-
-            public int execute() {
-                m_querier.execute(m_args);
-                return getRowCount();
+            /*
+             * The matches and the result of a mapping run the same lookup
+             * for an event, and events often repeat the same arguments, so
+             * results are served from the cache while they are fresh.
+             */
+            public SqlResultCache.Result execute() {
+                final SqlResultCache cache = m_sqlResultCache;
+                SqlResultCache.Result result = cache.get(m_val.getResult(), m_args);
+                if (result == null) {
+                    SingleResultQuerier querier = new SingleResultQuerier(m_dbConnFactory, m_val.getResult());
+                    querier.execute(m_args);
+                    Object value = querier.getCount() < 1 ? null : querier.getResult();
+                    result = cache.put(m_val.getResult(), m_args, querier.getCount(), value == null ? null : value.toString());
+                }
+                return result;
             }
 
             public String reproduceStatement() {
-                return m_querier.reproduceStatement(m_args);
-            }
-
-            public Object getResult() {
-                return m_querier.getResult();
+                return m_val.getResult()+": with vals "+Arrays.toString(m_args);
             }
 
         }
 
         public Query createQuery(Event srcEvent) {
             Object[] args = new Object[getNestedValues().size()];
-            SingleResultQuerier querier = new SingleResultQuerier(m_dbConnFactory, m_val.getResult());
             for (int i = 0; i < args.length; i++) {
                 args[i] = (getNestedValues().get(i)).getResult(srcEvent);
             }
 
-            return new Query(querier, args);
+            return new Query(args);
         }
 
         @Override
         public String getResult(Event srcEvent) {
             Query query = createQuery(srcEvent);
-            query.execute();
-            if (query.getRowCount() < 1) {
+            SqlResultCache.Result result = query.execute();
+            if (result.getRowCount() < 1) {
                 LOG.info("No results found for query {}. Returning null", query.reproduceStatement());
                 return null;
             }
             else {
-                Object result = query.getResult();
-                LOG.debug("getResult: result of single result querier is: {}", result);
-                if (result != null) {
-                    return result.toString();
-                } else {
-                    return null;
-                }
+                LOG.debug("getResult: result of single result querier is: {}", result.getValue());
+                return result.getValue();
             }
         }
 
     }
 
     abstract class AttributeValueSpec extends ValueSpec {
-        Value m_val;
-        AttributeValueSpec(Value val) { m_val = val; }
+        final Value m_val;
+        final Pattern m_pattern;
+        AttributeValueSpec(Value val) {
+            m_val = val;
+            m_pattern = (val.getMatches() == null ? null : Pattern.compile(val.getMatches()));
+        }
 
         @Override
         public boolean matches(Event e) {
@@ -746,8 +994,7 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
                 return true;
             }
 
-            Pattern p = Pattern.compile(m_val.getMatches());
-            Matcher m = p.matcher(attributeValue);
+            Matcher m = m_pattern.matcher(attributeValue);
 
             LOG.debug("AttributeValueSpec.matches: Event attributeValue: {} {} pattern: {}", attributeValue, (m.matches()? "matches" : "doesn't match"), m_val.getMatches());
             if (m.matches()) {
@@ -767,8 +1014,7 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
                 throw new TranslationFailedException("failed to match null against '"+m_val.getMatches()+"' for attribute "+getAttributeName());
             }
 
-            Pattern p = Pattern.compile(m_val.getMatches());
-            final Matcher m = p.matcher(attributeValue);
+            final Matcher m = m_pattern.matcher(attributeValue);
             if (!m.matches())
                 throw new TranslationFailedException("failed to match "+attributeValue+" against '"+m_val.getMatches()+"' for attribute "+getAttributeName());
 
@@ -812,12 +1058,29 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     }
 
     class FieldValueSpec extends AttributeValueSpec {
+        /**
+         * The getter of a simple property, looked up once; nested property
+         * paths still go through a {@link BeanWrapper}.
+         */
+        private final Method m_readMethod;
+
         public FieldValueSpec(Value val) {
             super(val);
+            PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(Event.class, getAttributeName());
+            m_readMethod = (descriptor == null ? null : descriptor.getReadMethod());
         }
 
         @Override
         public String getAttributeValue(Event e) {
+            if (m_readMethod != null) {
+                try {
+                    Object value = m_readMethod.invoke(e);
+                    return (value == null ? null : value.toString());
+                } catch (Exception ex) {
+                    LOG.error("Unable to read property {} of Event", getAttributeName(), ex);
+                    throw new TranslationFailedException("Unable to read property "+getAttributeName()+" of Event");
+                }
+            }
             try {
                 BeanWrapper bean = getBeanWrapper(e);
 
@@ -836,7 +1099,16 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
     }
 
     class ParameterValueSpec extends AttributeValueSpec {
-        ParameterValueSpec(Value val) { super(val); }
+        /**
+         * The parameter name expression if the name starts with '~'
+         */
+        final Pattern m_namePattern;
+
+        ParameterValueSpec(Value val) {
+            super(val);
+            String attrName = getAttributeName();
+            m_namePattern = (attrName != null && attrName.startsWith("~") ? Pattern.compile(StringUtils.removeStart(attrName, "~")) : null);
+        }
 
         @Override
         public String getAttributeValue(Event e) {
@@ -849,10 +1121,8 @@ public final class EventTranslatorConfigFactory implements EventTranslatorConfig
                     return (parm.getValue() == null ? "" : parm.getValue().getContent());
                 }
 
-                String trimmedAttrName = StringUtils.removeStart(attrName, "~");
-
-                if (attrName.startsWith("~") && (parm.getParmName().matches(trimmedAttrName))) {
-                    LOG.debug("getAttributeValue: eventParm name: '{} matches translation parameter name expression: ' {}", trimmedAttrName, parm.getParmName());
+                if (m_namePattern != null && m_namePattern.matcher(parm.getParmName()).matches()) {
+                    LOG.debug("getAttributeValue: eventParm name: '{} matches translation parameter name expression: ' {}", m_namePattern.pattern(), parm.getParmName());
                     return (parm.getValue() == null ? "" : parm.getValue().getContent());
                 }
             }
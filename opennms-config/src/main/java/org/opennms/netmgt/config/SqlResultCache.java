@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the results of the SQL lookups done by sql-typed
+ * translation values.  Results are keyed by the statement and its arguments,
+ * expire after a fixed time to live, and the least recently used entry is
+ * dropped once the cache is full.  Empty results are never cached, so that a
+ * row added by a newly provisioned node is found by the very next lookup.
+ */
+class SqlResultCache {
+
+    /**
+     * The outcome of one lookup.
+     */
+    static class Result {
+        private final int m_rowCount;
+        private final String m_value;
+        private final long m_expires;
+
+        Result(final int rowCount, final String value, final long expires) {
+            m_rowCount = rowCount;
+            m_value = value;
+            m_expires = expires;
+        }
+
+        int getRowCount() {
+            return m_rowCount;
+        }
+
+        String getValue() {
+            return m_value;
+        }
+    }
+
+    private final int m_maxSize;
+    private final long m_ttlNanos;
+    private final Map<List<Object>, Result> m_results;
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of cached results
+     * @param ttl how long a result may be used, in milliseconds; zero or less disables caching
+     */
+    SqlResultCache(final int maxSize, final long ttl) {
+        m_maxSize = maxSize;
+        m_ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        m_results = new LinkedHashMap<List<Object>, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, Result> eldest) {
+                return size() > m_maxSize;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return m_maxSize > 0 && m_ttlNanos > 0;
+    }
+
+    /**
+     * @return the cached result, or null if there is none or it has expired
+     */
+    Result get(final String sql, final Object[] args) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final List<Object> key = key(sql, args);
+        final long now = System.nanoTime();
+        synchronized (m_results) {
+            final Result result = m_results.get(key);
+            if (result != null && now - result.m_expires < 0) {
+                m_hits.incrementAndGet();
+                return result;
+            }
+            if (result != null) {
+                m_results.remove(key);
+            }
+        }
+        m_misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the outcome of a lookup and returns it.
+     */
+    Result put(final String sql, final Object[] args, final int rowCount, final String value) {
+        final Result result = new Result(rowCount, value, System.nanoTime() + m_ttlNanos);
+        if (isEnabled() && rowCount > 0) {
+            synchronized (m_results) {
+                m_results.put(key(sql, args), result);
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        synchronized (m_results) {
+            return m_results.size();
+        }
+    }
+
+    long getHits() {
+        return m_hits.get();
+    }
+
+    long getMisses() {
+        return m_misses.get();
+    }
+
+    private static List<Object> key(final String sql, final Object[] args) {
+        final List<Object> key = new ArrayList<Object>(args.length + 1);
+        key.add(sql);
+        for (final Object arg : args) {
+            key.add(arg);
+        }
+        return key;
+    }
+}
@@ -34,6 +34,7 @@ package org.opennms.netmgt.config;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -117,6 +118,37 @@ public class EventconfFactoryTest {
         assertEquals("label", knownLabel1, eventConf.getEventLabel());
     }
 
+    @Test
+    public void testReloadDoesNotShareEventFiles() throws Exception {
+        final Events root = m_eventConfDao.getRootEvents();
+        final String eventFile = root.getEventFile(0);
+        final String modifiedFile = root.getEventFile(1);
+        final Events unchanged = root.getLoadEventsByFile(eventFile);
+        final Events modified = root.getLoadEventsByFile(modifiedFile);
+        final int unchangedCount = unchanged.getEventCount();
+        final int modifiedCount = modified.getEventCount();
+        final String label = unchanged.getEvent(0).getEventLabel();
+
+        // changes made in memory, by any route, are discarded by a reload
+        modified.addEvent(new Event());
+        unchanged.getEventCollection().add(new Event());
+        unchanged.getEvent(0).setEventLabel("changed in memory");
+
+        long start = System.currentTimeMillis();
+        m_eventConfDao.reload();
+        LOG.info("Reloaded eventconf.xml in {} ms", System.currentTimeMillis() - start);
+
+        final Events reloaded = m_eventConfDao.getRootEvents();
+        assertNotSame(root, reloaded);
+        assertNotSame(unchanged, reloaded.getLoadEventsByFile(eventFile));
+        assertNotSame(modified, reloaded.getLoadEventsByFile(modifiedFile));
+        assertEquals(unchangedCount, reloaded.getLoadEventsByFile(eventFile).getEventCount());
+        assertEquals(modifiedCount, reloaded.getLoadEventsByFile(modifiedFile).getEventCount());
+        assertEquals(label, reloaded.getLoadEventsByFile(eventFile).getEvent(0).getEventLabel());
+        assertEquals(root.getEventFileCount(), reloaded.getEventFileCount());
+        assertNotNull(m_eventConfDao.findByUei(knownSubfileUEI1));
+    }
+
     @Test
     public void testFindByUeiUnknown() {
         Event eventConf = m_eventConfDao.findByUei(unknownUEI1);
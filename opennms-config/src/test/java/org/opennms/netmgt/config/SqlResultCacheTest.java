@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SqlResultCacheTest {
+
+    private static final String SQL = "SELECT snmpIfName FROM snmpInterface WHERE nodeid = ? AND snmpifindex = ?";
+
+    @Test
+    public void testHitAndMiss() {
+        SqlResultCache cache = new SqlResultCache(10, 60000);
+        assertNull(cache.get(SQL, new Object[] { "1", "2" }));
+        cache.put(SQL, new Object[] { "1", "2" }, 1, "eth0");
+        cache.put(SQL, new Object[] { "1", "3" }, 0, null);
+
+        SqlResultCache.Result result = cache.get(SQL, new Object[] { "1", "2" });
+        assertNotNull(result);
+        assertEquals(1, result.getRowCount());
+        assertEquals("eth0", result.getValue());
+
+        // empty results are not cached
+        assertNull(cache.get(SQL, new Object[] { "1", "3" }));
+        assertEquals(1, cache.size());
+
+        assertNull(cache.get(SQL, new Object[] { "2", "2" }));
+        assertNull(cache.get(SQL, new Object[] { "1", null }));
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        SqlResultCache cache = new SqlResultCache(2, 60000);
+        cache.put(SQL, new Object[] { "1" }, 1, "a");
+        cache.put(SQL, new Object[] { "2" }, 1, "b");
+        assertNotNull(cache.get(SQL, new Object[] { "1" }));
+        cache.put(SQL, new Object[] { "3" }, 1, "c");
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(SQL, new Object[] { "1" }));
+        assertNull(cache.get(SQL, new Object[] { "2" }));
+        assertNotNull(cache.get(SQL, new Object[] { "3" }));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        SqlResultCache cache = new SqlResultCache(10, 50);
+        cache.put(SQL, new Object[] { "1" }, 1, "a");
+        assertNotNull(cache.get(SQL, new Object[] { "1" }));
+        Thread.sleep(100);
+        assertNull(cache.get(SQL, new Object[] { "1" }));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        SqlResultCache cache = new SqlResultCache(10, 0);
+        assertFalse(cache.isEnabled());
+        assertEquals("a", cache.put(SQL, new Object[] { "1" }, 1, "a").getValue());
+        assertNull(cache.get(SQL, new Object[] { "1" }));
+        assertEquals(0, cache.size());
+    }
+}
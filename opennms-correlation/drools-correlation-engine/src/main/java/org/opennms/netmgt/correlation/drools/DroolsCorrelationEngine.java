@@ -31,12 +31,19 @@ package org.opennms.netmgt.correlation.drools;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.IOUtils;
 import org.drools.RuleBase;
@@ -47,6 +54,9 @@ import org.drools.WorkingMemory;
 import org.drools.compiler.DroolsParserException;
 import org.drools.compiler.PackageBuilder;
 import org.drools.compiler.PackageBuilderConfiguration;
+import org.drools.event.DefaultWorkingMemoryEventListener;
+import org.drools.event.ObjectInsertedEvent;
+import org.drools.event.ObjectRetractedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.netmgt.correlation.AbstractCorrelationEngine;
@@ -56,6 +66,15 @@ import org.springframework.core.io.Resource;
 /**
  * <p>DroolsCorrelationEngine class.</p>
  *
+ * <p>By default all events and timers are correlated in a single stateful
+ * session, one at a time.  When more than one partition is configured the
+ * engine keeps one session per partition, each fed by its own worker thread,
+ * and routes every event to a partition by its node id or reduction key.
+ * Each worker drains whatever has queued up for its session, inserts it and
+ * fires the rules once for the whole batch.  Timers fire in the partition
+ * whose rules set them.  This is only correct for rule sets whose facts
+ * never need to be matched across partition keys.</p>
+ *
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  * @version $Id: $
  */
@@ -68,24 +87,93 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
     private Map<String, Object> m_globals = new HashMap<String, Object>();
     private String m_name;
     private String m_assertBehaviour;
-    
+    private int m_partitionCount = 1;
+    private String m_partitionKey = PARTITION_BY_NODEID;
+    private int m_batchSize = 100;
+
+    /** Constant <code>PARTITION_BY_NODEID="nodeid"</code> */
+    public static final String PARTITION_BY_NODEID = "nodeid";
+    /** Constant <code>PARTITION_BY_REDUCTION_KEY="reductionKey"</code> */
+    public static final String PARTITION_BY_REDUCTION_KEY = "reductionKey";
+
+    private Partition[] m_partitions;
+    private final ThreadLocal<Partition> m_currentPartition = new ThreadLocal<Partition>();
+    private final Map<Integer, Partition> m_timerPartitions = new ConcurrentHashMap<Integer, Partition>();
+
     /** {@inheritDoc} */
     @Override
-    public synchronized void correlate(final Event e) {
+    public void correlate(final Event e) {
+        if (isPartitioned()) {
+            getPartition(e).enqueue(e);
+        } else {
+            correlateInSession(e);
+        }
+    }
+
+    private synchronized void correlateInSession(final Event e) {
 	LOG.debug("Begin correlation for Event {} uei: {}", e.getDbid(), e.getUei());
-        m_workingMemory.insert(e);
-        m_workingMemory.fireAllRules();
+        m_partitions[0].correlate(Collections.<Object>singletonList(e));
 	LOG.debug("End correlation for Event {} uei: {}", e.getDbid(), e.getUei());
     }
 
     /** {@inheritDoc} */
     @Override
-    protected synchronized void timerExpired(final Integer timerId) {
-	LOG.info("Begin correlation for Timer {}", timerId);
-        TimerExpired expiration  = new TimerExpired(timerId);
-        m_workingMemory.insert(expiration);
-        m_workingMemory.fireAllRules();
-	LOG.debug("Begin correlation for Timer {}", timerId);
+    protected void timerExpired(final Integer timerId) {
+        final TimerExpired expiration  = new TimerExpired(timerId);
+        if (isPartitioned()) {
+            Partition partition = m_timerPartitions.remove(timerId);
+            if (partition == null) {
+                // set from outside of a rule consequence
+                partition = m_partitions[0];
+            }
+            partition.enqueue(expiration);
+        } else {
+            timerExpiredInSession(expiration);
+        }
+    }
+
+    private synchronized void timerExpiredInSession(final TimerExpired expiration) {
+	LOG.info("Begin correlation for Timer {}", expiration.getId());
+        m_partitions[0].correlate(Collections.<Object>singletonList(expiration));
+	LOG.debug("Begin correlation for Timer {}", expiration.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The timer is remembered against the partition whose rules set it, so
+     * that its expiration is correlated in the same session.
+     */
+    @Override
+    public Integer setTimer(final long millis) {
+        final Partition partition = m_currentPartition.get();
+        final Integer timerId = super.setTimer(millis);
+        if (partition != null && isPartitioned()) {
+            m_timerPartitions.put(timerId, partition);
+        }
+        return timerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void cancelTimer(final Integer timerId) {
+        super.cancelTimer(timerId);
+        m_timerPartitions.remove(timerId);
+    }
+
+    private boolean isPartitioned() {
+        return m_partitions.length > 1;
+    }
+
+    private Partition getPartition(final Event e) {
+        final long hash;
+        if (PARTITION_BY_REDUCTION_KEY.equals(m_partitionKey)) {
+            final String reductionKey = e.getAlarmData() == null ? null : e.getAlarmData().getReductionKey();
+            hash = reductionKey == null ? 0 : reductionKey.hashCode();
+        } else {
+            hash = e.getNodeid() == null ? 0 : e.getNodeid();
+        }
+        return m_partitions[(int)Math.abs(hash % m_partitions.length)];
     }
 
     /** {@inheritDoc} */
@@ -148,13 +236,40 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
 
         ruleBase.addPackage( builder.getPackage() );
 
-        m_workingMemory = ruleBase.newStatefulSession();
-        m_workingMemory.setGlobal("engine", this);
-        
-        for (final Map.Entry<String, Object> entry : m_globals.entrySet()) {
-            m_workingMemory.setGlobal(entry.getKey(), entry.getValue());
+        m_partitions = new Partition[Math.max(1, m_partitionCount)];
+        for (int i = 0; i < m_partitions.length; i++) {
+            final WorkingMemory workingMemory = ruleBase.newStatefulSession();
+            workingMemory.setGlobal("engine", this);
+
+            for (final Map.Entry<String, Object> entry : m_globals.entrySet()) {
+                workingMemory.setGlobal(entry.getKey(), entry.getValue());
+            }
+            m_partitions[i] = new Partition(i, workingMemory);
         }
+        m_workingMemory = m_partitions[0].m_memory;
 
+        if (isPartitioned()) {
+            LOG.info("Correlating {} in {} partitions by {}", getName(), m_partitions.length, m_partitionKey);
+            for (final Partition partition : m_partitions) {
+                partition.start();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The partition workers are stopped before the timers, so no timer
+     * expiration is queued to a partition that has gone away.
+     */
+    @Override
+    public void tearDown() {
+        if (m_partitions != null && isPartitioned()) {
+            for (final Partition partition : m_partitions) {
+                partition.stop();
+            }
+        }
+        super.tearDown();
     }
 
     private void loadRules(final PackageBuilder builder) throws DroolsParserException, IOException {
@@ -177,6 +292,13 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      * @return a int.
      */
     public int getMemorySize() {
+        if (isPartitioned()) {
+            int count = 0;
+            for (final Partition partition : m_partitions) {
+                count += partition.m_factCount.get();
+            }
+            return count;
+        }
         int count = 0;
         for(final Iterator<?> it = m_workingMemory.iterateObjects(); it.hasNext(); it.next()) {
             count++;
@@ -191,11 +313,28 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      */
     public List<Object> getMemoryObjects() {
     	final List<Object> objects = new LinkedList<Object>();
-        for(Iterator<?> it = m_workingMemory.iterateObjects(); it.hasNext(); ) {
-        	objects.add(it.next());
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                for(Iterator<?> it = partition.m_memory.iterateObjects(); it.hasNext(); ) {
+                    objects.add(it.next());
+                }
+            }
         }
         return objects;
     }
+
+    /**
+     * <p>getSessionStatistics</p>
+     *
+     * @return the statistics of each session, one per partition
+     */
+    public List<SessionStatistics> getSessionStatistics() {
+        final List<SessionStatistics> statistics = new ArrayList<SessionStatistics>(m_partitions.length);
+        for (final Partition partition : m_partitions) {
+            statistics.add(new SessionStatistics(partition));
+        }
+        return statistics;
+    }
     
     public WorkingMemory getWorkingMemory() {
     	return m_workingMemory;
@@ -227,10 +366,215 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      * @param value a {@link java.lang.Object} object.
      */
     public void setGlobal(final String name, final Object value) {
-        m_workingMemory.setGlobal(name, value);
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                partition.m_memory.setGlobal(name, value);
+            }
+        }
     }
 
 	public void setAssertBehaviour(String assertBehaviour) {
 		m_assertBehaviour = assertBehaviour;
 	}
+
+    /**
+     * <p>setPartitions</p>
+     *
+     * @param partitions the number of independent sessions, 1 correlates
+     *   everything in a single session on the caller's thread
+     */
+    public void setPartitions(final int partitions) {
+        m_partitionCount = partitions;
+    }
+
+    /**
+     * <p>setPartitionKey</p>
+     *
+     * @param partitionKey either {@link #PARTITION_BY_NODEID} or
+     *   {@link #PARTITION_BY_REDUCTION_KEY}
+     */
+    public void setPartitionKey(final String partitionKey) {
+        m_partitionKey = partitionKey;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of facts inserted into a partition
+     *   before its rules are fired
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * One session with the facts of one partition.
+     */
+    private class Partition implements Runnable {
+        private final int m_index;
+        private final WorkingMemory m_memory;
+        private final BlockingQueue<Object> m_queue = new LinkedBlockingQueue<Object>();
+        private final AtomicLong m_factCount = new AtomicLong();
+        private final AtomicLong m_insertCount = new AtomicLong();
+        private final AtomicLong m_fireCount = new AtomicLong();
+        private final AtomicLong m_fireNanos = new AtomicLong();
+        private volatile long m_maxFireNanos = 0;
+        private Thread m_thread;
+
+        public Partition(final int index, final WorkingMemory memory) {
+            m_index = index;
+            m_memory = memory;
+            m_memory.addEventListener(new DefaultWorkingMemoryEventListener() {
+                @Override
+                public void objectInserted(final ObjectInsertedEvent event) {
+                    m_factCount.incrementAndGet();
+                }
+
+                @Override
+                public void objectRetracted(final ObjectRetractedEvent event) {
+                    m_factCount.decrementAndGet();
+                }
+            });
+        }
+
+        public void start() {
+            m_thread = new Thread(this, getName() + "-Partition-" + m_index);
+            m_thread.setDaemon(true);
+            m_thread.start();
+        }
+
+        /**
+         * Stops the worker once it has finished its current batch; facts
+         * still queued are dropped.
+         */
+        public void stop() {
+            if (m_thread == null) {
+                return;
+            }
+            m_thread.interrupt();
+            if (Thread.currentThread() == m_thread) {
+                return;
+            }
+            try {
+                m_thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void enqueue(final Object fact) {
+            m_queue.add(fact);
+        }
+
+        /**
+         * Inserts the facts and fires the rules once.
+         */
+        public synchronized void correlate(final List<Object> facts) {
+            final long start = System.nanoTime();
+            for (final Object fact : facts) {
+                m_memory.insert(fact);
+            }
+            m_memory.fireAllRules();
+            final long elapsed = System.nanoTime() - start;
+
+            m_insertCount.addAndGet(facts.size());
+            m_fireCount.incrementAndGet();
+            m_fireNanos.addAndGet(elapsed);
+            if (elapsed > m_maxFireNanos) {
+                m_maxFireNanos = elapsed;
+            }
+        }
+
+        @Override
+        public void run() {
+            m_currentPartition.set(this);
+            final List<Object> batch = new ArrayList<Object>(m_batchSize);
+            while (true) {
+                try {
+                    batch.add(m_queue.take());
+                } catch (final InterruptedException e) {
+                    LOG.debug("Correlation partition {} of {} stopped", m_index, getName());
+                    return;
+                }
+                m_queue.drainTo(batch, m_batchSize - 1);
+                LOG.debug("Correlating {} facts in partition {} of {}", batch.size(), m_index, getName());
+                try {
+                    correlate(batch);
+                } catch (final Throwable t) {
+                    LOG.warn("Unable to correlate {} facts in partition {} of {}", batch.size(), m_index, getName(), t);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of one session.
+     */
+    public static class SessionStatistics {
+        private final int m_partition;
+        private final long m_factCount;
+        private final int m_queueDepth;
+        private final long m_insertCount;
+        private final long m_fireCount;
+        private final long m_fireTime;
+        private final long m_maxFireTime;
+
+        private SessionStatistics(final Partition partition) {
+            m_partition = partition.m_index;
+            m_factCount = partition.m_factCount.get();
+            m_queueDepth = partition.m_queue.size();
+            m_insertCount = partition.m_insertCount.get();
+            m_fireCount = partition.m_fireCount.get();
+            m_fireTime = TimeUnit.NANOSECONDS.toMillis(partition.m_fireNanos.get());
+            m_maxFireTime = TimeUnit.NANOSECONDS.toMillis(partition.m_maxFireNanos);
+        }
+
+        /** @return the index of the partition */
+        public int getPartition() {
+            return m_partition;
+        }
+
+        /** @return the number of facts in working memory */
+        public long getFactCount() {
+            return m_factCount;
+        }
+
+        /** @return the number of events and timers waiting to be correlated */
+        public int getQueueDepth() {
+            return m_queueDepth;
+        }
+
+        /** @return the number of events and timers inserted */
+        public long getInsertCount() {
+            return m_insertCount;
+        }
+
+        /** @return the number of times the rules were fired */
+        public long getFireCount() {
+            return m_fireCount;
+        }
+
+        /** @return the total time spent inserting and firing rules, in milliseconds */
+        public long getFireTime() {
+            return m_fireTime;
+        }
+
+        /** @return the longest time a single batch took, in milliseconds */
+        public long getMaxFireTime() {
+            return m_maxFireTime;
+        }
+
+        /** @return the mean time a batch took, in milliseconds */
+        public double getMeanFireTime() {
+            return m_fireCount == 0 ? 0.0 : (double)m_fireTime / m_fireCount;
+        }
+
+        @Override
+        public String toString() {
+            return "partition " + m_partition + ": facts=" + m_factCount + ", queued=" + m_queueDepth
+                + ", inserted=" + m_insertCount + ", fired=" + m_fireCount + ", fireTime=" + m_fireTime
+                + "ms, maxFireTime=" + m_maxFireTime + "ms";
+        }
+    }
 }
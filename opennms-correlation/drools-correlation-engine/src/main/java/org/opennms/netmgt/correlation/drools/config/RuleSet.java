@@ -67,6 +67,7 @@ import org.exolab.castor.xml.ValidationException;
 import org.exolab.castor.xml.Validator;
 import org.opennms.core.utils.PropertiesUtils;
 import org.opennms.netmgt.correlation.CorrelationEngine;
+import org.opennms.netmgt.correlation.TimerWheel;
 import org.opennms.netmgt.correlation.drools.ConfigFileApplicationContext;
 import org.opennms.netmgt.correlation.drools.DroolsCorrelationEngine;
 import org.opennms.netmgt.events.api.EventIpcManager;
@@ -99,6 +100,15 @@ public class RuleSet implements Serializable {
 
 	@XmlAttribute(name="assert-behaviour")
 	private String _assertBehaviour;
+
+	@XmlAttribute(name="partitions")
+	private Integer _partitions;
+
+	@XmlAttribute(name="partition-key")
+	private String _partitionKey;
+
+	@XmlAttribute(name="batch-size")
+	private Integer _batchSize;
     /**
      * Field _ruleFileList.
      */
@@ -150,6 +160,36 @@ public class RuleSet implements Serializable {
 	}
 
 
+	public int getPartitions() {
+		return _partitions == null? 1 : _partitions;
+	}
+
+
+	public void setPartitions(Integer partitions) {
+		this._partitions = partitions;
+	}
+
+
+	public String getPartitionKey() {
+		return _partitionKey == null? DroolsCorrelationEngine.PARTITION_BY_NODEID : _partitionKey;
+	}
+
+
+	public void setPartitionKey(String partitionKey) {
+		this._partitionKey = partitionKey;
+	}
+
+
+	public int getBatchSize() {
+		return _batchSize == null? 100 : _batchSize;
+	}
+
+
+	public void setBatchSize(Integer batchSize) {
+		this._batchSize = batchSize;
+	}
+
+
 	/**
      * 
      * 
@@ -926,7 +966,14 @@ public class RuleSet implements Serializable {
 		engine.setName(getName());
 		engine.setAssertBehaviour(getAssertBehaviour());
 		engine.setEventIpcManager(eventIpcManager);
-		engine.setScheduler(new Timer(getName()+"-Timer"));
+		if (getPartitions() > 1) {
+		    engine.setTimerWheel(new TimerWheel(getName()+"-TimerWheel", 50, 1024));
+		} else {
+		    engine.setScheduler(new Timer(getName()+"-Timer"));
+		}
+		engine.setPartitions(getPartitions());
+		engine.setPartitionKey(getPartitionKey());
+		engine.setBatchSize(getBatchSize());
 		engine.setInterestingEvents(getInterestingEvents());
 		engine.setRulesResources(getRuleResources(configContext));
 		engine.setGlobals(getGlobals(configContext));
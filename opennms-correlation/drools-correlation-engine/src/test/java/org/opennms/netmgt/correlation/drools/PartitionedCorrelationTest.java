@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.correlation.drools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.correlation.TimerWheel;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+public class PartitionedCorrelationTest {
+
+    private static final String NAME = "partitionedRules";
+    private static final String RECORD_UEI = "uei.opennms.org/test/record";
+    private static final String TIMER_UEI = "uei.opennms.org/test/timer";
+    private static final int PARTITIONS = 4;
+    private static final int NODES = 8;
+    private static final int EVENTS_PER_NODE = 50;
+
+    private final List<String> m_seen = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<Integer, String> m_timersSet = new ConcurrentHashMap<Integer, String>();
+    private final Map<Integer, String> m_timersFired = new ConcurrentHashMap<Integer, String>();
+    private DroolsCorrelationEngine m_engine;
+
+    @Before
+    public void setUp() throws Exception {
+        final Map<String, Object> globals = new HashMap<String, Object>();
+        globals.put("seen", m_seen);
+        globals.put("timersSet", m_timersSet);
+        globals.put("timersFired", m_timersFired);
+
+        m_engine = new DroolsCorrelationEngine();
+        m_engine.setName(NAME);
+        m_engine.setPartitions(PARTITIONS);
+        m_engine.setPartitionKey(DroolsCorrelationEngine.PARTITION_BY_NODEID);
+        m_engine.setBatchSize(10);
+        m_engine.setTimerWheel(new TimerWheel(NAME + "-TimerWheel", 10, 64));
+        m_engine.setInterestingEvents(Arrays.asList(RECORD_UEI, TIMER_UEI));
+        m_engine.setRulesResources(Collections.<Resource>singletonList(new ClassPathResource("partitionedRules.drl")));
+        m_engine.setGlobals(globals);
+        m_engine.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        m_engine.tearDown();
+    }
+
+    @Test
+    public void testEventsOfAKeyAreCorrelatedInOrderInOnePartition() throws Exception {
+        for (int seq = 0; seq < EVENTS_PER_NODE; seq++) {
+            for (int node = 1; node <= NODES; node++) {
+                m_engine.correlate(createEvent(RECORD_UEI, node, seq));
+            }
+        }
+        waitFor(m_seen, NODES * EVENTS_PER_NODE);
+
+        final Map<Long, Integer> lastSeq = new HashMap<Long, Integer>();
+        for (final String seen : new ArrayList<String>(m_seen)) {
+            final String[] fields = seen.split(":");
+            final long node = Long.parseLong(fields[0]);
+            final int seq = Integer.parseInt(fields[1]);
+
+            assertEquals(seen, NAME + "-Partition-" + (node % PARTITIONS), fields[2]);
+            final Integer last = lastSeq.put(node, seq);
+            assertEquals(seen, last == null ? 0 : last + 1, seq);
+        }
+        assertEquals(NODES, lastSeq.size());
+    }
+
+    @Test
+    public void testTimersFireInThePartitionThatSetThem() throws Exception {
+        for (int node = 1; node <= NODES; node++) {
+            m_engine.correlate(createEvent(TIMER_UEI, node, 0));
+        }
+        waitFor(m_timersFired.keySet(), NODES);
+
+        assertEquals(NODES, m_timersSet.size());
+        assertEquals(m_timersSet.keySet(), m_timersFired.keySet());
+        for (final Map.Entry<Integer, String> entry : m_timersSet.entrySet()) {
+            assertTrue(entry.getValue(), entry.getValue().startsWith(NAME + "-Partition-"));
+            assertEquals("timer " + entry.getKey(), entry.getValue(), m_timersFired.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testTearDownStopsThePartitionAndTimerThreads() throws Exception {
+        m_engine.tearDown();
+
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName() + " is still running", thread.getName().startsWith(NAME + "-") && thread.isAlive());
+        }
+    }
+
+    private static Event createEvent(final String uei, final int nodeId, final int seq) {
+        return new EventBuilder(uei, "test")
+            .setNodeid(nodeId)
+            .setDescription(Integer.toString(seq))
+            .getEvent();
+    }
+
+    private static void waitFor(final Collection<?> facts, final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (facts.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, facts.size());
+    }
+}
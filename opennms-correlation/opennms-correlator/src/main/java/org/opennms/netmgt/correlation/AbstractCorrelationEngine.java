@@ -49,6 +49,7 @@ public abstract class AbstractCorrelationEngine implements CorrelationEngine {
 	private static final AtomicInteger s_lastTimerId = new AtomicInteger(0);
     private EventIpcManager m_eventIpcManager;
     private Timer m_scheduler;
+    private TimerWheel m_timerWheel;
     private final Map<Integer, TimerTask> m_pendingTasks = new ConcurrentHashMap<Integer, TimerTask>();
 
     /** {@inheritDoc} */
@@ -89,7 +90,11 @@ public abstract class AbstractCorrelationEngine implements CorrelationEngine {
      */
     public Integer setTimer(final long millis) {
     	final RuleTimerTask task = getTimerTask();
-        m_scheduler.schedule(task, millis);
+        if (m_timerWheel != null) {
+            m_timerWheel.schedule(task, millis);
+        } else {
+            m_scheduler.schedule(task, millis);
+        }
         return task.getId();
     }
     
@@ -131,15 +136,42 @@ public abstract class AbstractCorrelationEngine implements CorrelationEngine {
     public void setScheduler(final Timer scheduler) {
         m_scheduler = scheduler;
     }
+
+    /**
+     * <p>setTimerWheel</p>
+     *
+     * @param timerWheel a {@link org.opennms.netmgt.correlation.TimerWheel} used
+     *   for rule timers instead of the {@link java.util.Timer} scheduler.
+     */
+    public void setTimerWheel(final TimerWheel timerWheel) {
+        m_timerWheel = timerWheel;
+    }
     
+    /**
+     * <p>tearDown</p>
+     *
+     * Stops the scheduler or timer wheel; pending rule timers do not fire.
+     */
+    @Override
+    public void tearDown() {
+        if (m_timerWheel != null) {
+            m_timerWheel.stop();
+        }
+        if (m_scheduler != null) {
+            m_scheduler.cancel();
+        }
+    }
+
     /**
      * <p>runTimer</p>
      *
      * @param task a {@link org.opennms.netmgt.correlation.AbstractCorrelationEngine.RuleTimerTask} object.
      */
     public void runTimer(final RuleTimerTask task) {
-        m_pendingTasks.remove(task.getId());
-        timerExpired(task.getId());
+        // a cancelled timer may still be handed back by the timer wheel
+        if (m_pendingTasks.remove(task.getId()) != null) {
+            timerExpired(task.getId());
+        }
     }
     
     private class RuleTimerTask extends TimerTask {
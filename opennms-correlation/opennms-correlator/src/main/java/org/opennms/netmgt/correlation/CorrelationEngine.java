@@ -61,4 +61,11 @@ public interface CorrelationEngine {
 	 */
 	void correlate(Event e);
 
+	/**
+	 * <p>tearDown</p>
+	 *
+	 * Stops the threads the engine correlates and runs timers on.
+	 */
+	void tearDown();
+
 }
@@ -99,6 +99,18 @@ public class Correlator extends AbstractServiceDaemon implements CorrelationEngi
 		
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected void onStop() {
+		for (final EngineAdapter adapter : m_adapters) {
+			m_eventIpcManager.removeEventListener(adapter);
+		}
+		for (final CorrelationEngine engine : m_engines) {
+			LOG.info("Stopping correlation engine: {}", engine.getName());
+			engine.tearDown();
+		}
+	}
+
 	/**
 	 * <p>setCorrelationEngines</p>
 	 *
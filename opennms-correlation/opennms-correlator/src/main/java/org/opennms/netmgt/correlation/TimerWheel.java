@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.correlation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.TimeoutWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs rule timer tasks off a {@link TimeoutWheel} turned by a thread of
+ * its own, so scheduling stays constant time however many timers the rules
+ * have outstanding.
+ *
+ * Tasks are not removed when a timer is cancelled; the engine checks whether
+ * the timer is still pending when the task runs.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public class TimerWheel {
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long m_tickNanos;
+    private final TimeoutWheel<Runnable> m_wheel;
+    private final long m_start = System.nanoTime();
+    private final Thread m_thread;
+
+    /**
+     * <p>Constructor for TimerWheel.</p>
+     *
+     * @param name the name of the thread running the wheel
+     * @param tickMillis resolution of the wheel in milliseconds
+     * @param slots the number of slots, rounded up to a power of two
+     */
+    public TimerWheel(final String name, final long tickMillis, final int slots) {
+        m_tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        m_wheel = new TimeoutWheel<Runnable>(m_tickNanos, slots, 0);
+
+        m_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                turn();
+            }
+        }, name);
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Schedules a task to run after the given delay.
+     *
+     * @param task the task
+     * @param delayMillis the delay in milliseconds
+     */
+    public void schedule(final Runnable task, final long delayMillis) {
+        m_wheel.schedule(task, now() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+    }
+
+    /**
+     * Stops the wheel and waits for its thread to finish; tasks that have not
+     * run yet are dropped.
+     */
+    public void stop() {
+        m_thread.interrupt();
+        if (Thread.currentThread() == m_thread) {
+            return;
+        }
+        try {
+            m_thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - m_start;
+    }
+
+    private void turn() {
+        while (!Thread.currentThread().isInterrupted()) {
+            for (final Runnable task : m_wheel.advance(now())) {
+                try {
+                    task.run();
+                } catch (final Throwable t) {
+                    LOG.warn("Unexpected exception running timer task {}", task, t);
+                }
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(m_tickNanos - (now() % m_tickNanos));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.api;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -48,6 +49,10 @@ public interface BridgeMacLinkDao extends OnmsDao<BridgeMacLink, Integer> {
 
     void deleteByNodeIdOlderThen(Integer nodeiId, Date now);
 
+    void deleteByNodeIdBridgePortMacs(Integer nodeId, Integer port, Collection<String> macs);
+
+    void updateLastPollTimeByNodeId(Integer nodeId, Date now);
+
     public List<BridgeMacTopologyLink> getAllBridgeLinksToIpAddrToNodes();
 
 }
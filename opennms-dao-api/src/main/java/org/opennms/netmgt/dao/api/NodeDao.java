@@ -225,6 +225,18 @@ public interface NodeDao extends LegacyOnmsDao<OnmsNode, Integer> {
 
     SurveillanceStatus findSurveillanceStatusByCategoryLists(Collection<OnmsCategory> rowCategories, Collection<OnmsCategory> columnCategories);
 
+    /**
+     * Computes the status of every cell of a surveillance view in a single
+     * query.  Cell <code>[row][column]</code> holds the status that
+     * {@link #findSurveillanceStatusByCategoryLists(Collection, Collection)}
+     * returns for that row's and that column's categories.
+     *
+     * @param rowCategories the categories of each row
+     * @param columnCategories the categories of each column
+     * @return the status of each cell, indexed by row and then column
+     */
+    SurveillanceStatus[][] findSurveillanceStatusMatrix(List<? extends Collection<OnmsCategory>> rowCategories, List<? extends Collection<OnmsCategory>> columnCategories);
+
     Integer getNextNodeId (Integer nodeId);
 
     Integer getPreviousNodeId (Integer nodeId);
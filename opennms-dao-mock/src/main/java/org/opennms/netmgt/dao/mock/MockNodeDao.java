@@ -373,6 +373,11 @@ public class MockNodeDao extends AbstractMockDao<OnmsNode, Integer> implements N
         throw new UnsupportedOperationException("Not yet implemented!");
     }
 
+    @Override
+    public SurveillanceStatus[][] findSurveillanceStatusMatrix(final List<? extends Collection<OnmsCategory>> rowCategories, final List<? extends Collection<OnmsCategory>> columnCategories) {
+        throw new UnsupportedOperationException("Not yet implemented!");
+    }
+
     @Override
     public Integer getNextNodeId(final Integer nodeId) {
         Integer next = null;
@@ -30,6 +30,7 @@ package org.opennms.netmgt.dao.hibernate;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -78,6 +79,27 @@ public class BridgeMacLinkDaoHibernate extends AbstractDaoHibernate<BridgeMacLin
 		}
 	}
 
+	@Override
+	public void deleteByNodeIdBridgePortMacs(final Integer nodeId, final Integer port, final Collection<String> macs) {
+		if (macs.isEmpty())
+			return;
+		getHibernateTemplate().execute(new HibernateCallback<Integer>() {
+			@Override
+			public Integer doInHibernate(Session session) throws HibernateException, SQLException {
+				return session.createQuery("delete from BridgeMacLink rec where rec.node.id = :nodeId and rec.bridgePort = :port and rec.macAddress in (:macs)")
+						.setParameter("nodeId", nodeId)
+						.setParameter("port", port)
+						.setParameterList("macs", macs)
+						.executeUpdate();
+			}
+		});
+	}
+
+	@Override
+	public void updateLastPollTimeByNodeId(Integer nodeId, Date now) {
+		getHibernateTemplate().bulkUpdate("update BridgeMacLink rec set rec.bridgeMacLinkLastPollTime = ? where rec.node.id = ?", new Object[] { now, nodeId });
+	}
+
     @Override
     public List<BridgeMacTopologyLink> getAllBridgeLinksToIpAddrToNodes(){
         List<Object[]> links =  getHibernateTemplate().execute(new HibernateCallback<List<Object[]>>() {
@@ -36,8 +36,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
@@ -315,6 +317,107 @@ public class NodeDaoHibernate extends AbstractDaoHibernate<OnmsNode, Integer> im
 
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public SurveillanceStatus[][] findSurveillanceStatusMatrix(final List<? extends Collection<OnmsCategory>> rowCategories, final List<? extends Collection<OnmsCategory>> columnCategories) {
+        final int rows = rowCategories.size();
+        final int columns = columnCategories.size();
+        final int[][] serviceOutages = new int[rows][columns];
+        final int[][] upNodeCounts = new int[rows][columns];
+        final int[][] nodeCounts = new int[rows][columns];
+
+        final Set<Integer> categoryIds = new HashSet<Integer>();
+        for (final Collection<OnmsCategory> categories : rowCategories) {
+            categoryIds.addAll(categoryIds(categories));
+        }
+        for (final Collection<OnmsCategory> categories : columnCategories) {
+            categoryIds.addAll(categoryIds(categories));
+        }
+
+        if (rows > 0 && columns > 0 && !categoryIds.isEmpty()) {
+            // one row per node and category, with the per node counts of findSurveillanceStatusByCategoryLists()
+            final List<Object[]> tuples = getHibernateTemplate().execute(new HibernateCallback<List<Object[]>>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public List<Object[]> doInHibernate(Session session) throws HibernateException, SQLException {
+                    return (List<Object[]>)session.createSQLQuery("select" +
+                            " node.nodeid as nodeId," +
+                            " cn.categoryid as categoryId," +
+                            " count(distinct case when outages.outageid is not null and monSvc.status = 'A' then monSvc.id else null end) as svcCount," +
+                            " count(distinct case when outages.outageid is null and monSvc.status = 'A' then monSvc.id else null end) as upSvcCount" +
+                            " from node" +
+                            " join category_node cn using (nodeid)" +
+                            " left outer join ipinterface ip using (nodeid)" +
+                            " left outer join ifservices monsvc on (monsvc.ipinterfaceid = ip.id)" +
+                            " left outer join outages on (outages.ifserviceid = monsvc.id and outages.ifregainedservice is null)" +
+                            " where nodeType <> 'D'" +
+                            " and cn.categoryid in (:categories)" +
+                            " group by node.nodeid, cn.categoryid"
+                            )
+                            .setParameterList("categories", categoryIds)
+                            .list();
+                }
+            });
+
+            final Map<Integer, Set<Integer>> categoriesByNode = new HashMap<Integer, Set<Integer>>();
+            final Map<Integer, Object[]> countsByNode = new HashMap<Integer, Object[]>();
+            for (final Object[] tuple : tuples) {
+                final Integer nodeId = ((Number)tuple[0]).intValue();
+                Set<Integer> nodeCategories = categoriesByNode.get(nodeId);
+                if (nodeCategories == null) {
+                    nodeCategories = new HashSet<Integer>();
+                    categoriesByNode.put(nodeId, nodeCategories);
+                    countsByNode.put(nodeId, tuple);
+                }
+                nodeCategories.add(((Number)tuple[1]).intValue());
+            }
+
+            final List<Set<Integer>> rowIds = new ArrayList<Set<Integer>>(rows);
+            for (final Collection<OnmsCategory> categories : rowCategories) {
+                rowIds.add(categoryIds(categories));
+            }
+            final List<Set<Integer>> columnIds = new ArrayList<Set<Integer>>(columns);
+            for (final Collection<OnmsCategory> categories : columnCategories) {
+                columnIds.add(categoryIds(categories));
+            }
+
+            for (final Map.Entry<Integer, Set<Integer>> entry : categoriesByNode.entrySet()) {
+                final Object[] counts = countsByNode.get(entry.getKey());
+                final int svcCount = ((Number)counts[2]).intValue();
+                final int up = ((Number)counts[3]).intValue() > 0 ? 1 : 0;
+                for (int row = 0; row < rows; row++) {
+                    if (Collections.disjoint(entry.getValue(), rowIds.get(row))) {
+                        continue;
+                    }
+                    for (int column = 0; column < columns; column++) {
+                        if (Collections.disjoint(entry.getValue(), columnIds.get(column))) {
+                            continue;
+                        }
+                        serviceOutages[row][column] += svcCount;
+                        upNodeCounts[row][column] += up;
+                        nodeCounts[row][column]++;
+                    }
+                }
+            }
+        }
+
+        final SurveillanceStatus[][] matrix = new SurveillanceStatus[rows][columns];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                matrix[row][column] = new SimpleSurveillanceStatus(serviceOutages[row][column], upNodeCounts[row][column], nodeCounts[row][column]);
+            }
+        }
+        return matrix;
+    }
+
+    private static Set<Integer> categoryIds(final Collection<OnmsCategory> categories) {
+        final Set<Integer> ids = new HashSet<Integer>();
+        for (final OnmsCategory category : categories) {
+            ids.add(category.getId());
+        }
+        return ids;
+    }
+
 
     /** {@inheritDoc} */
     @SuppressWarnings("unchecked")
@@ -34,7 +34,10 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
@@ -55,12 +58,14 @@ import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.model.LldpElement;
 import org.opennms.netmgt.model.LldpElement.LldpChassisIdSubType;
+import org.opennms.netmgt.model.OnmsCategory;
 import org.opennms.netmgt.model.OnmsDistPoller;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.model.PathElement;
+import org.opennms.netmgt.model.SurveillanceStatus;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -415,6 +420,54 @@ public class NodeDaoTest implements InitializingBean {
 
     }
 
+    @Test
+    @Transactional
+    public void testFindSurveillanceStatusMatrix() {
+        final List<List<OnmsCategory>> rows = Arrays.asList(
+            categories("DEV_AC"),
+            categories("IMP_mid"),
+            categories("OPS_Online"),
+            categories("DEV_AC", "Servers")
+        );
+        final List<List<OnmsCategory>> columns = Arrays.asList(
+            categories("Routers"),
+            categories("Servers"),
+            categories("Switches"),
+            categories("IMP_mid", "OPS_Online"),
+            categories("DEV_AC")
+        );
+
+        final SurveillanceStatus[][] matrix = getNodeDao().findSurveillanceStatusMatrix(rows, columns);
+        assertEquals(rows.size(), matrix.length);
+
+        // every cell must match the single cell query it replaces
+        boolean sawOutage = false;
+        for (int row = 0; row < rows.size(); row++) {
+            assertEquals(columns.size(), matrix[row].length);
+            for (int column = 0; column < columns.size(); column++) {
+                final SurveillanceStatus expected = getNodeDao().findSurveillanceStatusByCategoryLists(rows.get(row), columns.get(column));
+                final SurveillanceStatus actual = matrix[row][column];
+                final String cell = "cell " + row + "," + column;
+                assertEquals(cell + " total", expected.getTotalEntityCount(), actual.getTotalEntityCount());
+                assertEquals(cell + " down", expected.getDownEntityCount(), actual.getDownEntityCount());
+                assertEquals(cell + " status", expected.getStatus(), actual.getStatus());
+                sawOutage |= !"Normal".equals(actual.getStatus());
+            }
+        }
+        assertTrue("the populated outage on node1 should show up in the matrix", sawOutage);
+        assertEquals(0, getNodeDao().findSurveillanceStatusMatrix(rows, Collections.<List<OnmsCategory>>emptyList())[0].length);
+    }
+
+    private List<OnmsCategory> categories(final String... names) {
+        final List<OnmsCategory> categories = new ArrayList<OnmsCategory>();
+        for (final String name : names) {
+            final OnmsCategory category = m_populator.getCategoryDao().findByName(name);
+            assertNotNull("category " + name, category);
+            categories.add(category);
+        }
+        return categories;
+    }
+
     @Test
     @Transactional
     public void testGetNodeLabelForId() {
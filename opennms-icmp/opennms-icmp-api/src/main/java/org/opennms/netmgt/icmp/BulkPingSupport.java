@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp;
+
+import static org.opennms.netmgt.icmp.PingConstants.DEFAULT_PACKET_SIZE;
+import static org.opennms.netmgt.icmp.PingConstants.DEFAULT_TIMEOUT;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers shared by the {@link Pinger#bulkPing} implementations.
+ */
+public abstract class BulkPingSupport {
+
+    /**
+     * Sequence ids are 16 bits wide.
+     */
+    public static final int MAX_COUNT = 0xffff;
+
+    /**
+     * Sends the packets as individual pings, for implementations without a
+     * dedicated bulk path.
+     *
+     * @param pinger the pinger to send with
+     * @param hosts the hosts to ping
+     * @param count the number of packets per host
+     * @param timeout the time to wait for each reply, in milliseconds
+     * @param packetsPerSecond the maximum send rate, or 0 for no limit
+     * @param cb the callback to call for each packet
+     * @throws java.lang.Exception if any.
+     */
+    public static void bulkPing(final Pinger pinger, final Collection<? extends InetAddress> hosts, final int count, final long timeout, final int packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        checkArguments(count, packetsPerSecond);
+        final long effectiveTimeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
+        final long start = System.nanoTime();
+        long sent = 0;
+        for (int seqNum = 0; seqNum < count; seqNum++) {
+            for (final InetAddress host : hosts) {
+                pace(start, sent++, packetsPerSecond);
+                pinger.ping(host, effectiveTimeout, 0, DEFAULT_PACKET_SIZE, seqNum, cb);
+            }
+        }
+    }
+
+    /**
+     * <p>checkArguments</p>
+     *
+     * @param count the number of packets per host
+     * @param packetsPerSecond the maximum send rate, or 0 for no limit
+     */
+    public static void checkArguments(final int count, final int packetsPerSecond) {
+        if (count < 1 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("count must be between 1 and " + MAX_COUNT + ": " + count);
+        }
+        if (packetsPerSecond < 0) {
+            throw new IllegalArgumentException("packetsPerSecond must not be negative: " + packetsPerSecond);
+        }
+    }
+
+    /**
+     * Waits until the given packet is due.  The schedule is fixed at the
+     * start of the run rather than computed from the previous packet, so
+     * the average rate stays exact even though sleeps are only accurate to
+     * about a millisecond; packets that are due within the next millisecond
+     * go out right away.
+     *
+     * @param start the {@link System#nanoTime()} at which the run started
+     * @param packetIndex the number of packets sent so far
+     * @param packetsPerSecond the maximum send rate, or 0 for no limit
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+    public static void pace(final long start, final long packetIndex, final int packetsPerSecond) throws InterruptedException {
+        if (packetsPerSecond <= 0) {
+            return;
+        }
+        final long due = start + packetIndex * TimeUnit.SECONDS.toNanos(1) / packetsPerSecond;
+        final long delay = due - System.nanoTime();
+        if (delay >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+}
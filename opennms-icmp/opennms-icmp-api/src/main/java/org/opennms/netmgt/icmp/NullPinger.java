@@ -1,6 +1,7 @@
 package org.opennms.netmgt.icmp;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -46,6 +47,12 @@ public class NullPinger implements Pinger {
         throw UNSUPPORTED;
     }
 
+    @Override
+    public void bulkPing(Collection<? extends InetAddress> hosts, int count, long timeout, int packetsPerSecond, PingResponseCallback cb) throws Exception {
+        LOG.trace("bulk-ping: hosts={}, count={}, timeout={}, rate={}", hosts.size(), count, timeout, packetsPerSecond);
+        throw UNSUPPORTED;
+    }
+
     @Override
     public void initialize4() throws Exception {
         LOG.info("initialize4() called.");
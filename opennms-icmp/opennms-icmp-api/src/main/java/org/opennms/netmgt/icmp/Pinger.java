@@ -30,6 +30,7 @@ package org.opennms.netmgt.icmp;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -117,6 +118,22 @@ public interface Pinger {
 	 *     echo reply, it will contain a number, otherwise a null value.
 	 */
 	public List<Number> parallelPing(InetAddress host, int count, long timeout, long pingInterval) throws Exception;
+
+	/**
+	 * Ping many hosts at once, sending <code>count</code> packets to each of them
+	 * at no more than <code>packetsPerSecond</code> packets per second overall.
+	 * Packets go out in rounds, one per host, and the packet number is used as the
+	 * sequence id.  The callback is called once for every packet, with a response,
+	 * a timeout or an error, and may be called from other threads before this method
+	 * returns.  The method returns once all packets have been sent.
+	 *
+	 * @param hosts The {@link java.net.InetAddress} addresses to poll, each at most once.
+	 * @param count The number of packets to send to each host.
+	 * @param timeout The time to wait for each reply, in milliseconds.
+	 * @param packetsPerSecond The maximum send rate, or 0 for no limit.
+	 * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call for each packet
+	 */
+	public void bulkPing(Collection<? extends InetAddress> hosts, int count, long timeout, int packetsPerSecond, PingResponseCallback cb) throws Exception;
 	
 	/**
 	 * Initialize IPv4 in this Pinger implementation.  If unable to do so, implementations should throw an exception.
@@ -35,6 +35,10 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.jicmp.jna.NativeDatagramSocket;
 import org.opennms.netmgt.icmp.EchoPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Platform;
 
 /**
  * JnaPinger
@@ -42,11 +46,21 @@ import org.opennms.netmgt.icmp.EchoPacket;
  * @author brozow
  */
 public abstract class AbstractPinger<T extends InetAddress> implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractPinger.class);
     
     public static final double NANOS_PER_MILLI = 1000000.0;
 
+    /**
+     * Set to true to use unprivileged ICMP datagram sockets rather than raw
+     * sockets.  On Linux these need the group of the process to be within
+     * net.ipv4.ping_group_range, and are also used when a raw socket cannot
+     * be opened.
+     */
+    public static final String USE_DATAGRAM_SOCKET_PROPERTY = "org.opennms.netmgt.icmp.jna.useDatagramSocket";
+
     private int m_pingerId;
     private NativeDatagramSocket m_pingSocket;
+    private boolean m_kernelManagedIdentifier = false;
     private Thread m_thread;
     private final AtomicReference<Throwable> m_throwable = new AtomicReference<Throwable>(null);
     private volatile boolean m_stopped = false;
@@ -57,6 +71,27 @@ public abstract class AbstractPinger<T extends InetAddress> implements Runnable
         m_pingSocket = pingSocket;
     }
 
+    protected AbstractPinger(final int pingerId, final int family, final int protocol) throws Exception {
+        m_pingerId = pingerId;
+        boolean datagram = Platform.isMac() || Boolean.getBoolean(USE_DATAGRAM_SOCKET_PROPERTY);
+        if (!datagram) {
+            try {
+                m_pingSocket = NativeDatagramSocket.create(family, NativeDatagramSocket.SOCK_RAW, protocol);
+            } catch (final Exception e) {
+                if (!Platform.isLinux()) {
+                    throw e;
+                }
+                LOG.info("Unable to open a raw ICMP socket, falling back to an unprivileged ICMP datagram socket.");
+                LOG.debug("Raw socket failure", e);
+                datagram = true;
+            }
+        }
+        if (datagram) {
+            m_pingSocket = NativeDatagramSocket.create(family, NativeDatagramSocket.SOCK_DGRAM, protocol);
+            m_kernelManagedIdentifier = Platform.isLinux();
+        }
+    }
+
     /**
      * @return the pingSocket
      */
@@ -68,6 +103,18 @@ public abstract class AbstractPinger<T extends InetAddress> implements Runnable
         return m_pingerId;
     }
 
+    /**
+     * Linux ICMP datagram sockets replace the identifier of outgoing echo
+     * requests with the local port of the socket and only deliver the replies
+     * that match it, without the IP header.  The identifier of a reply is then
+     * meaningless, but every reply on the socket is for this pinger.
+     *
+     * @return true if the kernel manages the echo identifier of the socket
+     */
+    protected boolean isKernelManagedIdentifier() {
+        return m_kernelManagedIdentifier;
+    }
+
     public boolean isFinished() {
         return m_stopped;
     }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.TimeoutWheel;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches the replies to the echo requests sent by
+ * {@link JnaPinger#bulkPing} without going through the request tracker.
+ *
+ * Outstanding echoes are kept in a concurrent map keyed by request id, so
+ * the socket reader threads can match a reply with a single lookup, and
+ * their timeouts in a {@link TimeoutWheel} driven by one timer thread, so
+ * an echo costs no more than a map entry and a wheel entry however many of
+ * them are in flight.  Whoever removes an echo from the map first, the
+ * reader or the timer, owns its callback.
+ */
+class EchoCorrelator implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(EchoCorrelator.class);
+
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SLOTS = 1024;
+
+    private static class PendingEcho implements EchoPacket {
+        private final JnaPingRequestId m_id;
+        private final PingResponseCallback m_callback;
+        private final long m_sentTimeNanos;
+
+        PendingEcho(final JnaPingRequestId id, final PingResponseCallback callback, final long sentTimeNanos) {
+            m_id = id;
+            m_callback = callback;
+            m_sentTimeNanos = sentTimeNanos;
+        }
+
+        @Override
+        public boolean isEchoReply() {
+            return false;
+        }
+
+        @Override
+        public int getIdentifier() {
+            return m_id.getIdentifier();
+        }
+
+        @Override
+        public int getSequenceNumber() {
+            return m_id.getSequenceNumber();
+        }
+
+        @Override
+        public long getThreadId() {
+            return m_id.getThreadId();
+        }
+
+        @Override
+        public long getReceivedTimeNanos() {
+            return 0;
+        }
+
+        @Override
+        public long getSentTimeNanos() {
+            return m_sentTimeNanos;
+        }
+
+        @Override
+        public double elapsedTime(final TimeUnit timeUnit) {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return m_id.toString();
+        }
+    }
+
+    private final ConcurrentMap<JnaPingRequestId, PendingEcho> m_pending = new ConcurrentHashMap<JnaPingRequestId, PendingEcho>();
+    private final TimeoutWheel<PendingEcho> m_wheel = new TimeoutWheel<PendingEcho>(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS), WHEEL_SLOTS, System.nanoTime());
+    private final String m_name;
+    private Thread m_thread;
+
+    EchoCorrelator(final String name) {
+        m_name = name;
+    }
+
+    /**
+     * Registers an echo that is about to be sent.
+     *
+     * @return the echo, to pass to the callback if sending fails, or null if
+     *   an echo with the same id is already outstanding
+     */
+    public EchoPacket register(final JnaPingRequestId id, final long timeoutMillis, final PingResponseCallback callback) {
+        final long now = System.nanoTime();
+        final PendingEcho echo = new PendingEcho(id, callback, now);
+        if (m_pending.putIfAbsent(id, echo) != null) {
+            return null;
+        }
+        m_wheel.schedule(echo, now + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        synchronized (this) {
+            if (m_thread == null) {
+                m_thread = new Thread(this, m_name + "-Timeouts");
+                m_thread.setDaemon(true);
+                m_thread.start();
+            }
+            notifyAll();
+        }
+        return echo;
+    }
+
+    /**
+     * Forgets an echo that could not be sent.
+     */
+    public void cancel(final JnaPingRequestId id) {
+        m_pending.remove(id);
+    }
+
+    /**
+     * Hands a reply to the callback of its echo.
+     *
+     * @return false if the reply does not belong to an outstanding echo
+     */
+    public boolean processReply(final InetAddress address, final EchoPacket reply) {
+        final PendingEcho echo = m_pending.remove(new JnaPingRequestId(address, reply.getIdentifier(), reply.getSequenceNumber(), reply.getThreadId()));
+        if (echo == null) {
+            return false;
+        }
+        try {
+            echo.m_callback.handleResponse(address, reply);
+        } catch (final Throwable t) {
+            LOG.warn("Ping callback failed for reply {} from {}", reply, address, t);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the timeout thread.  Echoes still outstanding are timed out.
+     * Registering another echo starts a new thread.
+     */
+    public void stop() throws InterruptedException {
+        final Thread thread;
+        synchronized (this) {
+            thread = m_thread;
+            m_thread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+        for (final PendingEcho echo : m_pending.values()) {
+            expire(echo);
+        }
+    }
+
+    /**
+     * @return the number of echoes waiting for a reply
+     */
+    public int getPendingCount() {
+        return m_pending.size();
+    }
+
+    private void expire(final PendingEcho echo) {
+        if (m_pending.remove(echo.m_id, echo)) {
+            try {
+                echo.m_callback.handleTimeout(echo.m_id.getAddress(), echo);
+            } catch (final Throwable t) {
+                LOG.warn("Ping callback failed for timeout of {}", echo, t);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        Logging.putPrefix("icmp");
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (m_pending.isEmpty()) {
+                        wait();
+                    }
+                }
+                Thread.sleep(TICK_MILLIS);
+                for (final PendingEcho echo : m_wheel.advance(System.nanoTime())) {
+                    expire(echo);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.debug("Timeout thread interrupted.");
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.icmp.EchoPacket;
+
+/**
+ * A copy of the fields of an echo reply.  The replies built by the socket
+ * readers are views on their receive buffer, which is overwritten by the
+ * next packet, so they are copied before being handed to another thread.
+ */
+final class EchoReplySnapshot implements EchoPacket {
+
+    private final boolean m_echoReply;
+    private final int m_identifier;
+    private final int m_sequenceNumber;
+    private final long m_threadId;
+    private final long m_sentTimeNanos;
+    private final long m_receivedTimeNanos;
+
+    /**
+     * @param packet the reply to copy
+     * @param identifier the identifier to report, which differs from the one
+     *   on the wire when the kernel manages the identifier of the socket
+     */
+    EchoReplySnapshot(final EchoPacket packet, final int identifier) {
+        m_echoReply = packet.isEchoReply();
+        m_identifier = identifier;
+        m_sequenceNumber = packet.getSequenceNumber();
+        m_threadId = packet.getThreadId();
+        m_sentTimeNanos = packet.getSentTimeNanos();
+        m_receivedTimeNanos = packet.getReceivedTimeNanos();
+    }
+
+    @Override
+    public boolean isEchoReply() {
+        return m_echoReply;
+    }
+
+    @Override
+    public int getIdentifier() {
+        return m_identifier;
+    }
+
+    @Override
+    public int getSequenceNumber() {
+        return m_sequenceNumber;
+    }
+
+    @Override
+    public long getThreadId() {
+        return m_threadId;
+    }
+
+    @Override
+    public long getReceivedTimeNanos() {
+        return m_receivedTimeNanos;
+    }
+
+    @Override
+    public long getSentTimeNanos() {
+        return m_sentTimeNanos;
+    }
+
+    @Override
+    public double elapsedTime(final TimeUnit unit) {
+        final double nanosPerUnit = TimeUnit.NANOSECONDS.convert(1, unit);
+        return (m_receivedTimeNanos - m_sentTimeNanos) / nanosPerUnit;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[ident = " + m_identifier + ", seqNum = " + m_sequenceNumber + ", tId = " + m_threadId + ", rtt = " + (m_receivedTimeNanos - m_sentTimeNanos) + "ns]";
+    }
+}
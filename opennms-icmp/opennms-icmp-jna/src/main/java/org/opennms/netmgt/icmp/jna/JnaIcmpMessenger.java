@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.icmp.jna;
 
+import java.net.Inet4Address;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.Queue;
 
@@ -50,8 +52,14 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
 	private V4Pinger m_v4;
 	private V6Pinger m_v6;
     private Queue<JnaPingReply> pendingReplies = null;
+    private final EchoCorrelator m_correlator;
 
 	public JnaIcmpMessenger(final int pingerId) throws Exception {
+	    this(pingerId, null);
+	}
+
+	JnaIcmpMessenger(final int pingerId, final EchoCorrelator correlator) throws Exception {
+	    m_correlator = correlator;
 	    Throwable error = null;
 	    try {
 	        m_v4 = new V4Pinger(pingerId);
@@ -100,12 +108,30 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
         @Override
 	public void start(final Queue<JnaPingReply> replyQueue) {
         pendingReplies = replyQueue;
-        m_v4.start();
-        m_v6.start();
+        if (m_v4 != null) m_v4.start();
+        if (m_v6 != null) m_v6.start();
+	}
+
+	/**
+	 * Sends a single echo request without tracking it.
+	 */
+	void sendEcho(final InetAddress addr, final int identifier, final int sequenceNumber, final long threadId, final int packetSize) throws Exception {
+	    if (addr instanceof Inet4Address) {
+	        if (m_v4 == null) throw new IcmpMessengerIOException("IPv4 is not available.");
+	        m_v4.ping((Inet4Address)addr, identifier, sequenceNumber, threadId, 1, 0, packetSize);
+	    } else if (addr instanceof Inet6Address) {
+	        if (m_v6 == null) throw new IcmpMessengerIOException("IPv6 is not available.");
+	        m_v6.ping((Inet6Address)addr, identifier, sequenceNumber, threadId, 1, 0, packetSize);
+	    } else {
+	        throw new IllegalArgumentException("Unsupported address: " + addr);
+	    }
 	}
 
         @Override
 	public void onPingReply(final InetAddress address, final EchoPacket packet) {
+		if (m_correlator != null && m_correlator.processReply(address, packet)) {
+		    return;
+		}
 		pendingReplies.offer(new JnaPingReply(address, packet));
 	}
 
@@ -35,10 +35,15 @@ import static org.opennms.netmgt.icmp.PingConstants.DEFAULT_TIMEOUT;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.SecureRandom;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.icmp.BulkPingSupport;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
@@ -61,6 +66,7 @@ public class JnaPinger implements Pinger {
 
     private RequestTracker<JnaPingRequest, JnaPingReply> m_pingTracker;
     private JnaIcmpMessenger m_messenger;
+    private EchoCorrelator m_correlator;
 
     /**
      * Initializes this singleton
@@ -68,7 +74,19 @@ public class JnaPinger implements Pinger {
      */
     private synchronized void initialize() throws Exception {
         if (m_pingTracker != null) return;
-        m_messenger = new JnaIcmpMessenger(m_pingerId);
+        m_correlator = new EchoCorrelator("JNA-ICMP-"+m_pingerId);
+        final EchoCorrelator correlator = m_correlator;
+        Runtime.getRuntime().addShutdownHook(new Thread("JNA-ICMP-"+m_pingerId+"-Shutdown") {
+            @Override
+            public void run() {
+                try {
+                    correlator.stop();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        m_messenger = new JnaIcmpMessenger(m_pingerId, m_correlator);
         m_pingTracker = Logging.withPrefix("icmp", new Callable<RequestTracker<JnaPingRequest,JnaPingReply>>() {
             @Override public RequestTracker<JnaPingRequest, JnaPingReply> call() throws Exception {
                 return new RequestTracker<JnaPingRequest, JnaPingReply>("JNA-ICMP-"+m_pingerId, m_messenger, new IDBasedRequestLocator<JnaPingRequestId, JnaPingRequest, JnaPingReply>());
@@ -229,4 +247,45 @@ public class JnaPinger implements Pinger {
         return cb.getResponseTimes();
     }
 
+    /**
+     * Sends the echo requests straight to the sockets and matches the
+     * replies in an {@link EchoCorrelator} rather than the request tracker,
+     * so that tens of thousands of echoes can be in flight at once.
+     *
+     * @param hosts a {@link java.util.Collection} of {@link java.net.InetAddress} objects.
+     * @param count a int.
+     * @param timeout a long.
+     * @param packetsPerSecond a int.
+     * @param cb a {@link org.opennms.netmgt.icmp.PingResponseCallback} object.
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void bulkPing(final Collection<? extends InetAddress> hosts, final int count, final long timeout, final int packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        BulkPingSupport.checkArguments(count, packetsPerSecond);
+        initialize();
+        final PingResponseCallback callback = new LogPrefixPreservingPingResponseCallback(cb);
+        final long effectiveTimeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
+        final long threadId = JnaPingRequest.getNextTID();
+        final long start = System.nanoTime();
+        long sent = 0;
+        for (int seqNum = 0; seqNum < count; seqNum++) {
+            for (final InetAddress host : hosts) {
+                BulkPingSupport.pace(start, sent++, packetsPerSecond);
+                final JnaPingRequestId id = new JnaPingRequestId(host, m_pingerId, seqNum, threadId);
+                final EchoPacket request = m_correlator.register(id, effectiveTimeout, callback);
+                if (request == null) {
+                    callback.handleError(host, new JnaPingRequest(id, effectiveTimeout, 0, DEFAULT_PACKET_SIZE, cb), new IllegalArgumentException("Duplicate host " + host));
+                    continue;
+                }
+                try {
+                    m_messenger.sendEcho(host, m_pingerId, seqNum, threadId, DEFAULT_PACKET_SIZE);
+                } catch (final Throwable t) {
+                    m_correlator.cancel(id);
+                    callback.handleError(host, request, t);
+                }
+            }
+        }
+        LOG.debug("Sent {} echo requests in {} ms", sent, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
 }
@@ -54,7 +54,7 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
     
 
     public V4Pinger(final int pingerId) throws Exception {
-        super(pingerId, NativeDatagramSocket.create(NativeDatagramSocket.PF_INET, Platform.isMac() ? NativeDatagramSocket.SOCK_DGRAM : NativeDatagramSocket.SOCK_RAW, NativeDatagramSocket.IPPROTO_ICMP));
+        super(pingerId, NativeDatagramSocket.PF_INET, NativeDatagramSocket.IPPROTO_ICMP);
         
         // Windows requires at least one packet sent before a receive call can be made without error
         // so we send a packet here to make sure...  This one should not match the normal ping requests
@@ -74,7 +74,9 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
         Logging.putPrefix("icmp");
         try {
             final int pingerId = getPingerId();
-            final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
+            final boolean anyIdentifier = isKernelManagedIdentifier();
+            // a direct buffer is handed to recvfrom as is rather than copied in and out on every call
+            final NativeDatagramPacket datagram = new NativeDatagramPacket(ByteBuffer.allocateDirect(65535), null, -1);
             while (!isFinished()) {
                 getPingSocket().receive(datagram);
                 final long received = System.nanoTime();
@@ -82,8 +84,9 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
                 final ICMPPacket icmpPacket = new ICMPPacket(getIPPayload(datagram));
                 final V4PingReply echoReply = icmpPacket.getType() == Type.EchoReply ? new V4PingReply(icmpPacket, received) : null;
             
-                if (echoReply != null && echoReply.getIdentifier() ==  pingerId && echoReply.isValid()) {
-                    notifyPingListeners(datagram.getAddress(), echoReply);
+                if (echoReply != null && (anyIdentifier || echoReply.getIdentifier() == pingerId) && echoReply.isValid()) {
+                    // the reply is a view on the receive buffer, so pass on a copy
+                    notifyPingListeners(datagram.getAddress(), new EchoReplySnapshot(echoReply, pingerId));
                 }
             }
         } catch(final Throwable t) {
@@ -93,6 +96,9 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
     }
 
     private ByteBuffer getIPPayload(final NativeDatagramPacket datagram) {
+        if (isKernelManagedIdentifier()) {
+            return datagram.getContent();
+        }
         return new IPPacket(datagram.getContent()).getPayload();
     }
     
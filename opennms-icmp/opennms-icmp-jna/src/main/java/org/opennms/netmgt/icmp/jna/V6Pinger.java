@@ -54,7 +54,7 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
 	private static final Logger LOG = LoggerFactory.getLogger(V6Pinger.class);
 
     public V6Pinger(final int pingerId) throws Exception {
-        super(pingerId, NativeDatagramSocket.create(NativeDatagramSocket.PF_INET6, Platform.isMac() ? NativeDatagramSocket.SOCK_DGRAM : NativeDatagramSocket.SOCK_RAW, NativeDatagramSocket.IPPROTO_ICMPV6));
+        super(pingerId, NativeDatagramSocket.PF_INET6, NativeDatagramSocket.IPPROTO_ICMPV6);
         
         // Windows requires at least one packet sent before a receive call can be made without error
         // so we send a packet here to make sure...  This one should not match the normal ping requests
@@ -83,7 +83,9 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
         Logging.putPrefix("icmp");
         try {
             final int pingerId = getPingerId();
-            final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
+            final boolean anyIdentifier = isKernelManagedIdentifier();
+            // a direct buffer is handed to recvfrom as is rather than copied in and out on every call
+            final NativeDatagramPacket datagram = new NativeDatagramPacket(ByteBuffer.allocateDirect(65535), null, -1);
             while (!isFinished()) {
                 getPingSocket().receive(datagram);
                 final long received = System.nanoTime();
@@ -91,8 +93,9 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
                 final ICMPv6Packet icmpPacket = new ICMPv6Packet(getIPPayload(datagram));
                 final V6PingReply echoReply = icmpPacket.getType() == Type.EchoReply ? new V6PingReply(icmpPacket, received) : null;
             
-                if (echoReply != null && echoReply.getIdentifier() == pingerId && echoReply.isValid()) {
-                    notifyPingListeners(datagram.getAddress(), echoReply);
+                if (echoReply != null && (anyIdentifier || echoReply.getIdentifier() == pingerId) && echoReply.isValid()) {
+                    // the reply is a view on the receive buffer, so pass on a copy
+                    notifyPingListeners(datagram.getAddress(), new EchoReplySnapshot(echoReply, pingerId));
                 }
             }
         } catch(final Throwable t) {
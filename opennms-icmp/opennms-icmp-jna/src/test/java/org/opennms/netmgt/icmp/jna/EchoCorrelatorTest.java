@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+
+public class EchoCorrelatorTest {
+
+    private static class CountingCallback implements PingResponseCallback {
+        final AtomicInteger m_responses = new AtomicInteger();
+        final AtomicInteger m_timeouts = new AtomicInteger();
+
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+            m_responses.incrementAndGet();
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+            m_timeouts.incrementAndGet();
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+        }
+    }
+
+    @Test
+    public void testStopTimesOutPendingEchoes() throws Exception {
+        final EchoCorrelator correlator = new EchoCorrelator("EchoCorrelatorTest");
+        final CountingCallback callback = new CountingCallback();
+        final InetAddress localhost = InetAddress.getLoopbackAddress();
+
+        assertNotNull(correlator.register(new JnaPingRequestId(localhost, 1, 1, 1), 60000, callback));
+        assertNotNull(correlator.register(new JnaPingRequestId(localhost, 1, 2, 1), 60000, callback));
+        assertTrue(threadRunning());
+
+        correlator.stop();
+
+        assertFalse(threadRunning());
+        assertEquals(0, correlator.getPendingCount());
+        assertEquals(2, callback.m_timeouts.get());
+        assertEquals(0, callback.m_responses.get());
+
+        // a new echo starts the timeout thread again
+        assertNotNull(correlator.register(new JnaPingRequestId(localhost, 1, 3, 1), 10, callback));
+        Thread.sleep(200);
+        assertEquals(3, callback.m_timeouts.get());
+        correlator.stop();
+    }
+
+    private static boolean threadRunning() {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("EchoCorrelatorTest-Timeouts")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -30,8 +30,11 @@ package org.opennms.netmgt.icmp.jna;
 
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -245,6 +248,66 @@ public class JnaPingTest extends TestCase {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
 
+    private static class BulkPingResponseCallback implements PingResponseCallback {
+        private final CountDownLatch m_latch;
+        private final AtomicInteger m_responses = new AtomicInteger();
+        private final AtomicInteger m_timeouts = new AtomicInteger();
+        private final AtomicInteger m_errors = new AtomicInteger();
+        private final AtomicInteger m_badHostResponses = new AtomicInteger();
+        private final InetAddress m_badHost;
+
+        public BulkPingResponseCallback(int count, InetAddress badHost) {
+            m_latch = new CountDownLatch(count);
+            m_badHost = badHost;
+        }
+
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+            if (address.equals(m_badHost)) {
+                m_badHostResponses.incrementAndGet();
+            }
+            m_responses.incrementAndGet();
+            m_latch.countDown();
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+            m_timeouts.incrementAndGet();
+            m_latch.countDown();
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+            t.printStackTrace();
+            m_errors.incrementAndGet();
+            m_latch.countDown();
+        }
+    }
+
+    /**
+     * Pings 1000 loopback addresses 100 times each, plus an unreachable
+     * address, and checks that every echo is accounted for exactly once.
+     */
+    public void testBulkPingIPv4() throws Exception {
+        final List<InetAddress> hosts = new ArrayList<InetAddress>();
+        for (int i = 1; i <= 1000; i++) {
+            hosts.add(InetAddress.getByName("127.0." + (i >> 8) + "." + (i & 0xff)));
+        }
+        hosts.add(m_badHost);
+        final int count = 100;
+        final BulkPingResponseCallback cb = new BulkPingResponseCallback(hosts.size() * count, m_badHost);
+
+        final long start = System.currentTimeMillis();
+        s_jnaPinger.bulkPing(hosts, count, PingConstants.DEFAULT_TIMEOUT, 20000, cb);
+        assertTrue("Not all echoes were accounted for", cb.m_latch.await(30, TimeUnit.SECONDS));
+        System.err.printf("bulk ping: %d responses, %d timeouts, %d errors in %d ms%n", cb.m_responses.get(), cb.m_timeouts.get(), cb.m_errors.get(), System.currentTimeMillis() - start);
+
+        assertEquals(0, cb.m_errors.get());
+        assertEquals(0, cb.m_badHostResponses.get());
+        assertTrue("Too few responses from the loopback addresses", cb.m_responses.get() > 1000 * count * 9 / 10);
+        assertTrue("The unreachable address did not time out", cb.m_timeouts.get() >= count);
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
@@ -35,10 +35,12 @@ import static org.opennms.netmgt.icmp.PingConstants.DEFAULT_PACKET_SIZE;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.SecureRandom;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.icmp.BulkPingSupport;
 import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
@@ -302,4 +304,19 @@ public class JniPinger implements Pinger {
         return cb.getResponseTimes();
     }
 
+    /**
+     * <p>bulkPing</p>
+     *
+     * @param hosts a {@link java.util.Collection} of {@link java.net.InetAddress} objects.
+     * @param count a int.
+     * @param timeout a long.
+     * @param packetsPerSecond a int.
+     * @param cb a {@link org.opennms.netmgt.icmp.PingResponseCallback} object.
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void bulkPing(final Collection<? extends InetAddress> hosts, final int count, final long timeout, final int packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        BulkPingSupport.bulkPing(this, hosts, count, timeout, packetsPerSecond, cb);
+    }
+
 }
@@ -93,12 +93,24 @@ public class DefaultForeignSourceRepositoryFactory implements ForeignSourceRepos
     @Qualifier("fastQueueing")
     private ForeignSourceRepository m_fastQueueingRepository;
 
+    /** The journaled pending repository. */
+    @Autowired
+    @Qualifier("journaledPending")
+    private ForeignSourceRepository m_journaledPendingRepository;
+
+    /** The journaled deployed repository. */
+    @Autowired
+    @Qualifier("journaledDeployed")
+    private ForeignSourceRepository m_journaledDeployedRepository;
+
     /* (non-Javadoc)
      * @see org.opennms.netmgt.provision.persist.ForeignSourceRepositoryFactory#getPendingRepository()
      */
     @Override
     public ForeignSourceRepository getPendingRepository() {
         switch (getRepositoryStrategy()) {
+        case journaled:
+            return m_journaledPendingRepository;
         case fastQueueing:
             return m_fastQueueingRepository;
         case queueing:
@@ -125,6 +137,8 @@ public class DefaultForeignSourceRepositoryFactory implements ForeignSourceRepos
     @Override
     public ForeignSourceRepository getDeployedRepository() {
         switch (getRepositoryStrategy()) {
+        case journaled:
+            return m_journaledDeployedRepository;
         case fastQueueing:
             return m_fastQueueingRepository;
         case queueing:
@@ -170,6 +184,8 @@ public class DefaultForeignSourceRepositoryFactory implements ForeignSourceRepos
      */
     @Override
     public void afterPropertiesSet() throws Exception {
+        Assert.notNull(m_journaledPendingRepository);
+        Assert.notNull(m_journaledDeployedRepository);
         Assert.notNull(m_fastQueueingRepository);
         Assert.notNull(m_queueingRepository);
         Assert.notNull(m_fastCachingRepository);
@@ -34,6 +34,7 @@ package org.opennms.netmgt.provision.persist;
  * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a> 
  */
 public enum FactoryStrategy {
+    journaled,
     fastQueueing,
     queueing,
     fastCaching,
@@ -0,0 +1,513 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.persist;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
+import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * A requisition repository for large requisitions that are edited one node
+ * at a time.
+ *
+ * Requisitions are read once from the wrapped file based repository and
+ * kept in memory, indexed by foreign ID.  Node level changes saved through
+ * {@link #save(Requisition, Collection)} are appended to a journal next to
+ * the requisition file instead of rewriting the whole file, and the journal
+ * is folded back into the requisition XML in the background once it grows
+ * past <code>org.opennms.netmgt.provision.persist.journalMaxEntries</code>
+ * records, every <code>org.opennms.netmgt.provision.persist.journalCompactInterval</code>
+ * milliseconds, and on {@link #flush()}.  Saving a whole requisition (as
+ * the importer does) still writes the XML file right away.
+ *
+ * Requisitions returned by this repository share their nodes with the
+ * in-memory copy so that reading one stays cheap however large it is.  The
+ * nodes must be treated as read-only: replace a node in the requisition
+ * with a copy before changing it, and don't change a node after it has
+ * been saved.
+ */
+public class JournalingForeignSourceRepository extends AbstractForeignSourceRepository implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalingForeignSourceRepository.class);
+
+    private final long m_compactInterval = Long.getLong("org.opennms.netmgt.provision.persist.journalCompactInterval", 30000);
+    private final int m_maxJournalEntries = Integer.getInteger("org.opennms.netmgt.provision.persist.journalMaxEntries", 1000);
+
+    private ForeignSourceRepository m_foreignSourceRepository;
+
+    private final ConcurrentMap<String, JournaledRequisition> m_requisitions = new ConcurrentHashMap<String, JournaledRequisition>();
+
+    private final ScheduledThreadPoolExecutor m_executor;
+
+    /**
+     * The in-memory copy of one requisition and its journal.
+     *
+     * The object monitor guards the fields, m_writeLock serializes writes of
+     * the requisition file so that an older copy never replaces a newer one.
+     */
+    private static class JournaledRequisition {
+        private final String m_foreignSource;
+        private final Object m_writeLock = new Object();
+
+        private Requisition m_header;
+        private Map<String, RequisitionNode> m_nodes;
+        private RequisitionJournal m_journal;
+        private long m_lastModified;
+        private Requisition m_issued;
+        private boolean m_compactionQueued;
+        private boolean m_writing;
+
+        public JournaledRequisition(final String foreignSource) {
+            m_foreignSource = foreignSource;
+        }
+
+        private boolean exists() {
+            return m_header != null;
+        }
+
+        private Requisition toRequisition() {
+            final Requisition requisition = new Requisition(m_foreignSource);
+            requisition.setDateStamp(m_header.getDateStamp());
+            requisition.setLastImport(m_header.getLastImport());
+            requisition.setResource(m_header.getResource());
+            requisition.setNodes(new ArrayList<RequisitionNode>(m_nodes.values()));
+            return requisition;
+        }
+    }
+
+    public JournalingForeignSourceRepository() {
+        m_executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Requisition-Journal-Compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        m_executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        m_executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compactAll();
+            }
+        }, m_compactInterval, m_compactInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public ForeignSourceRepository getForeignSourceRepository() {
+        return m_foreignSourceRepository;
+    }
+
+    public void setForeignSourceRepository(final ForeignSourceRepository fsr) {
+        m_foreignSourceRepository = fsr;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(m_foreignSourceRepository);
+    }
+
+    @Override
+    public void destroy() {
+        m_executor.shutdown();
+        flush();
+        for (final JournaledRequisition entry : m_requisitions.values()) {
+            synchronized (entry) {
+                if (entry.m_journal != null) {
+                    entry.m_journal.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the requisition file into the in-memory copy and replays its
+     * journal, if it has not been read yet or the file was changed by
+     * someone else.  Must be called holding the entry lock.
+     */
+    private void load(final JournaledRequisition entry) {
+        final File file = getRequisitionFile(entry.m_foreignSource);
+        final long lastModified = file.lastModified();
+        if (entry.m_journal != null && (entry.m_writing || entry.m_lastModified == lastModified)) {
+            return;
+        }
+
+        if (entry.m_journal != null) {
+            LOG.info("Requisition {} was changed on disk, reloading it.", file.getPath());
+            entry.m_journal.close();
+        }
+        entry.m_journal = new RequisitionJournal(new File(file.getPath() + ".journal"));
+        entry.m_lastModified = lastModified;
+        entry.m_issued = null;
+
+        final Requisition requisition = m_foreignSourceRepository.getRequisition(entry.m_foreignSource);
+        final Map<String, RequisitionNode> nodes = new LinkedHashMap<String, RequisitionNode>();
+        if (requisition != null) {
+            for (final RequisitionNode node : requisition.getNodes()) {
+                nodes.put(node.getForeignId(), node);
+            }
+        }
+        final Requisition header = requisition == null ? new Requisition(entry.m_foreignSource) : requisition;
+        if (entry.m_journal.replay(header, nodes) > 0 || requisition != null) {
+            header.setNodes(new ArrayList<RequisitionNode>());
+            entry.m_header = header;
+            entry.m_nodes = nodes;
+        } else {
+            entry.m_header = null;
+            entry.m_nodes = null;
+        }
+    }
+
+    private JournaledRequisition getEntry(final String foreignSource) {
+        if (foreignSource == null) {
+            throw new ForeignSourceRepositoryException("can't get a requisition with a null foreign source name!");
+        }
+        JournaledRequisition entry = m_requisitions.get(foreignSource);
+        if (entry == null) {
+            final JournaledRequisition newEntry = new JournaledRequisition(foreignSource);
+            entry = m_requisitions.putIfAbsent(foreignSource, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    private File getRequisitionFile(final String foreignSource) {
+        final URL url = m_foreignSourceRepository.getRequisitionURL(foreignSource);
+        final File file = url == null ? null : FileUtils.toFile(url);
+        if (file == null) {
+            throw new ForeignSourceRepositoryException("unable to journal requisition " + foreignSource + ", it is not stored in a file: " + url);
+        }
+        return file;
+    }
+
+    @Override
+    public Set<String> getActiveForeignSourceNames() {
+        final Set<String> names = new TreeSet<String>(m_foreignSourceRepository.getActiveForeignSourceNames());
+        for (final JournaledRequisition entry : m_requisitions.values()) {
+            synchronized (entry) {
+                if (entry.exists()) {
+                    names.add(entry.m_foreignSource);
+                }
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public int getForeignSourceCount() throws ForeignSourceRepositoryException {
+        return m_foreignSourceRepository.getForeignSourceCount();
+    }
+
+    @Override
+    public Set<ForeignSource> getForeignSources() throws ForeignSourceRepositoryException {
+        return m_foreignSourceRepository.getForeignSources();
+    }
+
+    @Override
+    public ForeignSource getForeignSource(final String foreignSourceName) throws ForeignSourceRepositoryException {
+        return m_foreignSourceRepository.getForeignSource(foreignSourceName);
+    }
+
+    @Override
+    public void save(final ForeignSource foreignSource) throws ForeignSourceRepositoryException {
+        m_foreignSourceRepository.save(foreignSource);
+    }
+
+    @Override
+    public void delete(final ForeignSource foreignSource) throws ForeignSourceRepositoryException {
+        m_foreignSourceRepository.delete(foreignSource);
+    }
+
+    @Override
+    public ForeignSource getDefaultForeignSource() throws ForeignSourceRepositoryException {
+        return m_foreignSourceRepository.getDefaultForeignSource();
+    }
+
+    @Override
+    public void putDefaultForeignSource(final ForeignSource foreignSource) throws ForeignSourceRepositoryException {
+        m_foreignSourceRepository.putDefaultForeignSource(foreignSource);
+    }
+
+    @Override
+    public void resetDefaultForeignSource() throws ForeignSourceRepositoryException {
+        m_foreignSourceRepository.resetDefaultForeignSource();
+    }
+
+    @Override
+    public Set<Requisition> getRequisitions() throws ForeignSourceRepositoryException {
+        final Set<Requisition> requisitions = new TreeSet<Requisition>();
+        for (final String foreignSource : getActiveForeignSourceNames()) {
+            final JournaledRequisition entry = getEntry(foreignSource);
+            synchronized (entry) {
+                load(entry);
+                if (entry.exists()) {
+                    requisitions.add(entry.toRequisition());
+                }
+            }
+        }
+        return requisitions;
+    }
+
+    @Override
+    public Requisition getRequisition(final String foreignSourceName) throws ForeignSourceRepositoryException {
+        final JournaledRequisition entry = getEntry(foreignSourceName);
+        synchronized (entry) {
+            load(entry);
+            if (!entry.exists()) {
+                return null;
+            }
+            entry.m_issued = entry.toRequisition();
+            return entry.m_issued;
+        }
+    }
+
+    @Override
+    public Requisition getRequisition(final ForeignSource foreignSource) throws ForeignSourceRepositoryException {
+        if (foreignSource == null) {
+            throw new ForeignSourceRepositoryException("can't get a requisition with a null foreign source name!");
+        }
+        return getRequisition(foreignSource.getName());
+    }
+
+    @Override
+    public OnmsNodeRequisition getNodeRequisition(final String foreignSource, final String foreignId) throws ForeignSourceRepositoryException {
+        final JournaledRequisition entry = getEntry(foreignSource);
+        synchronized (entry) {
+            load(entry);
+            final RequisitionNode node = entry.exists() ? entry.m_nodes.get(foreignId) : null;
+            return node == null ? null : new OnmsNodeRequisition(foreignSource, node);
+        }
+    }
+
+    @Override
+    public Date getRequisitionDate(final String foreignSource) {
+        final JournaledRequisition entry = getEntry(foreignSource);
+        synchronized (entry) {
+            load(entry);
+            return entry.exists() ? entry.m_header.getDate() : null;
+        }
+    }
+
+    @Override
+    public URL getRequisitionURL(final String foreignSource) {
+        return m_foreignSourceRepository.getRequisitionURL(foreignSource);
+    }
+
+    @Override
+    public void save(final Requisition requisition) throws ForeignSourceRepositoryException {
+        if (requisition == null) {
+            throw new ForeignSourceRepositoryException("can't save a null requisition!");
+        }
+        validate(requisition);
+
+        final JournaledRequisition entry = getEntry(requisition.getForeignSource());
+        synchronized (entry.m_writeLock) {
+            synchronized (entry) {
+                entry.m_writing = true;
+            }
+            try {
+                m_foreignSourceRepository.save(requisition);
+            } finally {
+                synchronized (entry) {
+                    entry.m_writing = false;
+                    if (entry.m_journal != null) {
+                        entry.m_journal.clear();
+                    }
+                    // the next access reads the file we just wrote
+                    entry.m_journal = null;
+                    entry.m_issued = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the given nodes of a requisition without rewriting the rest of
+     * it.  This only works if the requisition is the one last returned by
+     * {@link #getRequisition(String)} for its foreign source and nothing
+     * else was saved in the meantime, otherwise the whole requisition is
+     * saved.
+     *
+     * @param requisition the changed requisition
+     * @param foreignIds the foreign IDs of the nodes that were added,
+     * changed or removed
+     */
+    public void save(final Requisition requisition, final Collection<String> foreignIds) throws ForeignSourceRepositoryException {
+        if (requisition == null) {
+            throw new ForeignSourceRepositoryException("can't save a null requisition!");
+        }
+
+        final JournaledRequisition entry = getEntry(requisition.getForeignSource());
+        boolean saveAll = false;
+        boolean compact = false;
+        synchronized (entry) {
+            load(entry);
+            if (requisition != entry.m_issued) {
+                LOG.debug("Requisition {} was not read from this repository or was replaced, saving all of it.", requisition.getForeignSource());
+                saveAll = true;
+            } else {
+                entry.m_journal.append(requisition, foreignIds);
+                entry.m_header.setDateStamp(requisition.getDateStamp());
+                for (final String foreignId : foreignIds) {
+                    final RequisitionNode node = requisition.getNode(foreignId);
+                    if (node == null) {
+                        entry.m_nodes.remove(foreignId);
+                    } else {
+                        entry.m_nodes.put(foreignId, node);
+                    }
+                }
+                if (entry.m_journal.getEntryCount() >= m_maxJournalEntries && !entry.m_compactionQueued) {
+                    entry.m_compactionQueued = true;
+                    compact = true;
+                }
+            }
+        }
+
+        if (saveAll) {
+            save(requisition);
+        } else if (compact) {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compact(entry);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void delete(final Requisition requisition) throws ForeignSourceRepositoryException {
+        if (requisition == null) {
+            throw new ForeignSourceRepositoryException("can't delete a null requisition!");
+        }
+        final JournaledRequisition entry = getEntry(requisition.getForeignSource());
+        synchronized (entry.m_writeLock) {
+            synchronized (entry) {
+                if (entry.m_journal != null) {
+                    entry.m_journal.clear();
+                }
+                entry.m_journal = null;
+                entry.m_issued = null;
+            }
+            m_foreignSourceRepository.delete(requisition);
+        }
+    }
+
+    /**
+     * Writes the in-memory copy of a requisition to its file if its journal
+     * has any records, and removes the journal if nothing was added to it
+     * while the file was being written.
+     */
+    private void compact(final JournaledRequisition entry) {
+        synchronized (entry.m_writeLock) {
+            final Requisition requisition;
+            final int entryCount;
+            synchronized (entry) {
+                entry.m_compactionQueued = false;
+                if (entry.m_journal == null || entry.m_journal.getEntryCount() == 0 || !entry.exists()) {
+                    return;
+                }
+                // the nodes are never changed in place, so this is a consistent
+                // copy of the requisition as of the current journal record
+                requisition = entry.toRequisition();
+                entryCount = entry.m_journal.getEntryCount();
+                entry.m_writing = true;
+            }
+
+            final long start = System.currentTimeMillis();
+            boolean written = false;
+            try {
+                m_foreignSourceRepository.save(requisition);
+                written = true;
+            } finally {
+                synchronized (entry) {
+                    entry.m_writing = false;
+                    if (written && entry.m_journal != null) {
+                        entry.m_lastModified = getRequisitionFile(entry.m_foreignSource).lastModified();
+                        if (entry.m_journal.getEntryCount() == entryCount) {
+                            entry.m_journal.clear();
+                        }
+                    }
+                }
+            }
+            LOG.debug("Compacted {} journal records into requisition {} ({} nodes) in {}ms", entryCount, entry.m_foreignSource, requisition.getNodeCount(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private void compactAll() {
+        for (final JournaledRequisition entry : m_requisitions.values()) {
+            try {
+                compact(entry);
+            } catch (final RuntimeException e) {
+                LOG.warn("Unable to compact requisition journal for {}", entry.m_foreignSource, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of journal records that are not part of the
+     * requisition file yet
+     */
+    int getJournalEntryCount(final String foreignSource) {
+        final JournaledRequisition entry = getEntry(foreignSource);
+        synchronized (entry) {
+            return entry.m_journal == null ? 0 : entry.m_journal.getEntryCount();
+        }
+    }
+
+    @Override
+    public void flush() throws ForeignSourceRepositoryException {
+        for (final JournaledRequisition entry : m_requisitions.values()) {
+            compact(entry);
+        }
+    }
+}
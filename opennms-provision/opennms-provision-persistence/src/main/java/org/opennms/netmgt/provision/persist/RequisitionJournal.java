@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.persist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of node level changes to a single requisition.
+ *
+ * Every record holds the complete state of one node (or its removal), so
+ * replaying the journal in order on top of any earlier copy of the
+ * requisition gives the latest state, even if some of the records are
+ * already part of that copy.  A record that was only partially written
+ * when OpenNMS went down is dropped on replay.
+ */
+class RequisitionJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(RequisitionJournal.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte DATE_STAMP = 'D';
+    private static final byte PUT_NODE = 'N';
+    private static final byte DELETE_NODE = 'X';
+
+    private final File m_file;
+    private DataOutputStream m_output;
+    private int m_entryCount = 0;
+
+    RequisitionJournal(final File file) {
+        m_file = file;
+    }
+
+    File getFile() {
+        return m_file;
+    }
+
+    /**
+     * @return the number of records appended or replayed since the journal
+     * was last cleared
+     */
+    synchronized int getEntryCount() {
+        return m_entryCount;
+    }
+
+    /**
+     * Appends the date stamp of the requisition and the current state of
+     * the given nodes.  Nodes that are no longer part of the requisition
+     * are recorded as deleted.
+     */
+    synchronized void append(final Requisition requisition, final Collection<String> foreignIds) throws ForeignSourceRepositoryException {
+        try {
+            if (m_output == null) {
+                m_output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_file, true)));
+            }
+            if (requisition.getDateStamp() != null) {
+                write(DATE_STAMP, requisition.getDateStamp().toXMLFormat());
+            }
+            for (final String foreignId : foreignIds) {
+                final RequisitionNode node = requisition.getNode(foreignId);
+                if (node == null) {
+                    write(DELETE_NODE, foreignId);
+                } else {
+                    write(PUT_NODE, JaxbUtils.marshal(node));
+                }
+            }
+            m_output.flush();
+        } catch (final IOException e) {
+            throw new ForeignSourceRepositoryException("unable to append to requisition journal " + m_file.getPath(), e);
+        }
+    }
+
+    private void write(final byte type, final String payload) throws IOException {
+        final byte[] bytes = payload.getBytes(UTF_8);
+        m_output.writeByte(type);
+        m_output.writeInt(bytes.length);
+        m_output.write(bytes);
+        m_entryCount++;
+    }
+
+    /**
+     * Applies the journal to the given requisition header and node index.
+     *
+     * @return the number of records that were applied
+     */
+    synchronized int replay(final Requisition header, final Map<String, RequisitionNode> nodes) throws ForeignSourceRepositoryException {
+        if (!m_file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        long validLength = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)));
+            while (true) {
+                final byte type;
+                try {
+                    type = input.readByte();
+                } catch (final EOFException e) {
+                    break;
+                }
+                final byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                final String payload = new String(bytes, UTF_8);
+
+                switch (type) {
+                case DATE_STAMP:
+                    header.setDateStamp(DatatypeFactory.newInstance().newXMLGregorianCalendar(payload));
+                    break;
+                case PUT_NODE:
+                    final RequisitionNode node = JaxbUtils.unmarshal(RequisitionNode.class, payload, false);
+                    nodes.put(node.getForeignId(), node);
+                    break;
+                case DELETE_NODE:
+                    nodes.remove(payload);
+                    break;
+                default:
+                    throw new IOException("unknown record type " + type + " at offset " + validLength);
+                }
+                validLength += 1 + 4 + bytes.length;
+                count++;
+            }
+        } catch (final EOFException e) {
+            LOG.warn("Requisition journal {} ends with an incomplete record, discarding it.", m_file.getPath());
+            IOUtils.closeQuietly(input);
+            input = null;
+            truncate(validLength);
+        } catch (final IOException e) {
+            throw new ForeignSourceRepositoryException("unable to read requisition journal " + m_file.getPath(), e);
+        } catch (final DatatypeConfigurationException e) {
+            throw new ForeignSourceRepositoryException("unable to read requisition journal " + m_file.getPath(), e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        m_entryCount += count;
+        LOG.debug("Replayed {} records from requisition journal {}", count, m_file.getPath());
+        return count;
+    }
+
+    private void truncate(final long length) throws ForeignSourceRepositoryException {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(m_file, "rw");
+            file.setLength(length);
+        } catch (final IOException e) {
+            throw new ForeignSourceRepositoryException("unable to truncate requisition journal " + m_file.getPath(), e);
+        } finally {
+            IOUtils.closeQuietly(file);
+        }
+    }
+
+    /**
+     * Removes the journal once its records are part of the requisition XML.
+     */
+    synchronized void clear() {
+        close();
+        if (m_file.exists() && !m_file.delete()) {
+            LOG.warn("Unable to delete requisition journal {}", m_file.getPath());
+        }
+        m_entryCount = 0;
+    }
+
+    synchronized void close() {
+        IOUtils.closeQuietly(m_output);
+        m_output = null;
+    }
+}
@@ -109,6 +109,12 @@ public class Requisition implements Serializable, Comparable<Requisition> {
      */
     public RequisitionNode getNode(String foreignId) {
         if (m_nodes != null) {
+            // look the node up in the index first, it is only stale if the node list was changed behind our back
+            updateNodeCacheIfNecessary();
+            final OnmsNodeRequisition nodeReq = m_nodeReqs.get(foreignId);
+            if (nodeReq != null && foreignId.equals(nodeReq.getNode().getForeignId())) {
+                return nodeReq.getNode();
+            }
             for (RequisitionNode n : m_nodes) {
                 if (n.getForeignId().equals(foreignId)) {
                 	LOG.debug("returning node '{}' for foreign id '{}'", n, foreignId);
@@ -131,6 +137,7 @@ public class Requisition implements Serializable, Comparable<Requisition> {
                 RequisitionNode n = i.next();
                 if (n.getForeignId().equals(node.getForeignId())) {
                     i.remove();
+                    m_nodeReqs.remove(n.getForeignId());
                     break;
                 }
             }
@@ -149,6 +156,7 @@ public class Requisition implements Serializable, Comparable<Requisition> {
                 final RequisitionNode n = i.next();
                 if (n.getForeignId().equals(foreignId)) {
                     i.remove();
+                    m_nodeReqs.remove(foreignId);
                     break;
                 }
             }
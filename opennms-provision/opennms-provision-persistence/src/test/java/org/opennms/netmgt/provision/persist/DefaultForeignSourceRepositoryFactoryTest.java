@@ -79,5 +79,9 @@ public class DefaultForeignSourceRepositoryFactoryTest extends ForeignSourceRepo
         m_foreignSourceRepositoryFactory.setRepositoryStrategy(FactoryStrategy.fastQueueing);
         assertTrue(m_foreignSourceRepositoryFactory.getDeployedRepository() instanceof QueueingForeignSourceRepository);
         assertTrue(m_foreignSourceRepositoryFactory.getPendingRepository() instanceof QueueingForeignSourceRepository);
+
+        m_foreignSourceRepositoryFactory.setRepositoryStrategy(FactoryStrategy.journaled);
+        assertTrue(m_foreignSourceRepositoryFactory.getDeployedRepository() instanceof JournalingForeignSourceRepository);
+        assertTrue(m_foreignSourceRepositoryFactory.getPendingRepository() instanceof JournalingForeignSourceRepository);
     }
 }
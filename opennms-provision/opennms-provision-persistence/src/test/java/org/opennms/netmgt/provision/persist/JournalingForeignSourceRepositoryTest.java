@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+public class JournalingForeignSourceRepositoryTest extends ForeignSourceRepositoryTestCase {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalingForeignSourceRepositoryTest.class);
+
+    private static final String FOREIGN_SOURCE = "journal-test";
+
+    @Autowired
+    @Qualifier("journaledPending")
+    private JournalingForeignSourceRepository m_foreignSourceRepository;
+
+    @Autowired
+    @Qualifier("filePending")
+    private ForeignSourceRepository m_fileRepository;
+
+    @After
+    public void tearDown() {
+        final Requisition r = m_fileRepository.getRequisition(FOREIGN_SOURCE);
+        if (r != null) {
+            m_foreignSourceRepository.delete(r);
+        }
+    }
+
+    private static RequisitionNode createNode(final int id) {
+        final RequisitionNode node = new RequisitionNode();
+        node.setForeignId("node-" + id);
+        node.setNodeLabel("node " + id);
+        return node;
+    }
+
+    private Requisition createRequisition(final int nodes) {
+        final Requisition r = new Requisition(FOREIGN_SOURCE);
+        for (int i = 0; i < nodes; i++) {
+            r.putNode(createNode(i));
+        }
+        m_foreignSourceRepository.save(r);
+        return r;
+    }
+
+    private void addNode(final ForeignSourceRepository repository, final int id) {
+        final Requisition r = repository.getRequisition(FOREIGN_SOURCE);
+        final RequisitionNode node = createNode(id);
+        r.updateDateStamp();
+        r.putNode(node);
+        if (repository instanceof JournalingForeignSourceRepository) {
+            ((JournalingForeignSourceRepository)repository).save(r, Collections.singleton(node.getForeignId()));
+        } else {
+            repository.save(r);
+        }
+    }
+
+    @Test
+    public void testNodeChangesAreJournaled() throws Exception {
+        createRequisition(2);
+        assertEquals(0, m_foreignSourceRepository.getJournalEntryCount(FOREIGN_SOURCE));
+
+        addNode(m_foreignSourceRepository, 2);
+        assertTrue(m_foreignSourceRepository.getJournalEntryCount(FOREIGN_SOURCE) > 0);
+        assertEquals(3, m_foreignSourceRepository.getRequisition(FOREIGN_SOURCE).getNodeCount());
+        assertNotNull(m_foreignSourceRepository.getNodeRequisition(FOREIGN_SOURCE, "node-2"));
+        // the requisition file is only written on compaction
+        assertEquals(2, m_fileRepository.getRequisition(FOREIGN_SOURCE).getNodeCount());
+
+        final Requisition r = m_foreignSourceRepository.getRequisition(FOREIGN_SOURCE);
+        r.updateDateStamp();
+        r.deleteNode("node-0");
+        m_foreignSourceRepository.save(r, Collections.singleton("node-0"));
+        assertNull(m_foreignSourceRepository.getNodeRequisition(FOREIGN_SOURCE, "node-0"));
+
+        m_foreignSourceRepository.flush();
+        assertEquals(0, m_foreignSourceRepository.getJournalEntryCount(FOREIGN_SOURCE));
+        final Requisition written = m_fileRepository.getRequisition(FOREIGN_SOURCE);
+        assertEquals(2, written.getNodeCount());
+        assertNull(written.getNode("node-0"));
+        assertNotNull(written.getNode("node-2"));
+        assertEquals(r.getDate(), written.getDate());
+    }
+
+    @Test
+    public void testJournalIsReplayed() throws Exception {
+        createRequisition(2);
+        addNode(m_foreignSourceRepository, 2);
+
+        final JournalingForeignSourceRepository repository = new JournalingForeignSourceRepository();
+        repository.setForeignSourceRepository(m_fileRepository);
+        repository.afterPropertiesSet();
+        try {
+            final Requisition r = repository.getRequisition(FOREIGN_SOURCE);
+            assertEquals(3, r.getNodeCount());
+            assertNotNull(r.getNode("node-2"));
+        } finally {
+            repository.destroy();
+        }
+    }
+
+    @Test
+    public void testReplacedNodesDoNotChangeEarlierRequisitions() throws Exception {
+        createRequisition(2);
+
+        final Requisition before = m_foreignSourceRepository.getRequisition(FOREIGN_SOURCE);
+        final Requisition r = m_foreignSourceRepository.getRequisition(FOREIGN_SOURCE);
+        final RequisitionNode node = createNode(1);
+        node.setNodeLabel("replaced");
+        r.updateDateStamp();
+        r.putNode(node);
+        m_foreignSourceRepository.save(r, Collections.singleton(node.getForeignId()));
+
+        assertEquals("node 1", before.getNode("node-1").getNodeLabel());
+        assertEquals("replaced", m_foreignSourceRepository.getRequisition(FOREIGN_SOURCE).getNode("node-1").getNodeLabel());
+        m_foreignSourceRepository.flush();
+        assertEquals("replaced", m_fileRepository.getRequisition(FOREIGN_SOURCE).getNode("node-1").getNodeLabel());
+    }
+
+    @Test
+    public void testRequisitionNotReadFromRepositoryIsSavedWhole() throws Exception {
+        createRequisition(2);
+        addNode(m_foreignSourceRepository, 2);
+
+        final Requisition r = new Requisition(FOREIGN_SOURCE);
+        r.putNode(createNode(5));
+        m_foreignSourceRepository.save(r, Collections.singleton("node-5"));
+
+        assertEquals(0, m_foreignSourceRepository.getJournalEntryCount(FOREIGN_SOURCE));
+        assertEquals(1, m_fileRepository.getRequisition(FOREIGN_SOURCE).getNodeCount());
+        assertEquals(1, m_foreignSourceRepository.getRequisition(FOREIGN_SOURCE).getNodeCount());
+    }
+
+    /**
+     * Adds nodes one at a time, reading the requisition back before every
+     * change the way the ReST service does, and checks that the journaled
+     * repository edits faster than the plain file repository.
+     */
+    @Test
+    public void testEditThroughput() throws Exception {
+        final int size = 2000;
+        final int edits = 100;
+
+        createRequisition(size);
+        long start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            addNode(m_fileRepository, size + i);
+        }
+        final long fileNanos = System.nanoTime() - start;
+
+        createRequisition(size);
+        start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            addNode(m_foreignSourceRepository, size + i);
+        }
+        m_foreignSourceRepository.flush();
+        final long journaledNanos = System.nanoTime() - start;
+
+        assertEquals(size + edits, m_fileRepository.getRequisition(FOREIGN_SOURCE).getNodeCount());
+        LOG.info("{} node edits on a {} node requisition: file repository {} edits/s, journaled repository {} edits/s",
+                 edits, size, edits * 1000000000L / fileNanos, edits * 1000000000L / journaledNanos);
+        assertTrue("journaled edits should be faster than rewriting the requisition file", journaledNanos < fileNanos);
+    }
+}
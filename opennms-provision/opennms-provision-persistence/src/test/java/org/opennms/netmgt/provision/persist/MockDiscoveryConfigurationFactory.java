@@ -43,6 +43,11 @@ public class MockDiscoveryConfigurationFactory implements DiscoveryConfiguration
         throw new UnsupportedOperationException("Not yet implemented!");
     }
 
+    @Override
+    public int getPacketsPerSecond() {
+        throw new UnsupportedOperationException("Not yet implemented!");
+    }
+
     @Override
     public Iterator<IPPollAddress> getExcludingInterator(Iterator<IPPollAddress> it) {
         throw new UnsupportedOperationException("Not yet implemented!");
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.provision.service;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,15 +57,38 @@ class AsyncDetectorRunner implements Async<Boolean> {
         m_detector = detector;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * The detection is started through the {@link DetectorThrottle}, so it
+     * may be queued until other detectors have completed.
+     */
     @Override
-    public void submit(Callback<Boolean> cb) {
+    public void submit(final Callback<Boolean> cb) {
+        DetectorThrottle.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                detect(cb);
+            }
+        });
+    }
+
+    private void detect(final Callback<Boolean> cb) {
+        final long start = System.nanoTime();
+        // set once the detection completed, so its permit is only released once
+        final AtomicBoolean completed = new AtomicBoolean(false);
         try {
             LOG.info("Attemping to detect service {} on address {}", m_detector.getServiceName(), getHostAddress());
             DetectFuture future = m_detector.isServiceDetected(m_ifaceScan.getAddress());
-            future.addListener(listener(cb));
+            future.addListener(listener(cb, start, completed));
         } catch (Throwable e) {
-            cb.handleException(e);
+            if (completed.compareAndSet(false, true)) {
+                DetectorThrottle.getInstance().release();
+                cb.handleException(e);
+            } else {
+                // the listener ran inside addListener and has already handed over the result
+                LOG.warn("Failed to complete the detection of service {} on address {}", m_detector.getServiceName(), getHostAddress(), e);
+            }
         }
     }
 
@@ -77,18 +102,26 @@ class AsyncDetectorRunner implements Async<Boolean> {
         return String.format("Run detector %s on address %s", m_detector.getServiceName(), getHostAddress());
     }
 
-    private DetectFutureListener<DetectFuture> listener(final Callback<Boolean> cb) {
+    private DetectFutureListener<DetectFuture> listener(final Callback<Boolean> cb, final long start, final AtomicBoolean completed) {
         return new DetectFutureListener<DetectFuture>() {
             @Override
             public void operationComplete(DetectFuture future) {
+                if (!completed.compareAndSet(false, true)) {
+                    return;
+                }
+                ScanStatistics.getInstance().record("detect", start, 1);
                 try {
-                    if (future.getException() != null) {
-                        cb.handleException(future.getException());
-                    } else {
-                        cb.complete(future.isServiceDetected());
+                    try {
+                        if (future.getException() != null) {
+                            cb.handleException(future.getException());
+                        } else {
+                            cb.complete(future.isServiceDetected());
+                        }
+                    } finally {
+                        m_detector.dispose();
                     }
-                } finally{
-                   m_detector.dispose();
+                } finally {
+                    DetectorThrottle.getInstance().release();
                 }
             }
         };
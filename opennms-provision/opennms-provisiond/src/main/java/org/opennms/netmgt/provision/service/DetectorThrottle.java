@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Limits the number of asynchronous detectors that are in flight across all
+ * node scans.
+ *
+ * Detectors that are submitted while the limit is reached are queued and
+ * started, in order, as running detectors complete.  Submitting never blocks,
+ * since async detectors are submitted by whichever thread completed their last
+ * prerequisite, which may be an executor or an I/O thread.  Synchronous
+ * detectors are already bounded by the scan executor.
+ *
+ * The limit can be set with the
+ * <code>org.opennms.provisiond.maxConcurrentDetectors</code> system property.
+ */
+public class DetectorThrottle {
+
+    private static final DetectorThrottle s_instance = new DetectorThrottle(Integer.getInteger("org.opennms.provisiond.maxConcurrentDetectors", 500));
+
+    private final int m_limit;
+    private final Queue<Runnable> m_waiting = new LinkedList<Runnable>();
+    private int m_inFlight = 0;
+    private boolean m_draining = false;
+
+    /**
+     * <p>getInstance</p>
+     *
+     * @return the throttle shared by all node scans
+     */
+    public static DetectorThrottle getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * <p>Constructor for DetectorThrottle.</p>
+     *
+     * @param limit the maximum number of detectors in flight, must be positive
+     */
+    public DetectorThrottle(final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        m_limit = limit;
+    }
+
+    /**
+     * Starts the detector now if the limit allows it, otherwise queues it.
+     * Every started detector must call {@link #release()} exactly once when
+     * it completes.
+     *
+     * @param detector starts the detection
+     */
+    public void submit(final Runnable detector) {
+        synchronized (this) {
+            m_waiting.add(detector);
+        }
+        drain();
+    }
+
+    /**
+     * Signals that a started detector has completed, starting the next
+     * queued one if there is any.
+     */
+    public void release() {
+        synchronized (this) {
+            m_inFlight--;
+        }
+        drain();
+    }
+
+    /**
+     * Starts queued detectors while below the limit.  Only one thread drains
+     * at a time, so a detector that completes while it is being started does
+     * not recurse into starting the next one.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (m_draining) {
+                return;
+            }
+            m_draining = true;
+        }
+        boolean done = false;
+        try {
+            while (true) {
+                final Runnable next;
+                synchronized (this) {
+                    if (m_inFlight >= m_limit || m_waiting.isEmpty()) {
+                        m_draining = false;
+                        done = true;
+                        return;
+                    }
+                    next = m_waiting.poll();
+                    m_inFlight++;
+                }
+                next.run();
+            }
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    m_draining = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>getLimit</p>
+     *
+     * @return the maximum number of detectors in flight
+     */
+    public int getLimit() {
+        return m_limit;
+    }
+
+    /**
+     * <p>getInFlightCount</p>
+     *
+     * @return the number of started detectors that have not completed
+     */
+    public synchronized int getInFlightCount() {
+        return m_inFlight;
+    }
+
+    /**
+     * <p>getQueuedCount</p>
+     *
+     * @return the number of detectors waiting to be started
+     */
+    public synchronized int getQueuedCount() {
+        return m_waiting.size();
+    }
+}
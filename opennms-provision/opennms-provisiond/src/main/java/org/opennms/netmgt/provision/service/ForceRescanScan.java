@@ -121,6 +121,11 @@ public class ForceRescanScan implements Scan {
             @Override
             public boolean isAborted() {
                 return m_aborted;
+            }
+
+            @Override
+            public void phaseCompleted(final String phase, final long startNanos, final int items) {
+                ScanStatistics.getInstance().record(phase, startNanos, items);
             }};
     }
 
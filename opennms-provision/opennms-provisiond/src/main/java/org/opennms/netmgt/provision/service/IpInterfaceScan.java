@@ -182,9 +182,12 @@ public class IpInterfaceScan implements RunInBatch {
         return new Runnable() {
             @Override
             public void run() {
+                final long start = System.nanoTime();
                 try {
                     LOG.info("Attemping to detect service {} on address {}", detector.getServiceName(), str(getAddress()));
-                    cb.complete(detector.isServiceDetected(getAddress()));
+                    final boolean detected = detector.isServiceDetected(getAddress());
+                    ScanStatistics.getInstance().record("detect", start, 1);
+                    cb.complete(detected);
                 } catch (final Throwable t) {
                     cb.handleException(t);
                 } finally {
@@ -117,6 +117,11 @@ public class NewSuspectScan implements Scan {
             @Override
             public boolean isAborted() {
                 return m_aborted;
+            }
+
+            @Override
+            public void phaseCompleted(final String phase, final long startNanos, final int items) {
+                ScanStatistics.getInstance().record(phase, startNanos, items);
             }};
     }
 
@@ -129,6 +129,7 @@ final class NodeInfoScan implements RunInBatch {
 
     private void collectNodeInfo() {
         Assert.notNull(getAgentConfigFactory(), "agentConfigFactory was not injected");
+        final long start = System.nanoTime();
         InetAddress primaryAddress = getAgentAddress();
         SnmpAgentConfig agentConfig = getAgentConfig(primaryAddress);
         
@@ -184,6 +185,7 @@ final class NodeInfoScan implements RunInBatch {
             abort("Aborting node scan : Scan thread interrupted!");
             Thread.currentThread().interrupt();
         }
+        m_scanProgress.phaseCompleted("nodeInfo", start, 1);
     }
 
     private String getEffectiveForeignSource() {
@@ -31,6 +31,9 @@ package org.opennms.netmgt.provision.service;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -57,10 +60,11 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.provision.IpInterfacePolicy;
 import org.opennms.netmgt.provision.NodePolicy;
 import org.opennms.netmgt.provision.SnmpInterfacePolicy;
+import org.opennms.netmgt.snmp.AggregateTracker;
+import org.opennms.netmgt.snmp.CollectionTracker;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpWalker;
-import org.opennms.netmgt.snmp.TableTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -84,6 +88,9 @@ public class NodeScan implements Scan {
     private OnmsNode m_node;
     private boolean m_agentFound = false;
 
+    private final Set<InetAddress> m_scannedAddresses = Collections.synchronizedSet(new HashSet<InetAddress>());
+    private long m_scanStart;
+
     /**
      * <p>Constructor for NodeScan.</p>
      *
@@ -236,6 +243,9 @@ public class NodeScan implements Scan {
     public void run(final BatchTask parent) {
         LOG.info("Scanning node {}/{}/{}", m_nodeId, m_foreignSource, m_foreignId);
 
+        m_scannedAddresses.clear();
+        m_scanStart = System.nanoTime();
+
         parent.getBuilder().addSequence(
                                         new RunInBatch() {
                                             @Override
@@ -279,6 +289,7 @@ public class NodeScan implements Scan {
                     t.waitFor();
 
                     LOG.info("Finished scanning node {}/{}/{}", getNodeId(), getForeignSource(), getForeignId());
+                    LOG.debug("Scan statistics: {}; tasks: {}", ScanStatistics.getInstance(), getTaskCoordinator());
                 } catch (final InterruptedException e) {
                     LOG.warn("The node scan for node {}/{}/{} was interrupted", getNodeId(), getForeignSource(), getForeignId(), e);
                     Thread.currentThread().interrupt();
@@ -303,7 +314,7 @@ public class NodeScan implements Scan {
                 abort(String.format("Unable to get requisitioned node (%s/%s): aborted", m_foreignSource, m_foreignId));
             } else {
                 for(final OnmsIpInterface iface : m_node.getIpInterfaces()) {
-                    loadNode.add(new IpInterfaceScan(getNodeId(), iface.getIpAddress(), getForeignSource(), getProvisionService()));
+                    scanInterface(loadNode, iface.getIpAddress(), getForeignSource());
                 }
             }
         } else {
@@ -312,6 +323,23 @@ public class NodeScan implements Scan {
 
     }
 
+    /**
+     * Adds a scan of the services on an interface to the given phase, unless
+     * the interface has already been scanned during this node scan.  The
+     * interfaces of requisitioned nodes are scanned when the node is loaded
+     * and would otherwise be scanned again when they are found in the IP
+     * address tables of the agent.
+     *
+     * @param currentPhase the phase to add the scan to
+     * @param address the address of the interface
+     * @param foreignSource the foreign source whose detectors are used
+     */
+    void scanInterface(final BatchTask currentPhase, final InetAddress address, final String foreignSource) {
+        if (m_scannedAddresses.add(address)) {
+            currentPhase.add(new IpInterfaceScan(getNodeId(), address, foreignSource, getProvisionService()));
+        }
+    }
+
     /**
      * <p>createAgentScan</p>
      *
@@ -388,10 +416,27 @@ public class NodeScan implements Scan {
             return m_agentConfigFactory;
         }
 
-        public void detectIpAddressTable(final BatchTask currentPhase) {
+        /**
+         * Walks the ifTable/ifXTable, the ipAddressTable and the ipAddrTable
+         * of the agent in a single walk, then writes all SNMP and IP
+         * interfaces of the node in one batch.  The service scans of all IP
+         * interfaces are started together from that batch, so they all run
+         * in this phase rather than one table's interfaces after the other's.
+         *
+         * @param currentPhase a {@link org.opennms.core.tasks.BatchTask} object.
+         */
+        public void detectInterfaces(final BatchTask currentPhase) {
             final OnmsNode node = getNode();
 
-            LOG.debug("Attempting to scan the IPAddress table for node {}", node);
+            if (isAborted()) {
+                LOG.debug("'{}' is marked as aborted; skipping scan of the interface tables", currentPhase);
+                return;
+            }
+
+            Assert.notNull(getAgentConfigFactory(), "agentConfigFactory was not injected");
+            LOG.info("detecting interfaces for node {}/{}/{}", node.getId(), node.getForeignSource(), node.getForeignId());
+
+            final long start = System.nanoTime();
 
             // mark all provisioned interfaces as 'in need of scanning' so we can mark them
             // as scanned during ipAddrTable processing
@@ -402,225 +447,168 @@ public class NodeScan implements Scan {
                 }
             }
 
+            final List<OnmsSnmpInterface> snmpInterfaces = new ArrayList<OnmsSnmpInterface>();
+            final List<OnmsIpInterface> ipAddressInterfaces = new ArrayList<OnmsIpInterface>();
+            final List<OnmsIpInterface> ipAddrInterfaces = new ArrayList<OnmsIpInterface>();
+
+            final PhysInterfaceTableTracker physIfTracker = new PhysInterfaceTableTracker() {
+                @Override
+                public void processPhysicalInterfaceRow(PhysicalInterfaceRow row) {
+                    LOG.info("Processing ifTable row for ifIndex {} on node {}/{}/{}", row.getIfIndex(), getNodeId(), getForeignSource(), getForeignId());
+                    OnmsSnmpInterface snmpIface = row.createInterfaceFromRow();
+                    snmpIface.setLastCapsdPoll(getScanStamp());
+
+                    final List<SnmpInterfacePolicy> policies = getProvisionService().getSnmpInterfacePoliciesForForeignSource(getForeignSource() == null ? "default" : getForeignSource());
+                    for(final SnmpInterfacePolicy policy : policies) {
+                        if (snmpIface != null) {
+                            snmpIface = policy.apply(snmpIface);
+                        }
+                    }
+
+                    if (snmpIface != null) {
+                        snmpInterfaces.add(snmpIface);
+                    }
+                }
+            };
+
             final IPAddressTableTracker ipAddressTracker = new IPAddressTableTracker() {
                 @Override
                 public void processIPAddressRow(final IPAddressRow row) {
                     final String ipAddress = row.getIpAddress();
                     LOG.info("Processing IPAddress table row with ipAddr {}", ipAddress);
 
-                    final InetAddress address = addr(ipAddress);
-
-                    // skip if it's any number of unusual/local address types
-                    if (address == null) {
-                        return;
-                    } else if (address.isAnyLocalAddress()) {
-                        LOG.debug("{}.isAnyLocalAddress() == true, Skipping.", ipAddress);
-                        return;
-                    } else if (address.isLinkLocalAddress()) {
-                        LOG.debug("{}.isLinkLocalAddress() == true, Skipping.", ipAddress);
-                        return;
-                    } else if (address.isLoopbackAddress()) {
-                        LOG.debug("{}.isLoopbackAddress() == true, Skipping.", ipAddress);
-                        return;
-                    } else if (address.isMulticastAddress()) {
-                        LOG.debug("{}.isMulticastAddress() == true, Skipping.", ipAddress);
-                        return;
-                    }
-
-                    // mark any provisioned interface as scanned
-                    provisionedIps.remove(ipAddress);
-
-                    OnmsIpInterface iface = row.createInterfaceFromRow();
-
-                    if (iface != null) {
-                        iface.setIpLastCapsdPoll(getScanStamp());
-                        iface.setIsManaged("M");
-
-                        final List<IpInterfacePolicy> policies = getProvisionService().getIpInterfacePoliciesForForeignSource(getForeignSource() == null ? "default" : getForeignSource());
-                        for(final IpInterfacePolicy policy : policies) {
-                            if (iface != null) {
-                                iface = policy.apply(iface);
-                            }
-                        }
+                    if (isScannable(ipAddress)) {
+                        // mark any provisioned interface as scanned
+                        provisionedIps.remove(ipAddress);
 
+                        final OnmsIpInterface iface = applyIpInterfacePolicies(row.createInterfaceFromRow());
                         if (iface != null) {
-                            currentPhase.add(ipUpdater(currentPhase, iface), "write");
+                            ipAddressInterfaces.add(iface);
                         }
                     }
                 }
             };
 
-            walkTable(currentPhase, provisionedIps, ipAddressTracker);
-        }
-
-        public void detectIpInterfaceTable(final BatchTask currentPhase) {
-            final OnmsNode node = getNode();
-
-            LOG.debug("Attempting to scan the IPInterface table for node {}", node);
-
-            // mark all provisioned interfaces as 'in need of scanning' so we can mark them
-            // as scanned during ipAddrTable processing
-            final Set<InetAddress> provisionedIps = new HashSet<InetAddress>();
-            if (getForeignSource() != null) {
-                for(final OnmsIpInterface provisioned : node.getIpInterfaces()) {
-                    provisionedIps.add(provisioned.getIpAddress());
-                }
-            }
-
             final IPInterfaceTableTracker ipIfTracker = new IPInterfaceTableTracker() {
                 @Override
                 public void processIPInterfaceRow(final IPInterfaceRow row) {
                     final String ipAddress = row.getIpAddress();
                     LOG.info("Processing IPInterface table row with ipAddr {} for node {}/{}/{}", ipAddress, node.getId(), node.getForeignSource(), node.getForeignId());
 
-                    final InetAddress address = addr(ipAddress);
-
-                    // skip if it's any number of unusual/local address types
-                    if (address == null) {
-                        return;
-                    } else if (address.isAnyLocalAddress()) {
-                        LOG.debug("{}.isAnyLocalAddress() == true, Skipping.", ipAddress);
-                        return;
-                    } else if (address.isLinkLocalAddress()) {
-                        LOG.debug("{}.isLinkLocalAddress() == true, Skipping.", ipAddress);
-                        return;
-                    } else if (address.isLoopbackAddress()) {
-                        LOG.debug("{}.isLoopbackAddress() == true, Skipping.", ipAddress);
-                        return;
-                    } else if (address.isMulticastAddress()) {
-                        LOG.debug("{}.isMulticastAddress() == true, Skipping.", ipAddress);
-                        return;
-                    }
-
-                    // mark any provisioned interface as scanned
-                    provisionedIps.remove(ipAddress);
-
-                    // save the interface
-                    OnmsIpInterface iface = row.createInterfaceFromRow();
-
-                    if (iface != null) {
-                        iface.setIpLastCapsdPoll(getScanStamp());
-
-                        // add call to the ip interface is managed policies
-                        iface.setIsManaged("M");
-
-                        final List<IpInterfacePolicy> policies = getProvisionService().getIpInterfacePoliciesForForeignSource(getForeignSource() == null ? "default" : getForeignSource());
-                        for(final IpInterfacePolicy policy : policies) {
-                            if (iface != null) {
-                                iface = policy.apply(iface);
-                            }
-                        }
+                    if (isScannable(ipAddress)) {
+                        // mark any provisioned interface as scanned
+                        provisionedIps.remove(ipAddress);
 
+                        final OnmsIpInterface iface = applyIpInterfacePolicies(row.createInterfaceFromRow());
                         if (iface != null) {
-                            currentPhase.add(ipUpdater(currentPhase, iface), "write");
+                            ipAddrInterfaces.add(iface);
                         }
                     }
                 }
             };
 
-            walkTable(currentPhase, provisionedIps, ipIfTracker);
-        }
-
-        private void walkTable(final BatchTask currentPhase, final Set<InetAddress> provisionedIps, final TableTracker tracker) {
-            final OnmsNode node = getNode();
-            LOG.info("detecting IP interfaces for node {}/{}/{} using table tracker {}", node.getId(), node.getForeignSource(), node.getForeignId(), tracker);
+            final SnmpAgentConfig agentConfig = getAgentConfigFactory().getAgentConfig(getAgentAddress());
+            final AggregateTracker tracker = new AggregateTracker(new CollectionTracker[] { physIfTracker, ipAddressTracker, ipIfTracker });
+            final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "ifTable/ifXTable and IP address tables", tracker);
+            walker.start();
 
-            if (isAborted()) {
-                LOG.debug("'{}' is marked as aborted; skipping scan of table {}", currentPhase, tracker);
-            } else {
-                Assert.notNull(getAgentConfigFactory(), "agentConfigFactory was not injected");
+            try {
+                walker.waitFor();
 
-                final SnmpAgentConfig agentConfig = getAgentConfigFactory().getAgentConfig(getAgentAddress());
+                if (walker.timedOut()) {
+                    abort("Aborting node scan : Agent timed out while scanning the interface and IP address tables");
+                }
+                else if (walker.failed()) {
+                    abort("Aborting node scan : Agent failed while scanning the interface and IP address tables : " + walker.getErrorMessage());
+                } else {
+                    // the ipAddrTable rows are written after the ipAddressTable rows, as when
+                    // the tables were walked one after the other
+                    final List<OnmsIpInterface> ipInterfaces = new ArrayList<OnmsIpInterface>(ipAddressInterfaces);
+                    ipInterfaces.addAll(ipAddrInterfaces);
+
+                    // After processing the SNMP provided interfaces then we need to scan any that 
+                    // were provisioned but missing from the ip table
+                    for(final InetAddress ipAddr : provisionedIps) {
+                        final OnmsIpInterface iface = node.getIpInterfaceByIpAddress(ipAddr);
 
-                final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "IP address tables", tracker);
-                walker.start();
+                        if (iface != null) {
+                            iface.setIpLastCapsdPoll(getScanStamp());
+                            iface.setIsManaged("M");
+                            ipInterfaces.add(iface);
+                        }
+                    }
 
-                try {
-                    walker.waitFor();
+                    phaseCompleted("interfaceTables", start, snmpInterfaces.size() + ipAddressInterfaces.size() + ipAddrInterfaces.size());
 
-                    if (walker.timedOut()) {
-                        abort("Aborting node scan : Agent timed out while scanning the IP address tables");
-                    }
-                    else if (walker.failed()) {
-                        abort("Aborting node scan : Agent failed while scanning the IP address tables : " + walker.getErrorMessage());
-                    } else {
+                    currentPhase.add(interfaceWriter(currentPhase, snmpInterfaces, ipInterfaces), "write");
 
-                        // After processing the SNMP provided interfaces then we need to scan any that 
-                        // were provisioned but missing from the ip table
-                        for(final InetAddress ipAddr : provisionedIps) {
-                            final OnmsIpInterface iface = node.getIpInterfaceByIpAddress(ipAddr);
+                    LOG.debug("Finished phase {}", currentPhase);
+                }
+            } catch (final InterruptedException e) {
+                abort("Aborting node scan : Scan thread interrupted while waiting for the interface and IP address tables");
+                Thread.currentThread().interrupt();
+            }
+        }
 
-                            if (iface != null) {
-                                iface.setIpLastCapsdPoll(getScanStamp());
-                                iface.setIsManaged("M");
+        private boolean isScannable(final String ipAddress) {
+            final InetAddress address = addr(ipAddress);
+
+            // skip if it's any number of unusual/local address types
+            if (address == null) {
+                return false;
+            } else if (address.isAnyLocalAddress()) {
+                LOG.debug("{}.isAnyLocalAddress() == true, Skipping.", ipAddress);
+                return false;
+            } else if (address.isLinkLocalAddress()) {
+                LOG.debug("{}.isLinkLocalAddress() == true, Skipping.", ipAddress);
+                return false;
+            } else if (address.isLoopbackAddress()) {
+                LOG.debug("{}.isLoopbackAddress() == true, Skipping.", ipAddress);
+                return false;
+            } else if (address.isMulticastAddress()) {
+                LOG.debug("{}.isMulticastAddress() == true, Skipping.", ipAddress);
+                return false;
+            }
+            return true;
+        }
 
-                                currentPhase.add(ipUpdater(currentPhase, iface), "write");
-                            }
-                        }
+        private OnmsIpInterface applyIpInterfacePolicies(OnmsIpInterface iface) {
+            if (iface != null) {
+                iface.setIpLastCapsdPoll(getScanStamp());
 
-                        LOG.debug("Finished phase {}", currentPhase);
+                // add call to the ip interface is managed policies
+                iface.setIsManaged("M");
 
+                final List<IpInterfacePolicy> policies = getProvisionService().getIpInterfacePoliciesForForeignSource(getForeignSource() == null ? "default" : getForeignSource());
+                for(final IpInterfacePolicy policy : policies) {
+                    if (iface != null) {
+                        iface = policy.apply(iface);
                     }
-                } catch (final InterruptedException e) {
-                    abort("Aborting node scan : Scan thread failed while waiting for the IP address tables");
                 }
             }
+            return iface;
         }
 
-        public void detectPhysicalInterfaces(final BatchTask currentPhase) {
-            if (isAborted()) { return; }
-            final SnmpAgentConfig agentConfig = getAgentConfigFactory().getAgentConfig(getAgentAddress());
-            Assert.notNull(getAgentConfigFactory(), "agentConfigFactory was not injected");
-
-            final PhysInterfaceTableTracker physIfTracker = new PhysInterfaceTableTracker() {
+        private Runnable interfaceWriter(final BatchTask currentPhase, final List<OnmsSnmpInterface> snmpInterfaces, final List<OnmsIpInterface> ipInterfaces) {
+            return new Runnable() {
                 @Override
-                public void processPhysicalInterfaceRow(PhysicalInterfaceRow row) {
-                    LOG.info("Processing ifTable row for ifIndex {} on node {}/{}/{}", row.getIfIndex(), getNodeId(), getForeignSource(), getForeignId());
-                    OnmsSnmpInterface snmpIface = row.createInterfaceFromRow();
-                    snmpIface.setLastCapsdPoll(getScanStamp());
-
-                    final List<SnmpInterfacePolicy> policies = getProvisionService().getSnmpInterfacePoliciesForForeignSource(getForeignSource() == null ? "default" : getForeignSource());
-                    for(final SnmpInterfacePolicy policy : policies) {
-                        if (snmpIface != null) {
-                            snmpIface = policy.apply(snmpIface);
-                        }
+                public void run() {
+                    final long start = System.nanoTime();
+                    // the SNMP interfaces go first so the IP interfaces can be linked to them
+                    for (final OnmsSnmpInterface snmpIface : snmpInterfaces) {
+                        getProvisionService().updateSnmpInterfaceAttributes(getNodeId(), snmpIface);
                     }
-
-                    if (snmpIface != null) {
-                        final OnmsSnmpInterface snmpIfaceResult = snmpIface;
-
-                        // add call to the SNMP interface collection enable policies
-
-                        final Runnable r = new Runnable() {
-                            @Override
-                            public void run() {
-                                getProvisionService().updateSnmpInterfaceAttributes(getNodeId(), snmpIfaceResult);
-                            }
-                        };
-                        currentPhase.add(r, "write");
+                    for (final OnmsIpInterface iface : ipInterfaces) {
+                        updateIpInterface(currentPhase, iface);
                     }
+                    phaseCompleted("write", start, snmpInterfaces.size() + ipInterfaces.size());
                 }
-            };
 
-            final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "ifTable/ifXTable", physIfTracker);
-            walker.start();
-
-            try {
-                walker.waitFor();
-
-                if (walker.timedOut()) {
-                    abort("Aborting node scan : Agent timed out while scanning the interfaces table");
-                }
-                else if (walker.failed()) {
-                    abort("Aborting node scan : Agent failed while scanning the interfaces table: " + walker.getErrorMessage());
-                }
-                else {
-                    LOG.debug("Finished phase {}", currentPhase);
+                @Override
+                public String toString() {
+                    return String.format("Write %d SNMP interfaces and %d IP interfaces of node %d", snmpInterfaces.size(), ipInterfaces.size(), getNodeId());
                 }
-            } catch (final InterruptedException e) {
-                abort("Aborting node scan : Scan thread interrupted while waiting for interfaces table");
-                Thread.currentThread().interrupt();
-            }
+            };
         }
 
         @Override
@@ -630,19 +618,7 @@ public class NodeScan implements Scan {
                                             new RunInBatch() {
                                                 @Override
                                                 public void run(final BatchTask phase) {
-                                                    detectPhysicalInterfaces(phase);
-                                                }
-                                            },
-                                            new RunInBatch() {
-                                                @Override
-                                                public void run(final BatchTask phase) {
-                                                    detectIpAddressTable(phase);
-                                                }
-                                            },
-                                            new RunInBatch() {
-                                                @Override
-                                                public void run(final BatchTask phase) {
-                                                    detectIpInterfaceTable(phase);
+                                                    detectInterfaces(phase);
                                                 }
                                             },
                                             new RunInBatch() {
@@ -694,12 +670,23 @@ public class NodeScan implements Scan {
         void stampProvisionedInterfaces(final BatchTask phase) {
             if (!isAborted()) { 
 
-                for(final OnmsIpInterface iface : getNode().getIpInterfaces()) {
+                final Collection<OnmsIpInterface> ifaces = getNode().getIpInterfaces();
+                for(final OnmsIpInterface iface : ifaces) {
                     iface.setIpLastCapsdPoll(getScanStamp());
-                    phase.add(ipUpdater(phase, iface), "write");
-
                 }
 
+                // write all interfaces of the node in one batch
+                phase.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long start = System.nanoTime();
+                        for(final OnmsIpInterface iface : ifaces) {
+                            updateIpInterface(phase, iface);
+                        }
+                        phaseCompleted("write", start, ifaces.size());
+                    }
+                }, "write");
+
             }
         }
 
@@ -777,6 +764,10 @@ public class NodeScan implements Scan {
             NodeScan.this.abort(reason);
         }
 
+        public void phaseCompleted(final String phase, final long startNanos, final int items) {
+            ScanStatistics.getInstance().record(phase, startNanos, items);
+        }
+
         public String getForeignSource() {
             return getNode() == null? null : getNode().getForeignSource();
         }
@@ -802,20 +793,10 @@ public class NodeScan implements Scan {
         void updateIpInterface(final BatchTask currentPhase, final OnmsIpInterface iface) {
             getProvisionService().updateIpInterfaceAttributes(getNodeId(), iface);
             if (iface.isManaged()) {
-                currentPhase.add(new IpInterfaceScan(getNodeId(), iface.getIpAddress(), getForeignSource(), getProvisionService()));
+                scanInterface(currentPhase, iface.getIpAddress(), getForeignSource());
             }
         }
 
-        protected Runnable ipUpdater(final BatchTask currentPhase, final OnmsIpInterface iface) {
-            Runnable r = new Runnable() {
-                @Override
-                public void run() {
-                    updateIpInterface(currentPhase, iface);
-                }
-            };
-            return r;
-        }
-
     }
 
     /**
@@ -879,6 +860,7 @@ public class NodeScan implements Scan {
      * @param currentPhase a {@link org.opennms.core.tasks.BatchTask} object.
      */
     public void scanCompleted(final BatchTask currentPhase) {
+        ScanStatistics.getInstance().record("nodeScan", m_scanStart, m_scannedAddresses.size());
         if (!isAborted()) {
             final EventBuilder bldr = new EventBuilder(EventConstants.PROVISION_SCAN_COMPLETE_UEI, "Provisiond");
             bldr.setNodeid(getNodeId());
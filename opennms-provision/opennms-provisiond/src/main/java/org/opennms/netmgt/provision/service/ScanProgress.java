@@ -48,4 +48,15 @@ public interface ScanProgress {
      * @return a boolean.
      */
     public boolean isAborted();
+    /**
+     * <p>phaseCompleted</p>
+     *
+     * Records the latency and throughput of a completed phase of the scan
+     * in the {@link org.opennms.netmgt.provision.service.ScanStatistics}.
+     *
+     * @param phase the name of the phase
+     * @param startNanos the {@link java.lang.System#nanoTime()} at which the phase started
+     * @param items the number of items processed by the phase
+     */
+    public void phaseCompleted(String phase, long startNanos, int items);
 }
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of the phases of provisioning scans, accumulated
+ * over all scans since Provisiond started.
+ */
+public class ScanStatistics {
+
+    private static final ScanStatistics s_instance = new ScanStatistics();
+
+    /**
+     * The statistics of one phase.
+     */
+    public static class PhaseStatistics {
+        private final String m_name;
+        private final AtomicLong m_count = new AtomicLong();
+        private final AtomicLong m_items = new AtomicLong();
+        private final AtomicLong m_totalNanos = new AtomicLong();
+        private final AtomicLong m_maxNanos = new AtomicLong();
+
+        PhaseStatistics(final String name) {
+            m_name = name;
+        }
+
+        void record(final long elapsedNanos, final int items) {
+            m_count.incrementAndGet();
+            m_items.addAndGet(items);
+            m_totalNanos.addAndGet(elapsedNanos);
+            long max = m_maxNanos.get();
+            while (elapsedNanos > max && !m_maxNanos.compareAndSet(max, elapsedNanos)) {
+                max = m_maxNanos.get();
+            }
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * @return the number of times the phase has run
+         */
+        public long getCount() {
+            return m_count.get();
+        }
+
+        /**
+         * @return the number of items (interfaces, table rows, services...) processed by the phase
+         */
+        public long getItemCount() {
+            return m_items.get();
+        }
+
+        /**
+         * @return the average time the phase took, in milliseconds
+         */
+        public double getAverageLatency() {
+            final long count = m_count.get();
+            return count == 0 ? 0.0 : m_totalNanos.get() / (double)count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * @return the longest time the phase took, in milliseconds
+         */
+        public double getMaxLatency() {
+            return m_maxNanos.get() / (double)TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * @return the number of items processed per second the phase was running
+         */
+        public double getThroughput() {
+            final long nanos = m_totalNanos.get();
+            return nanos == 0 ? 0.0 : m_items.get() * (double)TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d runs, %d items, avg %.1f ms, max %.1f ms, %.1f items/s", m_name, getCount(), getItemCount(), getAverageLatency(), getMaxLatency(), getThroughput());
+        }
+    }
+
+    private final ConcurrentMap<String, PhaseStatistics> m_phases = new ConcurrentHashMap<String, PhaseStatistics>();
+
+    /**
+     * <p>getInstance</p>
+     *
+     * @return the statistics shared by all scans
+     */
+    public static ScanStatistics getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Records one run of a phase.
+     *
+     * @param phase the name of the phase
+     * @param startNanos the {@link System#nanoTime()} at which the phase started
+     * @param items the number of items the phase processed
+     */
+    public void record(final String phase, final long startNanos, final int items) {
+        getPhase(phase).record(System.nanoTime() - startNanos, items);
+    }
+
+    /**
+     * <p>getPhase</p>
+     *
+     * @param phase the name of the phase
+     * @return the statistics of the phase, never null
+     */
+    public PhaseStatistics getPhase(final String phase) {
+        PhaseStatistics stats = m_phases.get(phase);
+        if (stats == null) {
+            final PhaseStatistics created = new PhaseStatistics(phase);
+            stats = m_phases.putIfAbsent(phase, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * <p>getPhases</p>
+     *
+     * @return the statistics of all phases that have run, by name
+     */
+    public Map<String, PhaseStatistics> getPhases() {
+        return new TreeMap<String, PhaseStatistics>(m_phases);
+    }
+
+    /**
+     * Forgets all recorded statistics.
+     */
+    public void clear() {
+        m_phases.clear();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        for (final PhaseStatistics stats : getPhases().values()) {
+            if (buf.length() > 0) {
+                buf.append("; ");
+            }
+            buf.append(stats);
+        }
+        return buf.toString();
+    }
+}
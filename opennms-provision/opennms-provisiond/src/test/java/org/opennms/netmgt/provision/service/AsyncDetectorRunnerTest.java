@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.tasks.Callback;
+import org.opennms.netmgt.provision.AsyncServiceDetector;
+import org.opennms.netmgt.provision.DetectFuture;
+import org.opennms.netmgt.provision.DetectFutureListener;
+import org.opennms.netmgt.provision.support.DetectFutureFailedImpl;
+
+/**
+ * Checks that every detection hands its {@link DetectorThrottle} permit
+ * back exactly once and reports its result exactly once, however it fails.
+ */
+public class AsyncDetectorRunnerTest {
+
+    private int m_inFlight;
+    private IpInterfaceScan m_scan;
+
+    @Before
+    public void setUp() throws Exception {
+        m_inFlight = DetectorThrottle.getInstance().getInFlightCount();
+        m_scan = new IpInterfaceScan(1, InetAddress.getLoopbackAddress(), "test", null);
+    }
+
+    /**
+     * A future that is already done, so its listeners run inside addListener.
+     */
+    private static class CompletedFuture implements DetectFuture {
+        private final AsyncServiceDetector m_detector;
+
+        CompletedFuture(final AsyncServiceDetector detector) {
+            m_detector = detector;
+        }
+
+        @Override
+        public AsyncServiceDetector getServiceDetector() {
+            return m_detector;
+        }
+
+        @Override
+        public boolean isServiceDetected() {
+            return true;
+        }
+
+        @Override
+        public Throwable getException() {
+            return null;
+        }
+
+        @Override
+        public void setServiceDetected(final boolean serviceDetected) {
+        }
+
+        @Override
+        public void setException(final Throwable throwable) {
+        }
+
+        @Override
+        public void awaitFor() throws InterruptedException {
+        }
+
+        @Override
+        public void awaitForUninterruptibly() {
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public DetectFuture addListener(final DetectFutureListener<DetectFuture> listener) {
+            listener.operationComplete(this);
+            return this;
+        }
+    }
+
+    private static class TestDetector implements AsyncServiceDetector {
+        boolean m_failDetect = false;
+        boolean m_failFuture = false;
+        boolean m_failDispose = false;
+        int m_disposed = 0;
+
+        @Override
+        public DetectFuture isServiceDetected(final InetAddress address) {
+            if (m_failDetect) {
+                throw new IllegalStateException("detect failed");
+            }
+            if (m_failFuture) {
+                return new DetectFutureFailedImpl(this, new IllegalStateException("future failed"));
+            }
+            return new CompletedFuture(this);
+        }
+
+        @Override
+        public void dispose() {
+            m_disposed++;
+            if (m_failDispose) {
+                throw new IllegalStateException("dispose failed");
+            }
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public String getServiceName() {
+            return "Test";
+        }
+
+        @Override
+        public void setServiceName(final String serviceName) {
+        }
+
+        @Override
+        public int getPort() {
+            return 0;
+        }
+
+        @Override
+        public void setPort(final int port) {
+        }
+
+        @Override
+        public int getTimeout() {
+            return 0;
+        }
+
+        @Override
+        public void setTimeout(final int timeout) {
+        }
+
+        @Override
+        public String getIpMatch() {
+            return null;
+        }
+
+        @Override
+        public void setIpMatch(final String ipMatch) {
+        }
+    }
+
+    private static class TestCallback implements Callback<Boolean> {
+        boolean m_failComplete = false;
+        int m_completed = 0;
+        int m_failed = 0;
+        Throwable m_exception;
+
+        @Override
+        public void complete(final Boolean detected) {
+            m_completed++;
+            if (m_failComplete) {
+                throw new IllegalStateException("complete failed");
+            }
+        }
+
+        @Override
+        public void handleException(final Throwable t) {
+            m_failed++;
+            m_exception = t;
+        }
+    }
+
+    private void run(final TestDetector detector, final TestCallback cb) {
+        new AsyncDetectorRunner(m_scan, detector).submit(cb);
+        assertEquals("permits in flight", m_inFlight, DetectorThrottle.getInstance().getInFlightCount());
+    }
+
+    @Test
+    public void testDetected() {
+        final TestDetector detector = new TestDetector();
+        final TestCallback cb = new TestCallback();
+        run(detector, cb);
+        assertEquals(1, cb.m_completed);
+        assertEquals(0, cb.m_failed);
+        assertEquals(1, detector.m_disposed);
+    }
+
+    @Test
+    public void testDisposeFails() {
+        final TestDetector detector = new TestDetector();
+        detector.m_failDispose = true;
+        final TestCallback cb = new TestCallback();
+        run(detector, cb);
+        assertEquals(1, cb.m_completed);
+        assertEquals(0, cb.m_failed);
+    }
+
+    @Test
+    public void testCallbackFails() {
+        final TestDetector detector = new TestDetector();
+        final TestCallback cb = new TestCallback();
+        cb.m_failComplete = true;
+        run(detector, cb);
+        // the detection completed, so the failure of its callback is not reported as its result
+        assertEquals(1, cb.m_completed);
+        assertEquals(0, cb.m_failed);
+        assertEquals(1, detector.m_disposed);
+    }
+
+    @Test
+    public void testDetectFails() {
+        final TestDetector detector = new TestDetector();
+        detector.m_failDetect = true;
+        final TestCallback cb = new TestCallback();
+        run(detector, cb);
+        assertEquals(0, cb.m_completed);
+        assertEquals(1, cb.m_failed);
+        assertEquals("detect failed", cb.m_exception.getMessage());
+    }
+
+    @Test
+    public void testFailedFuture() {
+        final TestDetector detector = new TestDetector();
+        detector.m_failFuture = true;
+        final TestCallback cb = new TestCallback();
+        run(detector, cb);
+        assertEquals(0, cb.m_completed);
+        assertEquals(1, cb.m_failed);
+        // a failed future does not take listeners
+        assertEquals(UnsupportedOperationException.class, cb.m_exception.getClass());
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DetectorThrottleTest {
+
+    private static Runnable detector(final List<Integer> started, final int id) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.add(id);
+            }
+        };
+    }
+
+    @Test
+    public void testQueuesAboveLimit() {
+        final DetectorThrottle throttle = new DetectorThrottle(2);
+        final List<Integer> started = new ArrayList<Integer>();
+        for (int i = 0; i < 5; i++) {
+            throttle.submit(detector(started, i));
+        }
+        assertEquals(2, started.size());
+        assertEquals(2, throttle.getInFlightCount());
+        assertEquals(3, throttle.getQueuedCount());
+
+        throttle.release();
+        assertEquals(3, started.size());
+        assertEquals(Integer.valueOf(2), started.get(2));
+
+        throttle.release();
+        throttle.release();
+        throttle.release();
+        throttle.release();
+        assertEquals(5, started.size());
+        assertEquals(0, throttle.getInFlightCount());
+        assertEquals(0, throttle.getQueuedCount());
+    }
+
+    @Test
+    public void testReleaseWhileStarting() {
+        final DetectorThrottle throttle = new DetectorThrottle(1);
+        final List<Integer> started = new ArrayList<Integer>();
+        // detectors that complete immediately, as when the connection is refused
+        for (int i = 0; i < 10000; i++) {
+            final int id = i;
+            throttle.submit(new Runnable() {
+                @Override
+                public void run() {
+                    started.add(id);
+                    throttle.release();
+                }
+            });
+        }
+        assertEquals(10000, started.size());
+        assertEquals(0, throttle.getInFlightCount());
+        assertEquals(0, throttle.getQueuedCount());
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.netmgt.provision.service.ScanStatistics.PhaseStatistics;
+
+public class ScanStatisticsTest {
+
+    @Test
+    public void testRecord() {
+        final ScanStatistics stats = new ScanStatistics();
+        final long now = System.nanoTime();
+        stats.record("write", now - TimeUnit.MILLISECONDS.toNanos(100), 10);
+        stats.record("write", now - TimeUnit.MILLISECONDS.toNanos(300), 30);
+        stats.record("detect", now, 1);
+
+        assertEquals(2, stats.getPhases().size());
+
+        final PhaseStatistics write = stats.getPhase("write");
+        assertEquals(2, write.getCount());
+        assertEquals(40, write.getItemCount());
+        assertTrue(write.getAverageLatency() >= 200.0);
+        assertTrue(write.getMaxLatency() >= 300.0);
+        // 40 items in at least 400 ms
+        assertTrue(write.getThroughput() <= 100.0);
+        assertTrue(write.getThroughput() > 50.0);
+
+        stats.clear();
+        assertEquals(0, stats.getPhases().size());
+        assertEquals(0, stats.getPhase("write").getCount());
+    }
+}
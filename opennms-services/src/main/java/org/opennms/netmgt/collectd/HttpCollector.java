@@ -256,13 +256,15 @@ public class HttpCollector implements ServiceCollector {
     private static void doCollection(final HttpCollectionSet collectionSet, final HttpCollectionResource collectionResource) throws HttpCollectorException {
         HttpRequestBase method = null;
         HttpClientWrapper clientWrapper = null;
+        CloseableHttpResponse response = null;
         try {
             final HttpVersion httpVersion = computeVersion(collectionSet.getUriDef());
 
             clientWrapper = HttpClientWrapper.create()
                     .setConnectionTimeout(ParameterMap.getKeyedInteger(collectionSet.getParameters(), ParameterName.TIMEOUT.toString(), DEFAULT_SO_TIMEOUT))
                     .setSocketTimeout(ParameterMap.getKeyedInteger(collectionSet.getParameters(), ParameterName.TIMEOUT.toString(), DEFAULT_SO_TIMEOUT))
-                    .useBrowserCompatibleCookies();
+                    .useBrowserCompatibleCookies()
+                    .useConnectionPool();
 
             if ("https".equals(collectionSet.getUriDef().getUrl().getScheme())) {
                 clientWrapper.useRelaxedSSL("https");
@@ -294,7 +296,7 @@ public class HttpCollector implements ServiceCollector {
             }
 
             LOG.info("doCollection: collecting using method: {}", method);
-            final CloseableHttpResponse response = clientWrapper.execute(method);
+            response = clientWrapper.execute(method);
             //Not really a persist as such; it just stores data in collectionSet for later retrieval
             persistResponse(collectionSet, collectionResource, response);
         } catch (URISyntaxException e) {
@@ -306,6 +308,9 @@ public class HttpCollector implements ServiceCollector {
         } catch (Throwable e) {
             throw new HttpCollectorException("Unexpected exception caught during HTTP collection", e);
         } finally {
+            if (clientWrapper != null) {
+                clientWrapper.close(response);
+            }
             IOUtils.closeQuietly(clientWrapper);
         }
     }
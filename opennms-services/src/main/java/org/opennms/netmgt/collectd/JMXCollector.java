@@ -45,7 +45,6 @@ import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServerConnection;
-import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 
@@ -72,6 +71,7 @@ import org.opennms.netmgt.config.collectd.jmx.Attrib;
 import org.opennms.netmgt.events.api.EventProxy;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.protocols.jmx.connectors.ConnectionWrapper;
+import org.opennms.protocols.jmx.connectors.JMXConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -314,12 +314,12 @@ public abstract class JMXCollector implements ServiceCollector {
         JMXCollectionResource collectionResource = new JMXCollectionResource(agent, collDir);
         SingleResourceCollectionSet collectionSet = new SingleResourceCollectionSet(collectionResource, new Date());
         
-        ConnectionWrapper connection = null;
+        JMXConnectionPool.PooledConnection connection = null;
 
         LOG.debug("connecting to {} on node ID {}", InetAddressUtils.str(ipaddr), nodeInfo.getNodeId());
 
         try {
-            connection = getMBeanServerConnection(map, ipaddr);
+            connection = getPooledConnection(map, ipaddr);
 
             if (connection == null) {
                 return collectionSet;
@@ -367,55 +367,53 @@ public abstract class JMXCollector implements ServiceCollector {
                             LOG.debug("{} Collector - getAttributes: {}, # attributes: {}, # composite attribute members: {}", serviceName, objectName, attrNames.length, compAttribNames.size());
                             try {
                                 ObjectName oName = new ObjectName(objectName);
-                                if (mbeanServer.isRegistered(oName)) {
-                                    AttributeList attrList = mbeanServer.getAttributes(oName, attrNames);
-                                    Map<String, JMXDataSource> dsMap = nodeInfo.getDsMap();
-                                    for(Object attribute : attrList) {
-                                        List<String> compositeMemberKeys = new ArrayList<String>();
-                                        Boolean isComposite = false;
-                                        Attribute attrib=(Attribute)attribute;
-                                        for (String compAttrName : compAttribNames ) {
-                                            String[] attribKeys = compAttrName.split("\\|", -1);
-                                            if (attrib.getName().equals(attribKeys[0])) {
-                                                compositeMemberKeys.add(attribKeys[1]);
-                                                isComposite = true;
-                                            }
-                                        }
-                                        if (isComposite) {
-                                            try {
-                                                CompositeData cd = (CompositeData)attrib.getValue();
-                                                 for (String key : compositeMemberKeys) {
-                                                     /*
-                                                     value = cd.get(key);
-                                                     
-                                                     log.debug(" JMXCollector - got CompositeData: " + 
-                                                               objectName + "|" + attrib.getName() + "|" + key + " |-> " + cd.get(key).toString());
-                                                     */
-                                                     JMXDataSource ds = dsMap.get(objectName + "|" + attrib.getName() + "|" + key);
-                                                     JMXCollectionAttributeType attribType=new JMXCollectionAttributeType(ds, null, null, attribGroupType);
-                                                     collectionResource.setAttributeValue(attribType, cd.get(key).toString());
-                                                 }
-                                            } catch (final ClassCastException cce) {
-                                                LOG.debug("{} Collection - getAttributes (try CompositeData) - ERROR: Failed to cast attribute value to type CompositeData!", serviceName, cce);
-                                            }
+                                AttributeList attrList = mbeanServer.getAttributes(oName, attrNames);
+                                Map<String, JMXDataSource> dsMap = nodeInfo.getDsMap();
+                                for(Object attribute : attrList) {
+                                    List<String> compositeMemberKeys = new ArrayList<String>();
+                                    Boolean isComposite = false;
+                                    Attribute attrib=(Attribute)attribute;
+                                    for (String compAttrName : compAttribNames ) {
+                                        String[] attribKeys = compAttrName.split("\\|", -1);
+                                        if (attrib.getName().equals(attribKeys[0])) {
+                                            compositeMemberKeys.add(attribKeys[1]);
+                                            isComposite = true;
                                         }
-                                        else {
-                                            // this is a normal attribute, so fallback to default handler
-                                            JMXDataSource ds = dsMap.get(objectName + "|" + attrib.getName());
-                                            JMXCollectionAttributeType attribType=new JMXCollectionAttributeType(ds, null, null, attribGroupType);
-                                            collectionResource.setAttributeValue(attribType, attrib.getValue().toString());
+                                    }
+                                    if (isComposite) {
+                                        try {
+                                            CompositeData cd = (CompositeData)attrib.getValue();
+                                             for (String key : compositeMemberKeys) {
+                                                 /*
+                                                 value = cd.get(key);
+                                                 
+                                                 log.debug(" JMXCollector - got CompositeData: " + 
+                                                           objectName + "|" + attrib.getName() + "|" + key + " |-> " + cd.get(key).toString());
+                                                 */
+                                                 JMXDataSource ds = dsMap.get(objectName + "|" + attrib.getName() + "|" + key);
+                                                 JMXCollectionAttributeType attribType=new JMXCollectionAttributeType(ds, null, null, attribGroupType);
+                                                 collectionResource.setAttributeValue(attribType, cd.get(key).toString());
+                                             }
+                                        } catch (final ClassCastException cce) {
+                                            LOG.debug("{} Collection - getAttributes (try CompositeData) - ERROR: Failed to cast attribute value to type CompositeData!", serviceName, cce);
                                         }
-                                    }  
+                                    }
+                                    else {
+                                        // this is a normal attribute, so fallback to default handler
+                                        JMXDataSource ds = dsMap.get(objectName + "|" + attrib.getName());
+                                        JMXCollectionAttributeType attribType=new JMXCollectionAttributeType(ds, null, null, attribGroupType);
+                                        collectionResource.setAttributeValue(attribType, attrib.getValue().toString());
+                                    }
                                 }
                             } catch (final InstanceNotFoundException e) {
-                                LOG.error("Unable to retrieve attributes from {}", objectName, e);
+                                LOG.debug("{} Collector - MBean {} is not registered", serviceName, objectName);
                             }
                         } else {
                             /*
                              * This section is for ObjectNames that use the
                              * '*' wildcard
                              */
-                            Set<ObjectName> mbeanSet = getObjectNames(mbeanServer, objectName);
+                            Set<ObjectName> mbeanSet = connection.queryNames(objectName);
                             for (Iterator<ObjectName> objectNameIter = mbeanSet.iterator(); objectNameIter.hasNext(); ) {
                                 ObjectName oName = objectNameIter.next();
                                 LOG.debug("{} Collector - getAttributesWC: {}, # attributes: {}, alias: {}", serviceName, oName, attrNames.length, beanInfo.getKeyAlias());
@@ -423,24 +421,21 @@ public abstract class JMXCollector implements ServiceCollector {
                                 try {
                                     if (excludeList == null) {
                                         // the exclude list doesn't apply
-                                        if (mbeanServer.isRegistered(oName)) {
-                                            AttributeList attrList = mbeanServer.getAttributes(oName,
-                                                                          attrNames);
-                                            Map<String, JMXDataSource> dsMap = nodeInfo.getDsMap();
-
-                                            for(Object attribute : attrList) {
-                                                Attribute attrib=(Attribute)attribute;
-                                                JMXDataSource ds = dsMap.get(objectName + "|"
-                                                             + attrib.getName());
-                                                JMXCollectionAttributeType attribType=
-                                                    new JMXCollectionAttributeType(ds, 
-                                                                                   oName.getKeyProperty(beanInfo.getKeyField()),  
-                                                                                   beanInfo.getKeyAlias(), 
-                                                                                   attribGroupType);
-                                                
-                                                collectionResource.setAttributeValue(attribType, attrib.getValue().toString());
-                                            }
-
+                                        AttributeList attrList = mbeanServer.getAttributes(oName,
+                                                                      attrNames);
+                                        Map<String, JMXDataSource> dsMap = nodeInfo.getDsMap();
+
+                                        for(Object attribute : attrList) {
+                                            Attribute attrib=(Attribute)attribute;
+                                            JMXDataSource ds = dsMap.get(objectName + "|"
+                                                         + attrib.getName());
+                                            JMXCollectionAttributeType attribType=
+                                                new JMXCollectionAttributeType(ds, 
+                                                                               oName.getKeyProperty(beanInfo.getKeyField()),  
+                                                                               beanInfo.getKeyAlias(), 
+                                                                               attribGroupType);
+                                            
+                                            collectionResource.setAttributeValue(attribType, attrib.getValue().toString());
                                         }
                                     } else {
                                         /*
@@ -460,30 +455,43 @@ public abstract class JMXCollector implements ServiceCollector {
                                             }
                                         }
                                         if (!found) {
-                                            if (mbeanServer.isRegistered(oName)) {
-                                                AttributeList attrList = mbeanServer.getAttributes(oName, attrNames);
-                                                Map<String, JMXDataSource> dsMap = nodeInfo.getDsMap();
-
-                                                for(Object attribute : attrList) {
-                                                    Attribute attrib=(Attribute)attribute;
-                                                    JMXDataSource ds = dsMap.get(objectName + "|" + attrib.getName());
-                                                    JMXCollectionAttributeType attribType = new JMXCollectionAttributeType(ds, 
-                                                                                       oName.getKeyProperty(beanInfo.getKeyField()),  
-                                                                                       beanInfo.getKeyAlias(), 
-                                                                                       attribGroupType);
-                                                    
-                                                    collectionResource.setAttributeValue(attribType, attrib.getValue().toString());
-                                                }
+                                            AttributeList attrList = mbeanServer.getAttributes(oName, attrNames);
+                                            Map<String, JMXDataSource> dsMap = nodeInfo.getDsMap();
+
+                                            for(Object attribute : attrList) {
+                                                Attribute attrib=(Attribute)attribute;
+                                                JMXDataSource ds = dsMap.get(objectName + "|" + attrib.getName());
+                                                JMXCollectionAttributeType attribType = new JMXCollectionAttributeType(ds, 
+                                                                                   oName.getKeyProperty(beanInfo.getKeyField()),  
+                                                                                   beanInfo.getKeyAlias(), 
+                                                                                   attribGroupType);
+                                                
+                                                collectionResource.setAttributeValue(attribType, attrib.getValue().toString());
                                             }
                                         }
                                     }
                                 } catch (final InstanceNotFoundException e) {
-                                    LOG.error("Error retrieving attributes for {}", oName, e);
+                                    // the cached query result is out of date
+                                    LOG.debug("{} Collector - MBean {} is no longer registered", serviceName, oName);
+                                    connection.forgetQuery(objectName);
                                 }
                             }
                         }
                     }
                     break;
+                } catch (final IOException e) {
+                    LOG.debug("{} Collector.collect: IOException while collecting address: {}", serviceName, agent.getAddress(), e);
+                    // the pooled connection may have gone stale, retry on a new one
+                    connection.invalidate();
+                    connection.close();
+                    connection = null;
+                    if (attempts < retry) {
+                        connection = getPooledConnection(map, ipaddr);
+                    }
+                    if (connection == null) {
+                        break;
+                    }
+                    mbeanServer = connection.getMBeanServer();
                 } catch (final Exception e) {
                     LOG.debug("{} Collector.collect: IOException while collecting address: {}", serviceName, agent.getAddress(), e);
                 }
@@ -500,9 +508,27 @@ public abstract class JMXCollector implements ServiceCollector {
         return collectionSet;
     }
 
-    private static Set<ObjectName> getObjectNames(MBeanServerConnection mbeanServer, String objectName) throws IOException,
-            MalformedObjectNameException {
-        return mbeanServer.queryNames(new ObjectName(objectName), null);
+    /**
+     * Gets the type of connection the pool keys connections by. Collectors
+     * and monitors that return the same type share their connections.
+     *
+     * @return the class name without the Collector suffix
+     */
+    protected String getConnectionType() {
+        return getClass().getSimpleName().replaceFirst("Collector$", "");
+    }
+
+    /**
+     * Gets a connection from the shared pool, opening one with
+     * {@link #getMBeanServerConnection(Map, InetAddress)} if there is none.
+     */
+    private JMXConnectionPool.PooledConnection getPooledConnection(final Map<String, Object> map, final InetAddress ipaddr) {
+        return JMXConnectionPool.getInstance().getConnection(getConnectionType(), ipaddr, map, new JMXConnectionPool.Connector() {
+            @Override
+            public ConnectionWrapper connect() {
+                return getMBeanServerConnection(map, ipaddr);
+            }
+        });
     }
 
     /**
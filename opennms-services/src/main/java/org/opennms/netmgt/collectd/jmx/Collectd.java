@@ -29,9 +29,11 @@
 package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
+import org.opennms.core.web.HttpConnectionPool;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.protocols.jmx.connectors.JMXConnectionPool;
 
 /**
  * <p>Collectd class.</p>
@@ -125,6 +127,36 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
     public long getCollectableServiceCount() {
         return getDaemon().getCollectableServiceCount();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getJmxConnectCount() {
+        return JMXConnectionPool.getInstance().getConnectCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getJmxConnectionReuseCount() {
+        return JMXConnectionPool.getInstance().getReuseCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHttpConnectCount() {
+        return HttpConnectionPool.getInstance().getConnectCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHttpRequestCount() {
+        return HttpConnectionPool.getInstance().getRequestCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getHttpAverageResponseTime() {
+        return HttpConnectionPool.getInstance().getAverageResponseTime();
+    }
     
     private ThreadPoolExecutor getExecutor() {
         return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
@@ -76,4 +76,29 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of collectable services currently seen by Collectd
      */
     public long getCollectableServiceCount();
+
+    /**
+     * @return The number of JMX connections opened by the JMX collectors and monitors
+     */
+    public long getJmxConnectCount();
+
+    /**
+     * @return The number of times the JMX collectors and monitors reused a pooled JMX connection
+     */
+    public long getJmxConnectionReuseCount();
+
+    /**
+     * @return The number of HTTP connections opened through the shared HTTP connection pool
+     */
+    public long getHttpConnectCount();
+
+    /**
+     * @return The number of HTTP requests executed through the shared HTTP connection pool
+     */
+    public long getHttpRequestCount();
+
+    /**
+     * @return The average time in milliseconds until the response headers of a pooled HTTP request were received
+     */
+    public double getHttpAverageResponseTime();
 }
@@ -34,19 +34,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.DBUtils;
-import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.DiscoveryConfigFactory;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -54,6 +53,8 @@ import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.events.api.EventIpcManagerFactory;
 import org.opennms.netmgt.events.api.annotations.EventHandler;
 import org.opennms.netmgt.events.api.annotations.EventListener;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.model.discovery.IPPollAddress;
 import org.opennms.netmgt.model.events.EventBuilder;
@@ -94,10 +95,25 @@ public class Discovery extends AbstractServiceDaemon {
      */
     private static final String ALL_IP_ADDRS_SQL = "SELECT DISTINCT ipAddr FROM ipInterface WHERE isManaged <> 'D'";
     
+    /**
+     * The maximum number of pings waiting for a reply or a timeout at any
+     * time.  The sweep blocks when it is reached.
+     */
+    private static final int MAX_PINGS_IN_FLIGHT = Integer.getInteger("org.opennms.netmgt.discovery.maxPingsInFlight", 10000);
+
     /**
      * a set of devices to skip discovery on
      */
-    private Set<String> m_alreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    private volatile KnownAddressSet m_alreadyDiscovered = new KnownAddressSet();
+
+    private final Semaphore m_pingsInFlight = new Semaphore(MAX_PINGS_IN_FLIGHT);
+
+    private final AtomicLong m_sweepAddresses = new AtomicLong();
+    private final AtomicLong m_pingsSent = new AtomicLong();
+    private final AtomicLong m_responses = new AtomicLong();
+    private final AtomicLong m_suspectsSuppressed = new AtomicLong();
+    private volatile long m_sweepStarted = 0;
+    private volatile long m_lastSweepDuration = 0;
 
     private DiscoveryConfigFactory m_discoveryFactory;
 
@@ -203,51 +219,99 @@ public class Discovery extends AbstractServiceDaemon {
 
 
         m_xstatus = PING_RUNNING;
+        m_sweepAddresses.set(0);
+        m_sweepStarted = System.currentTimeMillis();
 
         getDiscoveryFactory().getReadLock().lock();
         try {
+            final TokenBucket rate = new TokenBucket(getDiscoveryFactory().getPacketsPerSecond());
             for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
                 if (m_xstatus == PING_FINISHING || m_timer == null) {
                     m_xstatus = PING_IDLE;
                     return;
                 }
+                m_sweepAddresses.incrementAndGet();
+                final InetAddress address = pollAddress.getAddress();
+                if (address == null) {
+                    continue;
+                }
+                if (isAlreadyDiscovered(address)) {
+                    LOG.debug("{} already discovered.", address.toString());
+                    continue;
+                }
                 LOG.debug("Pinging: {} of foreign source {}", pollAddress.getAddress().toString(), m_discoveryFactory.getForeignSource(pollAddress.getAddress()));
-                ping(pollAddress);
                 try {
-                    Thread.sleep(getDiscoveryFactory().getIntraPacketDelay());
+                    rate.acquire();
+                    while (!m_pingsInFlight.tryAcquire(1, TimeUnit.SECONDS)) {
+                        if (m_xstatus == PING_FINISHING || m_timer == null) {
+                            m_xstatus = PING_IDLE;
+                            return;
+                        }
+                    }
                 } catch (InterruptedException e) {
                     LOG.info("interrupting discovery sweep");
                     break;
                 }
+                ping(pollAddress);
             }
         } finally {
             getDiscoveryFactory().getReadLock().unlock();
+            m_lastSweepDuration = System.currentTimeMillis() - m_sweepStarted;
         }
 
-        LOG.info("finished discovery sweep");
+        LOG.info("finished discovery sweep of {} addresses in {} ms", m_sweepAddresses.get(), m_lastSweepDuration);
         m_xstatus = PING_IDLE;
     }
 
+    /**
+     * Sends a ping without waiting for the reply.  The caller must hold a
+     * permit of m_pingsInFlight, which is released once the ping is answered,
+     * times out or fails.
+     */
     private void ping(IPPollAddress pollAddress) {
-        InetAddress address = pollAddress.getAddress();
-        if (address != null) {
-            if (!isAlreadyDiscovered(address)) {
-                try {
-                    m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, cb);
-                } catch (Throwable e) {
-                    LOG.debug("error pinging {}", address.getAddress(), e);
-                }
-            } else {
-            	LOG.debug("{} already discovered.", address.toString());
+        final InetAddress address = pollAddress.getAddress();
+        try {
+            m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, new SweepCallback());
+            m_pingsSent.incrementAndGet();
+        } catch (Throwable e) {
+            m_pingsInFlight.release();
+            LOG.debug("error pinging {}", address.getAddress(), e);
+        }
+    }
+
+    /**
+     * Releases the in-flight permit of a ping and only passes replies from
+     * addresses that have not become managed in the meantime on to the
+     * callback that sends the newSuspect event.
+     */
+    private class SweepCallback implements PingResponseCallback {
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+            m_pingsInFlight.release();
+            m_responses.incrementAndGet();
+            if (isAlreadyDiscovered(address)) {
+                m_suspectsSuppressed.incrementAndGet();
+                LOG.debug("{} became known while it was pinged, not sending a newSuspect event", address);
+                return;
             }
+            cb.handleResponse(address, response);
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+            m_pingsInFlight.release();
+            cb.handleTimeout(address, request);
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+            m_pingsInFlight.release();
+            cb.handleError(address, request, t);
         }
     }
 
     private boolean isAlreadyDiscovered(InetAddress address) {
-        if (m_alreadyDiscovered.contains(InetAddressUtils.str(address))) {
-            return true;
-        }
-        return false;
+        return m_alreadyDiscovered.contains(address);
     }
 
     private void startTimer() {
@@ -330,7 +394,7 @@ public class Discovery extends AbstractServiceDaemon {
     	 * if something goes wrong with the DB we won't lose whatever was already
     	 * in there
     	 */
-    	Set<String> newAlreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    	KnownAddressSet newAlreadyDiscovered = new KnownAddressSet();
     	Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
 
@@ -481,6 +545,79 @@ public class Discovery extends AbstractServiceDaemon {
         LOG.debug("Added {} as discovered", iface);
     }
 
+    /**
+     * <p>getSweepAddresses</p>
+     *
+     * @return the number of addresses handled so far by the current (or last) sweep
+     */
+    public long getSweepAddresses() {
+        return m_sweepAddresses.get();
+    }
+
+    /**
+     * <p>getSweepRate</p>
+     *
+     * @return the addresses handled per second by the current (or last) sweep
+     */
+    public double getSweepRate() {
+        final long elapsed = m_xstatus == PING_RUNNING ? System.currentTimeMillis() - m_sweepStarted : m_lastSweepDuration;
+        return elapsed <= 0 ? 0.0 : m_sweepAddresses.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * <p>getLastSweepDuration</p>
+     *
+     * @return the duration of the last complete sweep in milliseconds
+     */
+    public long getLastSweepDuration() {
+        return m_lastSweepDuration;
+    }
+
+    /**
+     * <p>getPingsSent</p>
+     *
+     * @return the number of pings sent since the daemon started
+     */
+    public long getPingsSent() {
+        return m_pingsSent.get();
+    }
+
+    /**
+     * <p>getPingsInFlight</p>
+     *
+     * @return the number of pings currently waiting for a reply
+     */
+    public int getPingsInFlight() {
+        return MAX_PINGS_IN_FLIGHT - m_pingsInFlight.availablePermits();
+    }
+
+    /**
+     * <p>getResponses</p>
+     *
+     * @return the number of ping replies received since the daemon started
+     */
+    public long getResponses() {
+        return m_responses.get();
+    }
+
+    /**
+     * <p>getSuspectsSuppressed</p>
+     *
+     * @return the number of replies from already managed addresses that did not cause a newSuspect event
+     */
+    public long getSuspectsSuppressed() {
+        return m_suspectsSuppressed.get();
+    }
+
+    /**
+     * <p>getKnownAddresses</p>
+     *
+     * @return the number of managed addresses skipped by the sweep
+     */
+    public int getKnownAddresses() {
+        return m_alreadyDiscovered.size();
+    }
+
     public static String getLoggingCategory() {
         return LOG4J_CATEGORY;
     }
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * The set of interface addresses that are already managed, so discovery
+ * neither pings them nor sends newSuspect events for them.
+ *
+ * IPv4 addresses are kept in a sparse bitmap with one 8 KiB block per /16
+ * that contains at least one address, so a lookup is a hash lookup and a bit
+ * test, and even a fully populated /12 only takes 128 KiB.  IPv6 addresses
+ * are rare enough to be kept in a plain set.
+ */
+public class KnownAddressSet {
+
+    private static final int BLOCK_BITS = 16;
+    private static final int WORDS_PER_BLOCK = (1 << BLOCK_BITS) / 64;
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /**
+     * Bitmap blocks keyed by the upper 16 bits of the address.
+     */
+    private final Map<Integer, long[]> m_v4Blocks = new HashMap<Integer, long[]>();
+
+    private final Set<InetAddress> m_v6Addresses = new HashSet<InetAddress>();
+
+    private int m_size = 0;
+
+    /**
+     * <p>add</p>
+     *
+     * @param address the address, ignored if it cannot be parsed
+     * @return true if the address was not known yet
+     */
+    public boolean add(final String address) {
+        final InetAddress addr = parse(address);
+        return addr == null ? false : add(addr);
+    }
+
+    /**
+     * <p>add</p>
+     *
+     * @param address a {@link java.net.InetAddress} object.
+     * @return true if the address was not known yet
+     */
+    public boolean add(final InetAddress address) {
+        m_lock.writeLock().lock();
+        try {
+            final boolean added;
+            if (address instanceof Inet4Address) {
+                final int ip = toInt(address);
+                long[] block = m_v4Blocks.get(blockKey(ip));
+                if (block == null) {
+                    block = new long[WORDS_PER_BLOCK];
+                    m_v4Blocks.put(blockKey(ip), block);
+                }
+                final long mask = bitMask(ip);
+                added = (block[wordIndex(ip)] & mask) == 0;
+                block[wordIndex(ip)] |= mask;
+            } else {
+                added = m_v6Addresses.add(address);
+            }
+            if (added) {
+                m_size++;
+            }
+            return added;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>remove</p>
+     *
+     * @param address the address, ignored if it cannot be parsed
+     * @return true if the address was known
+     */
+    public boolean remove(final String address) {
+        final InetAddress addr = parse(address);
+        return addr == null ? false : remove(addr);
+    }
+
+    /**
+     * <p>remove</p>
+     *
+     * @param address a {@link java.net.InetAddress} object.
+     * @return true if the address was known
+     */
+    public boolean remove(final InetAddress address) {
+        m_lock.writeLock().lock();
+        try {
+            final boolean removed;
+            if (address instanceof Inet4Address) {
+                final int ip = toInt(address);
+                final long[] block = m_v4Blocks.get(blockKey(ip));
+                if (block == null) {
+                    return false;
+                }
+                final long mask = bitMask(ip);
+                removed = (block[wordIndex(ip)] & mask) != 0;
+                block[wordIndex(ip)] &= ~mask;
+            } else {
+                removed = m_v6Addresses.remove(address);
+            }
+            if (removed) {
+                m_size--;
+            }
+            return removed;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>contains</p>
+     *
+     * @param address a {@link java.net.InetAddress} object.
+     * @return true if the address is known
+     */
+    public boolean contains(final InetAddress address) {
+        m_lock.readLock().lock();
+        try {
+            if (address instanceof Inet4Address) {
+                final int ip = toInt(address);
+                final long[] block = m_v4Blocks.get(blockKey(ip));
+                return block != null && (block[wordIndex(ip)] & bitMask(ip)) != 0;
+            } else {
+                return m_v6Addresses.contains(address);
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of known addresses
+     */
+    public int size() {
+        m_lock.readLock().lock();
+        try {
+            return m_size;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    private static InetAddress parse(final String address) {
+        if (address == null) {
+            return null;
+        }
+        try {
+            return InetAddressUtils.addr(address);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int toInt(final InetAddress address) {
+        final byte[] b = address.getAddress();
+        return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+    }
+
+    private static Integer blockKey(final int ip) {
+        return ip >>> BLOCK_BITS;
+    }
+
+    private static int wordIndex(final int ip) {
+        return (ip & 0xffff) >>> 6;
+    }
+
+    private static long bitMask(final int ip) {
+        return 1L << (ip & 0x3f);
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the discovery sweep to a number of packets per second.
+ *
+ * Tokens accumulate at the configured rate up to a burst of one tenth of a
+ * second worth of packets, so the average rate is exact even for rates well
+ * above 1000 packets per second, where sleeping between packets only has
+ * millisecond resolution.
+ */
+public class TokenBucket {
+
+    private final double m_nanosPerToken;
+    private final double m_capacity;
+    private double m_tokens;
+    private long m_lastRefill;
+
+    /**
+     * <p>Constructor for TokenBucket.</p>
+     *
+     * @param tokensPerSecond the sustained rate, must be positive
+     */
+    public TokenBucket(final int tokensPerSecond) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + tokensPerSecond);
+        }
+        m_nanosPerToken = TimeUnit.SECONDS.toNanos(1) / (double)tokensPerSecond;
+        m_capacity = Math.max(1.0, tokensPerSecond / 10.0);
+        m_tokens = 1.0;
+        m_lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes one token, waiting until one is available.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        refill();
+        while (m_tokens < 1.0) {
+            final long waitNanos = (long)Math.ceil((1.0 - m_tokens) * m_nanosPerToken);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            refill();
+        }
+        m_tokens -= 1.0;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        m_tokens = Math.min(m_capacity, m_tokens + (now - m_lastRefill) / m_nanosPerToken);
+        m_lastRefill = now;
+    }
+}
@@ -49,5 +49,52 @@ public class Discovery extends AbstractSpringContextJmxServiceDaemon<org.opennms
     protected String getSpringContext() {
         return "discoveryContext";
     }
-    
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSweepAddresses() {
+        return getDaemon().getSweepAddresses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getSweepRate() {
+        return getDaemon().getSweepRate();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLastSweepDuration() {
+        return getDaemon().getLastSweepDuration();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPingsSent() {
+        return getDaemon().getPingsSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPingsInFlight() {
+        return getDaemon().getPingsInFlight();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getResponses() {
+        return getDaemon().getResponses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSuspectsSuppressed() {
+        return getDaemon().getSuspectsSuppressed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getKnownAddresses() {
+        return getDaemon().getKnownAddresses();
+    }
 }
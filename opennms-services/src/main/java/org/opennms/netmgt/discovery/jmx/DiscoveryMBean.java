@@ -38,4 +38,59 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  */
 public interface DiscoveryMBean extends BaseOnmsMBean {
 
+    /**
+     * <p>getSweepAddresses</p>
+     *
+     * @return the number of addresses handled so far by the current (or last) sweep
+     */
+    public long getSweepAddresses();
+
+    /**
+     * <p>getSweepRate</p>
+     *
+     * @return the addresses handled per second by the current (or last) sweep
+     */
+    public double getSweepRate();
+
+    /**
+     * <p>getLastSweepDuration</p>
+     *
+     * @return the duration of the last complete sweep in milliseconds
+     */
+    public long getLastSweepDuration();
+
+    /**
+     * <p>getPingsSent</p>
+     *
+     * @return a long.
+     */
+    public long getPingsSent();
+
+    /**
+     * <p>getPingsInFlight</p>
+     *
+     * @return a int.
+     */
+    public int getPingsInFlight();
+
+    /**
+     * <p>getResponses</p>
+     *
+     * @return a long.
+     */
+    public long getResponses();
+
+    /**
+     * <p>getSuspectsSuppressed</p>
+     *
+     * @return a long.
+     */
+    public long getSuspectsSuppressed();
+
+    /**
+     * <p>getKnownAddresses</p>
+     *
+     * @return a int.
+     */
+    public int getKnownAddresses();
 }
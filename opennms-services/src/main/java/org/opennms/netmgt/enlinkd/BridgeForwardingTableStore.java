@@ -0,0 +1,556 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * In memory copy of the bridge forwarding tables that make up the saved
+ * bridge topology, that is the content of the bridgemaclink table.
+ *
+ * Every bridge keeps its table as an open addressing hash of MAC address to
+ * bridge port, with the MAC stored as a primitive long, and a second hash
+ * maps every MAC address to the bridges it has been learned on.  The second
+ * one is what makes it cheap to find the broadcast domain of a bridge: the
+ * bridges that are connected to it by shared MAC addresses are the only ones
+ * whose topology can change when its forwarding table changes.
+ *
+ * MAC addresses are the 12 digit lower case hex strings used by the bridge
+ * MIB trackers; anything else is ignored.
+ */
+public class BridgeForwardingTableStore {
+
+    private static final long EMPTY = -1L;
+
+    private static final int NO_PORT = -1;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Map<Integer, MacPortTable> m_bridges = new HashMap<Integer, MacPortTable>();
+
+    private final MacBridgeIndex m_index = new MacBridgeIndex(1024);
+
+    // MAC addresses looked up in the index by getBroadcastDomain
+    private long m_lookups = 0;
+
+    /**
+     * <p>put</p>
+     *
+     * @param nodeId the bridge
+     * @param bridgePort the port the MAC address was learned on
+     * @param mac the MAC address
+     */
+    public synchronized void put(final int nodeId, final int bridgePort, final String mac) {
+        put(nodeId, bridgePort, mac, true);
+    }
+
+    private void put(final int nodeId, final int bridgePort, final String mac, final boolean replace) {
+        final long key = toLong(mac);
+        if (key == EMPTY || bridgePort < 0) {
+            return;
+        }
+        MacPortTable table = m_bridges.get(nodeId);
+        if (table == null) {
+            table = new MacPortTable(16);
+            m_bridges.put(nodeId, table);
+        }
+        if (!replace && table.get(key) != NO_PORT) {
+            return;
+        }
+        if (table.put(key, bridgePort) == NO_PORT) {
+            m_index.add(key, nodeId);
+        }
+    }
+
+    /**
+     * Replaces the forwarding table of a bridge.  An address listed on more
+     * than one port is kept on the first one.
+     *
+     * @param nodeId the bridge
+     * @param bft the new table, bridge port to MAC addresses
+     */
+    public synchronized void setForwardingTable(final int nodeId, final Map<Integer, Set<String>> bft) {
+        removeBridge(nodeId);
+        if (bft == null) {
+            return;
+        }
+        for (final Entry<Integer, Set<String>> entry : bft.entrySet()) {
+            for (final String mac : entry.getValue()) {
+                put(nodeId, entry.getKey(), mac, false);
+            }
+        }
+    }
+
+    /**
+     * <p>getForwardingTable</p>
+     *
+     * @param nodeId the bridge
+     * @return the forwarding table of the bridge, bridge port to MAC
+     *         addresses, empty if the bridge is not known
+     */
+    public synchronized Map<Integer, Set<String>> getForwardingTable(final int nodeId) {
+        final Map<Integer, Set<String>> bft = new HashMap<Integer, Set<String>>();
+        final MacPortTable table = m_bridges.get(nodeId);
+        if (table == null) {
+            return bft;
+        }
+        for (int slot = 0; slot < table.m_keys.length; slot++) {
+            if (table.m_keys[slot] == EMPTY) {
+                continue;
+            }
+            Set<String> macs = bft.get(table.m_ports[slot]);
+            if (macs == null) {
+                macs = new HashSet<String>();
+                bft.put(table.m_ports[slot], macs);
+            }
+            macs.add(toString(table.m_keys[slot]));
+        }
+        return bft;
+    }
+
+    /**
+     * <p>getBridgePort</p>
+     *
+     * @param nodeId the bridge
+     * @param mac the MAC address
+     * @return the port the address is on, or null if it is not on the bridge
+     */
+    public synchronized Integer getBridgePort(final int nodeId, final String mac) {
+        final MacPortTable table = m_bridges.get(nodeId);
+        if (table == null) {
+            return null;
+        }
+        final int port = table.get(toLong(mac));
+        return port == NO_PORT ? null : Integer.valueOf(port);
+    }
+
+    /**
+     * <p>removeBridge</p>
+     *
+     * @param nodeId the bridge
+     */
+    public synchronized void removeBridge(final int nodeId) {
+        final MacPortTable table = m_bridges.remove(nodeId);
+        if (table == null) {
+            return;
+        }
+        for (final long key : table.m_keys) {
+            if (key != EMPTY) {
+                m_index.remove(key, nodeId);
+            }
+        }
+    }
+
+    /**
+     * Returns the bridges that share a broadcast domain with a bridge, that
+     * is every bridge reachable from it through MAC addresses learned on
+     * more than one bridge.  Every MAC address is expanded once, so the cost
+     * is linear in the size of the domain, not of the whole store.
+     *
+     * @param nodeId the bridge, never part of the result
+     * @param macs MAC addresses the bridge has just learned, on top of the
+     *        ones already in the store
+     * @param neighbours bridges known to be linked to this one
+     * @return the other bridges in the broadcast domain
+     */
+    public synchronized Set<Integer> getBroadcastDomain(final int nodeId, final Collection<String> macs, final Collection<Integer> neighbours) {
+        final Set<Integer> domain = new HashSet<Integer>();
+        final Deque<Integer> queue = new ArrayDeque<Integer>();
+        final MacPortTable expanded = new MacPortTable(256);
+
+        if (macs != null) {
+            for (final String mac : macs) {
+                expand(toLong(mac), nodeId, expanded, domain, queue);
+            }
+        }
+        final MacPortTable own = m_bridges.get(nodeId);
+        if (own != null) {
+            for (final long key : own.m_keys) {
+                expand(key, nodeId, expanded, domain, queue);
+            }
+        }
+        if (neighbours != null) {
+            for (final Integer neighbour : neighbours) {
+                if (neighbour.intValue() != nodeId && domain.add(neighbour)) {
+                    queue.add(neighbour);
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            final MacPortTable table = m_bridges.get(queue.poll());
+            if (table == null) {
+                continue;
+            }
+            for (final long key : table.m_keys) {
+                expand(key, nodeId, expanded, domain, queue);
+            }
+        }
+        return domain;
+    }
+
+    private void expand(final long key, final int nodeId, final MacPortTable expanded, final Set<Integer> domain, final Deque<Integer> queue) {
+        if (key == EMPTY || expanded.put(key, 0) != NO_PORT) {
+            return;
+        }
+        m_lookups++;
+        final int[] bridges = m_index.get(key);
+        if (bridges == null) {
+            return;
+        }
+        for (final int bridge : bridges) {
+            if (bridge != nodeId && domain.add(bridge)) {
+                queue.add(bridge);
+            }
+        }
+    }
+
+    /**
+     * <p>getBridgeCount</p>
+     *
+     * @return the number of bridges with a forwarding table
+     */
+    public synchronized int getBridgeCount() {
+        return m_bridges.size();
+    }
+
+    /**
+     * <p>getEntryCount</p>
+     *
+     * @return the number of forwarding table entries on all bridges
+     */
+    public synchronized int getEntryCount() {
+        int count = 0;
+        for (final MacPortTable table : m_bridges.values()) {
+            count += table.m_size;
+        }
+        return count;
+    }
+
+    /**
+     * <p>getMacCount</p>
+     *
+     * @return the number of distinct MAC addresses
+     */
+    public synchronized int getMacCount() {
+        return m_index.m_size;
+    }
+
+    /**
+     * <p>getLookupCount</p>
+     *
+     * @return the number of MAC addresses looked up while finding broadcast
+     *         domains so far
+     */
+    synchronized long getLookupCount() {
+        return m_lookups;
+    }
+
+    /**
+     * <p>isMacAddress</p>
+     *
+     * @param mac a {@link java.lang.String} object.
+     * @return true if the string is a MAC address as kept by the store
+     */
+    public static boolean isMacAddress(final String mac) {
+        return toLong(mac) != EMPTY;
+    }
+
+    static long toLong(final String mac) {
+        if (mac == null || mac.length() != 12) {
+            return EMPTY;
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            final char c = mac.charAt(i);
+            final int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return EMPTY;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    static String toString(final long mac) {
+        final char[] chars = new char[12];
+        for (int i = 11; i >= 0; i--) {
+            chars[i] = HEX[(int)(mac >>> (4 * (11 - i))) & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Linear probing hash table keyed by MAC address; subclasses keep the
+     * values in arrays parallel to the keys.
+     */
+    private abstract static class MacHashTable {
+        long[] m_keys;
+        int m_size;
+
+        MacHashTable(final int capacity) {
+            m_keys = newKeys(capacity);
+        }
+
+        abstract void allocate(int capacity);
+
+        abstract void move(int from, int to);
+
+        abstract void clear(int slot);
+
+        abstract Object values();
+
+        abstract void copy(Object values, int from, int to);
+
+        static long[] newKeys(final int capacity) {
+            final long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        final int hash(final long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h >>> 32) & (m_keys.length - 1);
+        }
+
+        final int find(final long key) {
+            for (int slot = hash(key); ; slot = (slot + 1) & (m_keys.length - 1)) {
+                if (m_keys[slot] == key) {
+                    return slot;
+                }
+                if (m_keys[slot] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Returns the slot of the key, claiming a free one if it is new.
+         */
+        final int claim(final long key) {
+            if ((m_size + 1) * 2 > m_keys.length) {
+                rehash(m_keys.length * 2);
+            }
+            int slot = hash(key);
+            while (m_keys[slot] != EMPTY && m_keys[slot] != key) {
+                slot = (slot + 1) & (m_keys.length - 1);
+            }
+            if (m_keys[slot] == EMPTY) {
+                m_keys[slot] = key;
+                m_size++;
+            }
+            return slot;
+        }
+
+        /**
+         * Frees a slot, shifting back the entries of the same probe run so
+         * that no tombstones are needed.
+         */
+        final void free(int slot) {
+            final int mask = m_keys.length - 1;
+            int next = (slot + 1) & mask;
+            while (m_keys[next] != EMPTY) {
+                final int home = hash(m_keys[next]);
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    m_keys[slot] = m_keys[next];
+                    move(next, slot);
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+            m_keys[slot] = EMPTY;
+            clear(slot);
+            m_size--;
+        }
+
+        private void rehash(final int capacity) {
+            final long[] keys = m_keys;
+            final Object values = values();
+            m_keys = newKeys(capacity);
+            allocate(capacity);
+            for (int from = 0; from < keys.length; from++) {
+                if (keys[from] == EMPTY) {
+                    continue;
+                }
+                int to = hash(keys[from]);
+                while (m_keys[to] != EMPTY) {
+                    to = (to + 1) & (capacity - 1);
+                }
+                m_keys[to] = keys[from];
+                copy(values, from, to);
+            }
+        }
+    }
+
+    /**
+     * The forwarding table of one bridge: MAC address to bridge port.
+     */
+    private static class MacPortTable extends MacHashTable {
+        int[] m_ports;
+
+        MacPortTable(final int capacity) {
+            super(capacity);
+            allocate(capacity);
+        }
+
+        int get(final long key) {
+            final int slot = find(key);
+            return slot < 0 ? NO_PORT : m_ports[slot];
+        }
+
+        /**
+         * @return the previous port of the address, or NO_PORT if it is new
+         */
+        int put(final long key, final int port) {
+            final int slot = claim(key);
+            final int previous = m_ports[slot];
+            m_ports[slot] = port;
+            return previous;
+        }
+
+        @Override
+        void allocate(final int capacity) {
+            m_ports = new int[capacity];
+            Arrays.fill(m_ports, NO_PORT);
+        }
+
+        @Override
+        void move(final int from, final int to) {
+            m_ports[to] = m_ports[from];
+        }
+
+        @Override
+        void clear(final int slot) {
+            m_ports[slot] = NO_PORT;
+        }
+
+        @Override
+        Object values() {
+            return m_ports;
+        }
+
+        @Override
+        void copy(final Object values, final int from, final int to) {
+            m_ports[to] = ((int[])values)[from];
+        }
+    }
+
+    /**
+     * MAC address to the bridges that have learned it.
+     */
+    private static class MacBridgeIndex extends MacHashTable {
+        int[][] m_bridges;
+
+        MacBridgeIndex(final int capacity) {
+            super(capacity);
+            allocate(capacity);
+        }
+
+        int[] get(final long key) {
+            final int slot = find(key);
+            return slot < 0 ? null : m_bridges[slot];
+        }
+
+        void add(final long key, final int nodeId) {
+            final int slot = claim(key);
+            final int[] bridges = m_bridges[slot];
+            if (bridges == null) {
+                m_bridges[slot] = new int[] { nodeId };
+                return;
+            }
+            for (final int bridge : bridges) {
+                if (bridge == nodeId) {
+                    return;
+                }
+            }
+            final int[] grown = Arrays.copyOf(bridges, bridges.length + 1);
+            grown[bridges.length] = nodeId;
+            m_bridges[slot] = grown;
+        }
+
+        void remove(final long key, final int nodeId) {
+            final int slot = find(key);
+            if (slot < 0) {
+                return;
+            }
+            final int[] bridges = m_bridges[slot];
+            for (int i = 0; i < bridges.length; i++) {
+                if (bridges[i] != nodeId) {
+                    continue;
+                }
+                if (bridges.length == 1) {
+                    free(slot);
+                } else {
+                    final int[] shrunk = new int[bridges.length - 1];
+                    System.arraycopy(bridges, 0, shrunk, 0, i);
+                    System.arraycopy(bridges, i + 1, shrunk, i, bridges.length - i - 1);
+                    m_bridges[slot] = shrunk;
+                }
+                return;
+            }
+        }
+
+        @Override
+        void allocate(final int capacity) {
+            m_bridges = new int[capacity][];
+        }
+
+        @Override
+        void move(final int from, final int to) {
+            m_bridges[to] = m_bridges[from];
+        }
+
+        @Override
+        void clear(final int slot) {
+            m_bridges[slot] = null;
+        }
+
+        @Override
+        Object values() {
+            return m_bridges;
+        }
+
+        @Override
+        void copy(final Object values, final int from, final int to) {
+            m_bridges[to] = ((int[][])values)[from];
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.opennms.core.criteria.Alias;
@@ -77,7 +78,10 @@ import org.opennms.netmgt.model.topology.BridgeTopology.BridgeTopologyLink;
 import org.opennms.netmgt.model.topology.LinkableSnmpNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		
 //	private final static Logger LOG = LoggerFactory.getLogger(EnhancedLinkdServiceImpl.class);
@@ -117,6 +121,8 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 
 	volatile Map<Integer,Map<Integer,Integer>> m_nodebridgeportifindex = new HashMap<Integer, Map<Integer,Integer>>();
 
+	private volatile BridgeForwardingTableStore m_bftStore;
+
 	private void addBridgePortIfIndexEntry(Integer nodeid,Integer bridgeport, Integer ifindex) {
 		Map<Integer,Integer>bridgeportifindex = new HashMap<Integer, Integer>();
 		if (m_nodebridgeportifindex.containsKey(nodeid))
@@ -182,6 +188,13 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		reconcileOspf(nodeId, now);
 		reconcileIpNetToMedia(nodeId, now);
 		reconcileBridge(nodeId, now);
+		removeBridge(nodeId);
+	}
+
+	private synchronized void removeBridge(int nodeId) {
+		// the database cascades the delete of the node to its links
+		if (m_bftStore != null)
+			m_bftStore.removeBridge(nodeId);
 	}
 
 	@Override
@@ -566,7 +579,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 
 	@Override
 	public void store(int nodeId, BridgeMacLink link) {
-		if (link == null)
+		if (link == null || !BridgeForwardingTableStore.isMacAddress(link.getMacAddress()))
 			return;
 		addBridgeForwardingTableEntry(nodeId, link.getBridgePort(), link.getMacAddress());
 		if (link.getBridgePortIfIndex() != null)
@@ -589,50 +602,40 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		for (Set<String> portmacs: bft.values()) 
 			macs.addAll(portmacs);
 		
-		Map<Integer,Map<Integer,Set<String>>> savedtopology = new HashMap<Integer, Map<Integer,Set<String>>>();
-		for (BridgeMacLink maclink: m_bridgeMacLinkDao.findAll()) {
-			if (maclink.getNode().getId().intValue() == nodeId)
-				continue;
-			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
-			if (savedtopology.containsKey(maclink.getNode().getId())) 
-				nodesavedtopology = savedtopology.get(maclink.getNode().getId());
-			Set<String> macsonport = new HashSet<String>();
-			if (nodesavedtopology.containsKey(maclink.getBridgePort()))
-				macsonport = nodesavedtopology.get(maclink.getBridgePort());
-			macsonport.add(maclink.getMacAddress());
-			nodesavedtopology.put(maclink.getBridgePort(), macsonport);
-			savedtopology.put(maclink.getNode().getId(), nodesavedtopology);
-		}
-		
+		BridgeForwardingTableStore store = getBridgeForwardingTableStore();
+
 		BridgeTopology topology = new BridgeTopology();
 		Set<Integer> targets = new HashSet<Integer>();
 		targets.add(nodeId);
+		Set<Integer> neighbours = new HashSet<Integer>();
 		for (BridgeBridgeLink bblink: m_bridgeBridgeLinkDao.findByNodeId(nodeId)) {
 			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
 			nodesavedtopology.put(bblink.getDesignatedPort(), new HashSet<String>());
 			topology.addTopology(bblink.getDesignatedNode().getId(), nodesavedtopology, targets);
+			neighbours.add(bblink.getDesignatedNode().getId());
 		}
 		for (BridgeBridgeLink bblink: m_bridgeBridgeLinkDao.findByDesignatedNodeId(nodeId)) {
 			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
 			nodesavedtopology.put(bblink.getBridgePort(), new HashSet<String>());
 			topology.addTopology(bblink.getNode().getId(), nodesavedtopology, targets);
+			neighbours.add(bblink.getNode().getId());
 		}
-		for (Integer savednode: savedtopology.keySet()) {
-			topology.parseBFT(savednode, savedtopology.get(savednode));
+
+		// only the bridges sharing mac addresses with this one can see their
+		// saved topology change, the rest of the network is left alone
+		Set<Integer> domain = store.getBroadcastDomain(nodeId, macs, neighbours);
+		for (Integer savednode: domain) {
+			topology.parseBFT(savednode, store.getForwardingTable(savednode));
 		}
 		topology.parseBFT(nodeId, bft);
 
-		// now check the topology with the old one
-		// delete the not found links
+		Map<Integer,OnmsNode> nodes = new HashMap<Integer, OnmsNode>();
+		Map<Integer,Map<Integer,Set<String>>> maclinks = new HashMap<Integer, Map<Integer,Set<String>>>();
 		for (BridgeTopologyLink btl: topology.getTopology()) {
-			saveLink(btl, nodeId, bridgeportifindex);
+			saveLink(btl, nodeId, bridgeportifindex, nodes, maclinks);
 		}
-		
-		for (Integer curNodeId: savedtopology.keySet()) {
-			m_bridgeMacLinkDao.deleteByNodeIdOlderThen(curNodeId, now);
-		}
-		m_bridgeMacLinkDao.deleteByNodeIdOlderThen(nodeId, now);
-		m_bridgeMacLinkDao.flush();
+		domain.add(nodeId);
+		saveBridgeMacLinks(nodeId, now, domain, maclinks, nodes, bridgeportifindex);
 
 		// What about bridge bridge topology
 		// The changes could only be regarding the nodeId
@@ -641,19 +644,62 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		m_bridgeBridgeLinkDao.flush();
 
 	}
-	
-	protected void saveLink(final BridgeTopologyLink bridgelink, Integer nodeId, Map<Integer,Integer> bridgeportIfIndex) {
+
+	/**
+	 * Returns the in memory copy of the bridgemaclink table, loading it the
+	 * first time it is needed.
+	 */
+	private BridgeForwardingTableStore getBridgeForwardingTableStore() {
+		if (m_bftStore == null) {
+			BridgeForwardingTableStore store = new BridgeForwardingTableStore();
+			for (BridgeMacLink maclink: m_bridgeMacLinkDao.findAll()) {
+				store.put(maclink.getNode().getId(), maclink.getBridgePort(), maclink.getMacAddress());
+			}
+			m_bftStore = store;
+		}
+		return m_bftStore;
+	}
+
+	private OnmsNode getNode(Map<Integer,OnmsNode> nodes, Integer nodeId) {
+		if (!nodes.containsKey(nodeId))
+			nodes.put(nodeId, m_nodeDao.get(nodeId));
+		return nodes.get(nodeId);
+	}
+
+	private static void addMacLink(Map<Integer,Map<Integer,Set<String>>> maclinks, Integer nodeId, Integer bridgePort, String mac) {
+		Map<Integer,Set<String>> bft = maclinks.get(nodeId);
+		if (bft == null) {
+			bft = new HashMap<Integer, Set<String>>();
+			maclinks.put(nodeId, bft);
+		}
+		addMac(bft, bridgePort, mac);
+	}
+
+	private static void addMac(Map<Integer,Set<String>> bft, Integer bridgePort, String mac) {
+		Set<String> macs = bft.get(bridgePort);
+		if (macs == null) {
+			macs = new HashSet<String>();
+			bft.put(bridgePort, macs);
+		}
+		macs.add(mac);
+	}
+
+	/**
+	 * Saves a bridge to bridge link right away and collects the bridge to
+	 * mac links into maclinks, to be written by saveBridgeMacLinks.
+	 */
+	protected void saveLink(final BridgeTopologyLink bridgelink, Integer nodeId, Map<Integer,Integer> bridgeportIfIndex, Map<Integer,OnmsNode> nodes, Map<Integer,Map<Integer,Set<String>>> maclinks) {
 		if (bridgelink == null)
 			return;
 		if (bridgeportIfIndex == null)
 			return;
 		
-		OnmsNode node = m_nodeDao.get(bridgelink.getBridgeTopologyPort().getNodeid());
+		OnmsNode node = getNode(nodes, bridgelink.getBridgeTopologyPort().getNodeid());
 		if (node == null)
 			return;
 		OnmsNode designatenode = null;
 		if (bridgelink.getDesignateBridgePort() != null) {
-			designatenode = m_nodeDao.get(bridgelink.getDesignateBridgePort().getNodeid());
+			designatenode = getNode(nodes, bridgelink.getDesignateBridgePort().getNodeid());
 		}
 		if (bridgelink.getMacs().isEmpty() && designatenode != null) {
 			BridgeBridgeLink link = new BridgeBridgeLink();
@@ -671,53 +717,75 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			return;
 		} 
 		for (String mac: bridgelink.getMacs()) {
-			BridgeMacLink maclink1 = new BridgeMacLink();
-			maclink1.setNode(node);
-			maclink1.setBridgePort(bridgelink.getBridgeTopologyPort().getBridgePort());
-			if (node.getId().intValue() == nodeId.intValue() && bridgelink.getBridgeTopologyPort() != null && bridgeportIfIndex.containsKey(bridgelink.getBridgeTopologyPort().getBridgePort())) {
-				maclink1.setBridgePortIfIndex(bridgeportIfIndex.get(bridgelink.getBridgeTopologyPort().getBridgePort()));
-			}
-			maclink1.setMacAddress(mac);
-			saveBridgeMacLink(maclink1);
+			addMacLink(maclinks, node.getId(), bridgelink.getBridgeTopologyPort().getBridgePort(), mac);
 			if (designatenode == null)
 				continue;
-			BridgeMacLink maclink2 = new BridgeMacLink();
-			maclink2.setNode(designatenode);
-			maclink2.setBridgePort(bridgelink.getDesignateBridgePort().getBridgePort());
-			if (designatenode.getId().intValue() == nodeId.intValue() && bridgelink.getDesignateBridgePort() != null && bridgeportIfIndex.containsKey(bridgelink.getDesignateBridgePort().getBridgePort())) {
-				maclink2.setBridgePortIfIndex(bridgeportIfIndex.get(bridgelink.getDesignateBridgePort().getBridgePort()));
-			}
-			maclink2.setMacAddress(mac);
-			saveBridgeMacLink(maclink2);
+			addMacLink(maclinks, designatenode.getId(), bridgelink.getDesignateBridgePort().getBridgePort(), mac);
 		}
 	}
 
-	@Transactional
-    protected void saveBridgeMacLink(final BridgeMacLink saveMe) {
-		new UpsertTemplate<BridgeMacLink, BridgeMacLinkDao>(m_transactionManager,m_bridgeMacLinkDao) {
-
-			@Override
-			protected BridgeMacLink query() {
-				return m_dao.getByNodeIdBridgePortMac(saveMe.getNode().getId(),saveMe.getBridgePort(),saveMe.getMacAddress());
-			}
-
-			@Override
-			protected BridgeMacLink doUpdate(BridgeMacLink link) {
-				link.merge(saveMe);
-				m_dao.update(link);
-				m_dao.flush();
-				return link;
-			}
-
-			@Override
-			protected BridgeMacLink doInsert() {
-				saveMe.setBridgeMacLinkLastPollTime(saveMe.getBridgeMacLinkCreateTime());
-				m_dao.saveOrUpdate(saveMe);
-				m_dao.flush();
-				return saveMe;
-			}
-			
-		}.execute();
+	/**
+	 * Writes the difference between the saved bridge to mac links of the
+	 * broadcast domain and the ones just computed in a single transaction:
+	 * new and moved addresses are inserted, vanished ones deleted with one
+	 * statement per bridge port, and the rest only get their last poll time
+	 * refreshed on the polled bridge.
+	 */
+	protected void saveBridgeMacLinks(final Integer nodeId, final Date now, final Set<Integer> domain, final Map<Integer,Map<Integer,Set<String>>> maclinks, final Map<Integer,OnmsNode> nodes, final Map<Integer,Integer> bridgeportIfIndex) {
+		final BridgeForwardingTableStore store = getBridgeForwardingTableStore();
+		try {
+			new TransactionTemplate(m_transactionManager).execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					m_bridgeMacLinkDao.updateLastPollTimeByNodeId(nodeId, now);
+					for (Integer curNodeId: domain) {
+						Map<Integer,Set<String>> saved = store.getForwardingTable(curNodeId);
+						Map<Integer,Set<String>> current = maclinks.get(curNodeId);
+						if (current == null)
+							current = new HashMap<Integer, Set<String>>();
+						Set<String> found = new HashSet<String>();
+						Map<Integer,Set<String>> removed = new HashMap<Integer, Set<String>>();
+						for (Entry<Integer,Set<String>> entry: current.entrySet()) {
+							for (String mac: entry.getValue()) {
+								// an address is on one port only, the first one wins
+								if (!found.add(mac))
+									continue;
+								Integer savedport = store.getBridgePort(curNodeId, mac);
+								if (savedport != null && savedport.intValue() == entry.getKey().intValue())
+									continue;
+								if (savedport != null)
+									addMac(removed, savedport, mac);
+								BridgeMacLink maclink = new BridgeMacLink();
+								maclink.setNode(getNode(nodes, curNodeId));
+								maclink.setBridgePort(entry.getKey());
+								if (curNodeId.intValue() == nodeId.intValue() && bridgeportIfIndex != null && bridgeportIfIndex.containsKey(entry.getKey()))
+									maclink.setBridgePortIfIndex(bridgeportIfIndex.get(entry.getKey()));
+								maclink.setMacAddress(mac);
+								maclink.setBridgeMacLinkLastPollTime(maclink.getBridgeMacLinkCreateTime());
+								m_bridgeMacLinkDao.save(maclink);
+							}
+						}
+						for (Entry<Integer,Set<String>> entry: saved.entrySet()) {
+							for (String mac: entry.getValue()) {
+								if (!found.contains(mac))
+									addMac(removed, entry.getKey(), mac);
+							}
+						}
+						for (Entry<Integer,Set<String>> entry: removed.entrySet()) {
+							m_bridgeMacLinkDao.deleteByNodeIdBridgePortMacs(curNodeId, entry.getKey(), entry.getValue());
+						}
+					}
+					m_bridgeMacLinkDao.flush();
+				}
+			});
+		} catch (RuntimeException e) {
+			// the store no longer matches the database: reload it next time
+			m_bftStore = null;
+			throw e;
+		}
+		for (Integer curNodeId: domain) {
+			store.setForwardingTable(curNodeId.intValue(), maclinks.get(curNodeId));
+		}
 	}
 
 	
@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link QueryManager} that writes outages in the background.
+ *
+ * Opening, resolving, closing and reparenting outages are queued and written
+ * by a single thread, in the order they were requested, so the poller never
+ * waits on the database when a router fails and hundreds of services go down
+ * at once.  The writer commits up to
+ * org.opennms.netmgt.poller.outageBatchSize (100 by default) queued writes in
+ * one transaction.  If a batch fails it is retried one write at a time so a
+ * single bad write does not lose the others.
+ *
+ * Everything else is passed straight to the delegate, after the queued writes
+ * are done for the calls that update the services' state.
+ */
+public class BatchingQueryManager implements QueryManager, InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingQueryManager.class);
+
+    private static final int BATCH_SIZE = Integer.getInteger("org.opennms.netmgt.poller.outageBatchSize", 100);
+
+    private QueryManager m_delegate;
+
+    private TransactionTemplate m_transactionTemplate;
+
+    private final BlockingQueue<Runnable> m_queue = new LinkedBlockingQueue<Runnable>();
+
+    private final Object m_lock = new Object();
+
+    private final AtomicLong m_queued = new AtomicLong(0);
+
+    // guarded by m_lock
+    private long m_written = 0;
+
+    private final AtomicLong m_batches = new AtomicLong(0);
+
+    private Thread m_writer;
+
+    private volatile boolean m_running = false;
+
+    /**
+     * <p>setDelegate</p>
+     *
+     * @param delegate the query manager that does the actual writes
+     */
+    public void setDelegate(final QueryManager delegate) {
+        m_delegate = delegate;
+    }
+
+    /**
+     * <p>setTransactionTemplate</p>
+     *
+     * @param transactionTemplate a {@link org.springframework.transaction.support.TransactionTemplate} object.
+     */
+    public void setTransactionTemplate(final TransactionTemplate transactionTemplate) {
+        m_transactionTemplate = transactionTemplate;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(m_delegate, "delegate must be set");
+        Assert.notNull(m_transactionTemplate, "transactionTemplate must be set");
+
+        m_running = true;
+        m_writer = new LogPreservingThreadFactory(getClass().getSimpleName(), 1).newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeOutages();
+            }
+        });
+        m_writer.setDaemon(true);
+        m_writer.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws InterruptedException {
+        flush();
+        m_running = false;
+        if (m_writer != null) {
+            m_writer.interrupt();
+            m_writer.join();
+        }
+    }
+
+    /**
+     * Waits until every write queued so far has been done.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        final long queued = m_queued.get();
+        synchronized (m_lock) {
+            while (m_written < queued && m_running) {
+                m_lock.wait(1000);
+            }
+        }
+    }
+
+    /**
+     * <p>getPendingWrites</p>
+     *
+     * @return the number of queued writes that have not been done yet
+     */
+    public int getPendingWrites() {
+        return m_queue.size();
+    }
+
+    /**
+     * <p>getBatchCount</p>
+     *
+     * @return the number of batches written so far
+     */
+    public long getBatchCount() {
+        return m_batches.get();
+    }
+
+    private void enqueue(final Runnable write) {
+        if (!m_running) {
+            write.run();
+            return;
+        }
+        m_queued.incrementAndGet();
+        m_queue.add(write);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeOutages() {
+        final List<Runnable> batch = new ArrayList<Runnable>(BATCH_SIZE);
+        while (m_running || !m_queue.isEmpty()) {
+            try {
+                final Runnable first = m_queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                m_queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+            } catch (final InterruptedException e) {
+                if (m_running) {
+                    LOG.warn("Outage writer interrupted", e);
+                }
+            } finally {
+                if (!batch.isEmpty()) {
+                    synchronized (m_lock) {
+                        m_written += batch.size();
+                        m_lock.notifyAll();
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void write(final List<Runnable> batch) {
+        try {
+            m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    for (final Runnable write : batch) {
+                        write.run();
+                    }
+                }
+            });
+            m_batches.incrementAndGet();
+            LOG.debug("Wrote a batch of {} outage updates", batch.size());
+        } catch (final Throwable e) {
+            LOG.warn("Failed to write a batch of {} outage updates, retrying them one at a time", batch.size(), e);
+            for (final Runnable write : batch) {
+                try {
+                    m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                            write.run();
+                        }
+                    });
+                } catch (final Throwable t) {
+                    LOG.error("Failed to write outage update {}", write, t);
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getNodeLabel(final int nodeId) throws SQLException {
+        return m_delegate.getNodeLabel(nodeId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<String[]> getNodeServices(final int nodeId) {
+        return m_delegate.getNodeServices(nodeId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void openOutage(final String outageIdSQL, final int nodeId, final String ipAddr, final String svcName, final int dbId, final Date date) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                m_delegate.openOutage(outageIdSQL, nodeId, ipAddr, svcName, dbId, date);
+            }
+
+            @Override
+            public String toString() {
+                return "openOutage " + nodeId + ":" + ipAddr + ":" + svcName;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resolveOutage(final int nodeId, final String ipAddr, final String svcName, final int regainedEventId, final Date time) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                m_delegate.resolveOutage(nodeId, ipAddr, svcName, regainedEventId, time);
+            }
+
+            @Override
+            public String toString() {
+                return "resolveOutage " + nodeId + ":" + ipAddr + ":" + svcName;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reparentOutages(final String ipAddr, final int oldNodeId, final int newNodeId) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                m_delegate.reparentOutages(ipAddr, oldNodeId, newNodeId);
+            }
+
+            @Override
+            public String toString() {
+                return "reparentOutages " + oldNodeId + ":" + ipAddr + " to " + newNodeId;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closeOutagesForNode(final Date closeDate, final int eventId, final int nodeId) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                m_delegate.closeOutagesForNode(closeDate, eventId, nodeId);
+            }
+
+            @Override
+            public String toString() {
+                return "closeOutagesForNode " + nodeId;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closeOutagesForInterface(final Date closeDate, final int eventId, final int nodeId, final String ipAddr) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                m_delegate.closeOutagesForInterface(closeDate, eventId, nodeId, ipAddr);
+            }
+
+            @Override
+            public String toString() {
+                return "closeOutagesForInterface " + nodeId + ":" + ipAddr;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closeOutagesForService(final Date closeDate, final int eventId, final int nodeId, final String ipAddr, final String serviceName) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                m_delegate.closeOutagesForService(closeDate, eventId, nodeId, ipAddr, serviceName);
+            }
+
+            @Override
+            public String toString() {
+                return "closeOutagesForService " + nodeId + ":" + ipAddr + ":" + serviceName;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closeOutagesForUnmanagedServices() {
+        flushQuietly();
+        m_delegate.closeOutagesForUnmanagedServices();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateServiceStatus(final int nodeId, final String ipAddr, final String serviceName, final String status) {
+        flushQuietly();
+        m_delegate.updateServiceStatus(nodeId, ipAddr, serviceName, status);
+    }
+}
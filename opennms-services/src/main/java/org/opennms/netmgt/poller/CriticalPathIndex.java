@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.core.db.DataSourceFactory;
+import org.opennms.core.utils.Querier;
+import org.opennms.netmgt.config.OpennmsServerConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The critical path of every node, loaded from the pathoutage table in one
+ * query instead of once for every nodeDown.
+ *
+ * The index is reloaded when it is older than the refresh interval, which
+ * defaults to 5 minutes and can be changed with the
+ * org.opennms.netmgt.poller.criticalPathRefreshInterval system property.
+ */
+public class CriticalPathIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(CriticalPathIndex.class);
+
+    private static final String GET_CRITICAL_PATHS = "SELECT nodeid, criticalpathip, criticalpathservicename FROM pathoutage";
+
+    private static final long REFRESH_INTERVAL = Long.getLong("org.opennms.netmgt.poller.criticalPathRefreshInterval", 5L * 60L * 1000L);
+
+    private volatile Map<Integer, String[]> m_paths;
+    private volatile long m_loadedAt = 0;
+
+    /**
+     * Returns the critical path of a node, or the default critical path if
+     * none is configured for it, the same way
+     * {@link PathOutageManagerJdbcImpl#getCriticalPath(int)} does.
+     *
+     * @param nodeId a int.
+     * @return the critical path IP address and service name
+     */
+    public String[] getCriticalPath(final int nodeId) {
+        final String[] path = getPaths().get(nodeId);
+        final String[] cpath = path == null ? new String[2] : new String[] { path[0], path[1] };
+        if (cpath[0] == null || "".equals(cpath[0].trim())) {
+            cpath[0] = OpennmsServerConfigFactory.getInstance().getDefaultCriticalPathIp();
+            cpath[1] = "ICMP";
+        } else if (cpath[1] == null || "".equals(cpath[1].trim())) {
+            cpath[1] = "ICMP";
+        }
+        return cpath;
+    }
+
+    /**
+     * Forces the index to be reloaded on next use.
+     */
+    public void invalidate() {
+        m_loadedAt = 0;
+    }
+
+    private Map<Integer, String[]> getPaths() {
+        Map<Integer, String[]> paths = m_paths;
+        if (paths == null || System.currentTimeMillis() - m_loadedAt > REFRESH_INTERVAL) {
+            synchronized (this) {
+                if (m_paths == null || System.currentTimeMillis() - m_loadedAt > REFRESH_INTERVAL) {
+                    m_paths = load();
+                    m_loadedAt = System.currentTimeMillis();
+                }
+                paths = m_paths;
+            }
+        }
+        return paths;
+    }
+
+    private static Map<Integer, String[]> load() {
+        final Map<Integer, String[]> paths = new HashMap<Integer, String[]>();
+        final Querier querier = new Querier(DataSourceFactory.getInstance(), GET_CRITICAL_PATHS) {
+            @Override
+            public void processRow(final ResultSet rs) throws SQLException {
+                paths.put(rs.getInt(1), new String[] { rs.getString(2), rs.getString(3) });
+            }
+        };
+        querier.execute();
+        LOG.debug("Loaded {} critical paths", paths.size());
+        return paths;
+    }
+}
@@ -32,11 +32,13 @@ import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.capsd.plugins.IcmpPlugin;
@@ -87,7 +89,40 @@ public class DefaultPollContext implements PollContext, EventListener {
     private volatile String m_name;
     private volatile String m_localHostName;
     private volatile boolean m_listenerAdded = false;
-    private final List<PendingPollEvent> m_pendingPollEvents = new LinkedList<PendingPollEvent>();
+
+    // how often, in milliseconds, to look for pending poll events that have timed out
+    private static final long PENDING_SWEEP_INTERVAL = Long.getLong("org.opennms.netmgt.poller.pendingEventSweepInterval", 60L * 1000L);
+
+    // how long, in milliseconds, to reuse the result of a critical path test
+    private static final long CRITICAL_PATH_TEST_TTL = Long.getLong("org.opennms.netmgt.poller.criticalPathTestTtl", 30L * 1000L);
+
+    /**
+     * The poll events waiting for eventd to store their event, by event.
+     * Events do not implement equals so they are matched by identity, as
+     * before.
+     */
+    private final Map<Event, List<PendingPollEvent>> m_pendingPollEvents = new IdentityHashMap<Event, List<PendingPollEvent>>();
+    private int m_pendingPollEventCount = 0;
+    private long m_lastPendingSweep = System.currentTimeMillis();
+
+    private final CriticalPathIndex m_criticalPathIndex = new CriticalPathIndex();
+
+    /**
+     * Recent critical path test results, keyed by "ipAddr service", so a
+     * router failure that takes down hundreds of nodes behind the same
+     * critical path only pings it once.
+     */
+    private final Map<String, CriticalPathResult> m_criticalPathResults = new ConcurrentHashMap<String, CriticalPathResult>();
+
+    private static class CriticalPathResult {
+        final boolean m_up;
+        final long m_expires;
+
+        CriticalPathResult(final boolean up, final long expires) {
+            m_up = up;
+            m_expires = expires;
+        }
+    }
 
     /**
      * <p>getEventManager</p>
@@ -231,7 +266,13 @@ public class DefaultPollContext implements PollContext, EventListener {
         }
         PendingPollEvent pollEvent = new PendingPollEvent(event);
         synchronized (m_pendingPollEvents) {
-            m_pendingPollEvents.add(pollEvent);
+            List<PendingPollEvent> pollEvents = m_pendingPollEvents.get(event);
+            if (pollEvents == null) {
+                pollEvents = new ArrayList<PendingPollEvent>(1);
+                m_pendingPollEvents.put(event, pollEvents);
+            }
+            pollEvents.add(pollEvent);
+            m_pendingPollEventCount++;
         }
         //log().info("Sending "+event.getUei()+" for element "+event.getNodeid()+":"+event.getInterface()+":"+event.getService(), new Exception("StackTrace"));
         getEventManager().sendNow(event);
@@ -258,10 +299,10 @@ public class DefaultPollContext implements PollContext, EventListener {
         
         if (uei.equals(EventConstants.NODE_DOWN_EVENT_UEI)
                 && this.getPollerConfig().isPathOutageEnabled()) {
-            String[] criticalPath = PathOutageManagerJdbcImpl.getInstance().getCriticalPath(nodeId);
+            String[] criticalPath = m_criticalPathIndex.getCriticalPath(nodeId);
             
             if (criticalPath[0] != null && !"".equals(criticalPath[0].trim())) {
-                if (!this.testCriticalPath(criticalPath)) {
+                if (!this.testCriticalPathCached(criticalPath)) {
                     LOG.debug("Critical path test failed for node {}", nodeId);
                     
                     // add eventReason, criticalPathIp, criticalPathService
@@ -381,29 +422,61 @@ public class DefaultPollContext implements PollContext, EventListener {
     public void onEvent(final Event e) {
         LOG.debug("onEvent: Waiting to process event: {} uei: {}, dbid: {}", e, e.getUei(), e.getDbid());
         synchronized (m_pendingPollEvents) {
-            LOG.debug("onEvent: Received event: {} uei: {}, dbid: {}, pendingEventCount: {}", e, e.getUei(), e.getDbid(), m_pendingPollEvents.size());
-            for (final Iterator<PendingPollEvent> it = m_pendingPollEvents.iterator(); it.hasNext();) {
-                final PendingPollEvent pollEvent = it.next();
-                LOG.trace("onEvent: comparing events to poll event: {}", pollEvent);
-                if (e.equals(pollEvent.getEvent())) {
+            LOG.debug("onEvent: Received event: {} uei: {}, dbid: {}, pendingEventCount: {}", e, e.getUei(), e.getDbid(), m_pendingPollEventCount);
+            final List<PendingPollEvent> pollEvents = m_pendingPollEvents.remove(e);
+            if (pollEvents != null) {
+                m_pendingPollEventCount -= pollEvents.size();
+                for (final PendingPollEvent pollEvent : pollEvents) {
                     LOG.trace("onEvent: completing pollevent: {}", pollEvent);
                     pollEvent.complete(e);
+                    pollEvent.processPending();
+                    LOG.trace("onEvent: processing of pollEvent completed.: {}", pollEvent);
                 }
             }
-            
-            for (Iterator<PendingPollEvent> it = m_pendingPollEvents.iterator(); it.hasNext(); ) {
-                PendingPollEvent pollEvent = it.next();
+
+            final long now = System.currentTimeMillis();
+            if (now - m_lastPendingSweep >= PENDING_SWEEP_INTERVAL) {
+                m_lastPendingSweep = now;
+                processTimedOutPollEvents();
+            }
+        }
+        LOG.debug("onEvent: Finished processing event: {} uei: {}, dbid: {}", e, e.getUei(), e.getDbid());
+        
+    }
+
+    /**
+     * Processes the poll events whose event never came back from eventd in
+     * time.  Must be called with the pending poll events locked.
+     */
+    private void processTimedOutPollEvents() {
+        for (final Iterator<List<PendingPollEvent>> it = m_pendingPollEvents.values().iterator(); it.hasNext(); ) {
+            final List<PendingPollEvent> pollEvents = it.next();
+            for (final Iterator<PendingPollEvent> pit = pollEvents.iterator(); pit.hasNext(); ) {
+                final PendingPollEvent pollEvent = pit.next();
                 LOG.trace("onEvent: determining if pollEvent is pending: {}", pollEvent);
                 if (pollEvent.isPending()) continue;
-                
+
                 LOG.trace("onEvent: processing pending pollEvent...: {}", pollEvent);
                 pollEvent.processPending();
+                pit.remove();
+                m_pendingPollEventCount--;
+            }
+            if (pollEvents.isEmpty()) {
                 it.remove();
-                LOG.trace("onEvent: processing of pollEvent completed.: {}", pollEvent);
             }
         }
-        LOG.debug("onEvent: Finished processing event: {} uei: {}, dbid: {}", e, e.getUei(), e.getDbid());
-        
+    }
+
+    private boolean testCriticalPathCached(final String[] criticalPath) {
+        final String key = criticalPath[0] + ' ' + criticalPath[1];
+        final long now = System.currentTimeMillis();
+        final CriticalPathResult cached = m_criticalPathResults.get(key);
+        if (cached != null && cached.m_expires > now) {
+            return cached.m_up;
+        }
+        final boolean up = testCriticalPath(criticalPath);
+        m_criticalPathResults.put(key, new CriticalPathResult(up, now + CRITICAL_PATH_TEST_TTL));
+        return up;
     }
 
     boolean testCriticalPath(String[] criticalPath) {
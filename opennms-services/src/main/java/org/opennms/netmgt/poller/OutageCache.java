@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The ids of the outages Pollerd has opened and not resolved yet, by
+ * service.
+ *
+ * The cache is split into stripes by node id, each with its own lock, so the
+ * many outages opened at once when a router fails do not all contend on one
+ * lock.  It only ever holds outages this poller opened; a miss does not mean
+ * there is no open outage for the service.
+ */
+public class OutageCache {
+
+    private static final int STRIPES = 64;
+
+    // node id -> "ipAddr svcName" -> outage id
+    private final Map<Integer, Map<String, Integer>>[] m_stripes;
+
+    /**
+     * <p>Constructor for OutageCache.</p>
+     */
+    @SuppressWarnings("unchecked")
+    public OutageCache() {
+        m_stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            m_stripes[i] = new HashMap<Integer, Map<String, Integer>>();
+        }
+    }
+
+    /**
+     * <p>put</p>
+     *
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param svcName a {@link java.lang.String} object.
+     * @param outageId the id of the open outage
+     */
+    public void put(final int nodeId, final String ipAddr, final String svcName, final Integer outageId) {
+        final Map<Integer, Map<String, Integer>> stripe = stripe(nodeId);
+        synchronized (stripe) {
+            Map<String, Integer> services = stripe.get(nodeId);
+            if (services == null) {
+                services = new HashMap<String, Integer>();
+                stripe.put(nodeId, services);
+            }
+            services.put(key(ipAddr, svcName), outageId);
+        }
+    }
+
+    /**
+     * <p>remove</p>
+     *
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param svcName a {@link java.lang.String} object.
+     * @return the id of the open outage, or null if it is not cached
+     */
+    public Integer remove(final int nodeId, final String ipAddr, final String svcName) {
+        final Map<Integer, Map<String, Integer>> stripe = stripe(nodeId);
+        synchronized (stripe) {
+            final Map<String, Integer> services = stripe.get(nodeId);
+            if (services == null) {
+                return null;
+            }
+            final Integer outageId = services.remove(key(ipAddr, svcName));
+            if (services.isEmpty()) {
+                stripe.remove(nodeId);
+            }
+            return outageId;
+        }
+    }
+
+    /**
+     * Removes the outages of all services on an interface.
+     *
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     */
+    public void removeInterface(final int nodeId, final String ipAddr) {
+        final String prefix = ipAddr + ' ';
+        final Map<Integer, Map<String, Integer>> stripe = stripe(nodeId);
+        synchronized (stripe) {
+            final Map<String, Integer> services = stripe.get(nodeId);
+            if (services == null) {
+                return;
+            }
+            for (final Iterator<String> it = services.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+            if (services.isEmpty()) {
+                stripe.remove(nodeId);
+            }
+        }
+    }
+
+    /**
+     * Removes the outages of all services on a node.
+     *
+     * @param nodeId a int.
+     */
+    public void removeNode(final int nodeId) {
+        final Map<Integer, Map<String, Integer>> stripe = stripe(nodeId);
+        synchronized (stripe) {
+            stripe.remove(nodeId);
+        }
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of cached outages
+     */
+    public int size() {
+        int size = 0;
+        for (final Map<Integer, Map<String, Integer>> stripe : m_stripes) {
+            synchronized (stripe) {
+                for (final Map<String, Integer> services : stripe.values()) {
+                    size += services.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    private Map<Integer, Map<String, Integer>> stripe(final int nodeId) {
+        return m_stripes[(nodeId & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    private static String key(final String ipAddr, final String svcName) {
+        return ipAddr + ' ' + svcName;
+    }
+}
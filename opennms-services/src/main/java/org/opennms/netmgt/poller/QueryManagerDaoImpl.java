@@ -85,6 +85,12 @@ public class QueryManagerDaoImpl implements QueryManager {
     @Autowired
     private MonitoredServiceDao m_monitoredServiceDao;
 
+    /**
+     * The outages opened by this poller, so they can be resolved by id
+     * instead of searching the outages table for them.
+     */
+    private final OutageCache m_outageCache = new OutageCache();
+
     /** {@inheritDoc} */
     @Override
     public String getNodeLabel(int nodeId) {
@@ -115,22 +121,36 @@ public class QueryManagerDaoImpl implements QueryManager {
         OnmsMonitoredService service = m_monitoredServiceDao.get(nodeId, InetAddressUtils.addr(ipAddr), svcName);
         OnmsOutage outage = new OnmsOutage(new Timestamp(time.getTime()), event, service);
         m_outageDao.saveOrUpdate(outage);
+        if (outage.getId() != null) {
+            m_outageCache.put(nodeId, ipAddr, svcName, outage.getId());
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void resolveOutage(int nodeId, String ipAddr, String svcName, int regainedEventId, Date time) {
         LOG.info("resolving outage for {}:{}:{} with resolution {}:{}", nodeId, ipAddr, svcName, regainedEventId, time);
-        int serviceId = m_serviceTypeDao.findByName(svcName).getId();
-        
         OnmsEvent event = m_eventDao.get(regainedEventId);
-        OnmsMonitoredService service = m_monitoredServiceDao.get(nodeId, InetAddressUtils.addr(ipAddr), serviceId);
 
         // Update the outage
-        OnmsOutage outage = m_outageDao.currentOutageForService(service);
+        OnmsOutage outage = null;
+        final Integer outageId = m_outageCache.remove(nodeId, ipAddr, svcName);
+        if (outageId != null) {
+            outage = m_outageDao.get(outageId);
+            if (outage != null && outage.getIfRegainedService() != null) {
+                // closed behind our back, look for a newer one
+                outage = null;
+            }
+        }
         if (outage == null) {
-            LOG.warn("Cannot find outage for service: {}", service);
-        } else {
+            int serviceId = m_serviceTypeDao.findByName(svcName).getId();
+            OnmsMonitoredService service = m_monitoredServiceDao.get(nodeId, InetAddressUtils.addr(ipAddr), serviceId);
+            outage = m_outageDao.currentOutageForService(service);
+            if (outage == null) {
+                LOG.warn("Cannot find outage for service: {}", service);
+            }
+        }
+        if (outage != null) {
             outage.setServiceRegainedEvent(event);
             outage.setIfRegainedService(new Timestamp(time.getTime()));
             m_outageDao.saveOrUpdate(outage);
@@ -142,6 +162,7 @@ public class QueryManagerDaoImpl implements QueryManager {
     public void reparentOutages(String ipAddr, int oldNodeId, int newNodeId) {
         try {
             LOG.info("reparenting outages for {}:{} to new node {}", oldNodeId, ipAddr, newNodeId);
+            m_outageCache.removeInterface(oldNodeId, ipAddr);
 
             Criteria criteria = new Criteria(OnmsOutage.class);
             criteria.setAliases(Arrays.asList(new Alias[] {
@@ -233,6 +254,7 @@ public class QueryManagerDaoImpl implements QueryManager {
      */
     @Override
     public void closeOutagesForNode(Date closeDate, int eventId, int nodeId) {
+        m_outageCache.removeNode(nodeId);
         Criteria criteria = new Criteria(OnmsOutage.class);
         criteria.setAliases(Arrays.asList(new Alias[] {
             new Alias("monitoredService.ipInterface", "ipInterface", JoinType.LEFT_JOIN),
@@ -259,6 +281,7 @@ public class QueryManagerDaoImpl implements QueryManager {
      */
     @Override
     public void closeOutagesForInterface(Date closeDate, int eventId, int nodeId, String ipAddr) {
+        m_outageCache.removeInterface(nodeId, ipAddr);
         Criteria criteria = new Criteria(OnmsOutage.class);
         criteria.setAliases(Arrays.asList(new Alias[] {
             new Alias("monitoredService.ipInterface", "ipInterface", JoinType.LEFT_JOIN),
@@ -287,6 +310,7 @@ public class QueryManagerDaoImpl implements QueryManager {
      */
     @Override
     public void closeOutagesForService(Date closeDate, int eventId, int nodeId, String ipAddr, String serviceName) {
+        m_outageCache.remove(nodeId, ipAddr, serviceName);
         Criteria criteria = new Criteria(OnmsOutage.class);
         criteria.setAliases(Arrays.asList(new Alias[] {
             new Alias("monitoredService.ipInterface", "ipInterface", JoinType.LEFT_JOIN),
@@ -30,8 +30,10 @@ package org.opennms.netmgt.poller.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
 
+import org.opennms.core.web.HttpConnectionPool;
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.protocols.jmx.connectors.JMXConnectionPool;
 
 /**
  * <p>Pollerd class.</p>
@@ -121,6 +123,35 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getJmxConnectCount() {
+        return JMXConnectionPool.getInstance().getConnectCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getJmxConnectionReuseCount() {
+        return JMXConnectionPool.getInstance().getReuseCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHttpConnectCount() {
+        return HttpConnectionPool.getInstance().getConnectCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHttpRequestCount() {
+        return HttpConnectionPool.getInstance().getRequestCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getHttpAverageResponseTime() {
+        return HttpConnectionPool.getInstance().getAverageResponseTime();
+    }
     
     private ThreadPoolExecutor getExecutor() {
         return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
@@ -314,7 +314,6 @@ public class HttpMonitor extends AbstractServiceMonitor {
         private String m_currentLine;
         private int m_serviceStatus;
         private String m_reason;
-        private final StringBuffer m_html = new StringBuffer();
         private int m_serverResponseCode;
         private TimeoutTracker m_timeoutTracker;
         private int m_currentPort;
@@ -333,7 +332,8 @@ public class HttpMonitor extends AbstractServiceMonitor {
         }
         
         public void read() throws IOException {
-            for (int nullCount = 0; nullCount < 2;) {
+            // the rest of the page is of no interest once the response text has been found
+            for (int nullCount = 0; nullCount < 2 && !m_responseTextFound;) {
                 readLinedMatching();
                 if (isEndOfStream()) {
                     nullCount++;
@@ -521,8 +521,6 @@ public class HttpMonitor extends AbstractServiceMonitor {
             if (determineVerbosity(m_parameters) && HttpMonitor.LOG.isDebugEnabled()) {
                 HttpMonitor.LOG.debug("\t<<: {}", m_currentLine);
             }
-            
-            m_html.append(m_currentLine);
             return m_currentLine;
         }
 
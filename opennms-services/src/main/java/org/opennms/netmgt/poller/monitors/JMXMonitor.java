@@ -39,6 +39,7 @@ import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.protocols.jmx.connectors.ConnectionWrapper;
+import org.opennms.protocols.jmx.connectors.JMXConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +72,30 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
      * @return a {@link org.opennms.protocols.jmx.connectors.ConnectionWrapper} object.
      */
     public abstract ConnectionWrapper getMBeanServerConnection(Map<String, Object> parameterMap, InetAddress address);
+
+    /**
+     * Gets the type of connection the pool keys connections by. Collectors
+     * and monitors that return the same type share their connections.
+     *
+     * @return the class name without the Monitor suffix
+     */
+    protected String getConnectionType() {
+        return getClass().getSimpleName().replaceFirst("Monitor$", "");
+    }
+
+    /**
+     * Gets a connection from the pool shared with the JMX collectors,
+     * opening one with {@link #getMBeanServerConnection(Map, InetAddress)}
+     * if there is none.
+     */
+    private JMXConnectionPool.PooledConnection getPooledConnection(final Map<String, Object> parameterMap, final InetAddress address) {
+        return JMXConnectionPool.getInstance().getConnection(getConnectionType(), address, parameterMap, new JMXConnectionPool.Connector() {
+            @Override
+            public ConnectionWrapper connect() {
+                return getMBeanServerConnection(parameterMap, address);
+            }
+        });
+    }
     
     /* (non-Javadoc)
      * @see org.opennms.netmgt.poller.monitors.ServiceMonitor#poll(org.opennms.netmgt.poller.monitors.NetworkInterface, java.util.Map, org.opennms.netmgt.config.poller.Package)
@@ -85,7 +110,7 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
         String         dsName        = null;
         InetAddress    ipv4Addr      = (InetAddress)iface.getAddress();
         
-        ConnectionWrapper connection = null;
+        JMXConnectionPool.PooledConnection connection = null;
 
 
         try {
@@ -97,7 +122,7 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
                 LOG.debug("connecting to {} on node ID {}, attempt number {}", InetAddressUtils.str(ipv4Addr), svc.getNodeId(), attempts + 1);
                 try {
                     t0 = System.nanoTime();
-                    connection = getMBeanServerConnection(map, ipv4Addr);
+                    connection = getPooledConnection(map, ipv4Addr);
                     if (connection != null) {
                         connection.getMBeanServer().getMBeanCount();
                         long nanoResponseTime = System.nanoTime() - t0;
@@ -106,6 +131,14 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
                     }
                 }
                 catch(IOException e) {
+                    if (connection != null && connection.isReused()) {
+                        // the pooled connection has gone stale, try again on a new one
+                        LOG.debug("discarding stale connection to {}", InetAddressUtils.str(ipv4Addr));
+                        connection.invalidate();
+                        connection.close();
+                        connection = null;
+                        continue;
+                    }
                     String reason = dsName+": IOException while polling address: " + ipv4Addr;
                     LOG.debug(reason);
                     serviceStatus = PollStatus.unavailable(reason);
@@ -118,6 +151,9 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
             serviceStatus = PollStatus.unavailable(reason);
         } finally {
             if (connection != null) {
+                if (!serviceStatus.isAvailable()) {
+                    connection.invalidate();
+                }
                 connection.close();
             }
         }
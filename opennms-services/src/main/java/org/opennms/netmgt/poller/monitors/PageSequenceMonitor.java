@@ -629,7 +629,8 @@ public class PageSequenceMonitor extends AbstractServiceMonitor {
                     .setConnectionTimeout(getTimeout())
                     .setSocketTimeout(getTimeout())
                     .setRetries(getRetries())
-                    .useBrowserCompatibleCookies();
+                    .useBrowserCompatibleCookies()
+                    .useConnectionPool();
             return clientWrapper;
         }
     }
@@ -29,13 +29,18 @@
 package org.opennms.netmgt.scriptd;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.bsf.BSFException;
 import org.apache.bsf.BSFManager;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.fiber.PausableFiber;
 import org.opennms.core.queue.FifoQueue;
 import org.opennms.core.queue.FifoQueueException;
@@ -50,7 +55,6 @@ import org.opennms.netmgt.config.scriptd.StopScript;
 import org.opennms.netmgt.config.scriptd.Uei;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.events.api.EventConstants;
-import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Script;
@@ -65,6 +69,27 @@ import org.opennms.netmgt.xml.event.Script;
  */
 final class Executor implements Runnable, PausableFiber {
     private static final Logger LOG = LoggerFactory.getLogger(Executor.class);
+
+    /**
+     * The number of threads running event scripts.  With more than one
+     * thread, the events of a node are still handled in order by the same
+     * thread, but scripts that keep per-event state in interpreter globals
+     * must not be used.
+     */
+    private static final int THREADS = Integer.getInteger("org.opennms.netmgt.scriptd.threads", 1);
+
+    /**
+     * The number of events a script thread may have waiting.
+     */
+    private static final int THREAD_QUEUE_SIZE = Integer.getInteger("org.opennms.netmgt.scriptd.threadQueueSize", 1000);
+
+    /**
+     * The languages whose scripts are compiled through their JSR-223 engine.
+     * None by default, since compiled scripts do not share the variable
+     * scoping of scripts evaluated by BSF.
+     */
+    private static final String COMPILED_LANGUAGES = System.getProperty("org.opennms.netmgt.scriptd.compiledLanguages", "");
+
     /**
      * The input queue of events.
      */
@@ -93,17 +118,29 @@ final class Executor implements Runnable, PausableFiber {
     /**
      * The configured scripts (no UEI specified).
      */
-    private List<EventScript> m_eventScripts;
+    private volatile List<ScriptUnit> m_eventScripts;
 
     /**
      * The configured scripts (UEI specified).
      */
-    private Map<String,List<EventScript>> m_eventScriptMap;
+    private volatile Map<String,List<ScriptUnit>> m_eventScriptMap;
 
     /**
      * The BSF manager
      */
-    private BSFManager m_mgr;
+    private final EventBeanManager m_mgr;
+
+    /**
+     * Compiles the scripts where the engine supports it
+     */
+    private final ScriptCompiler m_compiler;
+
+    /**
+     * The queues of the script threads, if there is more than one
+     */
+    private final List<BlockingQueue<Event>> m_threadQueues = new ArrayList<BlockingQueue<Event>>();
+
+    private final List<Thread> m_threads = new ArrayList<Thread>();
 
     /**
      * The DAO object for fetching nodes
@@ -126,11 +163,14 @@ final class Executor implements Runnable, PausableFiber {
         m_execQ = execQ;
         m_config = config;
 
+        m_mgr = new EventBeanManager();
+        m_mgr.registerBean("log", LOG);
+        m_compiler = new ScriptCompiler(m_mgr, COMPILED_LANGUAGES);
+
         loadConfig();
 
         m_worker = null;
         m_name = "Scriptd-Executor";
-        m_mgr = null;
         m_status = START_PENDING;
 
 	m_nodeDao = nodeDao;
@@ -138,37 +178,50 @@ final class Executor implements Runnable, PausableFiber {
 
     /**
      * Load the m_scripts and m_scriptMap data structures from the
-     * configuration.
+     * configuration, compiling the scripts once.
      */
     private void loadConfig() {
 
         EventScript[] scripts = m_config.getEventScripts();
 
-        m_eventScripts = new ArrayList<EventScript>();
-        m_eventScriptMap = new ConcurrentHashMap<String,List<EventScript>>();
+        List<ScriptUnit> eventScripts = new ArrayList<ScriptUnit>();
+        Map<String,List<ScriptUnit>> eventScriptMap = new ConcurrentHashMap<String,List<ScriptUnit>>();
 
         for (int i = 0; i < scripts.length; i++) {
             Uei[] ueis = scripts[i].getUei();
+            ScriptUnit script = m_compiler.compile("event-script[" + i + "]", scripts[i].getLanguage(), scripts[i].getContent());
 
             if (ueis.length == 0) {
-                m_eventScripts.add(scripts[i]);
+                eventScripts.add(script);
             } else {
                 for (int j = 0; j < ueis.length; j++) {
 
                     String uei = ueis[j].getName();
 
-                    List<EventScript> list = m_eventScriptMap.get(uei);
+                    List<ScriptUnit> list = eventScriptMap.get(uei);
 
                     if (list == null) {
-                        list = new ArrayList<EventScript>();
-                        list.add(scripts[i]);
-                        m_eventScriptMap.put(uei, list);
+                        list = new ArrayList<ScriptUnit>();
+                        list.add(script);
+                        eventScriptMap.put(uei, list);
                     } else {
-                        list.add(scripts[i]);
+                        list.add(script);
                     }
                 }
             }
         }
+
+        if (m_eventScripts != null) {
+            logScriptStatistics();
+        }
+        m_eventScripts = eventScripts;
+        m_eventScriptMap = eventScriptMap;
+    }
+
+    private void logScriptStatistics() {
+        for (ScriptUnit script : getEventScripts()) {
+            LOG.info("Script statistics: {}", script);
+        }
     }
 
     /**
@@ -240,7 +293,7 @@ final class Executor implements Runnable, PausableFiber {
 
                     for (int i = 0; i < reloadScripts.length; i++) {
                         try {
-                            m_mgr.exec(reloadScripts[i].getLanguage(), "", 0, 0, reloadScripts[i].getContent());
+                            m_compiler.compile("reload-script[" + i + "]", reloadScripts[i].getLanguage(), reloadScripts[i].getContent()).exec(m_mgr);
                         }
 
                         catch (BSFException ex) {
@@ -256,45 +309,66 @@ final class Executor implements Runnable, PausableFiber {
                 }
             }
 
-            Script[] attachedScripts = event.getScript();
+            if (m_threadQueues.isEmpty()) {
+                executeScripts(event);
+            } else {
+                try {
+                    m_threadQueues.get(getThreadIndex(event)).put(event);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+        } // end infinite loop
+
+        synchronized (this) {
+            m_status = STOPPED;
+        }
 
-            List<EventScript> mapScripts = null;
+    } // end run
 
-            try {
-                mapScripts = m_eventScriptMap.get(event.getUei());
-            }
+    /**
+     * Runs the attached, UEI-specific and global scripts for an event.
+     */
+    private void executeScripts(Event event) {
+        Script[] attachedScripts = event.getScript();
 
-            catch (Throwable ex) {
-            }
+        List<ScriptUnit> mapScripts = null;
 
-            if (attachedScripts.length > 0 || mapScripts != null || m_eventScripts.size() > 0) {
-                LOG.debug("Executing scripts for: {}", event.getUei());
+        try {
+            mapScripts = m_eventScriptMap.get(event.getUei());
+        }
 
-                m_mgr.registerBean("event", event);
+        catch (Throwable ex) {
+        }
 
-                // And the events node
-                OnmsNode node = null;
+        List<ScriptUnit> eventScripts = m_eventScripts;
 
-                if (event.hasNodeid()) {
-                    Long nodeLong = event.getNodeid();
-                    Integer nodeInt = Integer.valueOf(nodeLong.intValue());
-                    node = m_nodeDao.get(nodeInt);
-                    m_mgr.registerBean("node", node);
-                }
+        if (attachedScripts.length > 0 || mapScripts != null || eventScripts.size() > 0) {
+            LOG.debug("Executing scripts for: {}", event.getUei());
 
+            Map<String,Object> beans = new HashMap<String,Object>();
+            beans.put("event", event);
+
+            // And the events node
+            if (event.hasNodeid()) {
+                Long nodeLong = event.getNodeid();
+                Integer nodeInt = Integer.valueOf(nodeLong.intValue());
+                beans.put("node", m_nodeDao.get(nodeInt));
+            }
+
+            m_mgr.setEventBeans(beans);
+            try {
                 // execute the scripts attached to the event
 
                 LOG.debug("Executing attached scripts");
-                if (attachedScripts.length > 0) {
-                    for (int i = 0; i < attachedScripts.length; i++) {
-                        try {
-                            Script script = attachedScripts[i];
-                            m_mgr.exec(script.getLanguage(), "", 0, 0, script.getContent());
-                        }
+                for (int i = 0; i < attachedScripts.length; i++) {
+                    try {
+                        Script script = attachedScripts[i];
+                        m_compiler.getAttachedScript(script.getLanguage(), script.getContent()).exec(m_mgr, beans);
+                    }
 
-                        catch (BSFException ex) {
-                            LOG.error("Attached script [{}] execution failed", i, ex);
-                        }
+                    catch (BSFException ex) {
+                        LOG.error("Attached script [{}] execution failed", i, ex);
                     }
                 }
 
@@ -302,10 +376,9 @@ final class Executor implements Runnable, PausableFiber {
 
                 LOG.debug("Executing mapped scripts");
                 if (mapScripts != null) {
-                    for (int i = 0; i < mapScripts.size(); i++) {
+                    for (ScriptUnit script : mapScripts) {
                         try {
-                            EventScript script = (EventScript) mapScripts.get(i);
-                            m_mgr.exec(script.getLanguage(), "", 0, 0, script.getContent());
+                            script.exec(m_mgr, beans);
                         }
 
                         catch (BSFException ex) {
@@ -317,32 +390,85 @@ final class Executor implements Runnable, PausableFiber {
                 // execute the scripts that are not mapped to any UEI
 
                 LOG.debug("Executing global scripts");
-                for (int i = 0; i < m_eventScripts.size(); i++) {
+                for (int i = 0; i < eventScripts.size(); i++) {
                     try {
-                        EventScript script = (EventScript) m_eventScripts.get(i);
-                        m_mgr.exec(script.getLanguage(), "", 0, 0, script.getContent());
+                        eventScripts.get(i).exec(m_mgr, beans);
                     }
 
                     catch (BSFException ex) {
                         LOG.error("Non-UEI-specific event handler script [{}] execution failed", i, ex);
                     }
                 }
+            } finally {
+                m_mgr.setEventBeans(null);
+            }
+
+            LOG.debug("Finished executing scripts for: {}", event.getUei());
 
-		if (node != null)
-		    m_mgr.unregisterBean("node");
-		
-                m_mgr.unregisterBean("event");
+        }
+    }
 
-                LOG.debug("Finished executing scripts for: {}", event.getUei());
+    /**
+     * Events of the same node always go to the same thread so they are
+     * handled in order; events without a node go to the first thread.
+     */
+    private int getThreadIndex(Event event) {
+        if (!event.hasNodeid()) {
+            return 0;
+        }
+        return (int)((event.getNodeid() & Long.MAX_VALUE) % m_threadQueues.size());
+    }
 
+    /**
+     * The loop of a script thread when events are handled by more than
+     * one thread.
+     */
+    private void runScripts(BlockingQueue<Event> queue) {
+        for (;;) {
+            Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException ex) {
+                break;
             }
-        } // end infinite loop
+            try {
+                executeScripts(event);
+            } catch (Throwable ex) {
+                LOG.error("Unexpected error executing scripts for: {}", event.getUei(), ex);
+            }
+        }
+    }
 
-        synchronized (this) {
-            m_status = STOPPED;
+    /**
+     * Returns the number of events waiting to be handed to the scripts.
+     *
+     * @return the number of queued events
+     */
+    int getQueueDepth() {
+        int depth = m_execQ.size();
+        for (BlockingQueue<Event> queue : m_threadQueues) {
+            depth += queue.size();
         }
+        return depth;
+    }
 
-    } // end run
+    /**
+     * Returns the configured event scripts with their run counts and
+     * timings.
+     *
+     * @return the event scripts
+     */
+    List<ScriptUnit> getEventScripts() {
+        List<ScriptUnit> scripts = new ArrayList<ScriptUnit>(m_eventScripts);
+        for (List<ScriptUnit> ueiScripts : m_eventScriptMap.values()) {
+            for (ScriptUnit script : ueiScripts) {
+                if (!scripts.contains(script)) {
+                    scripts.add(script);
+                }
+            }
+        }
+        return Collections.unmodifiableList(scripts);
+    }
 
     private boolean isReloadConfigEvent(Event event) {
         boolean isTarget = false;
@@ -411,14 +537,11 @@ final class Executor implements Runnable, PausableFiber {
             BSFManager.registerScriptingEngine(engines[i].getLanguage(), engines[i].getClassName(), extensions);
         }
 
-        m_mgr = new BSFManager();
-        m_mgr.registerBean("log", LOG);
-
         StartScript[] startScripts = m_config.getStartScripts();
 
         for (int i = 0; i < startScripts.length; i++) {
             try {
-                m_mgr.exec(startScripts[i].getLanguage(), "", 0, 0, startScripts[i].getContent());
+                m_compiler.compile("start-script[" + i + "]", startScripts[i].getLanguage(), startScripts[i].getContent()).exec(m_mgr);
             }
 
             catch (BSFException ex) {
@@ -426,6 +549,22 @@ final class Executor implements Runnable, PausableFiber {
             }
         }
 
+        if (THREADS > 1) {
+            LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory("Scriptd-Script", THREADS);
+            for (int i = 0; i < THREADS; i++) {
+                final BlockingQueue<Event> queue = new LinkedBlockingQueue<Event>(THREAD_QUEUE_SIZE);
+                Thread thread = threadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runScripts(queue);
+                    }
+                });
+                m_threadQueues.add(queue);
+                m_threads.add(thread);
+                thread.start();
+            }
+        }
+
         m_worker = new Thread(this, getName());
         m_worker.start();
     }
@@ -440,8 +579,6 @@ final class Executor implements Runnable, PausableFiber {
      */
     @Override
     public synchronized void stop() {
-        Logger log = (Logger) m_mgr.lookupBean("log");
-
         if (m_worker == null) {
             throw new IllegalStateException("The fiber has never been run");
         }
@@ -454,13 +591,17 @@ final class Executor implements Runnable, PausableFiber {
             m_worker.interrupt();
         }
 
+        for (Thread thread : m_threads) {
+            thread.interrupt();
+        }
+
         StopScript[] stopScripts = m_config.getStopScripts();
 
         notifyAll();
 
         for (int i = 0; i < stopScripts.length; i++) {
             try {
-                m_mgr.exec(stopScripts[i].getLanguage(), "", 0, 0, stopScripts[i].getContent());
+                m_compiler.compile("stop-script[" + i + "]", stopScripts[i].getLanguage(), stopScripts[i].getContent()).exec(m_mgr);
             }
 
             catch (BSFException ex) {
@@ -468,6 +609,8 @@ final class Executor implements Runnable, PausableFiber {
             }
         }
 
+        logScriptStatistics();
+
         LOG.debug("Stopped");
     }
 
@@ -536,4 +679,30 @@ final class Executor implements Runnable, PausableFiber {
 
         return m_status;
     }
+
+    /**
+     * A BSF manager that keeps the <code>event</code> and <code>node</code>
+     * beans per thread, so scripts running for different events at the same
+     * time each look up their own.
+     */
+    private static final class EventBeanManager extends BSFManager {
+        private final ThreadLocal<Map<String,Object>> m_eventBeans = new ThreadLocal<Map<String,Object>>();
+
+        void setEventBeans(Map<String,Object> beans) {
+            if (beans == null) {
+                m_eventBeans.remove();
+            } else {
+                m_eventBeans.set(beans);
+            }
+        }
+
+        @Override
+        public Object lookupBean(String beanName) {
+            Map<String,Object> beans = m_eventBeans.get();
+            if (beans != null && beans.containsKey(beanName)) {
+                return beans.get(beanName);
+            }
+            return super.lookupBean(beanName);
+        }
+    }
 }
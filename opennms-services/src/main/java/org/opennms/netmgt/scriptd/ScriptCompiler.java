@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scriptd;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.bsf.BSFManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns script sources into {@link ScriptUnit}s.
+ *
+ * Scripts in one of the configured languages are compiled by the JSR-223
+ * engine of that language, if there is one and it can compile.  All other
+ * scripts are run through BSF from source, which keeps the behaviour of
+ * languages whose BSF engine differs from their JSR-223 engine unchanged
+ * unless they are listed explicitly.
+ *
+ * Scripts attached to events are compiled on first use and kept in a small
+ * LRU cache keyed by their source.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+final class ScriptCompiler {
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptCompiler.class);
+
+    private static final int ATTACHED_SCRIPT_CACHE_SIZE = 100;
+
+    private final ScriptEngineManager m_engineManager;
+    private final BSFManager m_bsfManager;
+    private final Set<String> m_languages;
+
+    /**
+     * The engine of each language, null if the language is not compiled
+     */
+    private final Map<String, ScriptEngine> m_engines = new HashMap<String, ScriptEngine>();
+
+    /**
+     * The variables shared by the scripts of each compiled language
+     */
+    private final Map<String, Bindings> m_globals = new HashMap<String, Bindings>();
+
+    private final Map<String, ScriptUnit> m_attachedScripts = new LinkedHashMap<String, ScriptUnit>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ScriptUnit> eldest) {
+            return size() > ATTACHED_SCRIPT_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param bsfManager the BSF manager used for scripts that are not compiled
+     * @param languages the languages to compile, separated by commas or spaces
+     */
+    ScriptCompiler(BSFManager bsfManager, String languages) {
+        this(new ScriptEngineManager(), bsfManager, languages);
+    }
+
+    ScriptCompiler(ScriptEngineManager engineManager, BSFManager bsfManager, String languages) {
+        m_engineManager = engineManager;
+        m_bsfManager = bsfManager;
+        m_languages = new HashSet<String>();
+        if (languages != null) {
+            for (String language : languages.split("[,\\s]+")) {
+                if (language.length() > 0) {
+                    m_languages.add(language);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles a configured script.
+     *
+     * @param name a name for the script in logs and statistics
+     */
+    synchronized ScriptUnit compile(String name, String language, String source) {
+        final ScriptEngine engine = getEngine(language);
+        CompiledScript compiled = null;
+        if (engine != null) {
+            try {
+                compiled = ((Compilable)engine).compile(source);
+                LOG.debug("Compiled {} with the {} engine", name, language);
+            } catch (ScriptException e) {
+                LOG.warn("Unable to compile {}, it will be interpreted by BSF instead", name, e);
+            }
+        }
+        return new ScriptUnit(name, language, source, compiled, compiled == null ? null : m_globals.get(language));
+    }
+
+    /**
+     * Returns the compiled form of a script attached to an event.
+     */
+    synchronized ScriptUnit getAttachedScript(String language, String source) {
+        final String key = language + '\n' + source;
+        ScriptUnit unit = m_attachedScripts.get(key);
+        if (unit == null) {
+            unit = compile("attached script", language, source);
+            m_attachedScripts.put(key, unit);
+        }
+        return unit;
+    }
+
+    private ScriptEngine getEngine(String language) {
+        if (!m_languages.contains(language)) {
+            return null;
+        }
+        if (!m_engines.containsKey(language)) {
+            ScriptEngine engine = m_engineManager.getEngineByName(language);
+            if (engine instanceof Compilable) {
+                final Bindings globals = new SimpleBindings();
+                globals.put("bsf", m_bsfManager);
+                globals.put("log", m_bsfManager.lookupBean("log"));
+                m_globals.put(language, globals);
+            } else {
+                LOG.info("No script engine able to compile {} found, {} scripts will be interpreted by BSF", language, language);
+                engine = null;
+            }
+            m_engines.put(language, engine);
+        }
+        return m_engines.get(language);
+    }
+}
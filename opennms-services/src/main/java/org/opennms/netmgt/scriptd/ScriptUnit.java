@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scriptd;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.apache.bsf.BSFException;
+import org.apache.bsf.BSFManager;
+
+/**
+ * A configured script, compiled once when the configuration is loaded if
+ * the engine for its language supports it.  Scripts that could not be
+ * compiled are handed to the BSF manager as source, as before.
+ *
+ * Compiled scripts see the variables set by the start, stop and reload
+ * scripts of their language, the <code>bsf</code> manager and the
+ * <code>log</code>, plus the <code>event</code> and <code>node</code> they
+ * are run for.  Variables an event script sets for the first time are local
+ * to that run.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+final class ScriptUnit {
+
+    private final String m_name;
+    private final String m_language;
+    private final String m_source;
+    private final CompiledScript m_compiled;
+    private final Bindings m_globals;
+
+    private final AtomicLong m_runs = new AtomicLong();
+    private final AtomicLong m_failures = new AtomicLong();
+    private final AtomicLong m_nanos = new AtomicLong();
+
+    ScriptUnit(String name, String language, String source, CompiledScript compiled, Bindings globals) {
+        m_name = name;
+        m_language = language;
+        m_source = source;
+        m_compiled = compiled;
+        m_globals = globals;
+    }
+
+    /**
+     * Runs a start, stop or reload script.  Variables it sets are kept for
+     * the scripts run after it.
+     */
+    void exec(BSFManager mgr) throws BSFException {
+        exec(mgr, null);
+    }
+
+    /**
+     * Runs an event script with the given per-event beans.
+     */
+    void exec(BSFManager mgr, Map<String, Object> beans) throws BSFException {
+        final long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            if (m_compiled == null) {
+                mgr.exec(m_language, "", 0, 0, m_source);
+            } else {
+                final ScriptContext context = new SimpleScriptContext();
+                if (beans == null) {
+                    context.setBindings(m_globals, ScriptContext.ENGINE_SCOPE);
+                } else {
+                    final Bindings local = m_compiled.getEngine().createBindings();
+                    local.putAll(beans);
+                    context.setBindings(local, ScriptContext.ENGINE_SCOPE);
+                    context.setBindings(m_globals, ScriptContext.GLOBAL_SCOPE);
+                }
+                m_compiled.eval(context);
+            }
+            succeeded = true;
+        } catch (ScriptException e) {
+            throw new BSFException(BSFException.REASON_EXECUTION_ERROR, "script " + m_name + " failed: " + e.getMessage(), e);
+        } finally {
+            m_runs.incrementAndGet();
+            m_nanos.addAndGet(System.nanoTime() - start);
+            if (!succeeded) {
+                m_failures.incrementAndGet();
+            }
+        }
+    }
+
+    String getName() {
+        return m_name;
+    }
+
+    String getLanguage() {
+        return m_language;
+    }
+
+    boolean isCompiled() {
+        return m_compiled != null;
+    }
+
+    /**
+     * @return the number of times the script was run
+     */
+    long getRuns() {
+        return m_runs.get();
+    }
+
+    /**
+     * @return the number of runs that failed
+     */
+    long getFailures() {
+        return m_failures.get();
+    }
+
+    /**
+     * @return the total time spent in the script, in milliseconds
+     */
+    long getTotalTime() {
+        return TimeUnit.NANOSECONDS.toMillis(m_nanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return m_name + " (" + m_language + (isCompiled() ? ", compiled" : "") + "): " + getRuns() + " runs, " + getFailures() + " failures, " + getTotalTime() + " ms";
+    }
+}
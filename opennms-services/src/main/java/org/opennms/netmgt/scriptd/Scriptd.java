@@ -30,6 +30,9 @@ package org.opennms.netmgt.scriptd;
 
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
@@ -69,7 +72,7 @@ public final class Scriptd extends AbstractServiceDaemon {
     /**
      * The execution launcher
      */
-    private Executor m_execution;
+    private volatile Executor m_execution;
 
     /**
      * The broadcast event receiver.
@@ -178,6 +181,73 @@ public final class Scriptd extends AbstractServiceDaemon {
 		m_execution.resume();
 	}
 
+    /**
+     * <p>getQueueDepth</p>
+     *
+     * @return the number of events waiting for their scripts to run
+     */
+    public long getQueueDepth() {
+        final Executor execution = m_execution;
+        return execution == null ? 0 : execution.getQueueDepth();
+    }
+
+    /**
+     * <p>getScriptRuns</p>
+     *
+     * @return the number of event script runs since the configuration was loaded
+     */
+    public long getScriptRuns() {
+        long runs = 0;
+        for (ScriptUnit script : getEventScripts()) {
+            runs += script.getRuns();
+        }
+        return runs;
+    }
+
+    /**
+     * <p>getScriptFailures</p>
+     *
+     * @return the number of failed event script runs since the configuration was loaded
+     */
+    public long getScriptFailures() {
+        long failures = 0;
+        for (ScriptUnit script : getEventScripts()) {
+            failures += script.getFailures();
+        }
+        return failures;
+    }
+
+    /**
+     * <p>getScriptTime</p>
+     *
+     * @return the time spent in event scripts since the configuration was loaded, in milliseconds
+     */
+    public long getScriptTime() {
+        long time = 0;
+        for (ScriptUnit script : getEventScripts()) {
+            time += script.getTotalTime();
+        }
+        return time;
+    }
+
+    /**
+     * <p>getScriptStatistics</p>
+     *
+     * @return the run count, failure count and time spent of each event script
+     */
+    public List<String> getScriptStatistics() {
+        final List<String> stats = new ArrayList<String>();
+        for (ScriptUnit script : getEventScripts()) {
+            stats.add(script.toString());
+        }
+        return stats;
+    }
+
+    private List<ScriptUnit> getEventScripts() {
+        final Executor execution = m_execution;
+        return execution == null ? Collections.<ScriptUnit>emptyList() : execution.getEventScripts();
+    }
+
     /**
      * Returns the singular instance of the <em>Scriptd</em> daemon. There can
      * be only one instance of this service per virtual machine.
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.scriptd.jmx;
 
+import java.util.List;
+
 /**
  * <p>Scriptd class.</p>
  *
@@ -92,4 +94,39 @@ public class Scriptd implements ScriptdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getQueueDepth() {
+        return getScriptd().getQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getScriptRuns() {
+        return getScriptd().getScriptRuns();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getScriptFailures() {
+        return getScriptd().getScriptFailures();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getScriptTime() {
+        return getScriptd().getScriptTime();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getScriptStatistics() {
+        List<String> stats = getScriptd().getScriptStatistics();
+        return stats.toArray(new String[stats.size()]);
+    }
+
+    private org.opennms.netmgt.scriptd.Scriptd getScriptd() {
+        return org.opennms.netmgt.scriptd.Scriptd.getInstance();
+    }
 }
@@ -37,4 +37,28 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface ScriptdMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of events waiting for their scripts to run
+     */
+    public long getQueueDepth();
+
+    /**
+     * @return The number of event script runs since the configuration was loaded
+     */
+    public long getScriptRuns();
+
+    /**
+     * @return The number of failed event script runs since the configuration was loaded
+     */
+    public long getScriptFailures();
+
+    /**
+     * @return The time spent in event scripts since the configuration was loaded, in milliseconds
+     */
+    public long getScriptTime();
+
+    /**
+     * @return The run count, failure count and time spent of each event script
+     */
+    public String[] getScriptStatistics();
 }
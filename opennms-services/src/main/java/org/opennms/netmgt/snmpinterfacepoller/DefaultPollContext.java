@@ -32,7 +32,9 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 import static org.opennms.core.utils.InetAddressUtils.str;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opennms.core.criteria.Alias.JoinType;
 import org.opennms.core.criteria.CriteriaBuilder;
@@ -50,6 +52,9 @@ import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Represents a DefaultPollContext
@@ -72,6 +77,9 @@ public class DefaultPollContext implements PollContext {
     @Autowired
     private IpInterfaceDao m_ipInterfaceDao;
 
+    @Autowired(required=false)
+    private TransactionTemplate m_transactionTemplate;
+
     private String m_serviceName="SNMP";
 
     /**
@@ -232,6 +240,44 @@ public class DefaultPollContext implements PollContext {
     	}
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void update(final int nodeId, final List<OnmsSnmpInterface> snmpinterfaces) {
+        if (m_transactionTemplate == null) {
+            doUpdate(nodeId, snmpinterfaces);
+        } else {
+            m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    doUpdate(nodeId, snmpinterfaces);
+                }
+            });
+        }
+    }
+
+    private void doUpdate(int nodeId, List<OnmsSnmpInterface> snmpinterfaces) {
+        // load all the node's interfaces at once instead of one query per interface
+        CriteriaBuilder builder = new CriteriaBuilder(OnmsSnmpInterface.class);
+        builder.eq("node.id", nodeId);
+        final Map<Integer, OnmsSnmpInterface> dbSnmpInterfaces = new HashMap<Integer, OnmsSnmpInterface>();
+        for (OnmsSnmpInterface dbSnmpInterface : getSnmpInterfaceDao().findMatching(builder.toCriteria())) {
+            dbSnmpInterfaces.put(dbSnmpInterface.getIfIndex(), dbSnmpInterface);
+        }
+
+        for (OnmsSnmpInterface snmpinterface : snmpinterfaces) {
+            OnmsSnmpInterface dbSnmpInterface = dbSnmpInterfaces.get(snmpinterface.getIfIndex());
+            if (dbSnmpInterface == null)  {
+                log().debug("updating SnmpInterface: no interface found on db for: " + snmpinterface.toString());
+            } else {
+                dbSnmpInterface.setIfOperStatus(snmpinterface.getIfOperStatus());
+                dbSnmpInterface.setIfAdminStatus(snmpinterface.getIfAdminStatus());
+                dbSnmpInterface.setLastSnmpPoll(snmpinterface.getLastSnmpPoll());
+                getSnmpInterfaceDao().update(dbSnmpInterface);
+            }
+        }
+        log().debug("updated " + snmpinterfaces.size() + " SnmpInterfaces of node " + nodeId);
+    }
+
 	@Override
 	public List<OnmsIpInterface> getPollableNodesByIp(String ipaddr) {
                 CriteriaBuilder builder = new CriteriaBuilder(OnmsIpInterface.class);
@@ -64,6 +64,17 @@ public class SnmpPollInterfaceMonitor {
      */
     private static final String IF_OPER_STATUS_OID = ".1.3.6.1.2.1.2.2.1.8.";
 
+    private int m_requestCount = 0;
+
+    /**
+     * <p>getRequestCount</p>
+     *
+     * @return the number of SNMP requests sent by this monitor
+     */
+    public int getRequestCount() {
+        return m_requestCount;
+    }
+
     /**
      * <p>poll</p>
      *
@@ -73,6 +84,21 @@ public class SnmpPollInterfaceMonitor {
      */
 	public List<SnmpMinimalPollInterface> poll(SnmpAgentConfig agentConfig,
 			List<SnmpMinimalPollInterface> mifaces) {
+		return poll(agentConfig, mifaces, agentConfig == null ? 0 : agentConfig.getMaxVarsPerPdu());
+	}
+
+    /**
+     * Polls the admin and operational status of the interfaces.  When both
+     * fit in maxVarsPerPdu they are fetched in a single request, otherwise
+     * with one request each.
+     *
+     * @param agentConfig a {@link org.opennms.netmgt.snmp.SnmpAgentConfig} object.
+     * @param mifaces a {@link java.util.List} object.
+     * @param maxVarsPerPdu the most variables to put in one request, 0 for no limit
+     * @return a {@link java.util.List} object.
+     */
+	public List<SnmpMinimalPollInterface> poll(SnmpAgentConfig agentConfig,
+			List<SnmpMinimalPollInterface> mifaces, int maxVarsPerPdu) {
 
 		if (mifaces == null) {
 			LOG.error("Null Interfaces passed to Monitor, exiting");
@@ -102,20 +128,39 @@ public class SnmpPollInterfaceMonitor {
 		SnmpValue[] adminresults = new SnmpValue[mifaces.size()];
 		SnmpValue[] operoresults = new SnmpValue[mifaces.size()];
 
-		LOG.debug("try to get admin statuses");
-		adminresults = SnmpUtils.get(agentConfig, adminoids);
-		LOG.debug("got admin status {} SnmpValues", adminresults.length);
-		if (adminresults.length != mifaces.size()) {
-			LOG.warn("Snmp Interface Admin statuses collection failed");
-			return mifaces;
-		}
+		if (maxVarsPerPdu <= 0 || 2 * mifaces.size() <= maxVarsPerPdu) {
+			SnmpObjId[] oids = new SnmpObjId[2 * mifaces.size()];
+			System.arraycopy(adminoids, 0, oids, 0, adminoids.length);
+			System.arraycopy(operooids, 0, oids, adminoids.length, operooids.length);
+
+			LOG.debug("try to get admin and operational statuses");
+			m_requestCount++;
+			SnmpValue[] results = SnmpUtils.get(agentConfig, oids);
+			LOG.debug("got admin and operational status {} SnmpValues", results.length);
+			if (results.length != oids.length) {
+				LOG.warn("Snmp Interface Admin/Operational statuses collection failed");
+				return mifaces;
+			}
+			System.arraycopy(results, 0, adminresults, 0, adminresults.length);
+			System.arraycopy(results, adminresults.length, operoresults, 0, operoresults.length);
+		} else {
+			LOG.debug("try to get admin statuses");
+			m_requestCount++;
+			adminresults = SnmpUtils.get(agentConfig, adminoids);
+			LOG.debug("got admin status {} SnmpValues", adminresults.length);
+			if (adminresults.length != mifaces.size()) {
+				LOG.warn("Snmp Interface Admin statuses collection failed");
+				return mifaces;
+			}
 
-		LOG.debug("try to get operational statuses");
-		operoresults = SnmpUtils.get(agentConfig, operooids);
-		LOG.debug("got operational status {} SnmpValues", operoresults.length);
-		if (operoresults.length != mifaces.size()) {
-			LOG.warn("Snmp Interface Operational statuses collection failed");
-			return mifaces;
+			LOG.debug("try to get operational statuses");
+			m_requestCount++;
+			operoresults = SnmpUtils.get(agentConfig, operooids);
+			LOG.debug("got operational status {} SnmpValues", operoresults.length);
+			if (operoresults.length != mifaces.size()) {
+				LOG.warn("Snmp Interface Operational statuses collection failed");
+				return mifaces;
+			}
 		}
 
 		for (int i = 0; i < mifaces.size(); i++) {
@@ -50,5 +50,17 @@ public class SnmpPollerd extends AbstractSpringContextJmxServiceDaemon<org.openn
         return "snmpinterfacepollerdContext";
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getRequestCount() {
+        return getDaemon().getNetwork().getRequestCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getUncoalescedRequestCount() {
+        return getDaemon().getNetwork().getUncoalescedRequestCount();
+    }
+
 }
 
@@ -37,4 +37,15 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SnmpPollerdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return The number of SNMP requests sent to poll interface statuses
+     */
+    public long getRequestCount();
+
+    /**
+     * @return The number of SNMP requests that would have been sent if every
+     *         package interface were polled on its own
+     */
+    public long getUncoalescedRequestCount();
 }
@@ -108,4 +108,12 @@ public interface PollContext {
      */
     public void update(OnmsSnmpInterface snmpinteface);
 
+    /**
+     * Update the statuses of several OnmsSnmpInterfaces of a node at once
+     *
+     * @param nodeId the node the interfaces belong to
+     * @param snmpinterfaces a {@link java.util.List} object.
+     */
+    public void update(int nodeId, List<OnmsSnmpInterface> snmpinterfaces);
+
 }
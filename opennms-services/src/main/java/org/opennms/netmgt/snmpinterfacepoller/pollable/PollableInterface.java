@@ -35,10 +35,13 @@ import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.SnmpPeerFactory;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Represents an SNMP PollableInterface
@@ -47,6 +50,13 @@ import org.opennms.netmgt.snmp.SnmpAgentConfig;
  * @version $Id: $
  */
 public class PollableInterface {
+    private static final Logger LOG = LoggerFactory.getLogger(PollableInterface.class);
+
+    /**
+     * Whether groups of this interface with the same interval and SNMP
+     * settings are polled together, on by default.
+     */
+    private static final boolean COALESCE = Boolean.parseBoolean(System.getProperty("org.opennms.netmgt.snmpinterfacepoller.coalesce", "true"));
 
     private int m_nodeid;
     
@@ -59,6 +69,13 @@ public class PollableInterface {
     private String m_packageName;
     
     private boolean polling = true;
+
+    // interval and SNMP settings -> the group that polls all groups with them
+    private final Map<String, PollableSnmpInterface> m_coalescingGroups = new HashMap<String, PollableSnmpInterface>();
+
+    private final AtomicLong m_polledInterfaces = new AtomicLong(0);
+    private final AtomicLong m_requests = new AtomicLong(0);
+    private final AtomicLong m_uncoalescedRequests = new AtomicLong(0);
     
     /**
      * <P>
@@ -163,6 +180,76 @@ public class PollableInterface {
         return iface;
     }
     
+    /**
+     * Finds the group that will poll the given group.  The first group
+     * scheduled with a given interval and port, timeout and retries is
+     * scheduled itself and polls all later ones along with its own
+     * interfaces, so the agent gets as few requests as possible.
+     *
+     * @param iface the group to schedule
+     * @param interval the polling interval of the group
+     * @return the group to schedule, which is iface itself unless it has been
+     *         coalesced into another group
+     */
+    protected synchronized PollableSnmpInterface coalesce(PollableSnmpInterface iface, long interval) {
+        if (!COALESCE) {
+            return iface;
+        }
+        final SnmpAgentConfig agentConfig = iface.getAgentConfig();
+        final String key = interval + "/" + agentConfig.getPort() + "/" + agentConfig.getTimeout() + "/" + agentConfig.getRetries();
+        final PollableSnmpInterface group = m_coalescingGroups.get(key);
+        if (group == null) {
+            m_coalescingGroups.put(key, iface);
+            return iface;
+        } else if (group != iface) {
+            LOG.debug("coalescing package interface {} into {} on {}", iface.getName(), group.getName(), getIpaddress());
+            group.addCoalesced(iface);
+        }
+        return group;
+    }
+
+    /**
+     * Counts a poll of this interface.
+     *
+     * @param interfaces the number of SNMP interfaces polled
+     * @param requests the number of SNMP requests sent
+     * @param uncoalescedRequests the number of requests polling each group
+     *        on its own would have sent
+     */
+    void polled(int interfaces, int requests, int uncoalescedRequests) {
+        m_polledInterfaces.addAndGet(interfaces);
+        m_requests.addAndGet(requests);
+        m_uncoalescedRequests.addAndGet(uncoalescedRequests);
+    }
+
+    /**
+     * <p>getPolledInterfaceCount</p>
+     *
+     * @return the number of SNMP interfaces polled so far
+     */
+    public long getPolledInterfaceCount() {
+        return m_polledInterfaces.get();
+    }
+
+    /**
+     * <p>getRequestCount</p>
+     *
+     * @return the number of SNMP requests sent to this agent so far
+     */
+    public long getRequestCount() {
+        return m_requests.get();
+    }
+
+    /**
+     * <p>getUncoalescedRequestCount</p>
+     *
+     * @return the number of SNMP requests that would have been sent if every
+     *         group were polled on its own
+     */
+    public long getUncoalescedRequestCount() {
+        return m_uncoalescedRequests.get();
+    }
+
     /**
      * <p>refresh</p>
      */
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.snmpinterfacepoller.pollable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -90,6 +91,11 @@ public class PollableNetwork {
 
         node.setSnmppollableconfig(nodeconfig);
 
+        if (node.getParent().coalesce(node, interval) != node) {
+            // polled along with another group of the same node
+            return;
+        }
+
         synchronized(node) {
             if (node.getSchedule() == null) {
                 Schedule schedule = new Schedule(node, nodeconfig, scheduler);
@@ -100,6 +106,33 @@ public class PollableNetwork {
             node.schedule();
     }
 
+    /**
+     * <p>getRequestCount</p>
+     *
+     * @return the number of SNMP requests sent to all agents so far
+     */
+    public long getRequestCount() {
+        long count = 0;
+        for (PollableInterface pi : new ArrayList<PollableInterface>(m_members.values())) {
+            count += pi.getRequestCount();
+        }
+        return count;
+    }
+
+    /**
+     * <p>getUncoalescedRequestCount</p>
+     *
+     * @return the number of SNMP requests that would have been sent to all
+     *         agents if every group were polled on its own
+     */
+    public long getUncoalescedRequestCount() {
+        long count = 0;
+        for (PollableInterface pi : new ArrayList<PollableInterface>(m_members.values())) {
+            count += pi.getUncoalescedRequestCount();
+        }
+        return count;
+    }
+
     /**
      * <p>deleteAll</p>
      */
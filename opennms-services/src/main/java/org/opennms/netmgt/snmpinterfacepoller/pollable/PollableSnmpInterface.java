@@ -34,6 +34,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -69,6 +70,12 @@ public class PollableSnmpInterface implements ReadyRunnable {
     private String m_criteria;
         
     private SnmpAgentConfig m_agentConfig;
+
+    /**
+     * The groups of the same node that are polled along with this one, see
+     * {@link PollableInterface#coalesce(PollableSnmpInterface, long)}.
+     */
+    private final List<PollableSnmpInterface> m_coalesced = new CopyOnWriteArrayList<PollableSnmpInterface>();
     
     public static class SnmpMinimalPollInterface {
         
@@ -280,6 +287,15 @@ public class PollableSnmpInterface implements ReadyRunnable {
         return true;
     }
 
+    /**
+     * <p>addCoalesced</p>
+     *
+     * @param group a group of the same node to poll along with this one
+     */
+    void addCoalesced(PollableSnmpInterface group) {
+        m_coalesced.add(group);
+    }
+
     /**
      * <p>run</p>
      */
@@ -287,21 +303,47 @@ public class PollableSnmpInterface implements ReadyRunnable {
     public void run() {
             if (getParent().polling()) {
                 LOG.info("run: polling SNMP interfaces on package/interface {}/{} on primary address: {}", getParent().getPackageName(), getName(), getParent().getIpaddress());
-                if (m_snmpinterfaces == null || m_snmpinterfaces.isEmpty()) {
+
+                // poll the interfaces of every coalesced group in as few PDUs as possible
+                final List<PollableSnmpInterface> groups = new ArrayList<PollableSnmpInterface>();
+                groups.add(this);
+                groups.addAll(m_coalesced);
+
+                final List<SnmpMinimalPollInterface> mifaces = new ArrayList<SnmpMinimalPollInterface>();
+                final List<PollableSnmpInterface> owners = new ArrayList<PollableSnmpInterface>();
+                int maxVars = 0;
+                int uncoalescedRequests = 0;
+                for (final PollableSnmpInterface group : groups) {
+                    final List<SnmpMinimalPollInterface> groupIfaces = group.getSnmpMinimalPollInterface();
+                    if (groupIfaces.isEmpty()) continue;
+                    mifaces.addAll(groupIfaces);
+                    for (int i = 0; i < groupIfaces.size(); i++) {
+                        owners.add(group);
+                    }
+                    final int groupMaxVars = group.getMaxInterfacePerPdu();
+                    if (groupMaxVars > 0 && (maxVars == 0 || groupMaxVars < maxVars)) {
+                        maxVars = groupMaxVars;
+                    }
+                    // what the group would take on its own: one admin and one oper request per chunk
+                    final int groupChunk = groupMaxVars > 0 ? groupMaxVars : groupIfaces.size();
+                    uncoalescedRequests += 2 * ((groupIfaces.size() + groupChunk - 1) / groupChunk);
+                }
+
+                if (mifaces.isEmpty()) {
                     LOG.debug("No Interface found. Doing nothing");
                 } else {
-                    LOG.debug("{} Interfaces found. Getting Statutes....", m_snmpinterfaces.size());
+                    LOG.debug("{} Interfaces found. Getting Statutes....", mifaces.size());
                     SnmpPollInterfaceMonitor pollMonitor = new SnmpPollInterfaceMonitor();
-                    int maxiface = getMaxInterfacePerPdu();
-                    if (maxiface == 0) maxiface=m_snmpinterfaces.size();
+                    // admin and oper status of an interface go in the same PDU
+                    int maxiface = maxVars == 0 ? mifaces.size() : Math.max(1, maxVars / 2);
                     LOG.debug("Max Interface Per Pdu is: {}", maxiface);
-                    List<SnmpMinimalPollInterface> mifaces = getSnmpMinimalPollInterface();
-                    int start =0;
-                    while (start + maxiface< m_snmpinterfaces.size()) {
-                        doPoll(pollMonitor,mifaces.subList(start, start+maxiface));
-                        start += maxiface;
+                    for (int start = 0; start < mifaces.size(); start += maxiface) {
+                        final int end = Math.min(start + maxiface, mifaces.size());
+                        doPoll(pollMonitor, maxVars, mifaces.subList(start, end), owners.subList(start, end));
                     }
-                    doPoll(pollMonitor,mifaces.subList(start, m_snmpinterfaces.size()));
+                    getParent().polled(mifaces.size(), pollMonitor.getRequestCount(), uncoalescedRequests);
+                    LOG.info("run: polled {} SNMP interfaces of {} groups on {} with {} requests ({} without coalescing)",
+                             mifaces.size(), groups.size(), getParent().getIpaddress(), pollMonitor.getRequestCount(), uncoalescedRequests);
                 }
 
             }  else {
@@ -309,23 +351,45 @@ public class PollableSnmpInterface implements ReadyRunnable {
             } // End if polling
     } //end Run method
         
-    private void doPoll(SnmpPollInterfaceMonitor pollMonitor, List<SnmpMinimalPollInterface> mifaces) {
+    private void doPoll(SnmpPollInterfaceMonitor pollMonitor, int maxVars, List<SnmpMinimalPollInterface> mifaces, List<PollableSnmpInterface> owners) {
         
         LOG.info("doPoll: input interfaces number: {}", mifaces.size());
     	
-        mifaces = pollMonitor.poll(getAgentConfig(), mifaces);
-        
-        boolean refresh = false;
+        List<SnmpMinimalPollInterface> polled = pollMonitor.poll(getAgentConfig(), mifaces, maxVars);
         
         Date now = getDate();
         
-        if (mifaces != null) {
-            LOG.info("doPoll: PollerMonitor return interfaces number: {}", mifaces.size());
-            for (SnmpMinimalPollInterface miface : mifaces) {
+        if (polled != null) {
+            LOG.info("doPoll: PollerMonitor return interfaces number: {}", polled.size());
+            final List<OnmsSnmpInterface> updates = new ArrayList<OnmsSnmpInterface>(polled.size());
+            for (int i = 0; i < polled.size(); i++) {
+                owners.get(i).processStatus(polled.get(i), now, updates);
+            } //end while on interface
+
+            // Save Data to Database
+            if (!updates.isEmpty()) {
+                try {
+                    getContext().update(getParent().getNodeid(), updates);
+                } catch (Throwable e) {
+                    LOG.warn("Failing updating {} Interfaces {}", updates.size(), e.getLocalizedMessage());
+                    getParent().getParent().refresh(getParent().getNodeid());
+                }
+            }
+        } else {
+            LOG.error("the monitor return null object");
+        } //end If not null
+
+    }
+
+    private void processStatus(SnmpMinimalPollInterface miface, Date now, List<OnmsSnmpInterface> updates) {
                 LOG.debug("Working on interface with ifindex: {}", miface.getIfindex());
                 LOG.debug("Interface PollStatus is {}", miface.getStatus().getStatusName());
                 if (miface.getStatus().isUp()) {
                     OnmsSnmpInterface iface = m_snmpinterfaces.get(Integer.valueOf(miface.getIfindex()));
+                    if (iface == null) {
+                        LOG.debug("Interface with ifindex {} is no longer polled.", miface.getIfindex());
+                        return;
+                    }
 
                     LOG.debug("Previuos status Admin/Oper: {}/{}", iface.getIfAdminStatus(), iface.getIfOperStatus());
                     LOG.debug("Current status Admin/Oper: {}/{}", miface.getAdminstatus(), miface.getOperstatus());
@@ -368,30 +432,10 @@ public class PollableSnmpInterface implements ReadyRunnable {
                     iface.setIfAdminStatus(Integer.valueOf(miface.getAdminstatus()));
                     iface.setIfOperStatus(Integer.valueOf(miface.getOperstatus()));
                     iface.setLastSnmpPoll(now);
-                                    
-                    
-                    // Save Data to Database
-                    try {
-                        update(iface);
-                    } catch (Throwable e) {
-                        LOG.warn("Failing updating Interface {} {}", iface.getIfName(), e.getLocalizedMessage());
-                        refresh = true;
-                    }
+                    updates.add(iface);
                 } else {
                     LOG.debug("No {} data available for interface.", getContext().getServiceName());
                 } //End if status OK
-            } //end while on interface
-            
-            if (refresh) 
-                getParent().getParent().refresh(getParent().getNodeid());
-        } else {
-            LOG.error("the monitor return null object");
-        } //end If not null
-
-    }
-    
-    private void update(OnmsSnmpInterface iface) {
-        getContext().update(iface);
     }
     
     private void sendAdminUpEvent(OnmsSnmpInterface iface) {
@@ -459,7 +503,10 @@ public class PollableSnmpInterface implements ReadyRunnable {
      * <p>delete</p>
      */
     protected void delete() {
-        m_schedule.unschedule();
+        // coalesced groups are polled by another group and have no schedule of their own
+        if (m_schedule != null) {
+            m_schedule.unschedule();
+        }
     }
     
     /**
@@ -37,9 +37,10 @@ import org.opennms.netmgt.dao.support.AttributeMatchingResourceVisitor;
 import org.opennms.netmgt.dao.support.ResourceAttributeFilteringResourceVisitor;
 import org.opennms.netmgt.dao.support.ResourceTypeFilteringResourceVisitor;
 import org.opennms.netmgt.dao.support.ResourceWalker;
-import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
 import org.opennms.netmgt.model.AttributeStatistic;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 /**
@@ -50,8 +51,9 @@ import org.springframework.beans.factory.InitializingBean;
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  */
 public abstract class BaseReportInstance extends AbstractReportInstance implements InitializingBean {
+    private static final Logger LOG = LoggerFactory.getLogger(BaseReportInstance.class);
     private final AttributeStatisticVisitorWithResults m_attributeStatisticVisitor;
-    private final RrdStatisticAttributeVisitor m_rrdVisitor = new RrdStatisticAttributeVisitor();
+    private final ParallelRrdStatisticAttributeVisitor m_rrdVisitor = new ParallelRrdStatisticAttributeVisitor();
     private final AttributeMatchingResourceVisitor m_attributeVisitor = new AttributeMatchingResourceVisitor();
     private final ResourceTypeFilteringResourceVisitor m_resourceTypeVisitor = new ResourceTypeFilteringResourceVisitor();
     private String m_resourceAttributeKey;
@@ -94,7 +96,9 @@ public abstract class BaseReportInstance extends AbstractReportInstance implemen
     public void walk() {
         setJobStartedDate(new Date());
         getWalker().walk();
+        m_rrdVisitor.finish();
         setJobCompletedDate(new Date());
+        LOG.debug("Fetched {} attributes in {} ms", m_rrdVisitor.getAttributeCount(), getJobCompletedDate().getTime() - getJobStartedDate().getTime());
     }
 
     /**
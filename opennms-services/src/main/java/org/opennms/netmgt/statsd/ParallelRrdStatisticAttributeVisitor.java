@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.statsd;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.netmgt.dao.api.RrdDao;
+import org.opennms.netmgt.model.AttributeStatistic;
+import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
+import org.opennms.netmgt.model.AttributeVisitor;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Fetches the statistics for the attributes of a report on a shared
+ * fork/join pool instead of on the thread walking the resources.
+ *
+ * The resource walk stays on the calling thread, since it may need the
+ * Hibernate session bound to it, and hands the matching attributes over in
+ * chunks.  Each chunk is split across the pool, and every worker keeps only
+ * the top N of its share in its own instance of the report's statistic
+ * visitor.  Finished chunks are merged into the report's visitor on the
+ * calling thread, so only a bounded number of chunks and N results per
+ * chunk are held in memory however many resources are walked.
+ *
+ * {@link #finish()} must be called once the walk is complete.
+ */
+class ParallelRrdStatisticAttributeVisitor implements AttributeVisitor, InitializingBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelRrdStatisticAttributeVisitor.class);
+
+    private static final int THREADS = Integer.getInteger("org.opennms.netmgt.statsd.threads", Runtime.getRuntime().availableProcessors() * 2);
+    static final int CHUNK_SIZE = Integer.getInteger("org.opennms.netmgt.statsd.chunkSize", 256);
+    static final int MAX_PENDING_CHUNKS = Math.max(1, Integer.getInteger("org.opennms.netmgt.statsd.maxPendingChunks", THREADS * 4));
+    private static final int SPLIT_THRESHOLD = 16;
+
+    private static final ForkJoinPool s_pool = new ForkJoinPool(THREADS, new ForkJoinWorkerThreadFactory() {
+        private final AtomicInteger m_threadNumber = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+            thread.setName("Statsd-Worker-" + m_threadNumber.incrementAndGet());
+            return thread;
+        }
+    }, null, false);
+
+    private RrdDao m_rrdDao;
+    private String m_consolidationFunction;
+    private Long m_startTime;
+    private Long m_endTime;
+    private AttributeStatisticVisitorWithResults m_statisticVisitor;
+
+    private final Semaphore m_pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+    private final LinkedList<ForkJoinTask<SortedSet<AttributeStatistic>>> m_pending = new LinkedList<ForkJoinTask<SortedSet<AttributeStatistic>>>();
+    private List<OnmsAttribute> m_chunk = new ArrayList<OnmsAttribute>();
+    private int m_attributeCount = 0;
+
+    /** {@inheritDoc} */
+    @Override
+    public void visit(OnmsAttribute attribute) {
+        if (!RrdGraphAttribute.class.isAssignableFrom(attribute.getClass())) {
+            // Nothing to do if we can't cast to an RrdGraphAttribute
+            return;
+        }
+
+        m_attributeCount++;
+        m_chunk.add(attribute);
+        if (m_chunk.size() >= CHUNK_SIZE) {
+            try {
+                submitChunk();
+            } catch (final RuntimeException e) {
+                cancelPending();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Waits for all outstanding fetches and merges their results into the
+     * statistic visitor.
+     */
+    public void finish() {
+        try {
+            submitChunk();
+            mergeChunks(true);
+        } catch (final RuntimeException e) {
+            cancelPending();
+            throw e;
+        }
+    }
+
+    /**
+     * <p>getAttributeCount</p>
+     *
+     * @return the number of attributes handed to the workers so far
+     */
+    public int getAttributeCount() {
+        return m_attributeCount;
+    }
+
+    /**
+     * @return the number of chunks submitted to the workers that have not
+     * been merged yet
+     */
+    int getPendingChunkCount() {
+        return m_pending.size();
+    }
+
+    private void submitChunk() {
+        if (m_chunk.isEmpty()) {
+            return;
+        }
+        mergeChunks(false);
+        // a permit is only given back once its chunk is merged, so wait for
+        // the oldest chunk rather than queueing results behind a slow one
+        while (!m_pendingChunks.tryAcquire()) {
+            mergeFirstChunk();
+        }
+        m_pending.add(s_pool.submit(new StatisticTask(m_chunk)));
+        m_chunk = new ArrayList<OnmsAttribute>();
+    }
+
+    private void mergeChunks(final boolean wait) {
+        while (!m_pending.isEmpty() && (wait || m_pending.getFirst().isDone())) {
+            mergeFirstChunk();
+        }
+    }
+
+    private void mergeFirstChunk() {
+        final ForkJoinTask<SortedSet<AttributeStatistic>> task = m_pending.removeFirst();
+        try {
+            for (final AttributeStatistic stat : task.join()) {
+                m_statisticVisitor.visit(stat.getAttribute(), stat.getStatistic());
+            }
+        } finally {
+            m_pendingChunks.release();
+        }
+    }
+
+    private void cancelPending() {
+        for (final ForkJoinTask<SortedSet<AttributeStatistic>> task : m_pending) {
+            task.cancel(false);
+        }
+        m_pendingChunks.release(m_pending.size());
+        m_pending.clear();
+        m_chunk = new ArrayList<OnmsAttribute>();
+    }
+
+    private AttributeStatisticVisitorWithResults createWorkerVisitor() {
+        final AttributeStatisticVisitorWithResults visitor;
+        try {
+            visitor = m_statisticVisitor.getClass().newInstance();
+        } catch (final InstantiationException e) {
+            throw new IllegalStateException("Could not create an instance of " + m_statisticVisitor.getClass().getName(), e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException("Could not create an instance of " + m_statisticVisitor.getClass().getName(), e);
+        }
+        visitor.setCount(m_statisticVisitor.getCount());
+        return visitor;
+    }
+
+    private class StatisticTask extends RecursiveTask<SortedSet<AttributeStatistic>> {
+        private static final long serialVersionUID = 4419617468532744713L;
+
+        private final List<OnmsAttribute> m_attributes;
+
+        public StatisticTask(final List<OnmsAttribute> attributes) {
+            m_attributes = attributes;
+        }
+
+        @Override
+        protected SortedSet<AttributeStatistic> compute() {
+            if (m_attributes.size() <= SPLIT_THRESHOLD) {
+                return fetch();
+            }
+
+            final int middle = m_attributes.size() / 2;
+            final StatisticTask left = new StatisticTask(m_attributes.subList(0, middle));
+            final StatisticTask right = new StatisticTask(m_attributes.subList(middle, m_attributes.size()));
+            left.fork();
+            final SortedSet<AttributeStatistic> rightResults = right.compute();
+
+            final AttributeStatisticVisitorWithResults visitor = createWorkerVisitor();
+            for (final AttributeStatistic stat : left.join()) {
+                visitor.visit(stat.getAttribute(), stat.getStatistic());
+            }
+            for (final AttributeStatistic stat : rightResults) {
+                visitor.visit(stat.getAttribute(), stat.getStatistic());
+            }
+            return visitor.getResults();
+        }
+
+        private SortedSet<AttributeStatistic> fetch() {
+            final AttributeStatisticVisitorWithResults visitor = createWorkerVisitor();
+            for (final OnmsAttribute attribute : m_attributes) {
+                final double statistic = m_rrdDao.getPrintValue(attribute, m_consolidationFunction, m_startTime, m_endTime);
+
+                LOG.debug("The value of {} is {}", attribute, statistic);
+
+                if (!Double.isNaN(statistic)) {
+                    visitor.visit(attribute, statistic);
+                }
+            }
+            return visitor.getResults();
+        }
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_rrdDao != null, "property rrdDao must be set to a non-null value");
+        Assert.state(m_consolidationFunction != null, "property consolidationFunction must be set to a non-null value");
+        Assert.state(m_startTime != null, "property startTime must be set to a non-null value");
+        Assert.state(m_endTime != null, "property endTime must be set to a non-null value");
+        Assert.state(m_statisticVisitor != null, "property statisticVisitor must be set to a non-null value");
+    }
+
+    public RrdDao getRrdDao() {
+        return m_rrdDao;
+    }
+
+    public void setRrdDao(RrdDao rrdDao) {
+        m_rrdDao = rrdDao;
+    }
+
+    public AttributeStatisticVisitorWithResults getStatisticVisitor() {
+        return m_statisticVisitor;
+    }
+
+    public void setStatisticVisitor(AttributeStatisticVisitorWithResults statisticVisitor) {
+        m_statisticVisitor = statisticVisitor;
+    }
+
+    public String getConsolidationFunction() {
+        return m_consolidationFunction;
+    }
+
+    public void setConsolidationFunction(String consolidationFunction) {
+        m_consolidationFunction = consolidationFunction;
+    }
+
+    public Long getEndTime() {
+        return m_endTime;
+    }
+
+    public void setEndTime(Long endTime) {
+        m_endTime = endTime;
+    }
+
+    public Long getStartTime() {
+        return m_startTime;
+    }
+
+    public void setStartTime(Long startTime) {
+        m_startTime = startTime;
+    }
+}
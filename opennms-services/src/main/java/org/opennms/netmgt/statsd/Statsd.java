@@ -29,6 +29,10 @@
 package org.opennms.netmgt.statsd;
 
 import java.text.ParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.netmgt.capsd.EventUtils;
 import org.opennms.netmgt.daemon.SpringServiceDaemon;
@@ -92,6 +96,7 @@ public class Statsd implements SpringServiceDaemon {
     private long m_reportsCompleted = 0;
     private long m_reportsPersisted = 0;
     private long m_reportRunTime = 0;
+    private final Map<String, Long> m_reportRunTimes = new ConcurrentHashMap<String, Long>();
 
     /**
      * <p>handleReloadConfigEvent</p>
@@ -223,7 +228,7 @@ public class Statsd implements SpringServiceDaemon {
      * @param reportDef a {@link org.opennms.netmgt.statsd.ReportDefinition} object.
      * @throws java.lang.Throwable if any.
      */
-    public void runReport(ReportDefinition reportDef) throws Throwable {
+    public void runReport(final ReportDefinition reportDef) throws Throwable {
         final ReportInstance report;
         try {
             report = reportDef.createReport(m_nodeDao, m_resourceDao, m_rrdDao, m_filterDao);
@@ -246,7 +251,9 @@ public class Statsd implements SpringServiceDaemon {
                 m_reportPersister.persist(report);
                 LOG.debug("Report {} persisted", report);
                 accountReportPersist();
-                accountReportRunTime(System.currentTimeMillis() - reportStartTime);
+                long reportRunTime = System.currentTimeMillis() - reportStartTime;
+                LOG.info("Report {} ran in {} ms", reportDef.getDescription(), reportRunTime);
+                accountReportRunTime(reportDef, reportRunTime);
             }
         });
     }
@@ -401,8 +408,9 @@ public class Statsd implements SpringServiceDaemon {
         m_reportsPersisted++;
     }
 
-    private synchronized void accountReportRunTime(long runtime) {
+    private synchronized void accountReportRunTime(ReportDefinition reportDef, long runtime) {
         m_reportRunTime += runtime;
+        m_reportRunTimes.put(reportDef.getDescription(), runtime);
     }
 
     public long getReportsStarted() {
@@ -420,4 +428,8 @@ public class Statsd implements SpringServiceDaemon {
     public long getReportRunTime() {
         return m_reportRunTime;
     }
+
+    public Map<String, Long> getReportRunTimes() {
+        return Collections.unmodifiableMap(new TreeMap<String, Long>(m_reportRunTimes));
+    }
 }
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.statsd.jmx;
 
+import java.util.Map;
+
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
 /**
@@ -73,4 +75,10 @@ public class Statsd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         return getDaemon().getReportRunTime();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getReportRunTimes() {
+        return getDaemon().getReportRunTimes();
+    }
+
 }
@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.tl1d;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multiplexes the connections of any number of {@link Tl1SelectorClient}s
+ * onto a few selector threads, set by the
+ * org.opennms.netmgt.tl1d.selectorThreads system property (2 by default).
+ *
+ * Each connection is read into a byte buffer and split into messages on the
+ * ';' terminator as the bytes arrive, so a message may span any number of
+ * reads.  Lost or failed connections are retried after the client's
+ * reconnection delay, doubled for every failed attempt up to ten times the
+ * delay, and spread by +/-25% so that the network elements behind a DCN
+ * outage are not all reconnected at the same moment.
+ */
+public class Tl1Connector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Tl1Connector.class);
+
+    private static final int THREADS = Integer.getInteger("org.opennms.netmgt.tl1d.selectorThreads", 2);
+
+    private static final long CONNECT_TIMEOUT = Long.getLong("org.opennms.netmgt.tl1d.connectTimeout", 30000L);
+
+    // longest message we keep buffering without seeing a terminator
+    private static final int MAX_MESSAGE_LENGTH = 64 * 1024;
+
+    private static Tl1Connector s_instance;
+
+    private final Reactor[] m_reactors;
+    private final AtomicInteger m_next = new AtomicInteger(0);
+    private final Random m_random = new Random();
+
+    private final AtomicLong m_connects = new AtomicLong(0);
+    private final AtomicLong m_messages = new AtomicLong(0);
+
+    /**
+     * Returns the connector shared by all TL1 clients, starting it if
+     * necessary.
+     *
+     * @return a {@link org.opennms.netmgt.tl1d.Tl1Connector} object.
+     */
+    public static synchronized Tl1Connector getInstance() {
+        if (s_instance == null) {
+            s_instance = new Tl1Connector(THREADS);
+        }
+        return s_instance;
+    }
+
+    /**
+     * Stops the connector shared by all TL1 clients, if it was started.  The
+     * next call to {@link #getInstance()} starts a new one.
+     */
+    public static synchronized void stopInstance() {
+        if (s_instance != null) {
+            s_instance.stop();
+            s_instance = null;
+        }
+    }
+
+    /**
+     * <p>Constructor for Tl1Connector.</p>
+     *
+     * @param threads the number of selector threads
+     */
+    public Tl1Connector(final int threads) {
+        final LogPreservingThreadFactory factory = new LogPreservingThreadFactory("TL1-Connector", threads);
+        m_reactors = new Reactor[Math.max(1, threads)];
+        for (int i = 0; i < m_reactors.length; i++) {
+            try {
+                m_reactors[i] = new Reactor();
+            } catch (final IOException e) {
+                throw new IllegalStateException("Unable to open a selector", e);
+            }
+            final Thread thread = factory.newThread(m_reactors[i]);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Starts connecting the client to its network element.
+     *
+     * @param client a {@link org.opennms.netmgt.tl1d.Tl1SelectorClient} object.
+     */
+    public void register(final Tl1SelectorClient client) {
+        final Reactor reactor = m_reactors[(m_next.getAndIncrement() & Integer.MAX_VALUE) % m_reactors.length];
+        final Session session = new Session(client, reactor);
+        client.setSession(session);
+        reactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                reactor.connect(session);
+            }
+        });
+    }
+
+    /**
+     * Disconnects the client and stops reconnecting it.
+     *
+     * @param client a {@link org.opennms.netmgt.tl1d.Tl1SelectorClient} object.
+     */
+    public void unregister(final Tl1SelectorClient client) {
+        final Session session = client.getSession();
+        if (session == null) {
+            return;
+        }
+        client.setSession(null);
+        session.m_reactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                session.m_reactor.remove(session);
+            }
+        });
+    }
+
+    /**
+     * Closes all connections and stops the selector threads.
+     */
+    public void stop() {
+        for (final Reactor reactor : m_reactors) {
+            reactor.stop();
+        }
+    }
+
+    /**
+     * <p>getConnectionCount</p>
+     *
+     * @return the number of connections currently established
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (final Reactor reactor : m_reactors) {
+            count += reactor.m_connected.get();
+        }
+        return count;
+    }
+
+    /**
+     * <p>getConnectCount</p>
+     *
+     * @return the number of connections established so far
+     */
+    public long getConnectCount() {
+        return m_connects.get();
+    }
+
+    /**
+     * <p>getMessageCount</p>
+     *
+     * @return the number of messages read so far
+     */
+    public long getMessageCount() {
+        return m_messages.get();
+    }
+
+    /**
+     * How long to wait before the given reconnection attempt.
+     */
+    long reconnectDelay(final long reconnectionDelay, final int attempts) {
+        final long base = Math.min(reconnectionDelay << Math.min(Math.max(attempts - 1, 0), 4), reconnectionDelay * 10);
+        final double jitter;
+        synchronized (m_random) {
+            jitter = 0.75 + m_random.nextDouble() * 0.5;
+        }
+        return (long)(base * jitter);
+    }
+
+    /**
+     * The connection to one network element.  Only used by its reactor's
+     * thread.
+     */
+    static class Session {
+        final Tl1SelectorClient m_client;
+        final Reactor m_reactor;
+        final StringBuilder m_message = new StringBuilder();
+        SocketChannel m_channel;
+        int m_attempts = 0;
+        long m_deadline = 0;
+        boolean m_connected = false;
+        boolean m_removed = false;
+
+        Session(final Tl1SelectorClient client, final Reactor reactor) {
+            m_client = client;
+            m_reactor = reactor;
+        }
+    }
+
+    private class Reactor implements Runnable {
+        private final Selector m_selector;
+        private final ConcurrentLinkedQueue<Runnable> m_tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(16 * 1024);
+        private final Set<Session> m_connecting = new HashSet<Session>();
+        private final PriorityQueue<Session> m_reconnects = new PriorityQueue<Session>(16, new Comparator<Session>() {
+            @Override
+            public int compare(final Session a, final Session b) {
+                return a.m_deadline < b.m_deadline ? -1 : a.m_deadline == b.m_deadline ? 0 : 1;
+            }
+        });
+        private final AtomicInteger m_connected = new AtomicInteger(0);
+        private volatile boolean m_running = true;
+
+        Reactor() throws IOException {
+            m_selector = Selector.open();
+        }
+
+        void execute(final Runnable task) {
+            m_tasks.add(task);
+            m_selector.wakeup();
+        }
+
+        void stop() {
+            m_running = false;
+            m_selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (m_running) {
+                try {
+                    Runnable task;
+                    while ((task = m_tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    m_selector.select(nextTimeout());
+
+                    final Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        final SelectionKey key = it.next();
+                        it.remove();
+                        final Session session = (Session)key.attachment();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isConnectable()) {
+                            finishConnect(session, key);
+                        } else if (key.isReadable()) {
+                            read(session);
+                        }
+                    }
+
+                    final long now = System.currentTimeMillis();
+                    for (final Iterator<Session> cit = m_connecting.iterator(); cit.hasNext(); ) {
+                        final Session session = cit.next();
+                        if (session.m_deadline <= now) {
+                            cit.remove();
+                            LOG.error("TL1 Connection to {}:{} timed out", session.m_client.getHost(), session.m_client.getPort());
+                            disconnect(session, null);
+                        }
+                    }
+                    while (!m_reconnects.isEmpty() && m_reconnects.peek().m_deadline <= now) {
+                        connect(m_reconnects.poll());
+                    }
+                } catch (final Throwable e) {
+                    LOG.error("Unexpected error in TL1 connector", e);
+                }
+            }
+
+            for (final SelectionKey key : m_selector.keys()) {
+                closeQuietly(((Session)key.attachment()).m_channel);
+            }
+            try {
+                m_selector.close();
+            } catch (final IOException e) {
+                LOG.warn("Unable to close selector", e);
+            }
+        }
+
+        private long nextTimeout() {
+            long next = 1000;
+            final long now = System.currentTimeMillis();
+            if (!m_reconnects.isEmpty()) {
+                next = Math.min(next, m_reconnects.peek().m_deadline - now);
+            }
+            for (final Session session : m_connecting) {
+                next = Math.min(next, session.m_deadline - now);
+            }
+            return Math.max(1, next);
+        }
+
+        void connect(final Session session) {
+            if (session.m_removed) {
+                return;
+            }
+            LOG.debug("connect: connecting to TL1 element {}:{}", session.m_client.getHost(), session.m_client.getPort());
+            try {
+                session.m_channel = SocketChannel.open();
+                session.m_channel.configureBlocking(false);
+                session.m_message.setLength(0);
+                if (session.m_channel.connect(new InetSocketAddress(session.m_client.getHost(), session.m_client.getPort()))) {
+                    session.m_channel.register(m_selector, SelectionKey.OP_READ, session);
+                    connected(session);
+                } else {
+                    session.m_channel.register(m_selector, SelectionKey.OP_CONNECT, session);
+                    session.m_deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+                    m_connecting.add(session);
+                }
+            } catch (final IOException e) {
+                LOG.error("TL1 Connection Failed to {}:{}", session.m_client.getHost(), session.m_client.getPort());
+                LOG.debug(e.getMessage());
+                disconnect(session, null);
+            } catch (final UnresolvedAddressException e) {
+                // the host may resolve again later, so keep retrying it like any other failure
+                LOG.error("TL1 Connection Failed to {}:{}: unable to resolve host", session.m_client.getHost(), session.m_client.getPort());
+                disconnect(session, null);
+            }
+        }
+
+        private void finishConnect(final Session session, final SelectionKey key) {
+            m_connecting.remove(session);
+            try {
+                session.m_channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                connected(session);
+            } catch (final IOException e) {
+                LOG.error("TL1 Connection Failed to {}:{}", session.m_client.getHost(), session.m_client.getPort());
+                LOG.debug(e.getMessage());
+                disconnect(session, null);
+            }
+        }
+
+        private void connected(final Session session) {
+            LOG.info("connected: TL1 client connected to {}:{}", session.m_client.getHost(), session.m_client.getPort());
+            session.m_attempts = 0;
+            session.m_connected = true;
+            m_connected.incrementAndGet();
+            m_connects.incrementAndGet();
+        }
+
+        private void read(final Session session) {
+            try {
+                int read;
+                while ((read = session.m_channel.read(m_buffer)) > 0) {
+                    m_buffer.flip();
+                    while (m_buffer.hasRemaining()) {
+                        final char ch = (char)(m_buffer.get() & 0xff);
+                        session.m_message.append(ch);
+                        if (ch == ';') {
+                            m_messages.incrementAndGet();
+                            session.m_client.messageReceived(session.m_message.toString());
+                            session.m_message.setLength(0);
+                        } else if (session.m_message.length() > MAX_MESSAGE_LENGTH) {
+                            LOG.warn("read: discarding {} characters from {}:{} without a message terminator", session.m_message.length(), session.m_client.getHost(), session.m_client.getPort());
+                            session.m_message.setLength(0);
+                        }
+                    }
+                    m_buffer.clear();
+                }
+                if (read < 0) {
+                    LOG.warn("read: connection closed by TL1 element {}:{}", session.m_client.getHost(), session.m_client.getPort());
+                    disconnect(session, null);
+                }
+            } catch (final IOException e) {
+                m_buffer.clear();
+                disconnect(session, e);
+            }
+        }
+
+        private void disconnect(final Session session, final IOException e) {
+            if (e != null) {
+                LOG.error("disconnect: connection failure to {}:{}", session.m_client.getHost(), session.m_client.getPort(), e);
+            }
+            if (session.m_connected) {
+                session.m_connected = false;
+                m_connected.decrementAndGet();
+            }
+            closeQuietly(session.m_channel);
+            session.m_channel = null;
+            m_connecting.remove(session);
+
+            if (!session.m_removed) {
+                session.m_attempts++;
+                final long delay = reconnectDelay(session.m_client.getReconnectionDelay(), session.m_attempts);
+                LOG.info("disconnect: reconnecting to {}:{} in {} ms, attempt {}", session.m_client.getHost(), session.m_client.getPort(), delay, session.m_attempts);
+                session.m_deadline = System.currentTimeMillis() + delay;
+                m_reconnects.add(session);
+            }
+        }
+
+        void remove(final Session session) {
+            session.m_removed = true;
+            m_reconnects.remove(session);
+            disconnect(session, null);
+            LOG.info("TL1 client stopped for: {}:{}", session.m_client.getHost(), session.m_client.getPort());
+        }
+
+        private void closeQuietly(final SocketChannel channel) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                // also cancels the channel's key
+                channel.close();
+            } catch (final ClosedChannelException e) {
+                // already closed
+            } catch (final IOException e) {
+                LOG.warn("Unable to close TL1 connection", e);
+            }
+        }
+    }
+}
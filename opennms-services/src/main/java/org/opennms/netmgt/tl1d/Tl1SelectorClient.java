@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.tl1d;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Tl1Client that does not need a thread of its own.  The connection is
+ * handled by a shared {@link Tl1Connector}, so thousands of network elements
+ * can be monitored with a couple of threads.
+ *
+ * Use it by setting tl1-client-api="org.opennms.netmgt.tl1d.Tl1SelectorClient"
+ * on the elements in tl1d-configuration.xml.
+ */
+public class Tl1SelectorClient implements Tl1Client {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Tl1SelectorClient.class);
+
+    private String m_host;
+    private int m_port;
+    private long m_reconnectionDelay;
+    private BlockingQueue<Tl1AutonomousMessage> m_tl1Queue;
+    private Tl1AutonomousMessageProcessor m_messageProcessor;
+    private Tl1Connector m_connector;
+    private volatile Tl1Connector.Session m_session;
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public void start() {
+        LOG.info("start: TL1 client: {}:{}", m_host, String.valueOf(m_port));
+        getConnector().register(this);
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public void stop() {
+        LOG.info("Stopping TL1 client: {}:{}", m_host, String.valueOf(m_port));
+        getConnector().unregister(this);
+    }
+
+    /**
+     * Called by the connector for every message read from the element.
+     *
+     * @param rawMessage the message, up to and including its terminator
+     */
+    void messageReceived(final String rawMessage) {
+        LOG.debug("messageReceived: offering message to queue: {}", rawMessage);
+        final Tl1AutonomousMessage message = m_messageProcessor.process(rawMessage, Tl1Message.AUTONOMOUS);
+        if (message != null) {
+            m_tl1Queue.offer(message);
+        } else {
+            LOG.debug("messageReceived: message was null, not offered to queue.");
+        }
+    }
+
+    Tl1Connector.Session getSession() {
+        return m_session;
+    }
+
+    void setSession(final Tl1Connector.Session session) {
+        m_session = session;
+    }
+
+    /**
+     * <p>getConnector</p>
+     *
+     * @return the connector handling this client, the shared one by default
+     */
+    public Tl1Connector getConnector() {
+        if (m_connector == null) {
+            m_connector = Tl1Connector.getInstance();
+        }
+        return m_connector;
+    }
+
+    /**
+     * <p>setConnector</p>
+     *
+     * @param connector a {@link org.opennms.netmgt.tl1d.Tl1Connector} object.
+     */
+    public void setConnector(final Tl1Connector connector) {
+        m_connector = connector;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getHost() {
+        return m_host;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setHost(final String host) {
+        m_host = host;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPort() {
+        return m_port;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setPort(final int port) {
+        m_port = port;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getReconnectionDelay() {
+        return m_reconnectionDelay;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setReconnectionDelay(final long reconnectionDelay) {
+        m_reconnectionDelay = reconnectionDelay;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public BlockingQueue<Tl1AutonomousMessage> getTl1Queue() {
+        return m_tl1Queue;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setTl1Queue(final BlockingQueue<Tl1AutonomousMessage> tl1Queue) {
+        m_tl1Queue = tl1Queue;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Tl1AutonomousMessageProcessor getMessageProcessor() {
+        return m_messageProcessor;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setMessageProcessor(final Tl1AutonomousMessageProcessor messageProcessor) {
+        m_messageProcessor = messageProcessor;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "Tl1Client: class: "+getClass()+"; host: "+m_host+"; port: "+m_port;
+    }
+}
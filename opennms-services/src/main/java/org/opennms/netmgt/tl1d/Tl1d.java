@@ -45,6 +45,7 @@ import org.opennms.netmgt.events.api.annotations.EventHandler;
 import org.opennms.netmgt.events.api.annotations.EventListener;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
 import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +63,11 @@ public class Tl1d extends AbstractServiceDaemon {
 
     private static final String LOG4J_CATEGORY = "tl1d";
 
+    /*
+     * The most messages to forward to eventd in one go.
+     */
+    private static final int EVENT_BATCH_SIZE = Integer.getInteger("org.opennms.netmgt.tl1d.eventBatchSize", 100);
+
 	/*
      * The last status sent to the service control manager.
      */
@@ -195,6 +201,7 @@ public class Tl1d extends AbstractServiceDaemon {
 		stopListeners();
         m_tl1MesssageProcessor.interrupt();
 		removeClients();
+        Tl1Connector.stopInstance();
 	}
 	
 	private void removeClients() {
@@ -256,9 +263,9 @@ public class Tl1d extends AbstractServiceDaemon {
         LOG.info("onInit: Finished Initializing Tl1d connections.");
     }
 
-    private void processMessage(Tl1AutonomousMessage message) {
+    private Event createEvent(Tl1AutonomousMessage message) {
         
-        LOG.debug("processMessage: Processing message: {}", message);
+        LOG.debug("createEvent: Processing message: {}", message);
 
         EventBuilder bldr = new EventBuilder(Tl1AutonomousMessage.UEI, "Tl1d");
         bldr.setHost(message.getHost());
@@ -275,9 +282,23 @@ public class Tl1d extends AbstractServiceDaemon {
         bldr.addParam("aid",message.getAutoBlock().getAid());
         bldr.addParam("additionalParams",message.getAutoBlock().getAdditionalParams());
         
-        m_eventForwarder.sendNow(bldr.getEvent());
-        
-        LOG.debug("processMessage: Message processed: {}", message);
+        return bldr.getEvent();
+    }
+
+    private void processMessages(List<Tl1AutonomousMessage> messages) {
+        Log eventLog = new Log();
+        for (Tl1AutonomousMessage message : messages) {
+            try {
+                eventLog.addEvent(createEvent(message));
+            } catch (Throwable e) {
+                // don't let one bad message lose the rest of the batch
+                LOG.warn("processMessages: unable to create event for message: {}", message, e);
+            }
+        }
+        if (eventLog.getEvents() != null && eventLog.getEvents().getEventCount() > 0) {
+            m_eventForwarder.sendNow(eventLog);
+        }
+        LOG.debug("processMessages: {} messages processed.", messages.size());
     }
 
 
@@ -294,18 +315,23 @@ public class Tl1d extends AbstractServiceDaemon {
     private void doMessageProcessing() {
         LOG.debug("doMessageProcessing: Processing messages.");
         boolean cont = true;
+        List<Tl1AutonomousMessage> messages = new ArrayList<Tl1AutonomousMessage>(EVENT_BATCH_SIZE);
         while (cont ) {
             try {
                 LOG.debug("doMessageProcessing: taking message from queue..");
                 
-                Tl1AutonomousMessage message = m_tl1Queue.take();
+                messages.add(m_tl1Queue.take());
+                // forward whatever else has queued up meanwhile along with it
+                m_tl1Queue.drainTo(messages, EVENT_BATCH_SIZE - 1);
                 
-                LOG.debug("doMessageProcessing: message taken: {}", message);
+                LOG.debug("doMessageProcessing: {} messages taken", messages.size());
                 
-                processMessage(message);
+                processMessages(messages);
             } catch (InterruptedException e) {
                 LOG.warn("doMessageProcessing: received interrupt", e);
                 break;
+            } finally {
+                messages.clear();
             }
         }
         
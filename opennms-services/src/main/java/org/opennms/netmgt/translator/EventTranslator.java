@@ -156,25 +156,25 @@ public class EventTranslator extends AbstractServiceDaemon implements EventListe
             return;
         }
 
-        if (!m_config.isTranslationEvent(e)) {
+        // translating evaluates the same mappings as isTranslationEvent, so
+        // don't run them (and their sql lookups) twice per event
+        List<Event> translated = m_config.translateEvent(e);
+        if (translated == null || translated.isEmpty()) {
             LOG.debug("onEvent: received event that matches no translations: \n", EventUtils.toString(e));
             return;
         }
 
         LOG.debug("onEvent: received valid registered translation event: \n", EventUtils.toString(e));
 
-        List<Event> translated = m_config.translateEvent(e);
-        if (translated != null) {
-            Log log = new Log();
-            Events events = new Events();
-            for (Iterator<Event> iter = translated.iterator(); iter.hasNext();) {
-                Event event = iter.next();
-                events.addEvent(event);
-                LOG.debug("onEvent: sended translated event: \n", EventUtils.toString(event));
-            }
-            log.setEvents(events);
-            getEventManager().sendNow(log);
+        Log log = new Log();
+        Events events = new Events();
+        for (Iterator<Event> iter = translated.iterator(); iter.hasNext();) {
+            Event event = iter.next();
+            events.addEvent(event);
+            LOG.debug("onEvent: sended translated event: \n", EventUtils.toString(event));
         }
+        log.setEvents(events);
+        getEventManager().sendNow(log);
     }
 
     /**
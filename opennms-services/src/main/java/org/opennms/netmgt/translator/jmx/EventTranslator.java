@@ -32,11 +32,15 @@ import java.beans.PropertyVetoException;
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.db.DataSourceFactory;
+import org.opennms.netmgt.config.EventTranslatorConfig;
 import org.opennms.netmgt.config.EventTranslatorConfigFactory;
+import org.opennms.netmgt.config.EventTranslatorConfigFactory.TranslationStatistics;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.events.api.EventIpcManager;
 import org.opennms.netmgt.events.api.EventIpcManagerFactory;
@@ -128,6 +132,60 @@ public class EventTranslator extends AbstractServiceDaemon implements EventTrans
         return getEventTranslator().getStatus();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getTranslationEvents() {
+        long count = 0;
+        for (TranslationStatistics stats : getTranslationStatistics()) {
+            count += stats.getEventCount();
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTranslatedEvents() {
+        long count = 0;
+        for (TranslationStatistics stats : getTranslationStatistics()) {
+            count += stats.getTranslatedCount();
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTranslationTime() {
+        long time = 0;
+        for (TranslationStatistics stats : getTranslationStatistics()) {
+            time += stats.getTotalTime();
+        }
+        return time;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSqlCacheHits() {
+        final EventTranslatorConfigFactory config = getConfigFactory();
+        return config == null ? 0 : config.getSqlCacheHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSqlCacheMisses() {
+        final EventTranslatorConfigFactory config = getConfigFactory();
+        return config == null ? 0 : config.getSqlCacheMisses();
+    }
+
+    private List<TranslationStatistics> getTranslationStatistics() {
+        final EventTranslatorConfigFactory config = getConfigFactory();
+        return config == null ? Collections.<TranslationStatistics>emptyList() : config.getTranslationStatistics();
+    }
+
+    private EventTranslatorConfigFactory getConfigFactory() {
+        final EventTranslatorConfig config = getEventTranslator().getConfig();
+        return config instanceof EventTranslatorConfigFactory ? (EventTranslatorConfigFactory)config : null;
+    }
+
     private org.opennms.netmgt.translator.EventTranslator getEventTranslator() {
         return org.opennms.netmgt.translator.EventTranslator.getInstance();
     }
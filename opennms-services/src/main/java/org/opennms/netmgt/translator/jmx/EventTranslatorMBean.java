@@ -37,4 +37,28 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventTranslatorMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of events run through a translation spec since the configuration was loaded
+     */
+    public long getTranslationEvents();
+
+    /**
+     * @return The number of events produced by the translation specs since the configuration was loaded
+     */
+    public long getTranslatedEvents();
+
+    /**
+     * @return The time spent translating events since the configuration was loaded, in milliseconds
+     */
+    public long getTranslationTime();
+
+    /**
+     * @return The number of sql-value lookups answered from the result cache
+     */
+    public long getSqlCacheHits();
+
+    /**
+     * @return The number of sql-value lookups that went to the database
+     */
+    public long getSqlCacheMisses();
 }
@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.jmx.connectors;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps JMX connections open between collection and poll cycles.
+ *
+ * <p>Connections are pooled by connection type, address and the parameters
+ * that end up in the JMX service URL and the credentials, so collectors and
+ * monitors of the same type talking to the same JVM share them. A connection
+ * that has been idle for longer than the validation interval is checked with
+ * a single getMBeanCount call before it is handed out again, connections that
+ * have been idle for longer than the idle timeout are closed, and callers
+ * invalidate connections that failed so they are closed instead of being
+ * returned to the pool.</p>
+ *
+ * <p>The pool is configured with the following system properties:</p>
+ * <ul>
+ * <li>org.opennms.protocols.jmx.pool.enabled: false closes every connection after use (default true)</li>
+ * <li>org.opennms.protocols.jmx.pool.maxIdlePerKey: idle connections kept per key (default 4)</li>
+ * <li>org.opennms.protocols.jmx.pool.idleTimeout: milliseconds after which an idle connection is closed (default 900000)</li>
+ * <li>org.opennms.protocols.jmx.pool.validateAfter: milliseconds of idle time after which a connection is validated (default 30000)</li>
+ * <li>org.opennms.protocols.jmx.pool.queryNamesTtl: milliseconds wildcard ObjectName queries are cached for (default 300000)</li>
+ * </ul>
+ */
+public class JMXConnectionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JMXConnectionPool.class);
+
+    /** Constant <code>PROPERTY_PREFIX="org.opennms.protocols.jmx.pool."</code> */
+    public static final String PROPERTY_PREFIX = "org.opennms.protocols.jmx.pool.";
+
+    /**
+     * The parameters that select the remote server and the credentials.
+     */
+    private static final String[] KEY_PARAMETERS = { "factory", "port", "protocol", "urlPath", "username", "password", "sunCacao", "version" };
+
+    private static final JMXConnectionPool s_instance = new JMXConnectionPool(
+        Boolean.valueOf(System.getProperty(PROPERTY_PREFIX + "enabled", "true")),
+        Integer.getInteger(PROPERTY_PREFIX + "maxIdlePerKey", 4),
+        Long.getLong(PROPERTY_PREFIX + "idleTimeout", 900000L),
+        Long.getLong(PROPERTY_PREFIX + "validateAfter", 30000L),
+        Long.getLong(PROPERTY_PREFIX + "queryNamesTtl", 300000L));
+
+    /**
+     * Opens a new connection when the pool has none to hand out.
+     */
+    public interface Connector {
+        /**
+         * <p>connect</p>
+         *
+         * @return the new connection, or null if the server can't be reached
+         */
+        ConnectionWrapper connect();
+    }
+
+    private final boolean m_enabled;
+    private final int m_maxIdlePerKey;
+    private final long m_idleTimeout;
+    private final long m_validateAfter;
+    private final long m_queryNamesTtl;
+
+    private final Map<String, Deque<PooledConnection>> m_idle = new HashMap<String, Deque<PooledConnection>>();
+    private long m_lastSweep = System.currentTimeMillis();
+
+    private final AtomicLong m_connectCount = new AtomicLong();
+    private final AtomicLong m_reuseCount = new AtomicLong();
+    private final AtomicLong m_validationFailureCount = new AtomicLong();
+    private final AtomicLong m_evictionCount = new AtomicLong();
+
+    /**
+     * <p>Constructor for JMXConnectionPool.</p>
+     *
+     * @param enabled false to close every connection when it is released
+     * @param maxIdlePerKey the number of idle connections kept per key
+     * @param idleTimeout the idle time in milliseconds after which a connection is closed
+     * @param validateAfter the idle time in milliseconds after which a connection is validated before reuse
+     * @param queryNamesTtl the time in milliseconds wildcard queries are cached for
+     */
+    public JMXConnectionPool(final boolean enabled, final int maxIdlePerKey, final long idleTimeout, final long validateAfter, final long queryNamesTtl) {
+        m_enabled = enabled;
+        m_maxIdlePerKey = maxIdlePerKey;
+        m_idleTimeout = idleTimeout;
+        m_validateAfter = validateAfter;
+        m_queryNamesTtl = queryNamesTtl;
+    }
+
+    /**
+     * <p>getInstance</p>
+     *
+     * @return the pool shared by the JMX collectors and monitors
+     */
+    public static JMXConnectionPool getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Gets the pool key of a connection.
+     *
+     * @param type the connection type, usually the class of the collector or monitor
+     * @param address the address of the server
+     * @param parameters the service parameters
+     * @return the key
+     */
+    public static String getKey(final String type, final InetAddress address, final Map<String, ?> parameters) {
+        final StringBuilder key = new StringBuilder(type).append('|').append(InetAddressUtils.str(address));
+        for (final String parameter : KEY_PARAMETERS) {
+            final Object value = parameters == null ? null : parameters.get(parameter);
+            key.append('|').append(value == null ? "" : value.toString());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets a pooled connection to a server.
+     *
+     * @param type the connection type, usually the class of the collector or monitor
+     * @param address the address of the server
+     * @param parameters the service parameters
+     * @param connector opens a new connection if there is no idle one
+     * @return the connection, to be closed by the caller, or null if the server can't be reached
+     */
+    public PooledConnection getConnection(final String type, final InetAddress address, final Map<String, ?> parameters, final Connector connector) {
+        return getConnection(getKey(type, address, parameters), connector);
+    }
+
+    /**
+     * Gets a pooled connection.
+     *
+     * @param key the pool key
+     * @param connector opens a new connection if there is no idle one
+     * @return the connection, to be closed by the caller, or null if the server can't be reached
+     */
+    public PooledConnection getConnection(final String key, final Connector connector) {
+        PooledConnection connection;
+        while ((connection = takeIdle(key)) != null) {
+            if (System.currentTimeMillis() - connection.m_lastUsed < m_validateAfter || connection.validate()) {
+                m_reuseCount.incrementAndGet();
+                connection.m_reused = true;
+                connection.m_released = false;
+                return connection;
+            }
+            LOG.debug("getConnection: discarding a JMX connection that failed validation");
+            m_validationFailureCount.incrementAndGet();
+            connection.destroy();
+        }
+        final ConnectionWrapper wrapper = connector.connect();
+        if (wrapper == null) {
+            return null;
+        }
+        m_connectCount.incrementAndGet();
+        return new PooledConnection(this, key, wrapper);
+    }
+
+    private synchronized PooledConnection takeIdle(final String key) {
+        final Deque<PooledConnection> idle = m_idle.get(key);
+        if (idle == null) {
+            return null;
+        }
+        // the most recently used one is the most likely to still be alive
+        final PooledConnection connection = idle.pollLast();
+        if (idle.isEmpty()) {
+            m_idle.remove(key);
+        }
+        return connection;
+    }
+
+    private void release(final PooledConnection connection) {
+        final long now = System.currentTimeMillis();
+        connection.m_lastUsed = now;
+        final List<PooledConnection> closing = new ArrayList<PooledConnection>();
+        if (!m_enabled || connection.m_broken) {
+            closing.add(connection);
+        }
+        synchronized (this) {
+            if (closing.isEmpty()) {
+                Deque<PooledConnection> idle = m_idle.get(connection.m_key);
+                if (idle == null) {
+                    idle = new ArrayDeque<PooledConnection>();
+                    m_idle.put(connection.m_key, idle);
+                }
+                if (idle.size() < m_maxIdlePerKey) {
+                    idle.addLast(connection);
+                } else {
+                    closing.add(connection);
+                }
+            }
+            if (now - m_lastSweep >= Math.min(m_idleTimeout, 60000L)) {
+                m_lastSweep = now;
+                sweep(now, closing);
+            }
+        }
+        // closing may block on the network, so it is done outside of the lock
+        for (final PooledConnection c : closing) {
+            c.destroy();
+        }
+    }
+
+    private void sweep(final long now, final List<PooledConnection> closing) {
+        for (final Iterator<Deque<PooledConnection>> it = m_idle.values().iterator(); it.hasNext();) {
+            final Deque<PooledConnection> idle = it.next();
+            // the deque is ordered by last use
+            while (!idle.isEmpty() && now - idle.peekFirst().m_lastUsed >= m_idleTimeout) {
+                closing.add(idle.pollFirst());
+                m_evictionCount.incrementAndGet();
+            }
+            if (idle.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    public void clear() {
+        final List<PooledConnection> closing = new ArrayList<PooledConnection>();
+        synchronized (this) {
+            for (final Deque<PooledConnection> idle : m_idle.values()) {
+                closing.addAll(idle);
+            }
+            m_idle.clear();
+        }
+        for (final PooledConnection c : closing) {
+            c.destroy();
+        }
+    }
+
+    /**
+     * <p>getIdleCount</p>
+     *
+     * @return the number of idle connections
+     */
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (final Deque<PooledConnection> idle : m_idle.values()) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * <p>getConnectCount</p>
+     *
+     * @return the number of connections opened
+     */
+    public long getConnectCount() {
+        return m_connectCount.get();
+    }
+
+    /**
+     * <p>getReuseCount</p>
+     *
+     * @return the number of times an open connection was handed out again
+     */
+    public long getReuseCount() {
+        return m_reuseCount.get();
+    }
+
+    /**
+     * <p>getValidationFailureCount</p>
+     *
+     * @return the number of idle connections that failed validation
+     */
+    public long getValidationFailureCount() {
+        return m_validationFailureCount.get();
+    }
+
+    /**
+     * <p>getEvictionCount</p>
+     *
+     * @return the number of connections closed after the idle timeout
+     */
+    public long getEvictionCount() {
+        return m_evictionCount.get();
+    }
+
+    /**
+     * A connection borrowed from the pool. Closing it returns it to the pool,
+     * unless it has been invalidated.
+     */
+    public static class PooledConnection implements ConnectionWrapper {
+
+        private static class QueryResult {
+            final Set<ObjectName> m_names;
+            final long m_time;
+
+            QueryResult(final Set<ObjectName> names, final long time) {
+                m_names = names;
+                m_time = time;
+            }
+        }
+
+        private final JMXConnectionPool m_pool;
+        private final String m_key;
+        private final ConnectionWrapper m_wrapper;
+        private final Map<String, QueryResult> m_queries = new HashMap<String, QueryResult>();
+        private long m_lastUsed = System.currentTimeMillis();
+        private boolean m_reused = false;
+        private boolean m_broken = false;
+        private boolean m_released = false;
+
+        PooledConnection(final JMXConnectionPool pool, final String key, final ConnectionWrapper wrapper) {
+            m_pool = pool;
+            m_key = key;
+            m_wrapper = wrapper;
+        }
+
+        /**
+         * <p>getMBeanServer</p>
+         *
+         * @return a {@link javax.management.MBeanServerConnection} object.
+         */
+        @Override
+        public MBeanServerConnection getMBeanServer() {
+            return m_wrapper.getMBeanServer();
+        }
+
+        /**
+         * Returns the connection to the pool.
+         */
+        @Override
+        public void close() {
+            if (!m_released) {
+                m_released = true;
+                m_pool.release(this);
+            }
+        }
+
+        /**
+         * Marks the connection as broken, so it is closed instead of being
+         * returned to the pool.
+         */
+        public void invalidate() {
+            m_broken = true;
+        }
+
+        /**
+         * <p>isReused</p>
+         *
+         * @return true if the connection was opened by an earlier borrower
+         */
+        public boolean isReused() {
+            return m_reused;
+        }
+
+        /**
+         * Gets the names of the MBeans matching a pattern. The result is
+         * cached for the lifetime of the connection, up to the configured time
+         * to live.
+         *
+         * @param objectName the pattern
+         * @return the names of the matching MBeans
+         * @throws java.io.IOException if the query fails
+         * @throws javax.management.MalformedObjectNameException if the pattern is invalid
+         */
+        public Set<ObjectName> queryNames(final String objectName) throws IOException, MalformedObjectNameException {
+            final long now = System.currentTimeMillis();
+            QueryResult result = m_queries.get(objectName);
+            if (result == null || now - result.m_time >= m_pool.m_queryNamesTtl) {
+                result = new QueryResult(getMBeanServer().queryNames(new ObjectName(objectName), null), now);
+                m_queries.put(objectName, result);
+            }
+            return result.m_names;
+        }
+
+        /**
+         * Drops the cached result of a pattern, so the next query goes to the
+         * server.
+         *
+         * @param objectName the pattern
+         */
+        public void forgetQuery(final String objectName) {
+            m_queries.remove(objectName);
+        }
+
+        private boolean validate() {
+            try {
+                getMBeanServer().getMBeanCount();
+                return true;
+            } catch (final Exception e) {
+                return false;
+            }
+        }
+
+        private void destroy() {
+            try {
+                m_wrapper.close();
+            } catch (final Throwable t) {
+                LOG.debug("destroy: failed to close JMX connection", t);
+            }
+        }
+    }
+}
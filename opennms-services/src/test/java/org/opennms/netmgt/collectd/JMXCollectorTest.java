@@ -60,6 +60,7 @@ import org.opennms.netmgt.config.BeanInfo;
 import org.opennms.netmgt.config.JMXDataCollectionConfigFactory;
 import org.opennms.netmgt.config.collectd.jmx.Attrib;
 import org.opennms.protocols.jmx.connectors.ConnectionWrapper;
+import org.opennms.protocols.jmx.connectors.JMXConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,6 +110,8 @@ public class JMXCollectorTest {
         jmxNodeInfo = null;
         jmxCollector.release();
         jmxCollector = null;
+        // pooled connections refer to the test instance that opened them
+        JMXConnectionPool.getInstance().clear();
         platformMBeanServer.unregisterMBean(new ObjectName("org.opennms.netmgt.collectd.jmxhelper:type=JmxTest"));
         platformMBeanServer = null;
         EasyMock.verify(collectionAgent);
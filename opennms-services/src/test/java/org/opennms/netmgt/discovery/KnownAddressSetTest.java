@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import org.junit.Test;
+
+public class KnownAddressSetTest {
+
+    @Test
+    public void testAddRemove() {
+        KnownAddressSet set = new KnownAddressSet();
+        assertTrue(set.add("192.168.1.1"));
+        assertFalse(set.add("192.168.1.1"));
+        assertTrue(set.add("255.255.255.255"));
+        assertTrue(set.add("0.0.0.0"));
+        assertTrue(set.add("fe80::1"));
+        assertFalse(set.add((String)null));
+        assertEquals(4, set.size());
+
+        assertTrue(set.contains(addr("192.168.1.1")));
+        assertTrue(set.contains(addr("255.255.255.255")));
+        assertTrue(set.contains(addr("0.0.0.0")));
+        assertTrue(set.contains(addr("fe80:0:0:0:0:0:0:1")));
+        assertFalse(set.contains(addr("192.168.1.2")));
+        assertFalse(set.contains(addr("192.168.0.1")));
+        assertFalse(set.contains(addr("10.0.0.1")));
+
+        assertTrue(set.remove("192.168.1.1"));
+        assertFalse(set.remove("192.168.1.1"));
+        assertFalse(set.remove("10.0.0.1"));
+        assertFalse(set.contains(addr("192.168.1.1")));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testWholeRange() {
+        KnownAddressSet set = new KnownAddressSet();
+        // every other address of a /20
+        for (int i = 0; i < 4096; i += 2) {
+            set.add(addr("10.1." + (16 + (i >> 8)) + "." + (i & 0xff)));
+        }
+        assertEquals(2048, set.size());
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(i % 2 == 0, set.contains(addr("10.1." + (16 + (i >> 8)) + "." + (i & 0xff))));
+        }
+    }
+}
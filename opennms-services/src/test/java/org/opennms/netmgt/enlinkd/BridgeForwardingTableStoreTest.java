@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BridgeForwardingTableStoreTest {
+
+    private static String mac(final long value) {
+        return BridgeForwardingTableStore.toString(value);
+    }
+
+    @Test
+    public void testMacConversion() {
+        assertEquals("000000000000", mac(0L));
+        assertEquals("0a1b2c3d4e5f", mac(BridgeForwardingTableStore.toLong("0a1b2c3d4e5f")));
+        assertEquals("ffffffffffff", mac(BridgeForwardingTableStore.toLong("ffffffffffff")));
+        assertFalse(BridgeForwardingTableStore.isMacAddress(null));
+        assertFalse(BridgeForwardingTableStore.isMacAddress("0a1b2c3d4e"));
+        assertFalse(BridgeForwardingTableStore.isMacAddress("0A1B2C3D4E5F"));
+        assertFalse(BridgeForwardingTableStore.isMacAddress("0a:1b:2c:3d"));
+    }
+
+    @Test
+    public void testPutRemove() {
+        BridgeForwardingTableStore store = new BridgeForwardingTableStore();
+        store.put(1, 10, "000000000001");
+        store.put(1, 11, "000000000002");
+        store.put(2, 20, "000000000001");
+        store.put(1, 12, "000000000002");
+        store.put(1, 12, "not a mac");
+
+        assertEquals(2, store.getBridgeCount());
+        assertEquals(3, store.getEntryCount());
+        assertEquals(2, store.getMacCount());
+        assertEquals(Integer.valueOf(12), store.getBridgePort(1, "000000000002"));
+        assertNull(store.getBridgePort(2, "000000000002"));
+        assertEquals(Collections.singleton("000000000002"), store.getForwardingTable(1).get(12));
+
+        store.removeBridge(1);
+        assertEquals(1, store.getBridgeCount());
+        assertEquals(1, store.getMacCount());
+        assertTrue(store.getForwardingTable(1).isEmpty());
+        assertEquals(Collections.singleton(2), store.getBroadcastDomain(3, Collections.singleton("000000000001"), null));
+    }
+
+    /**
+     * 300 broadcast domains of 10 bridges each, with 24 access ports of
+     * 20 stations per bridge and the stations of the whole domain learned on
+     * the uplink: 2 million forwarding table entries.
+     */
+    @Test
+    public void testScale() {
+        final int domains = 300;
+        final int bridgesPerDomain = 10;
+        final int ports = 24;
+        final int stationsPerPort = 20;
+        final int stationsPerBridge = ports * stationsPerPort;
+
+        BridgeForwardingTableStore store = new BridgeForwardingTableStore();
+        for (int d = 0; d < domains; d++) {
+            for (int b = 0; b < bridgesPerDomain; b++) {
+                final int nodeId = d * bridgesPerDomain + b + 1;
+                for (int other = 0; other < bridgesPerDomain; other++) {
+                    for (int s = 0; s < stationsPerBridge; s++) {
+                        final long station = ((long)(d * bridgesPerDomain + other) << 16) | s;
+                        final int port = other == b ? 1 + s / stationsPerPort : ports + 1;
+                        store.put(nodeId, port, mac(station));
+                    }
+                }
+            }
+        }
+        assertEquals(domains * bridgesPerDomain, store.getBridgeCount());
+        assertEquals(domains * bridgesPerDomain * bridgesPerDomain * stationsPerBridge, store.getEntryCount());
+        assertEquals(domains * bridgesPerDomain * stationsPerBridge, store.getMacCount());
+
+        // a changed bridge only touches its own domain: every MAC address of
+        // the domain is looked up once, none of the other domains' are
+        for (int d = 0; d < domains; d++) {
+            final int nodeId = d * bridgesPerDomain + 1;
+            final long lookups = store.getLookupCount();
+            final Set<Integer> domain = store.getBroadcastDomain(nodeId, null, null);
+            assertEquals(bridgesPerDomain * stationsPerBridge, store.getLookupCount() - lookups);
+            assertEquals(bridgesPerDomain - 1, domain.size());
+            for (Integer other : domain) {
+                assertEquals(d, (other - 1) / bridgesPerDomain);
+            }
+        }
+
+        // moving a bridge into another domain
+        final int moved = 1;
+        Map<Integer, Set<String>> bft = new HashMap<Integer, Set<String>>();
+        Set<String> uplink = new HashSet<String>();
+        uplink.add(mac((long)(bridgesPerDomain * 5) << 16));
+        bft.put(ports + 1, uplink);
+        store.setForwardingTable(moved, bft);
+        assertEquals(bft, store.getForwardingTable(moved));
+        assertEquals(bridgesPerDomain, store.getBroadcastDomain(moved, null, null).size());
+        assertFalse(store.getBroadcastDomain(2, null, null).contains(moved));
+        assertEquals(bridgesPerDomain - 2, store.getBroadcastDomain(2, null, null).size());
+    }
+}
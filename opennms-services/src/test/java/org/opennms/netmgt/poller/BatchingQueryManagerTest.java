@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class BatchingQueryManagerTest {
+
+    private static final int NODES = 2000;
+    private static final int SERVICES = 10;
+
+    /**
+     * Records the writes, and sleeps a little for every transaction to
+     * simulate the commit.
+     */
+    private static class RecordingQueryManager implements QueryManager {
+        final List<String> m_writes = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public String getNodeLabel(int nodeId) {
+            return "node" + nodeId;
+        }
+
+        @Override
+        public void openOutage(String outageIdSQL, int nodeId, String ipAddr, String svcName, int dbid, Date date) {
+            m_writes.add("open " + nodeId + " " + svcName);
+        }
+
+        @Override
+        public void resolveOutage(int nodeId, String ipAddr, String svcName, int dbid, Date time) {
+            m_writes.add("resolve " + nodeId + " " + svcName);
+        }
+
+        @Override
+        public void reparentOutages(String ipAddr, int oldNodeId, int newNodeId) {
+        }
+
+        @Override
+        public List<String[]> getNodeServices(int nodeId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void closeOutagesForUnmanagedServices() {
+            m_writes.add("closeUnmanaged");
+        }
+
+        @Override
+        public void closeOutagesForNode(Date closeDate, int eventId, int nodeId) {
+            m_writes.add("closeNode " + nodeId);
+        }
+
+        @Override
+        public void closeOutagesForInterface(Date closeDate, int eventId, int nodeId, String ipAddr) {
+        }
+
+        @Override
+        public void closeOutagesForService(Date closeDate, int eventId, int nodeId, String ipAddr, String serviceName) {
+        }
+
+        @Override
+        public void updateServiceStatus(int nodeId, String ipAddr, String serviceName, String status) {
+        }
+    }
+
+    private static class CountingTransactionManager extends AbstractPlatformTransactionManager {
+        private static final long serialVersionUID = 1L;
+        volatile int m_commits = 0;
+
+        @Override
+        protected Object doGetTransaction() throws TransactionException {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) throws TransactionException {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) throws TransactionException {
+            m_commits++;
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) throws TransactionException {
+        }
+    }
+
+    private RecordingQueryManager m_delegate;
+    private CountingTransactionManager m_transactionManager;
+    private BatchingQueryManager m_queryManager;
+
+    @Before
+    public void setUp() {
+        m_delegate = new RecordingQueryManager();
+        m_transactionManager = new CountingTransactionManager();
+        m_queryManager = new BatchingQueryManager();
+        m_queryManager.setDelegate(m_delegate);
+        m_queryManager.setTransactionTemplate(new TransactionTemplate(m_transactionManager));
+        m_queryManager.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_queryManager.destroy();
+    }
+
+    /**
+     * Replays a router failure: every service behind it goes down and comes
+     * back.  The writes must be done in order, in far fewer transactions
+     * than there are writes, without the poller waiting on them.
+     */
+    @Test
+    public void testRouterFailureReplay() throws Exception {
+        final Date date = new Date();
+        for (int node = 1; node <= NODES; node++) {
+            for (int svc = 0; svc < SERVICES; svc++) {
+                m_queryManager.openOutage(null, node, "10.0.0.1", "SVC" + svc, node, date);
+            }
+        }
+        for (int node = 1; node <= NODES; node++) {
+            for (int svc = 0; svc < SERVICES; svc++) {
+                m_queryManager.resolveOutage(node, "10.0.0.1", "SVC" + svc, node, date);
+            }
+        }
+        m_queryManager.flush();
+
+        final int writes = 2 * NODES * SERVICES;
+
+        assertEquals(writes, m_delegate.m_writes.size());
+        assertEquals("open 1 SVC0", m_delegate.m_writes.get(0));
+        assertEquals("open " + NODES + " SVC" + (SERVICES - 1), m_delegate.m_writes.get(writes / 2 - 1));
+        assertEquals("resolve 1 SVC0", m_delegate.m_writes.get(writes / 2));
+        assertTrue("too many transactions: " + m_transactionManager.m_commits, m_transactionManager.m_commits < writes / 10);
+        assertEquals(0, m_queryManager.getPendingWrites());
+    }
+
+    @Test
+    public void testSynchronousCallsWaitForQueuedWrites() throws Exception {
+        final Date date = new Date();
+        for (int node = 1; node <= 500; node++) {
+            m_queryManager.closeOutagesForNode(date, 1, node);
+        }
+        m_queryManager.closeOutagesForUnmanagedServices();
+
+        assertEquals(501, m_delegate.m_writes.size());
+        assertEquals("closeUnmanaged", m_delegate.m_writes.get(500));
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class OutageCacheTest {
+
+    @Test
+    public void testPutRemove() {
+        OutageCache cache = new OutageCache();
+        cache.put(1, "192.168.1.1", "ICMP", 10);
+        cache.put(1, "192.168.1.1", "HTTP", 11);
+        cache.put(1, "192.168.1.2", "ICMP", 12);
+        cache.put(65, "192.168.1.1", "ICMP", 13);
+        assertEquals(4, cache.size());
+
+        assertEquals(Integer.valueOf(10), cache.remove(1, "192.168.1.1", "ICMP"));
+        assertNull(cache.remove(1, "192.168.1.1", "ICMP"));
+        assertNull(cache.remove(2, "192.168.1.1", "HTTP"));
+        assertEquals(Integer.valueOf(13), cache.remove(65, "192.168.1.1", "ICMP"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRemoveInterfaceAndNode() {
+        OutageCache cache = new OutageCache();
+        cache.put(1, "192.168.1.1", "ICMP", 10);
+        cache.put(1, "192.168.1.1", "HTTP", 11);
+        cache.put(1, "192.168.1.10", "ICMP", 12);
+        cache.put(2, "192.168.1.1", "ICMP", 13);
+
+        cache.removeInterface(1, "192.168.1.1");
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(12), cache.remove(1, "192.168.1.10", "ICMP"));
+
+        cache.removeNode(2);
+        assertEquals(0, cache.size());
+    }
+}
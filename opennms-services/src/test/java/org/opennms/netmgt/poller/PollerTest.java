@@ -137,7 +137,7 @@ public class PollerTest implements TemporaryDatabaseAware<MockDatabase> {
     private OutageAnticipator m_outageAnticipator;
 
     @Autowired
-    private QueryManager m_queryManager;
+    private BatchingQueryManager m_queryManager;
 
     @Autowired
     private MonitoredServiceDao m_monitoredServiceDao;
@@ -1215,6 +1215,15 @@ public class PollerTest implements TemporaryDatabaseAware<MockDatabase> {
         }
     }
 
+    private void flushOutageWrites() {
+        // outages are written in the background
+        try {
+            m_queryManager.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void verifyAnticipated(long millis) {
         verifyAnticipated(millis, true);
     }
@@ -1230,6 +1239,7 @@ public class PollerTest implements TemporaryDatabaseAware<MockDatabase> {
         }
         sleep(1000);
         m_eventMgr.finishProcessingEvents();
+        flushOutageWrites();
         assertEquals("Wrong number of outages opened", m_outageAnticipator.getExpectedOpens(), m_outageAnticipator.getActualOpens());
         assertEquals("Wrong number of outages in outage table", m_outageAnticipator.getExpectedOutages(), m_outageAnticipator.getActualOutages());
         assertTrue("Created outages don't match the expected outages", m_outageAnticipator.checkAnticipated());
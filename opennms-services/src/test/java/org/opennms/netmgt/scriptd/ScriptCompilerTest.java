@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scriptd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.bsf.BSFException;
+import org.apache.bsf.BSFManager;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptCompilerTest {
+
+    private static final String LANGUAGE = "recording";
+
+    private RecordingEngineFactory m_factory;
+    private RecordingBSFManager m_bsf;
+    private ScriptEngineManager m_engineManager;
+
+    @Before
+    public void setUp() {
+        m_factory = new RecordingEngineFactory();
+        m_bsf = new RecordingBSFManager();
+        m_engineManager = new ScriptEngineManager();
+        m_engineManager.registerEngineName(LANGUAGE, m_factory);
+    }
+
+    @Test
+    public void testCompilesOnceAndReuses() throws Exception {
+        ScriptCompiler compiler = new ScriptCompiler(m_engineManager, m_bsf, LANGUAGE);
+        compiler.compile("start-script[0]", LANGUAGE, "init").exec(m_bsf);
+
+        ScriptUnit unit = compiler.compile("event-script[0]", LANGUAGE, "a");
+        assertTrue(unit.isCompiled());
+        for (int i = 0; i < 5; i++) {
+            unit.exec(m_bsf, beans("event" + i));
+        }
+
+        assertEquals(2, m_factory.getCompilations());
+        assertEquals(5, unit.getRuns());
+        assertEquals(0, unit.getFailures());
+        assertTrue(m_bsf.getExecuted().isEmpty());
+
+        // attached scripts are compiled on first use only
+        ScriptUnit attached = compiler.getAttachedScript(LANGUAGE, "b");
+        assertSame(attached, compiler.getAttachedScript(LANGUAGE, "b"));
+        attached.exec(m_bsf, beans("event5"));
+        assertEquals(3, m_factory.getCompilations());
+        assertEquals(Arrays.asList("a:event0", "a:event1", "a:event2", "a:event3", "a:event4", "b:event5"), m_factory.getEngine().getCalls());
+    }
+
+    @Test
+    public void testCompileFailureFallsBackToBsf() throws Exception {
+        ScriptCompiler compiler = new ScriptCompiler(m_engineManager, m_bsf, LANGUAGE);
+
+        ScriptUnit unit = compiler.compile("event-script[0]", LANGUAGE, "broken");
+        assertFalse(unit.isCompiled());
+        unit.exec(m_bsf, beans("event0"));
+        unit.exec(m_bsf, beans("event1"));
+
+        assertEquals(Arrays.asList("broken", "broken"), m_bsf.getExecuted());
+        assertEquals(2, unit.getRuns());
+        assertEquals(0, unit.getFailures());
+    }
+
+    @Test
+    public void testLanguagesAreNotCompiledUnlessListed() throws Exception {
+        ScriptCompiler compiler = new ScriptCompiler(m_engineManager, m_bsf, "");
+
+        ScriptUnit unit = compiler.compile("event-script[0]", LANGUAGE, "a");
+        assertFalse(unit.isCompiled());
+        unit.exec(m_bsf, beans("event0"));
+
+        assertEquals(0, m_factory.getCompilations());
+        assertEquals(Collections.singletonList("a"), m_bsf.getExecuted());
+    }
+
+    @Test
+    public void testScriptsRunInOrderForEachEvent() throws Exception {
+        ScriptCompiler compiler = new ScriptCompiler(m_engineManager, m_bsf, LANGUAGE);
+        compiler.compile("start-script[0]", LANGUAGE, "init").exec(m_bsf);
+
+        List<ScriptUnit> scripts = Arrays.asList(
+            compiler.compile("event-script[0]", LANGUAGE, "a"),
+            compiler.compile("event-script[1]", LANGUAGE, "b"),
+            compiler.compile("event-script[2]", LANGUAGE, "c"));
+        for (int i = 0; i < 3; i++) {
+            Map<String,Object> beans = beans("event" + i);
+            for (ScriptUnit script : scripts) {
+                script.exec(m_bsf, beans);
+            }
+        }
+
+        // every script sees the list the start script left in the globals
+        assertEquals(Arrays.asList(
+            "a:event0", "b:event0", "c:event0",
+            "a:event1", "b:event1", "c:event1",
+            "a:event2", "b:event2", "c:event2"), m_factory.getEngine().getCalls());
+    }
+
+    @Test
+    public void testFailedRunsAreCounted() throws Exception {
+        ScriptCompiler compiler = new ScriptCompiler(m_engineManager, m_bsf, LANGUAGE);
+        compiler.compile("start-script[0]", LANGUAGE, "init").exec(m_bsf);
+
+        ScriptUnit unit = compiler.compile("event-script[0]", LANGUAGE, "fail");
+        assertTrue(unit.isCompiled());
+        try {
+            unit.exec(m_bsf, beans("event0"));
+        } catch (BSFException e) {
+            // expected
+        }
+        unit.exec(m_bsf, beans("event1"));
+
+        assertEquals(2, unit.getRuns());
+        assertEquals(1, unit.getFailures());
+    }
+
+    private static Map<String,Object> beans(String event) {
+        return Collections.<String,Object>singletonMap("event", event);
+    }
+
+    /**
+     * Records the scripts handed to BSF instead of running them.
+     */
+    private static class RecordingBSFManager extends BSFManager {
+        private final List<String> m_executed = new ArrayList<String>();
+
+        @Override
+        public void exec(String lang, String source, int lineNo, int columnNo, Object script) throws BSFException {
+            m_executed.add(script.toString());
+        }
+
+        List<String> getExecuted() {
+            return m_executed;
+        }
+    }
+
+    /**
+     * A compilable engine for a tiny language: <code>init</code> puts an
+     * empty call list into the variables, <code>broken</code> does not
+     * compile, <code>fail</code> fails every other run and any other script
+     * appends its name and the event to the call list.
+     */
+    private static class RecordingEngine extends AbstractScriptEngine implements Compilable {
+        private final ScriptEngineFactory m_factory;
+        private final List<String> m_calls = new ArrayList<String>();
+        private int m_compilations = 0;
+
+        RecordingEngine(ScriptEngineFactory factory) {
+            m_factory = factory;
+        }
+
+        @Override
+        public CompiledScript compile(final String script) throws ScriptException {
+            if ("broken".equals(script)) {
+                throw new ScriptException("syntax error");
+            }
+            m_compilations++;
+            return new CompiledScript() {
+                private int m_runs = 0;
+
+                @Override
+                public Object eval(ScriptContext context) throws ScriptException {
+                    return RecordingEngine.this.run(script, context, m_runs++);
+                }
+
+                @Override
+                public ScriptEngine getEngine() {
+                    return RecordingEngine.this;
+                }
+            };
+        }
+
+        @Override
+        public CompiledScript compile(Reader script) throws ScriptException {
+            throw new UnsupportedOperationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object run(String script, ScriptContext context, int run) throws ScriptException {
+            if ("init".equals(script)) {
+                context.setAttribute("calls", m_calls, ScriptContext.ENGINE_SCOPE);
+                return null;
+            }
+            if ("fail".equals(script) && run % 2 == 0) {
+                throw new ScriptException("failed");
+            }
+            ((List<String>)context.getAttribute("calls")).add(script + ":" + context.getAttribute("event"));
+            return null;
+        }
+
+        List<String> getCalls() {
+            return m_calls;
+        }
+
+        int getCompilations() {
+            return m_compilations;
+        }
+
+        @Override
+        public Object eval(String script, ScriptContext context) throws ScriptException {
+            return compile(script).eval(context);
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return m_factory;
+        }
+    }
+
+    private static class RecordingEngineFactory implements ScriptEngineFactory {
+        private RecordingEngine m_engine;
+
+        RecordingEngine getEngine() {
+            return m_engine;
+        }
+
+        int getCompilations() {
+            return m_engine == null ? 0 : m_engine.getCompilations();
+        }
+
+        @Override
+        public ScriptEngine getScriptEngine() {
+            m_engine = new RecordingEngine(this);
+            return m_engine;
+        }
+
+        @Override
+        public String getEngineName() {
+            return LANGUAGE;
+        }
+
+        @Override
+        public String getEngineVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public List<String> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getMimeTypes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getNames() {
+            return Collections.singletonList(LANGUAGE);
+        }
+
+        @Override
+        public String getLanguageName() {
+            return LANGUAGE;
+        }
+
+        @Override
+        public String getLanguageVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public Object getParameter(String key) {
+            return null;
+        }
+
+        @Override
+        public String getMethodCallSyntax(String obj, String m, String... args) {
+            return null;
+        }
+
+        @Override
+        public String getOutputStatement(String toDisplay) {
+            return null;
+        }
+
+        @Override
+        public String getProgram(String... statements) {
+            return null;
+        }
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.snmpinterfacepoller.pollable;
 
+import java.util.Date;
 import java.util.List;
 
 import org.junit.After;
@@ -159,4 +160,27 @@ public class PollContextTest {
         Assert.assertEquals(1, snmpInterfaces.size());
     }
 
+    @Test
+    public void testBulkUpdate() throws Exception {
+        OnmsNode node = m_nodeDao.findByForeignId("linkd", "cisco2691");
+        Assert.assertNotNull(node);
+
+        List<OnmsSnmpInterface> snmpInterfaces = m_pollContext.get(node.getId(), "snmpifindex > 0");
+        Assert.assertEquals(3, snmpInterfaces.size());
+
+        Date now = new Date();
+        for (OnmsSnmpInterface snmpInterface : snmpInterfaces) {
+            snmpInterface.setIfAdminStatus(1);
+            snmpInterface.setIfOperStatus(2);
+            snmpInterface.setLastSnmpPoll(now);
+        }
+        m_pollContext.update(node.getId(), snmpInterfaces);
+
+        for (OnmsSnmpInterface snmpInterface : m_pollContext.get(node.getId(), "snmpifindex > 0")) {
+            Assert.assertEquals(Integer.valueOf(1), snmpInterface.getIfAdminStatus());
+            Assert.assertEquals(Integer.valueOf(2), snmpInterface.getIfOperStatus());
+            Assert.assertNotNull(snmpInterface.getLastSnmpPoll());
+        }
+    }
+
 }
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmpinterfacepoller.pollable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
+import org.opennms.netmgt.snmp.SnmpAgentAddress;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpStrategy;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.StrategyResolver;
+import org.opennms.netmgt.snmp.mock.MockSnmpStrategy;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.core.io.ByteArrayResource;
+
+/**
+ * Tests that the interfaces of coalesced groups are polled in shared
+ * requests and that every status ends up with the group it belongs to.
+ */
+public class PollableSnmpInterfaceTest {
+
+    private static final String ADDRESS = "192.168.1.1";
+    private static final long INTERVAL = 300000;
+
+    private final RecordingSnmpStrategy m_strategy = new RecordingSnmpStrategy();
+    private final RecordingPollContext m_context = new RecordingPollContext();
+    private PollableInterface m_node;
+
+    @Before
+    public void setUp() throws Exception {
+        // admin status: .7.<ifIndex>, oper status: .8.<ifIndex>; every index in its own way
+        final StringBuilder data = new StringBuilder();
+        for (int ifIndex = 1; ifIndex <= 20; ifIndex++) {
+            data.append(".1.3.6.1.2.1.2.2.1.7.").append(ifIndex).append(" = INTEGER: ").append(ifIndex % 5 == 0 ? 2 : 1).append('\n');
+            data.append(".1.3.6.1.2.1.2.2.1.8.").append(ifIndex).append(" = INTEGER: ").append(ifIndex % 3 == 0 ? 2 : 1).append('\n');
+        }
+        MockSnmpStrategy.setDataForAddress(new SnmpAgentAddress(InetAddressUtils.addr(ADDRESS), 161), new ByteArrayResource(data.toString().getBytes("UTF-8")));
+        SnmpUtils.setStrategyResolver(new StrategyResolver() {
+            @Override
+            public SnmpStrategy getStrategy() {
+                return m_strategy;
+            }
+        });
+
+        final PollableNetwork network = new PollableNetwork(m_context);
+        m_node = new PollableInterface(network);
+        m_node.setNodeid(1);
+        m_node.setIpaddress(ADDRESS);
+        m_node.setPackageName("test");
+    }
+
+    @After
+    public void tearDown() {
+        SnmpUtils.setStrategyResolver(null);
+        MockSnmpStrategy.resetData();
+    }
+
+    @Test
+    public void testCoalescedGroupsShareRequests() throws Exception {
+        final PollableSnmpInterface first = createGroup("first", 8, 1, 2, 3);
+        final PollableSnmpInterface second = createGroup("second", 6, 10, 11, 12, 13, 14);
+        assertSame(first, m_node.coalesce(first, INTERVAL));
+        assertSame(first, m_node.coalesce(second, INTERVAL));
+
+        first.run();
+
+        // the smallest max-vars-per-pdu wins: 3 interfaces, 6 varbinds per request
+        assertEquals(Arrays.asList(6, 6, 4), m_strategy.getRequestSizes());
+        assertEquals(3, m_node.getRequestCount());
+        assertEquals(4, m_node.getUncoalescedRequestCount());
+        assertEquals(8, m_node.getPolledInterfaceCount());
+
+        assertStatuses(first);
+        assertStatuses(second);
+        assertEquals(8, m_context.getUpdated().size());
+    }
+
+    @Test
+    public void testGroupsWithDifferentIntervalsAreNotCoalesced() throws Exception {
+        final PollableSnmpInterface first = createGroup("first", 10, 1, 2);
+        final PollableSnmpInterface second = createGroup("second", 10, 3, 4);
+        assertSame(first, m_node.coalesce(first, INTERVAL));
+        assertSame(second, m_node.coalesce(second, 2 * INTERVAL));
+
+        first.run();
+
+        assertEquals(Collections.singletonList(4), m_strategy.getRequestSizes());
+        assertStatuses(first);
+        assertEquals(2, m_context.getUpdated().size());
+    }
+
+    @Test
+    public void testAdminAndOperStatusFillOnePdu() throws Exception {
+        // exactly max-vars-per-pdu varbinds still go in a single request
+        final PollableSnmpInterface group = createGroup("group", 8, 1, 2, 3, 4);
+        group.run();
+
+        assertEquals(Collections.singletonList(8), m_strategy.getRequestSizes());
+        assertStatuses(group);
+    }
+
+    @Test
+    public void testAdminAndOperStatusSplitAcrossPdus() throws Exception {
+        // with room for a single varbind the admin and oper status need a request each
+        final PollableSnmpInterface group = createGroup("group", 1, 4, 5, 6);
+        group.run();
+
+        assertEquals(Arrays.asList(1, 1, 1, 1, 1, 1), m_strategy.getRequestSizes());
+        assertEquals(6, m_node.getRequestCount());
+        assertStatuses(group);
+    }
+
+    @Test
+    public void testOddMaxVarsPerPdu() throws Exception {
+        // 7 varbinds hold 3 interfaces, never half of one
+        final PollableSnmpInterface group = createGroup("group", 7, 1, 2, 3, 4, 5, 6, 7);
+        group.run();
+
+        assertEquals(Arrays.asList(6, 6, 2), m_strategy.getRequestSizes());
+        for (final int size : m_strategy.getRequestSizes()) {
+            assertTrue(size <= 7);
+        }
+        assertStatuses(group);
+    }
+
+    private PollableSnmpInterface createGroup(final String name, final int maxVarsPerPdu, final int... ifIndexes) {
+        final SnmpAgentConfig agentConfig = new SnmpAgentConfig(InetAddressUtils.addr(ADDRESS));
+        agentConfig.setMaxVarsPerPdu(maxVarsPerPdu);
+
+        final PollableSnmpInterface group = new PollableSnmpInterface(m_node);
+        group.setName(name);
+        group.setAgentConfig(agentConfig);
+
+        final List<OnmsSnmpInterface> snmpInterfaces = new ArrayList<OnmsSnmpInterface>();
+        for (final int ifIndex : ifIndexes) {
+            final OnmsSnmpInterface snmpInterface = new OnmsSnmpInterface();
+            snmpInterface.setIfIndex(ifIndex);
+            snmpInterface.setIfAdminStatus(1);
+            snmpInterface.setIfOperStatus(1);
+            snmpInterfaces.add(snmpInterface);
+        }
+        group.setSnmpinterfaces(snmpInterfaces);
+        return group;
+    }
+
+    private static void assertStatuses(final PollableSnmpInterface group) {
+        for (final OnmsSnmpInterface snmpInterface : group.getSnmpinterfaces()) {
+            final int ifIndex = snmpInterface.getIfIndex();
+            assertEquals("admin status of " + ifIndex, Integer.valueOf(ifIndex % 5 == 0 ? 2 : 1), snmpInterface.getIfAdminStatus());
+            assertEquals("oper status of " + ifIndex, Integer.valueOf(ifIndex % 3 == 0 ? 2 : 1), snmpInterface.getIfOperStatus());
+            assertTrue("ifIndex " + ifIndex + " was not polled", snmpInterface.getLastSnmpPoll() != null);
+        }
+    }
+
+    private static class RecordingSnmpStrategy extends MockSnmpStrategy {
+        private final List<Integer> m_requestSizes = new ArrayList<Integer>();
+
+        @Override
+        public SnmpValue[] get(final SnmpAgentConfig agentConfig, final SnmpObjId[] oids) {
+            m_requestSizes.add(oids.length);
+            return super.get(agentConfig, oids);
+        }
+
+        public List<Integer> getRequestSizes() {
+            return m_requestSizes;
+        }
+    }
+
+    private static class RecordingPollContext implements PollContext {
+        private final List<OnmsSnmpInterface> m_updated = new ArrayList<OnmsSnmpInterface>();
+
+        public List<OnmsSnmpInterface> getUpdated() {
+            return m_updated;
+        }
+
+        @Override
+        public String getServiceName() {
+            return "SNMP";
+        }
+
+        @Override
+        public void setServiceName(final String serviceName) {
+        }
+
+        @Override
+        public void sendEvent(final Event event) {
+        }
+
+        @Override
+        public Event createEvent(final String uei, final int nodeId, final String address, final Date date, final OnmsSnmpInterface snmpinterface) {
+            final Event event = new Event();
+            event.setUei(uei);
+            return event;
+        }
+
+        @Override
+        public List<OnmsSnmpInterface> get(final int nodeId, final String criteria) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<OnmsIpInterface> getPollableNodesByIp(final String ipaddr) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<OnmsIpInterface> getPollableNodes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void update(final OnmsSnmpInterface snmpinterface) {
+            m_updated.add(snmpinterface);
+        }
+
+        @Override
+        public void update(final int nodeId, final List<OnmsSnmpInterface> snmpinterfaces) {
+            m_updated.addAll(snmpinterfaces);
+        }
+    }
+}
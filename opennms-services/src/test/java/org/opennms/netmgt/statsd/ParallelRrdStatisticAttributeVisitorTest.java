@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.statsd;
+
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.makeThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.easymock.IAnswer;
+import org.opennms.netmgt.dao.api.RrdDao;
+import org.opennms.netmgt.dao.support.TopNAttributeStatisticVisitor;
+import org.opennms.netmgt.mock.MockResourceType;
+import org.opennms.netmgt.model.AttributeStatistic;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.OnmsResource;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.test.mock.EasyMockUtils;
+
+public class ParallelRrdStatisticAttributeVisitorTest extends TestCase {
+    private EasyMockUtils m_mocks = new EasyMockUtils();
+    private RrdDao m_rrdDao = m_mocks.createMock(RrdDao.class);
+    private Long m_startTime = System.currentTimeMillis();
+    private Long m_endTime = m_startTime + (24 * 60 * 60 * 1000); // one day
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // the statistics are fetched on the fork/join workers
+        makeThreadSafe(m_rrdDao, true);
+    }
+
+    @Override
+    protected void runTest() throws Throwable {
+        super.runTest();
+
+        m_mocks.verifyAll();
+    }
+
+    public void testTopNAcrossWorkers() throws Exception {
+        TopNAttributeStatisticVisitor statisticVisitor = new TopNAttributeStatisticVisitor();
+        statisticVisitor.setCount(20);
+        statisticVisitor.afterPropertiesSet();
+
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createAttributeVisitor(statisticVisitor);
+
+        // enough attributes for several chunks, with some of them having no data
+        List<OnmsAttribute> attributes = new ArrayList<OnmsAttribute>();
+        for (int i = 0; i < 2000; i++) {
+            OnmsAttribute attribute = new RrdGraphAttribute("ifInOctets", "node" + i, "ifInOctets.jrb");
+            new OnmsResource("node" + i, "Node " + i, new MockResourceType(), Collections.singleton(attribute));
+            expect(m_rrdDao.getPrintValue(attribute, "AVERAGE", m_startTime, m_endTime)).andReturn(i % 7 == 0 ? Double.NaN : (double) i);
+            attributes.add(attribute);
+        }
+
+        m_mocks.replayAll();
+
+        for (OnmsAttribute attribute : attributes) {
+            attributeVisitor.visit(attribute);
+        }
+        attributeVisitor.finish();
+
+        assertEquals("attribute count", 2000, attributeVisitor.getAttributeCount());
+
+        SortedSet<AttributeStatistic> results = statisticVisitor.getResults();
+        assertEquals("result count", 20, results.size());
+
+        double previous = Double.MAX_VALUE;
+        for (AttributeStatistic stat : results) {
+            assertFalse("NaN values should be skipped", Double.isNaN(stat.getStatistic()));
+            assertTrue("results should be in descending order", stat.getStatistic() < previous);
+            previous = stat.getStatistic();
+        }
+        assertEquals("largest value", 1999.0, results.first().getStatistic());
+    }
+
+    public void testFinishWithoutAttributes() throws Exception {
+        TopNAttributeStatisticVisitor statisticVisitor = new TopNAttributeStatisticVisitor();
+        statisticVisitor.setCount(20);
+        statisticVisitor.afterPropertiesSet();
+
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createAttributeVisitor(statisticVisitor);
+
+        m_mocks.replayAll();
+
+        attributeVisitor.finish();
+
+        assertEquals("attribute count", 0, attributeVisitor.getAttributeCount());
+        assertEquals("result count", 0, statisticVisitor.getResults().size());
+    }
+
+    public void testPendingChunksAreBoundedBehindSlowChunk() throws Exception {
+        TopNAttributeStatisticVisitor statisticVisitor = new TopNAttributeStatisticVisitor();
+        statisticVisitor.setCount(20);
+        statisticVisitor.afterPropertiesSet();
+
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createAttributeVisitor(statisticVisitor);
+
+        List<OnmsAttribute> attributes = createAttributes((ParallelRrdStatisticAttributeVisitor.MAX_PENDING_CHUNKS + 4) * ParallelRrdStatisticAttributeVisitor.CHUNK_SIZE);
+        final OnmsAttribute slowAttribute = attributes.get(0);
+        final CountDownLatch slowLatch = new CountDownLatch(1);
+        expect(m_rrdDao.getPrintValue(isA(OnmsAttribute.class), eq("AVERAGE"), eq(m_startTime.longValue()), eq(m_endTime.longValue()))).andAnswer(new IAnswer<Double>() {
+            @Override
+            public Double answer() throws Throwable {
+                if (getCurrentArguments()[0] == slowAttribute) {
+                    slowLatch.await(10, TimeUnit.SECONDS);
+                }
+                return 1.0;
+            }
+        }).anyTimes();
+
+        m_mocks.replayAll();
+
+        // let the first chunk finish once the walk had the chance to run ahead of it
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowLatch.countDown();
+            }
+        }.start();
+
+        for (OnmsAttribute attribute : attributes) {
+            attributeVisitor.visit(attribute);
+            assertTrue("pending chunks should be bounded", attributeVisitor.getPendingChunkCount() <= ParallelRrdStatisticAttributeVisitor.MAX_PENDING_CHUNKS);
+        }
+        attributeVisitor.finish();
+
+        assertEquals("pending chunks", 0, attributeVisitor.getPendingChunkCount());
+        assertEquals("result count", 20, statisticVisitor.getResults().size());
+    }
+
+    public void testFailedChunkCancelsPendingChunks() throws Exception {
+        TopNAttributeStatisticVisitor statisticVisitor = new TopNAttributeStatisticVisitor();
+        statisticVisitor.setCount(20);
+        statisticVisitor.afterPropertiesSet();
+
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createAttributeVisitor(statisticVisitor);
+
+        List<OnmsAttribute> attributes = createAttributes(4 * ParallelRrdStatisticAttributeVisitor.CHUNK_SIZE);
+        final OnmsAttribute failedAttribute = attributes.get(0);
+        expect(m_rrdDao.getPrintValue(isA(OnmsAttribute.class), eq("AVERAGE"), eq(m_startTime.longValue()), eq(m_endTime.longValue()))).andAnswer(new IAnswer<Double>() {
+            @Override
+            public Double answer() throws Throwable {
+                if (getCurrentArguments()[0] == failedAttribute) {
+                    throw new IllegalStateException("fetch failed");
+                }
+                return 1.0;
+            }
+        }).anyTimes();
+
+        m_mocks.replayAll();
+
+        try {
+            for (OnmsAttribute attribute : attributes) {
+                attributeVisitor.visit(attribute);
+            }
+            attributeVisitor.finish();
+            fail("the failed fetch should be reported");
+        } catch (IllegalStateException e) {
+            // the fork/join pool may wrap the exception thrown on the worker
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            assertEquals("fetch failed", cause.getMessage());
+        }
+
+        assertEquals("pending chunks", 0, attributeVisitor.getPendingChunkCount());
+    }
+
+    private static List<OnmsAttribute> createAttributes(int count) {
+        List<OnmsAttribute> attributes = new ArrayList<OnmsAttribute>();
+        for (int i = 0; i < count; i++) {
+            OnmsAttribute attribute = new RrdGraphAttribute("ifInOctets", "node" + i, "ifInOctets.jrb");
+            new OnmsResource("node" + i, "Node " + i, new MockResourceType(), Collections.singleton(attribute));
+            attributes.add(attribute);
+        }
+        return attributes;
+    }
+
+    private ParallelRrdStatisticAttributeVisitor createAttributeVisitor(TopNAttributeStatisticVisitor statisticVisitor) {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = new ParallelRrdStatisticAttributeVisitor();
+        attributeVisitor.setRrdDao(m_rrdDao);
+        attributeVisitor.setConsolidationFunction("AVERAGE");
+        attributeVisitor.setStartTime(m_startTime);
+        attributeVisitor.setEndTime(m_endTime);
+        attributeVisitor.setStatisticVisitor(statisticVisitor);
+        attributeVisitor.afterPropertiesSet();
+        return attributeVisitor;
+    }
+}
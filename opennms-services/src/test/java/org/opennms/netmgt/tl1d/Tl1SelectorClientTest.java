@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.tl1d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class Tl1SelectorClientTest {
+
+    private static final String MESSAGE = "\n   GPON15000 2008-07-31 18:29:49\n" +
+            "*C 0 REPT ALM BITS\n" +
+            "   \"1-4:NTFCNCDE=CR,CONDTYPE=FAIL,SRVEFF=SA,OCRDAT=09-23,OCRTM=02-03-04,LOCN=NEND,DIRN=RCV\"\n" +
+            ";";
+
+    /**
+     * A stand-in for a TL1 network element: sends a number of autonomous
+     * messages to every connection, a few bytes at a time, then optionally
+     * hangs up.
+     */
+    private static class Tl1Simulator implements Runnable {
+        private final ServerSocket m_serverSocket;
+        private final int m_messages;
+        private final boolean m_hangUp;
+        private final AtomicInteger m_connections = new AtomicInteger(0);
+        // keep the connections open until the simulator is closed
+        private final List<Socket> m_sockets = new CopyOnWriteArrayList<Socket>();
+
+        Tl1Simulator(final int messages, final boolean hangUp) throws IOException {
+            m_serverSocket = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+            m_messages = messages;
+            m_hangUp = hangUp;
+            final Thread thread = new Thread(this, "TL1-Simulator");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return m_serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void run() {
+            while (!m_serverSocket.isClosed()) {
+                try {
+                    final Socket socket = m_serverSocket.accept();
+                    m_connections.incrementAndGet();
+                    m_sockets.add(socket);
+                    final Thread writer = new Thread() {
+                        @Override
+                        public void run() {
+                            send(socket);
+                        }
+                    };
+                    writer.setDaemon(true);
+                    writer.start();
+                } catch (final IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void send(final Socket socket) {
+            try {
+                final OutputStream out = socket.getOutputStream();
+                final byte[] bytes = MESSAGE.getBytes("US-ASCII");
+                for (int i = 0; i < m_messages; i++) {
+                    // split every message over several writes
+                    for (int off = 0; off < bytes.length; off += 37) {
+                        out.write(bytes, off, Math.min(37, bytes.length - off));
+                        out.flush();
+                    }
+                }
+                if (m_hangUp) {
+                    socket.close();
+                }
+            } catch (final IOException e) {
+                // the client went away
+            }
+        }
+
+        void close() throws IOException {
+            m_serverSocket.close();
+            for (final Socket socket : m_sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private Tl1Connector m_connector;
+    private Tl1Simulator m_simulator;
+    private final BlockingQueue<Tl1AutonomousMessage> m_queue = new LinkedBlockingQueue<Tl1AutonomousMessage>();
+    private final List<Tl1SelectorClient> m_clients = new ArrayList<Tl1SelectorClient>();
+
+    @Before
+    public void setUp() {
+        m_connector = new Tl1Connector(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (final Tl1SelectorClient client : m_clients) {
+            client.stop();
+        }
+        m_connector.stop();
+        if (m_simulator != null) {
+            m_simulator.close();
+        }
+    }
+
+    private Tl1SelectorClient createClient(final int port, final long reconnectionDelay) {
+        final Tl1SelectorClient client = new Tl1SelectorClient();
+        client.setHost("127.0.0.1");
+        client.setPort(port);
+        client.setReconnectionDelay(reconnectionDelay);
+        client.setTl1Queue(m_queue);
+        client.setMessageProcessor(new Tl1AutonomousMessageProcessor());
+        client.setConnector(m_connector);
+        m_clients.add(client);
+        return client;
+    }
+
+    private void awaitMessages(final int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            final Tl1AutonomousMessage message = m_queue.poll(10, TimeUnit.SECONDS);
+            assertNotNull("only got " + i + " of " + count + " messages", message);
+            assertEquals("GPON15000", message.getHost());
+            assertEquals("REPT ALM BITS", message.getId().getVerb());
+        }
+    }
+
+    @Test
+    public void testManyElements() throws Exception {
+        m_simulator = new Tl1Simulator(5, false);
+        for (int i = 0; i < 200; i++) {
+            createClient(m_simulator.getPort(), 1000).start();
+        }
+
+        awaitMessages(200 * 5);
+        assertEquals(200, m_connector.getConnectionCount());
+        assertEquals(1000, m_connector.getMessageCount());
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        m_simulator = new Tl1Simulator(1, true);
+        createClient(m_simulator.getPort(), 100).start();
+
+        // every connection delivers one message before the element hangs up
+        awaitMessages(3);
+        assertTrue(m_connector.getConnectCount() >= 3);
+    }
+
+    @Test
+    public void testConnectLater() throws Exception {
+        final ServerSocket placeholder = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final int port = placeholder.getLocalPort();
+        placeholder.close();
+
+        createClient(port, 100).start();
+        Thread.sleep(300);
+        assertEquals(0, m_connector.getConnectionCount());
+
+        // the element comes up after the client has given up a few times
+        final ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        try {
+            final Socket socket = serverSocket.accept();
+            socket.getOutputStream().write(MESSAGE.getBytes("US-ASCII"));
+            socket.getOutputStream().flush();
+            awaitMessages(1);
+            socket.close();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testUnresolvedHost() throws Exception {
+        final Tl1SelectorClient client = createClient(1, 10);
+        client.setHost("tl1-element.invalid");
+        client.start();
+
+        // the failed lookup must be retried rather than leaking the channel
+        final long end = System.currentTimeMillis() + 10000;
+        while (client.getSession().m_attempts < 3 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue("only " + client.getSession().m_attempts + " attempts", client.getSession().m_attempts >= 3);
+        assertEquals(0, m_connector.getConnectionCount());
+
+        // and the reactor keeps serving the other clients
+        m_simulator = new Tl1Simulator(1, false);
+        createClient(m_simulator.getPort(), 1000).start();
+        awaitMessages(1);
+    }
+
+    @Test
+    public void testBackoff() {
+        for (int attempt = 1; attempt < 20; attempt++) {
+            final long delay = m_connector.reconnectDelay(1000, attempt);
+            final long base = Math.min(1000L << Math.min(attempt - 1, 4), 10000L);
+            assertTrue("delay " + delay + " for attempt " + attempt, delay >= base * 3 / 4 && delay <= base * 5 / 4);
+        }
+    }
+}
@@ -51,6 +51,7 @@ import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.test.MockLogAppender;
 import org.opennms.core.test.db.MockDatabase;
 import org.opennms.netmgt.config.EventTranslatorConfigFactory;
+import org.opennms.netmgt.config.EventTranslatorConfigFactory.TranslationStatistics;
 import org.opennms.netmgt.dao.mock.EventAnticipator;
 import org.opennms.netmgt.dao.mock.MockEventIpcManager;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -269,6 +270,24 @@ public class EventTranslatorTest {
         assertTrue(m_config.translateEvent(te3).isEmpty());
     }
     
+    @Test
+    public void testTranslationStatistics() {
+        Event te = createTestEvent("translationTest", "Router", "192.168.1.1", "ICMP", "Down");
+        assertEquals(1, m_config.translateEvent(te).size());
+        Event te2 = createTestEvent("translationTest", "Router", "192.168.1.1", "ICMP", "Down");
+        assertEquals(1, m_config.translateEvent(te2).size());
+        assertTrue(m_config.translateEvent(createTestEvent("someOtherUei", "Router", "192.168.1.1", "ICMP", "Down")).isEmpty());
+
+        List<TranslationStatistics> stats = m_config.getTranslationStatistics();
+        assertEquals("uei.opennms.org/services/translationTest", stats.get(0).getUei());
+        assertEquals(2, stats.get(0).getEventCount());
+        assertEquals(2, stats.get(0).getTranslatedCount());
+
+        // the second event repeats the lookup of the first
+        assertTrue(m_config.getSqlCacheMisses() > 0);
+        assertTrue(m_config.getSqlCacheHits() > 0);
+    }
+
     @Test
     public void testTranslateLinkDown() throws MarshalException, ValidationException, SQLException, UnsupportedEncodingException {
         InputStream rdr = new ByteArrayInputStream(getLinkDownTranslation().getBytes("UTF-8"));
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.jmx.connectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class JMXConnectionPoolTest {
+
+    private static class TestConnection implements ConnectionWrapper {
+        private MBeanServerConnection m_server = ManagementFactory.getPlatformMBeanServer();
+
+        @Override
+        public MBeanServerConnection getMBeanServer() {
+            return m_server;
+        }
+
+        @Override
+        public void close() {
+            m_server = null;
+        }
+
+        public boolean isClosed() {
+            return m_server == null;
+        }
+    }
+
+    private static class TestConnector implements JMXConnectionPool.Connector {
+        private int m_connects = 0;
+        private TestConnection m_last;
+
+        @Override
+        public ConnectionWrapper connect() {
+            m_connects++;
+            m_last = new TestConnection();
+            return m_last;
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        JMXConnectionPool pool = new JMXConnectionPool(true, 2, 60000, 60000, 60000);
+        TestConnector connector = new TestConnector();
+
+        JMXConnectionPool.PooledConnection c1 = pool.getConnection("a", connector);
+        assertFalse(c1.isReused());
+        c1.close();
+        c1.close();
+        assertEquals(1, pool.getIdleCount());
+
+        JMXConnectionPool.PooledConnection c2 = pool.getConnection("a", connector);
+        assertSame(c1, c2);
+        assertTrue(c2.isReused());
+
+        // a second borrower of the same key gets its own connection
+        JMXConnectionPool.PooledConnection c3 = pool.getConnection("a", connector);
+        assertNotSame(c2, c3);
+        JMXConnectionPool.PooledConnection c4 = pool.getConnection("b", connector);
+        assertNotSame(c2, c4);
+        assertEquals(3, connector.m_connects);
+        assertEquals(3, pool.getConnectCount());
+        assertEquals(1, pool.getReuseCount());
+
+        c2.close();
+        c3.close();
+        c4.close();
+        assertEquals(3, pool.getIdleCount());
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(connector.m_last.isClosed());
+    }
+
+    @Test
+    public void testInvalidateAndMaxIdle() throws Exception {
+        JMXConnectionPool pool = new JMXConnectionPool(true, 1, 60000, 60000, 60000);
+        TestConnector connector = new TestConnector();
+
+        JMXConnectionPool.PooledConnection c1 = pool.getConnection("a", connector);
+        TestConnection t1 = connector.m_last;
+        c1.invalidate();
+        c1.close();
+        assertTrue(t1.isClosed());
+        assertEquals(0, pool.getIdleCount());
+
+        JMXConnectionPool.PooledConnection c2 = pool.getConnection("a", connector);
+        JMXConnectionPool.PooledConnection c3 = pool.getConnection("a", connector);
+        TestConnection t3 = connector.m_last;
+        c2.close();
+        c3.close();
+        assertEquals(1, pool.getIdleCount());
+        assertTrue(t3.isClosed());
+    }
+
+    @Test
+    public void testValidationAndEviction() throws Exception {
+        JMXConnectionPool pool = new JMXConnectionPool(true, 2, 60000, 0, 60000);
+        TestConnector connector = new TestConnector();
+
+        // a connection whose server went away fails validation and is replaced
+        JMXConnectionPool.PooledConnection c1 = pool.getConnection("a", connector);
+        TestConnection t1 = connector.m_last;
+        c1.close();
+        t1.m_server = null;
+        JMXConnectionPool.PooledConnection c2 = pool.getConnection("a", connector);
+        assertNotSame(c1, c2);
+        assertEquals(1, pool.getValidationFailureCount());
+        c2.close();
+
+        pool = new JMXConnectionPool(true, 2, 0, 60000, 60000);
+        c1 = pool.getConnection("a", connector);
+        c2 = pool.getConnection("b", connector);
+        c1.close();
+        Thread.sleep(5);
+        // releasing sweeps the connections that have been idle for too long
+        c2.close();
+        assertEquals(2, pool.getEvictionCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        JMXConnectionPool pool = new JMXConnectionPool(false, 2, 60000, 60000, 60000);
+        TestConnector connector = new TestConnector();
+        pool.getConnection("a", connector).close();
+        assertTrue(connector.m_last.isClosed());
+        pool.getConnection("a", connector).close();
+        assertEquals(2, connector.m_connects);
+        assertEquals(0, pool.getReuseCount());
+    }
+
+    @Test
+    public void testQueryNames() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        JMXConnectionPool pool = new JMXConnectionPool(true, 2, 60000, 60000, 60000);
+        JMXConnectionPool.PooledConnection c = pool.getConnection("a", new TestConnector());
+        String pattern = "org.opennms.protocols.jmx.connectors:type=PoolTest,*";
+        ObjectName name = new ObjectName("org.opennms.protocols.jmx.connectors:type=PoolTest,name=one");
+        server.registerMBean(new javax.management.StandardMBean(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, Runnable.class), name);
+        try {
+            assertEquals(1, c.queryNames(pattern).size());
+            server.unregisterMBean(name);
+            // served from the cache until it is dropped
+            assertEquals(1, c.queryNames(pattern).size());
+            c.forgetQuery(pattern);
+            assertEquals(0, c.queryNames(pattern).size());
+        } finally {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        c.close();
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("port", 1099);
+        parameters.put("username", "admin");
+        parameters.put("retry", "2");
+        String key = JMXConnectionPool.getKey("Jsr160", address, parameters);
+        parameters.put("retry", "3");
+        assertEquals(key, JMXConnectionPool.getKey("Jsr160", address, parameters));
+        parameters.put("password", "secret");
+        assertFalse(key.equals(JMXConnectionPool.getKey("Jsr160", address, parameters)));
+        assertFalse(key.equals(JMXConnectionPool.getKey("JMXSecure", address, parameters)));
+        key = JMXConnectionPool.getKey("JBoss", address, parameters);
+        parameters.put("version", "5");
+        assertFalse(key.equals(JMXConnectionPool.getKey("JBoss", address, parameters)));
+        assertNull(new JMXConnectionPool(true, 1, 1, 1, 1).getConnection(key, new JMXConnectionPool.Connector() {
+            @Override
+            public ConnectionWrapper connect() {
+                return null;
+            }
+        }));
+    }
+}
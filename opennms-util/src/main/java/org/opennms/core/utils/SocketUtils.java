@@ -50,24 +50,14 @@ public abstract class SocketUtils {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(SocketUtils.class);
 
+    private static SSLSocketFactory s_relaxedSocketFactory;
+
     public static Socket wrapSocketInSslContext(Socket socket) throws IOException {
         return wrapSocketInSslContext(socket, null);
     }
 
     public static Socket wrapSocketInSslContext(Socket socket, String[] cipherSuites) throws IOException {
-        TrustManager[] tm = { new RelaxedX509TrustManager() };
-        SSLContext sslContext = null;
-        try {
-            sslContext = SSLContext.getInstance("SSL");
-            sslContext.init(null, tm, new java.security.SecureRandom());
-        } catch (NoSuchAlgorithmException e) {
-        	LOG.error("wrapSocket: Error wrapping socket, throwing runtime exception", e);
-            throw new IllegalStateException("No such algorithm in SSLSocketFactory: " + e);
-        } catch (KeyManagementException e) {
-        	LOG.error("wrapSocket: Error wrapping socket, throwing runtime exception", e);
-            throw new IllegalStateException("Key management exception in SSLSocketFactory: " + e);
-        }
-        SSLSocketFactory socketFactory = sslContext.getSocketFactory();
+        SSLSocketFactory socketFactory = getRelaxedSocketFactory();
         InetAddress inetAddress = socket.getInetAddress();
         String hostAddress = InetAddressUtils.str(inetAddress);
         Socket wrappedSocket = socketFactory.createSocket(socket, hostAddress, socket.getPort(), true);
@@ -78,4 +68,28 @@ public abstract class SocketUtils {
         return wrappedSocket;
     }
 
+    /**
+     * The SSL context is created once and shared, so sockets to the same
+     * host and port can resume an earlier TLS session instead of doing a
+     * full handshake every time.
+     */
+    private static synchronized SSLSocketFactory getRelaxedSocketFactory() {
+        if (s_relaxedSocketFactory == null) {
+            TrustManager[] tm = { new RelaxedX509TrustManager() };
+            SSLContext sslContext = null;
+            try {
+                sslContext = SSLContext.getInstance("SSL");
+                sslContext.init(null, tm, new java.security.SecureRandom());
+            } catch (NoSuchAlgorithmException e) {
+                LOG.error("wrapSocket: Error wrapping socket, throwing runtime exception", e);
+                throw new IllegalStateException("No such algorithm in SSLSocketFactory: " + e);
+            } catch (KeyManagementException e) {
+                LOG.error("wrapSocket: Error wrapping socket, throwing runtime exception", e);
+                throw new IllegalStateException("Key management exception in SSLSocketFactory: " + e);
+            }
+            s_relaxedSocketFactory = sslContext.getSocketFactory();
+        }
+        return s_relaxedSocketFactory;
+    }
+
 }
@@ -31,6 +31,7 @@ package org.opennms.web.rest;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -41,11 +42,13 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 
+import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventProxy;
 import org.opennms.netmgt.events.api.EventProxyException;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
+import org.opennms.netmgt.provision.persist.JournalingForeignSourceRepository;
 import org.opennms.netmgt.provision.persist.RequisitionFileUtils;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionAsset;
@@ -101,6 +104,11 @@ public class RequisitionAccessService {
 
         private Requisition m_pending = null;
 
+        // the nodes changed since the last flush, unless the requisition itself changed
+        private final Set<String> m_changedNodes = new LinkedHashSet<String>();
+
+        private boolean m_requisitionChanged = false;
+
         public RequisitionAccessor(final String foreignSource, final ForeignSourceRepository pendingRepo, final ForeignSourceRepository deployedRepo) {
             m_foreignSource = foreignSource;
             m_pendingRepo = pendingRepo;
@@ -144,6 +152,27 @@ public class RequisitionAccessService {
 
         private void save(final Requisition requisition) {
             m_pending = requisition;
+            m_requisitionChanged = true;
+        }
+
+        private void save(final Requisition requisition, final String foreignId) {
+            m_pending = requisition;
+            m_changedNodes.add(foreignId);
+        }
+
+        /**
+         * Replaces the node with a copy that can be changed safely, since
+         * repositories may share their nodes between the requisitions they
+         * return.
+         */
+        private static RequisitionNode getNodeForUpdate(final Requisition requisition, final String foreignId) {
+            final RequisitionNode node = requisition.getNode(foreignId);
+            if (node == null) {
+                return null;
+            }
+            final RequisitionNode copy = JaxbUtils.unmarshal(RequisitionNode.class, JaxbUtils.marshal(node), false);
+            requisition.putNode(copy);
+            return copy;
         }
 
         void addOrReplaceRequisition(final Requisition requisition) {
@@ -158,18 +187,18 @@ public class RequisitionAccessService {
             if (req != null) {
                 req.updateDateStamp();
                 req.putNode(node);
-                save(req);
+                save(req, node.getForeignId());
             }
         }
 
         void addOrReplaceInterface(final String foreignId, final RequisitionInterface iface) {
             final Requisition req = getActiveRequisition(true);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     node.putInterface(iface);
-                    save(req);
+                    save(req, foreignId);
                 }
             }
         }
@@ -177,13 +206,13 @@ public class RequisitionAccessService {
         void addOrReplaceService(final String foreignId, final String ipAddress, final RequisitionMonitoredService service) {
             final Requisition req = getActiveRequisition(true);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     final RequisitionInterface iface = node.getInterface(ipAddress);
                     if (iface != null) {
                         req.updateDateStamp();
                         iface.putMonitoredService(service);
-                        save(req);
+                        save(req, foreignId);
                     }
                 }
             }
@@ -192,11 +221,11 @@ public class RequisitionAccessService {
         void addOrReplaceNodeCategory(final String foreignId, final RequisitionCategory category) {
             final Requisition req = getActiveRequisition(true);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     node.putCategory(category);
-                    save(req);
+                    save(req, foreignId);
                 }
             }
         }
@@ -204,11 +233,11 @@ public class RequisitionAccessService {
         void addOrReplaceNodeAssetParameter(final String foreignId, final RequisitionAsset asset) {
             final Requisition req = getActiveRequisition(true);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     node.putAsset(asset);
-                    save(req);
+                    save(req, foreignId);
                 }
             }
         }
@@ -232,11 +261,13 @@ public class RequisitionAccessService {
             if (params.isEmpty()) return;
             final Requisition req = getActiveRequisition(false);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     RestUtils.setBeanProperties(node, params);
-                    save(req);
+                    // the foreign ID may have been changed as well
+                    save(req, foreignId);
+                    save(req, node.getForeignId());
                     LOG.debug("updateNode: Node with foreign source {} and foreign id {} updated", foreignSource, foreignId);
                 }
             }
@@ -248,13 +279,13 @@ public class RequisitionAccessService {
             if (params.isEmpty()) return;
             final Requisition req = getActiveRequisition(false);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     final RequisitionInterface iface = node.getInterface(ipAddress);
                     if (iface != null) {
                         req.updateDateStamp();
                         RestUtils.setBeanProperties(iface, params);
-                        save(req);
+                        save(req, foreignId);
                         LOG.debug("updateInterface: Interface {} on node {}/{} updated", ipAddress, foreignSource, foreignId);
                     }
                 }
@@ -279,7 +310,7 @@ public class RequisitionAccessService {
             if (req != null) {
                 req.updateDateStamp();
                 req.deleteNode(foreignId);
-                save(req);
+                save(req, foreignId);
             }
         }
 
@@ -287,11 +318,11 @@ public class RequisitionAccessService {
             LOG.debug("deleteInterface: Deleting interface {} from node {}/{}", ipAddress, getForeignSource(), foreignId);
             final Requisition req = getActiveRequisition(false);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     node.deleteInterface(ipAddress);
-                    save(req);
+                    save(req, foreignId);
                 }
             }
         }
@@ -300,13 +331,13 @@ public class RequisitionAccessService {
             LOG.debug("deleteInterfaceService: Deleting service {} from interface {} on node {}/{}", service, ipAddress, getForeignSource(), foreignId);
             final Requisition req = getActiveRequisition(false);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     final RequisitionInterface iface = node.getInterface(ipAddress);
                     if (iface != null) {
                         req.updateDateStamp();
                         iface.deleteMonitoredService(service);
-                        save(req);
+                        save(req, foreignId);
                     }
                 }
             }
@@ -316,11 +347,11 @@ public class RequisitionAccessService {
             LOG.debug("deleteCategory: Deleting category {} from node {}/{}", category, getForeignSource(), foreignId);
             final Requisition req = getActiveRequisition(false);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     node.deleteCategory(category);
-                    save(req);
+                    save(req, foreignId);
                 }
             }
         }
@@ -329,11 +360,11 @@ public class RequisitionAccessService {
             LOG.debug("deleteAssetParameter: Deleting asset parameter {} from node {}/{}", parameter, getForeignSource(), foreignId);
             final Requisition req = getActiveRequisition(false);
             if (req != null) {
-                final RequisitionNode node = req.getNode(foreignId);
+                final RequisitionNode node = getNodeForUpdate(req, foreignId);
                 if (node != null) {
                     req.updateDateStamp();
                     node.deleteAsset(parameter);
-                    save(req);
+                    save(req, foreignId);
                 }
             }
         }
@@ -428,6 +459,9 @@ public class RequisitionAccessService {
 
         URL createSnapshot() throws MalformedURLException {
             flush();
+            // make sure the requisition files are up to date before they are copied
+            flushJournal(getPendingForeignSourceRepository());
+            flushJournal(getDeployedForeignSourceRepository());
 
             final Requisition pending = getPendingForeignSourceRepository().getRequisition(getForeignSource());
             final Requisition deployed = getDeployedForeignSourceRepository().getRequisition(getForeignSource());
@@ -441,12 +475,30 @@ public class RequisitionAccessService {
 
         private void flush() {
             if (m_pending != null) {
-                getPendingForeignSourceRepository().save(m_pending);
+                final ForeignSourceRepository pendingRepo = getPendingForeignSourceRepository();
+                if (!m_requisitionChanged && pendingRepo instanceof JournalingForeignSourceRepository) {
+                    ((JournalingForeignSourceRepository)pendingRepo).save(m_pending, m_changedNodes);
+                } else {
+                    pendingRepo.save(m_pending);
+                }
                 m_pending = null;
+                m_changedNodes.clear();
+                m_requisitionChanged = false;
+            }
+
+            // journaled repositories already serve what was saved, flushing them would rewrite the requisition files
+            if (!(getPendingForeignSourceRepository() instanceof JournalingForeignSourceRepository)) {
+                getPendingForeignSourceRepository().flush();
+            }
+            if (!(getDeployedForeignSourceRepository() instanceof JournalingForeignSourceRepository)) {
+                getDeployedForeignSourceRepository().flush();
             }
+        }
 
-            getPendingForeignSourceRepository().flush();
-            getDeployedForeignSourceRepository().flush();
+        private static void flushJournal(final ForeignSourceRepository repository) {
+            if (repository instanceof JournalingForeignSourceRepository) {
+                repository.flush();
+            }
         }
 
     }
@@ -34,6 +34,8 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.opennms.netmgt.config.surveillanceViews.Category;
 import org.opennms.netmgt.config.surveillanceViews.ColumnDef;
@@ -71,6 +73,31 @@ public class DefaultSurveillanceService implements SurveillanceService {
     private NodeDao m_nodeDao;
     private CategoryDao m_categoryDao;
     private SurveillanceViewConfigDao m_surveillanceConfigDao;
+
+    /**
+     * How long a computed table is served to every user of the view, in
+     * milliseconds.  0 disables the cache.
+     */
+    private long m_cacheTtl = Long.getLong("org.opennms.web.surveillanceView.cacheTtl", 10000L);
+
+    private final ConcurrentMap<String, CachedTable> m_tableCache = new ConcurrentHashMap<String, CachedTable>();
+    private final ConcurrentMap<String, Object> m_viewLocks = new ConcurrentHashMap<String, Object>();
+
+    private static class CachedTable {
+        private final View m_view;
+        private final SimpleWebTable m_table;
+        private final long m_created = System.currentTimeMillis();
+
+        public CachedTable(final View view, final SimpleWebTable table) {
+            m_view = view;
+            m_table = table;
+        }
+
+        public boolean isValidFor(final View view, final long ttl) {
+            // a reloaded configuration hands out new View objects
+            return m_view == view && System.currentTimeMillis() - m_created < ttl;
+        }
+    }
     
     interface CellStatusStrategy {
         public SurveillanceStatus[][] calculateCellStatus(SurveillanceView sView, ProgressMonitor progressMonitor);
@@ -182,6 +209,37 @@ public class DefaultSurveillanceService implements SurveillanceService {
 
     }
 
+    /**
+     * Computes the whole matrix with a single query rather than one per cell.
+     */
+    class SingleQueryCellStatusStrategy implements CellStatusStrategy {
+
+        @Override
+        public SurveillanceStatus[][] calculateCellStatus(final SurveillanceView sView, final ProgressMonitor progressMonitor) {
+            final List<Set<OnmsCategory>> rowCategories = new ArrayList<Set<OnmsCategory>>(sView.getRowCount());
+            for (int rowIndex = 0; rowIndex < sView.getRowCount(); rowIndex++) {
+                rowCategories.add(sView.getCategoriesForRow(rowIndex));
+            }
+            final List<Set<OnmsCategory>> columnCategories = new ArrayList<Set<OnmsCategory>>(sView.getColumnCount());
+            for (int colIndex = 0; colIndex < sView.getColumnCount(); colIndex++) {
+                columnCategories.add(sView.getCategoriesForColumn(colIndex));
+            }
+
+            progressMonitor.beginNextPhase("Finding status for nodes in all rows and columns");
+
+            if (rowCategories.isEmpty() || columnCategories.isEmpty()) {
+                return new SurveillanceStatus[sView.getRowCount()][sView.getColumnCount()];
+            }
+            return m_nodeDao.findSurveillanceStatusMatrix(rowCategories, columnCategories);
+        }
+
+        @Override
+        public int getPhaseCount(final SurveillanceView sView) {
+            return 1;
+        }
+
+    }
+
     class VeryLowMemCellStatusStrategy implements CellStatusStrategy {
         
         private String toString(final Collection<OnmsCategory> categories) {
@@ -247,6 +305,8 @@ public class DefaultSurveillanceService implements SurveillanceService {
     	private final SurveillanceViewConfigDao m_surveillanceConfigDao;
         private final CategoryDao m_categoryDao;
         private final View m_view;
+        private final List<Set<OnmsCategory>> m_rowCategories = new ArrayList<Set<OnmsCategory>>();
+        private final List<Set<OnmsCategory>> m_columnCategories = new ArrayList<Set<OnmsCategory>>();
 
         public SurveillanceView(final String viewName, final SurveillanceViewConfigDao surveillanceConfigDao, final CategoryDao categoryDao) {
             m_surveillanceConfigDao = surveillanceConfigDao;
@@ -263,7 +323,14 @@ public class DefaultSurveillanceService implements SurveillanceService {
         }
 
         public Set<OnmsCategory> getCategoriesForRow(final int rowIndex) {
-            return getOnmsCategoriesFromViewCategories(getRowDef(rowIndex).getCategoryCollection());
+            // the categories are looked up once per row rather than once per cell
+            while (m_rowCategories.size() <= rowIndex) {
+                m_rowCategories.add(null);
+            }
+            if (m_rowCategories.get(rowIndex) == null) {
+                m_rowCategories.set(rowIndex, getOnmsCategoriesFromViewCategories(getRowDef(rowIndex).getCategoryCollection()));
+            }
+            return m_rowCategories.get(rowIndex);
         }
 
         private RowDef getRowDef(final int rowIndex) {
@@ -271,7 +338,13 @@ public class DefaultSurveillanceService implements SurveillanceService {
         }
 
         public Set<OnmsCategory> getCategoriesForColumn(final int colIndex) {
-            return getOnmsCategoriesFromViewCategories(getColumnDef(colIndex).getCategoryCollection());
+            while (m_columnCategories.size() <= colIndex) {
+                m_columnCategories.add(null);
+            }
+            if (m_columnCategories.get(colIndex) == null) {
+                m_columnCategories.set(colIndex, getOnmsCategoriesFromViewCategories(getColumnDef(colIndex).getCategoryCollection()));
+            }
+            return m_columnCategories.get(colIndex);
         }
 
         private ColumnDef getColumnDef(final int colIndex) {
@@ -314,14 +387,42 @@ public class DefaultSurveillanceService implements SurveillanceService {
      *
      * Creates a custom table object containing intersected rows and
      * columns and categories.
+     *
+     * The table is shared by all requests for the same view until it is
+     * older than the cache TTL, and concurrent requests for a view wait for
+     * the one request that computes it.
      */
     @Override
     public SimpleWebTable createSurveillanceTable(final String surveillanceViewName, final ProgressMonitor progressMonitor) {
+        final String name = (surveillanceViewName == null ? m_surveillanceConfigDao.getDefaultView().getName() : surveillanceViewName);
+
+        synchronized (getViewLock(name)) {
+            final View view = m_surveillanceConfigDao.getView(name);
+            final CachedTable cached = m_tableCache.get(name);
+            if (cached != null && cached.isValidFor(view, m_cacheTtl)) {
+                progressMonitor.setPhaseCount(1);
+                progressMonitor.finished(cached.m_table);
+                return cached.m_table;
+            }
+
+            final SimpleWebTable webTable = createSurveillanceTable(name, view, progressMonitor);
+            if (m_cacheTtl > 0) {
+                m_tableCache.put(name, new CachedTable(view, webTable));
+            }
+            return webTable;
+        }
+    }
+
+    private Object getViewLock(final String name) {
+        final Object lock = new Object();
+        final Object existing = m_viewLocks.putIfAbsent(name, lock);
+        return existing == null ? lock : existing;
+    }
+
+    private SimpleWebTable createSurveillanceTable(final String name, final View view, final ProgressMonitor progressMonitor) {
         
         CellStatusStrategy strategy = getCellStatusStrategy();
 
-        final String name = (surveillanceViewName == null ? m_surveillanceConfigDao.getDefaultView().getName() : surveillanceViewName);
-        final View view = m_surveillanceConfigDao.getView(name);
         final SurveillanceView sView = new SurveillanceView(name, m_surveillanceConfigDao, m_categoryDao);
 
         progressMonitor.setPhaseCount(strategy.getPhaseCount(sView) + 1);
@@ -371,7 +472,7 @@ public class DefaultSurveillanceService implements SurveillanceService {
     }
 
     private CellStatusStrategy getCellStatusStrategy() {
-        return new VeryLowMemCellStatusStrategy();
+        return new SingleQueryCellStatusStrategy();
     }
 
     private String computeReportCategoryLink(final String reportCategory) {
@@ -502,4 +603,23 @@ public class DefaultSurveillanceService implements SurveillanceService {
         return m_surveillanceConfigDao.getViews().getViewCollection();
     }
 
+    /**
+     * <p>getCacheTtl</p>
+     *
+     * @return how long a computed table is reused, in milliseconds
+     */
+    public long getCacheTtl() {
+        return m_cacheTtl;
+    }
+
+    /**
+     * <p>setCacheTtl</p>
+     *
+     * @param cacheTtl how long a computed table is reused, in milliseconds, or 0 to disable caching
+     */
+    public void setCacheTtl(final long cacheTtl) {
+        m_cacheTtl = cacheTtl;
+        m_tableCache.clear();
+    }
+
 }
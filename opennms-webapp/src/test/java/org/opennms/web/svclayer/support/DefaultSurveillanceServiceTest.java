@@ -30,14 +30,21 @@ package org.opennms.web.svclayer.support;
 
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opennms.netmgt.config.surveillanceViews.Category;
+import org.opennms.netmgt.config.surveillanceViews.ColumnDef;
 import org.opennms.netmgt.config.surveillanceViews.Columns;
+import org.opennms.netmgt.config.surveillanceViews.RowDef;
 import org.opennms.netmgt.config.surveillanceViews.Rows;
 import org.opennms.netmgt.config.surveillanceViews.View;
 import org.opennms.netmgt.dao.api.CategoryDao;
@@ -45,7 +52,10 @@ import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.SurveillanceViewConfigDao;
 import org.opennms.netmgt.model.OnmsCategory;
 import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.SurveillanceStatus;
 import org.opennms.test.mock.EasyMockUtils;
+import org.opennms.web.svclayer.ProgressMonitor;
+import org.opennms.web.svclayer.SimpleWebTable;
 
 public class DefaultSurveillanceServiceTest {
     
@@ -91,6 +101,72 @@ public class DefaultSurveillanceServiceTest {
         
     }
 
+    @Test
+    public void testSurveillanceTableIsComputedOnceAndShared() {
+        final View view = new View();
+        view.setName("default");
+        final Rows rows = new Rows();
+        final RowDef rowDef = new RowDef();
+        rowDef.setLabel("Routers");
+        rowDef.addCategory(createViewCategory("Routers"));
+        rows.addRowDef(rowDef);
+        view.setRows(rows);
+        final Columns columns = new Columns();
+        final ColumnDef columnDef = new ColumnDef();
+        columnDef.setLabel("Production");
+        columnDef.addCategory(createViewCategory("Production"));
+        columns.addColumnDef(columnDef);
+        view.setColumns(columns);
+
+        final OnmsCategory routers = new OnmsCategory("Routers");
+        routers.setId(1);
+        final OnmsCategory production = new OnmsCategory("Production");
+        production.setId(2);
+
+        expect(m_surveillanceViewConfigDao.getView(eq("default"))).andReturn(view).atLeastOnce();
+        // each category is resolved once, even though the cell with a down node links to them again
+        expect(m_categoryDao.findByName("Routers")).andReturn(routers);
+        expect(m_categoryDao.findByName("Production")).andReturn(production);
+        final List<Set<OnmsCategory>> rowCategories = Collections.singletonList(Collections.singleton(routers));
+        final List<Set<OnmsCategory>> columnCategories = Collections.singletonList(Collections.singleton(production));
+        expect(m_nodeDao.findSurveillanceStatusMatrix(rowCategories, columnCategories)).andReturn(new SurveillanceStatus[][] { { new SurveillanceStatus() {
+            @Override
+            public Integer getDownEntityCount() {
+                return 1;
+            }
+
+            @Override
+            public Integer getTotalEntityCount() {
+                return 3;
+            }
+
+            @Override
+            public String getStatus() {
+                return "Critical";
+            }
+        } } });
+
+        m_mockUtils.replayAll();
+
+        final DefaultSurveillanceService surveillanceSvc = new DefaultSurveillanceService();
+        surveillanceSvc.setNodeDao(m_nodeDao);
+        surveillanceSvc.setCategoryDao(m_categoryDao);
+        surveillanceSvc.setSurveillanceConfigDao(m_surveillanceViewConfigDao);
+        surveillanceSvc.setCacheTtl(60000);
+
+        final SimpleWebTable table = surveillanceSvc.createSurveillanceTable();
+        assertEquals("1 of 3", table.getRows().get(0).get(1).getContent());
+        assertSame(table, surveillanceSvc.createSurveillanceTable("default", new ProgressMonitor()));
+
+        m_mockUtils.verifyAll();
+    }
+
+    private static Category createViewCategory(final String name) {
+        final Category category = new Category();
+        category.setName(name);
+        return category;
+    }
+
     public Collection<OnmsCategory> createCategories(List<String> catNames) {
         Collection<OnmsCategory> categories = createCategoryNameCollection(catNames);
         return categories;
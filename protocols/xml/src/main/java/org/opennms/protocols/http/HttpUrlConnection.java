@@ -75,6 +75,9 @@ public class HttpUrlConnection extends URLConnection {
     /** The HTTP Client. */
     private HttpClientWrapper m_clientWrapper;
 
+    /** The response, closed on disconnect so its connection goes back to the pool. */
+    private CloseableHttpResponse m_response;
+
     /**
      * Instantiates a new SFTP URL connection.
      *
@@ -95,7 +98,7 @@ public class HttpUrlConnection extends URLConnection {
         if (m_clientWrapper != null) {
             return;
         }
-        m_clientWrapper = HttpClientWrapper.create();
+        m_clientWrapper = HttpClientWrapper.create().useConnectionPool();
         if (m_request != null) {
             int timeout = m_request.getParameterAsInt("timeout");
             if (timeout > 0) {
@@ -181,8 +184,8 @@ public class HttpUrlConnection extends URLConnection {
             }
 
             // Get Response
-            CloseableHttpResponse response = m_clientWrapper.execute(request);
-            return response.getEntity().getContent();
+            m_response = m_clientWrapper.execute(request);
+            return m_response.getEntity().getContent();
         } catch (Exception e) {
             throw new IOException("Can't retrieve " + m_url.getPath() + " from " + m_url.getHost() + " because " + e.getMessage(), e);
         }
@@ -192,6 +195,8 @@ public class HttpUrlConnection extends URLConnection {
      * Disconnect
      */
     public void disconnect() {
+        IOUtils.closeQuietly(m_response);
+        m_response = null;
         IOUtils.closeQuietly(m_clientWrapper);
         m_clientWrapper = null;
     }
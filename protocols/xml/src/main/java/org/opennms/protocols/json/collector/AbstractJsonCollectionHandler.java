@@ -41,6 +41,7 @@ import java.util.List;
 import net.sf.json.JSONObject;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.JXPathContext;
 import org.apache.commons.jxpath.Pointer;
 import org.apache.commons.lang.StringUtils;
@@ -77,6 +78,7 @@ public abstract class AbstractJsonCollectionHandler extends AbstractXmlCollectio
 
     /**
      * Fill collection set.
+     * <p>The JXPath expressions are compiled once per group instead of once per resource.</p>
      *
      * @param agent the agent
      * @param collectionSet the collection set
@@ -90,18 +92,23 @@ public abstract class AbstractJsonCollectionHandler extends AbstractXmlCollectio
         for (XmlGroup group : source.getXmlGroups()) {
             LOG.debug("fillCollectionSet: getting resources for XML group {} using XPATH {}", group.getName(), group.getResourceXpath());
             Date timestamp = getTimeStamp(context, group);
-            Iterator<Pointer> itr = context.iteratePointers(group.getResourceXpath());
+            List<CompiledExpression> keyExpressions = compileKeyXpaths(group);
+            List<CompiledExpression> objectExpressions = new ArrayList<CompiledExpression>();
+            for (XmlObject object : group.getXmlObjects()) {
+                objectExpressions.add(JXPathContext.compile(object.getXpath()));
+            }
+            Iterator<Pointer> itr = JXPathContext.compile(group.getResourceXpath()).iteratePointers(context);
             while (itr.hasNext()) {
                 JXPathContext relativeContext = context.getRelativeContext(itr.next());
-                String resourceName = getResourceName(relativeContext, group);
+                String resourceName = getResourceName(relativeContext, keyExpressions);
                 LOG.debug("fillCollectionSet: processing XML resource {}", resourceName);
                 XmlCollectionResource collectionResource = getCollectionResource(agent, resourceName, group.getResourceType(), timestamp);
                 AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
-                for (XmlObject object : group.getXmlObjects()) {
-                    Object obj = relativeContext.getValue(object.getXpath());
+                for (int k = 0; k < objectExpressions.size(); k++) {
+                    Object obj = objectExpressions.get(k).getValue(relativeContext);
                     if (obj != null) {
                         String value = obj.toString();
-                        XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(object, attribGroupType);
+                        XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(group.getXmlObjects().get(k), attribGroupType);
                         collectionResource.setAttributeValue(attribType, value);
                     }
                 }
@@ -112,30 +119,41 @@ public abstract class AbstractJsonCollectionHandler extends AbstractXmlCollectio
     }
 
     /**
-     * Gets the resource name.
+     * Compiles the key XPaths of a group.
      *
-     * @param context the JXpath context
      * @param group the group
-     * @return the resource name
+     * @return the compiled expressions, empty if the group has no keys
      */
-    private String getResourceName(JXPathContext context, XmlGroup group) {
-        // Processing multiple-key resource name.
+    private List<CompiledExpression> compileKeyXpaths(XmlGroup group) {
+        List<CompiledExpression> expressions = new ArrayList<CompiledExpression>();
         if (group.hasMultipleResourceKey()) {
-            List<String> keys = new ArrayList<String>();
             for (String key : group.getXmlResourceKey().getKeyXpathList()) {
-                LOG.debug("getResourceName: getting key for resource's name using {}", key);
-                String keyName = (String)context.getValue(key);
-                keys.add(keyName);
+                expressions.add(JXPathContext.compile(key));
             }
-            return StringUtils.join(keys, "_");
+        } else if (group.getKeyXpath() != null) {
+            expressions.add(JXPathContext.compile(group.getKeyXpath()));
         }
+        return expressions;
+    }
+
+    /**
+     * Gets the resource name.
+     *
+     * @param context the JXpath context
+     * @param keyExpressions the compiled key XPaths of the group
+     * @return the resource name
+     */
+    private String getResourceName(JXPathContext context, List<CompiledExpression> keyExpressions) {
         // If key-xpath doesn't exist or not found, a node resource will be assumed.
-        if (group.getKeyXpath() == null) {
+        if (keyExpressions.isEmpty()) {
             return "node";
         }
-        // Processing single-key resource name.
-        LOG.debug("getResourceName: getting key for resource's name using {}", group.getKeyXpath());
-        return (String)context.getValue(group.getKeyXpath());
+        // Processing single or multiple-key resource name.
+        List<String> keys = new ArrayList<String>();
+        for (CompiledExpression key : keyExpressions) {
+            keys.add((String)key.getValue(context));
+        }
+        return StringUtils.join(keys, "_");
     }
 
     /**
@@ -53,6 +53,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -103,6 +104,9 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
     /** The Constant LOG. */
     private static final Logger LOG = LoggerFactory.getLogger(AbstractXmlCollectionHandler.class);
 
+    /** The system property that enables the streaming extraction of XML sources. */
+    public static final String STREAMING_PROPERTY = "org.opennms.protocols.xml.streaming";
+
     /** The Service Name associated with this Collection Handler. */
     private String m_serviceName;
 
@@ -204,6 +208,8 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
 
     /**
      * Fill collection set.
+     * <p>The XPath expressions are compiled once per group and document,
+     * instead of being evaluated as strings for every resource.</p>
      *
      * @param agent the agent
      * @param collectionSet the collection set
@@ -220,16 +226,23 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
         for (XmlGroup group : source.getXmlGroups()) {
             LOG.debug("fillCollectionSet: getting resources for XML group {} using XPATH {}", group.getName(), group.getResourceXpath());
             Date timestamp = getTimeStamp(doc, xpath, group);
+            List<XPathExpression> keyExpressions = compileKeyXpaths(xpath, group);
+            List<XPathExpression> objectExpressions = new ArrayList<XPathExpression>();
+            for (XmlObject object : group.getXmlObjects()) {
+                objectExpressions.add(xpath.compile(object.getXpath()));
+            }
+            boolean detach = isDownward(group);
             NodeList resourceList = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
             for (int j = 0; j < resourceList.getLength(); j++) {
-                Node resource = resourceList.item(j);
-                String resourceName = getResourceName(xpath, group, resource);
+                // The JDK XPath builds a DTM of the whole document on every evaluation, so a detached copy of the resource is much cheaper to query.
+                Node resource = detach ? resourceList.item(j).cloneNode(true) : resourceList.item(j);
+                String resourceName = getResourceName(keyExpressions, group, resource);
                 LOG.debug("fillCollectionSet: processing XML resource {}", resourceName);
                 XmlCollectionResource collectionResource = getCollectionResource(agent, resourceName, group.getResourceType(), timestamp);
                 AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
-                for (XmlObject object : group.getXmlObjects()) {
-                    String value = (String) xpath.evaluate(object.getXpath(), resource, XPathConstants.STRING);
-                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(object, attribGroupType);
+                for (int k = 0; k < objectExpressions.size(); k++) {
+                    String value = (String) objectExpressions.get(k).evaluate(resource, XPathConstants.STRING);
+                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(group.getXmlObjects().get(k), attribGroupType);
                     collectionResource.setAttributeValue(attribType, value);
                 }
                 processXmlResource(collectionResource, attribGroupType);
@@ -239,33 +252,176 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
     }
 
     /**
-     * Gets the resource name.
+     * Fill collection set from a document that has been read by a streaming extractor.
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param groups the groups extracted from the document
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, List<XmlStreamingExtractor.GroupResult> groups) {
+        m_nodeResource = null; // Be sure that the temporary resource for node level data is clean before processing a new document.
+        for (XmlStreamingExtractor.GroupResult result : groups) {
+            XmlGroup group = result.getGroup();
+            LOG.debug("fillCollectionSet: got {} resources for XML group {} using XPATH {}", result.getResources().size(), group.getName(), group.getResourceXpath());
+            Date timestamp = null;
+            if (group.getTimestampXpath() != null) {
+                if (result.getTimestamp() == null) {
+                    LOG.warn("fillCollectionSet: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
+                } else {
+                    timestamp = parseTimeStamp(result.getTimestamp(), group);
+                }
+            }
+            for (XmlStreamingExtractor.Resource resource : result.getResources()) {
+                LOG.debug("fillCollectionSet: processing XML resource {}", resource.getName());
+                XmlCollectionResource collectionResource = getCollectionResource(agent, resource.getName(), group.getResourceType(), timestamp);
+                AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
+                for (int k = 0; k < group.getXmlObjects().size(); k++) {
+                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(group.getXmlObjects().get(k), attribGroupType);
+                    collectionResource.setAttributeValue(attribType, resource.getValue(k));
+                }
+                processXmlResource(collectionResource, attribGroupType);
+                collectionSet.getCollectionResources().add(collectionResource);
+            }
+        }
+    }
+
+    /**
+     * Fill collection set from an XML stream.
+     * <p>The document is read by a streaming extractor when the source allows it,
+     * and parsed into a DOM otherwise.</p>
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param source the source
+     * @param is the input stream
+     * @param request the request
+     * @throws Exception the exception
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source, InputStream is, Request request) throws Exception {
+        XmlStreamingExtractor extractor = getStreamingExtractor(source, request);
+        if (extractor == null) {
+            fillCollectionSet(agent, collectionSet, source, getXmlDocument(is, request));
+            return;
+        }
+        InputStream transformed = applyXsltTransformation(request, is);
+        try {
+            fillCollectionSet(agent, collectionSet, extractor.extract(transformed));
+        } finally {
+            IOUtils.closeQuietly(transformed);
+        }
+    }
+
+    /**
+     * Fill collection set from an URL, streaming the document when the source allows it.
+     *
+     * @param urlString the URL string
+     * @param request the request
+     * @param agent the collection agent
+     * @param collectionSet the collection set
+     * @param source the XML source
+     * @param extractor the streaming extractor for the source
+     * @throws Exception the exception
+     */
+    protected void fillCollectionSet(String urlString, Request request, CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source, XmlStreamingExtractor extractor) throws Exception {
+        InputStream is = null;
+        URLConnection c = null;
+        try {
+            URL url = UrlFactory.getUrl(urlString, request);
+            c = url.openConnection();
+            is = applyXsltTransformation(request, c.getInputStream());
+            fillCollectionSet(agent, collectionSet, extractor.extract(is));
+        } finally {
+            IOUtils.closeQuietly(is);
+            UrlFactory.disconnect(c);
+        }
+    }
+
+    /**
+     * Gets the streaming extractor for a source.
+     * <p>Streaming can be disabled globally with the system property
+     * org.opennms.protocols.xml.streaming, or per source with the request
+     * parameter streaming. Sources that pre-parse HTML are always parsed into
+     * a DOM.</p>
+     *
+     * @param source the XML source
+     * @param request the request
+     * @return the extractor, or null if the document has to be parsed into a DOM
+     */
+    protected XmlStreamingExtractor getStreamingExtractor(XmlSource source, Request request) {
+        if (!Boolean.parseBoolean(System.getProperty(STREAMING_PROPERTY, "true"))) {
+            return null;
+        }
+        if (request != null && (Boolean.parseBoolean(request.getParameter("pre-parse-html")) || "false".equalsIgnoreCase(request.getParameter("streaming")))) {
+            return null;
+        }
+        return XmlStreamingExtractor.create(source);
+    }
+
+    /**
+     * Checks if the key and object XPaths of a group only look below the resource node.
+     *
+     * @param group the group
+     * @return true, if the resource node can be evaluated on its own
+     */
+    private boolean isDownward(XmlGroup group) {
+        List<String> expressions = new ArrayList<String>();
+        if (group.hasMultipleResourceKey()) {
+            expressions.addAll(group.getXmlResourceKey().getKeyXpathList());
+        } else if (group.getKeyXpath() != null) {
+            expressions.add(group.getKeyXpath());
+        }
+        for (XmlObject object : group.getXmlObjects()) {
+            expressions.add(object.getXpath());
+        }
+        for (String expression : expressions) {
+            if (XmlStreamingExtractor.Path.parse(expression, false) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles the key XPaths of a group.
      *
      * @param xpath the Xpath
      * @param group the group
-     * @param resource the resource
-     * @return the resource name
+     * @return the compiled expressions, empty if the group has no keys
      * @throws XPathExpressionException the x path expression exception
      */
-    private String getResourceName(XPath xpath, XmlGroup group, Node resource) throws XPathExpressionException {
-        // Processing multiple-key resource name.
+    private List<XPathExpression> compileKeyXpaths(XPath xpath, XmlGroup group) throws XPathExpressionException {
+        List<XPathExpression> expressions = new ArrayList<XPathExpression>();
         if (group.hasMultipleResourceKey()) {
-            List<String> keys = new ArrayList<String>();
             for (String key : group.getXmlResourceKey().getKeyXpathList()) {
-                LOG.debug("getResourceName: getting key for resource's name using {}", key);
-                Node keyNode = (Node) xpath.evaluate(key, resource, XPathConstants.NODE);
-                keys.add(keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue());
+                expressions.add(xpath.compile(key));
             }
-            return StringUtils.join(keys, "_");
+        } else if (group.getKeyXpath() != null) {
+            expressions.add(xpath.compile(group.getKeyXpath()));
         }
+        return expressions;
+    }
+
+    /**
+     * Gets the resource name.
+     *
+     * @param keyExpressions the compiled key XPaths of the group
+     * @param group the group
+     * @param resource the resource
+     * @return the resource name
+     * @throws XPathExpressionException the x path expression exception
+     */
+    private String getResourceName(List<XPathExpression> keyExpressions, XmlGroup group, Node resource) throws XPathExpressionException {
         // If key-xpath doesn't exist or not found, a node resource will be assumed.
-        if (group.getKeyXpath() == null) {
+        if (keyExpressions.isEmpty()) {
             return "node";
         }
-        // Processing single-key resource name.
-        LOG.debug("getResourceName: getting key for resource's name using {}", group.getKeyXpath());
-        Node keyNode = (Node) xpath.evaluate(group.getKeyXpath(), resource, XPathConstants.NODE);
-        return keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue();
+        // Processing single or multiple-key resource name.
+        List<String> keys = new ArrayList<String>();
+        for (XPathExpression key : keyExpressions) {
+            Node keyNode = (Node) key.evaluate(resource, XPathConstants.NODE);
+            keys.add(keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue());
+        }
+        return StringUtils.join(keys, "_");
     }
 
     /**
@@ -336,8 +492,20 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
             LOG.warn("getTimeStamp: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
             return null;
         }
-        Date date = null;
         String value = tsNode.getNodeValue() == null ? tsNode.getTextContent() : tsNode.getNodeValue();
+        return parseTimeStamp(value, group);
+    }
+
+    /**
+     * Parses a time stamp with the format of the group.
+     *
+     * @param value the time stamp value
+     * @param group the group
+     * @return the time stamp, or null if it can't be parsed
+     */
+    protected Date parseTimeStamp(String value, XmlGroup group) {
+        String pattern = group.getTimestampFormat() == null ? "yyyy-MM-dd HH:mm:ss" : group.getTimestampFormat();
+        Date date = null;
         LOG.debug("getTimeStamp: time stamp value is {}", value);
         try {
             DateTimeFormatter dtf = DateTimeFormat.forPattern(pattern);
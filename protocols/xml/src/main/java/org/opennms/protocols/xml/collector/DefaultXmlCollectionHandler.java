@@ -58,6 +58,12 @@ public class DefaultXmlCollectionHandler extends AbstractXmlCollectionHandler {
      */
     @Override
     protected void fillCollectionSet(String urlString, Request request, CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source) throws Exception {
+        final XmlStreamingExtractor extractor = getStreamingExtractor(source, request);
+        if (extractor != null) {
+            fillCollectionSet(urlString, request, agent, collectionSet, source, extractor);
+            LOG.debug("collect: streamed document for source url '{}' collection", source.getUrl());
+            return;
+        }
         final Document doc = getXmlDocument(urlString, request);
         LOG.debug("collect: parsed document for source url '{}' collection", source.getUrl());
         fillCollectionSet(agent, collectionSet, source, doc);
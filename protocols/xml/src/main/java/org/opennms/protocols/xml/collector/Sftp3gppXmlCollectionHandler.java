@@ -91,8 +91,13 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                 if (lastFile == null) {
                     lastFile = connection.get3gppFileName();
                     LOG.debug("collect(single): retrieving file from {}{}{} from {}", url.getPath(), File.separatorChar, lastFile, agent.getHostAddress());
-                    Document doc = getXmlDocument(urlStr, request);
-                    fillCollectionSet(agent, collectionSet, source, doc);
+                    XmlStreamingExtractor extractor = getStreamingExtractor(source, request);
+                    if (extractor == null) {
+                        Document doc = getXmlDocument(urlStr, request);
+                        fillCollectionSet(agent, collectionSet, source, doc);
+                    } else {
+                        fillCollectionSet(urlStr, request, agent, collectionSet, source, extractor);
+                    }
                     Sftp3gppUtils.setLastFilename(getServiceName(), resourceDir, url.getPath(), lastFile);
                     Sftp3gppUtils.deleteFile(connection, lastFile);
                 } else {
@@ -105,9 +110,7 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                             LOG.debug("collect(multiple): retrieving file {} from {}", fileName, agent.getHostAddress());
                             InputStream is = connection.getFile(fileName);
                             try {
-                                Document doc = getXmlDocument(is, request);
-                                IOUtils.closeQuietly(is);
-                                fillCollectionSet(agent, collectionSet, source, doc);
+                                fillCollectionSet(agent, collectionSet, source, is, request);
                             } finally {
                                 IOUtils.closeQuietly(is);
                             }
@@ -0,0 +1,583 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts the resources of an XML source in a single StAX pass, without
+ * building a DOM.
+ * <p>Only a subset of XPath is understood: location paths made of child
+ * steps with an optional <code>[@attribute=literal]</code> predicate,
+ * optionally ending with an attribute step, like
+ * <code>/measCollecFile/measData/measInfo[@measInfoId='dns|dns']/measValue</code>
+ * for the resources and <code>r[@p=3]</code> or <code>@measObjLdn</code> for
+ * the keys and objects. Sources using anything else have to be processed
+ * through the DOM.</p>
+ * <p>The values follow the XPath 1.0 rules: the string value of the first
+ * matching node in document order, or an empty string for objects that are
+ * not found.</p>
+ */
+public class XmlStreamingExtractor {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(XmlStreamingExtractor.class);
+
+    private static final String NAME = "[A-Za-z_][\\w.\\-]*(?::[A-Za-z_][\\w.\\-]*)?";
+
+    private static final Pattern STEP = Pattern.compile("(" + NAME + ")(?:\\[\\s*@(" + NAME + ")\\s*=\\s*('[^']*'|\"[^\"]*\"|\\d+(?:\\.\\d+)?)\\s*\\])?");
+
+    private static final Pattern ATTRIBUTE = Pattern.compile("@(" + NAME + ")");
+
+    private static final XMLInputFactory s_inputFactory = createInputFactory();
+
+    /**
+     * The resources of a group found in a document.
+     */
+    public static class GroupResult {
+        private final XmlGroup m_group;
+        private final List<Resource> m_resources = new ArrayList<Resource>();
+        private String m_timestamp;
+
+        GroupResult(final XmlGroup group) {
+            m_group = group;
+        }
+
+        public XmlGroup getGroup() {
+            return m_group;
+        }
+
+        /**
+         * @return the value of the timestamp XPath, or null if the group has
+         *         none or it was not found
+         */
+        public String getTimestamp() {
+            return m_timestamp;
+        }
+
+        public List<Resource> getResources() {
+            return m_resources;
+        }
+    }
+
+    /**
+     * A resource and its object values, in the order of the group's objects.
+     */
+    public static class Resource {
+        private final String m_name;
+        private final String[] m_values;
+
+        Resource(final String name, final String[] values) {
+            m_name = name;
+            m_values = values;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        public String getValue(final int index) {
+            return m_values[index];
+        }
+    }
+
+    /**
+     * A parsed location path.
+     */
+    static class Path {
+        final String[] m_names;
+        final String[] m_predicateAttributes;
+        final String[] m_predicateStrings;
+        final double[] m_predicateNumbers;
+        final String m_attribute;
+
+        private Path(final List<String[]> steps, final String attribute) {
+            final int n = steps.size();
+            m_names = new String[n];
+            m_predicateAttributes = new String[n];
+            m_predicateStrings = new String[n];
+            m_predicateNumbers = new double[n];
+            for (int i = 0; i < n; i++) {
+                final String[] step = steps.get(i);
+                m_names[i] = step[0];
+                m_predicateAttributes[i] = step[1];
+                if (step[2] == null) {
+                    continue;
+                }
+                if (step[2].startsWith("'") || step[2].startsWith("\"")) {
+                    m_predicateStrings[i] = step[2].substring(1, step[2].length() - 1);
+                } else {
+                    m_predicateNumbers[i] = Double.parseDouble(step[2]);
+                }
+            }
+            m_attribute = attribute;
+        }
+
+        int length() {
+            return m_names.length;
+        }
+
+        /**
+         * Parses an expression, returning null if it is not supported.
+         */
+        static Path parse(final String expression, final boolean absolute) {
+            if (expression == null) {
+                return null;
+            }
+            final String expr = expression.trim();
+            int pos = 0;
+            if (absolute) {
+                if (!expr.startsWith("/") || expr.startsWith("//")) {
+                    return null;
+                }
+                pos = 1;
+            }
+            final List<String[]> steps = new ArrayList<String[]>();
+            final Matcher step = STEP.matcher(expr);
+            final Matcher attribute = ATTRIBUTE.matcher(expr);
+            while (true) {
+                attribute.region(pos, expr.length());
+                if (attribute.matches()) {
+                    return new Path(steps, attribute.group(1));
+                }
+                step.region(pos, expr.length());
+                if (!step.lookingAt()) {
+                    return null;
+                }
+                steps.add(new String[] { step.group(1), step.group(2), step.group(3) });
+                pos = step.end();
+                if (pos == expr.length()) {
+                    return new Path(steps, null);
+                }
+                if (expr.charAt(pos) != '/' || pos + 1 == expr.length() || expr.charAt(pos + 1) == '/') {
+                    return null;
+                }
+                pos++;
+            }
+        }
+
+        /**
+         * Checks the steps against the elements open at the given offset of
+         * the stack.
+         */
+        boolean matches(final List<Element> stack, final int offset) {
+            for (int i = m_names.length - 1; i >= 0; i--) {
+                final Element element = stack.get(offset + i);
+                if (!m_names[i].equals(element.m_name)) {
+                    return false;
+                }
+                if (m_predicateAttributes[i] == null) {
+                    continue;
+                }
+                final String value = element.getAttribute(m_predicateAttributes[i]);
+                if (value == null) {
+                    return false;
+                }
+                if (m_predicateStrings[i] != null) {
+                    if (!m_predicateStrings[i].equals(value)) {
+                        return false;
+                    }
+                } else {
+                    try {
+                        if (Double.parseDouble(value.trim()) != m_predicateNumbers[i]) {
+                            return false;
+                        }
+                    } catch (final NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void addAttributes(final Set<String> attributes) {
+            for (final String attribute : m_predicateAttributes) {
+                if (attribute != null) {
+                    attributes.add(attribute);
+                }
+            }
+            if (m_attribute != null) {
+                attributes.add(m_attribute);
+            }
+        }
+    }
+
+    /**
+     * An open element, with the attributes any path refers to.
+     */
+    static class Element {
+        final String m_name;
+        Map<String, String> m_attributes;
+
+        Element(final String name) {
+            m_name = name;
+        }
+
+        String getAttribute(final String name) {
+            return m_attributes == null ? null : m_attributes.get(name);
+        }
+    }
+
+    /**
+     * The compiled paths of a group.
+     */
+    private static class GroupPaths {
+        final XmlGroup m_group;
+        final Path m_resource;
+        final Path m_timestamp;
+        final Path[] m_keys;
+        final Path[] m_objects;
+
+        GroupPaths(final XmlGroup group, final Path resource, final Path timestamp, final Path[] keys, final Path[] objects) {
+            m_group = group;
+            m_resource = resource;
+            m_timestamp = timestamp;
+            m_keys = keys;
+            m_objects = objects;
+        }
+    }
+
+    /**
+     * The value of a path, captured while the document is read.
+     */
+    private static class Value {
+        String m_value;
+        boolean m_capturing;
+
+        boolean isOpen() {
+            return m_value == null && !m_capturing;
+        }
+    }
+
+    /**
+     * A resource element that is being read.
+     */
+    private static class OpenResource {
+        final GroupPaths m_paths;
+        final GroupResult m_result;
+        final int m_depth;
+        final int m_index;
+        final Value[] m_keys;
+        final Value[] m_objects;
+
+        OpenResource(final GroupPaths paths, final GroupResult result, final int depth) {
+            m_paths = paths;
+            m_result = result;
+            m_depth = depth;
+            // nested resources are closed first, keep a slot to stay in document order
+            m_index = result.m_resources.size();
+            result.m_resources.add(null);
+            m_keys = newValues(paths.m_keys.length);
+            m_objects = newValues(paths.m_objects.length);
+        }
+
+        Resource close() {
+            final String name;
+            if (m_keys.length == 0) {
+                name = "node";
+            } else {
+                final List<String> keys = new ArrayList<String>(m_keys.length);
+                for (final Value key : m_keys) {
+                    if (key.m_value == null) {
+                        return null;
+                    }
+                    keys.add(key.m_value);
+                }
+                name = StringUtils.join(keys, "_");
+            }
+            final String[] values = new String[m_objects.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = m_objects[i].m_value == null ? "" : m_objects[i].m_value;
+            }
+            return new Resource(name, values);
+        }
+
+        private static Value[] newValues(final int n) {
+            final Value[] values = new Value[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = new Value();
+            }
+            return values;
+        }
+    }
+
+    /**
+     * The text of an element being collected into a value.
+     */
+    private static class Capture {
+        final Value m_value;
+        final int m_depth;
+        final StringBuilder m_text = new StringBuilder();
+
+        Capture(final Value value, final int depth) {
+            m_value = value;
+            m_depth = depth;
+            value.m_capturing = true;
+        }
+    }
+
+    private final List<GroupPaths> m_groups;
+    private final Set<String> m_attributes = new HashSet<String>();
+
+    private XmlStreamingExtractor(final List<GroupPaths> groups) {
+        m_groups = groups;
+        for (final GroupPaths paths : groups) {
+            paths.m_resource.addAttributes(m_attributes);
+            if (paths.m_timestamp != null) {
+                paths.m_timestamp.addAttributes(m_attributes);
+            }
+            for (final Path path : paths.m_keys) {
+                path.addAttributes(m_attributes);
+            }
+            for (final Path path : paths.m_objects) {
+                path.addAttributes(m_attributes);
+            }
+        }
+    }
+
+    /**
+     * Creates the extractor for a source.
+     *
+     * @param source the XML source
+     * @return the extractor, or null if any of the source's expressions is
+     *         not supported
+     */
+    public static XmlStreamingExtractor create(final XmlSource source) {
+        final List<GroupPaths> groups = new ArrayList<GroupPaths>();
+        for (final XmlGroup group : source.getXmlGroups()) {
+            final Path resource = Path.parse(group.getResourceXpath(), true);
+            if (resource == null || resource.m_attribute != null || resource.length() == 0) {
+                return unsupported(source, group.getResourceXpath());
+            }
+            Path timestamp = null;
+            if (group.getTimestampXpath() != null) {
+                timestamp = Path.parse(group.getTimestampXpath(), true);
+                if (timestamp == null) {
+                    return unsupported(source, group.getTimestampXpath());
+                }
+            }
+            final List<String> keyXpaths = new ArrayList<String>();
+            if (group.hasMultipleResourceKey()) {
+                keyXpaths.addAll(group.getXmlResourceKey().getKeyXpathList());
+            } else if (group.getKeyXpath() != null) {
+                keyXpaths.add(group.getKeyXpath());
+            }
+            final Path[] keys = new Path[keyXpaths.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = Path.parse(keyXpaths.get(i), false);
+                if (keys[i] == null) {
+                    return unsupported(source, keyXpaths.get(i));
+                }
+            }
+            final List<XmlObject> objects = group.getXmlObjects();
+            final Path[] paths = new Path[objects.size()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = Path.parse(objects.get(i).getXpath(), false);
+                if (paths[i] == null) {
+                    return unsupported(source, objects.get(i).getXpath());
+                }
+            }
+            groups.add(new GroupPaths(group, resource, timestamp, keys, paths));
+        }
+        return new XmlStreamingExtractor(groups);
+    }
+
+    private static XmlStreamingExtractor unsupported(final XmlSource source, final String expression) {
+        LOG.debug("create: XPath {} of source {} can't be streamed, the source will be parsed into a DOM.", expression, source.getUrl());
+        return null;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Reads a document, returning the resources of every group in the order
+     * of the source's groups.
+     *
+     * @param is the document
+     * @return the groups
+     * @throws XMLStreamException if the document can't be read
+     */
+    public List<GroupResult> extract(final InputStream is) throws XMLStreamException {
+        final List<GroupResult> results = new ArrayList<GroupResult>(m_groups.size());
+        final Value[] timestamps = new Value[m_groups.size()];
+        for (int i = 0; i < m_groups.size(); i++) {
+            results.add(new GroupResult(m_groups.get(i).m_group));
+            timestamps[i] = new Value();
+        }
+        final List<Element> stack = new ArrayList<Element>();
+        final List<OpenResource> resources = new ArrayList<OpenResource>();
+        final List<Capture> captures = new ArrayList<Capture>();
+
+        final XMLStreamReader reader = s_inputFactory.createXMLStreamReader(is);
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    final Element element = startElement(reader);
+                    stack.add(element);
+                    final int depth = stack.size();
+                    for (final OpenResource resource : resources) {
+                        match(resource.m_paths.m_keys, resource.m_keys, stack, resource.m_depth, captures);
+                        match(resource.m_paths.m_objects, resource.m_objects, stack, resource.m_depth, captures);
+                    }
+                    for (int i = 0; i < m_groups.size(); i++) {
+                        final GroupPaths paths = m_groups.get(i);
+                        if (paths.m_timestamp != null) {
+                            match(paths.m_timestamp, timestamps[i], stack, 0, captures);
+                        }
+                        if (paths.m_resource.length() == depth && paths.m_resource.matches(stack, 0)) {
+                            final OpenResource resource = new OpenResource(paths, results.get(i), depth);
+                            // paths that only select an attribute of the resource itself
+                            match(paths.m_keys, resource.m_keys, stack, depth, captures);
+                            match(paths.m_objects, resource.m_objects, stack, depth, captures);
+                            resources.add(resource);
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (!captures.isEmpty()) {
+                        final String text = reader.getText();
+                        for (final Capture capture : captures) {
+                            capture.m_text.append(text);
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    final int endDepth = stack.size();
+                    for (int i = captures.size() - 1; i >= 0; i--) {
+                        final Capture capture = captures.get(i);
+                        if (capture.m_depth == endDepth) {
+                            capture.m_value.m_value = capture.m_text.toString();
+                            capture.m_value.m_capturing = false;
+                            captures.remove(i);
+                        }
+                    }
+                    for (int i = resources.size() - 1; i >= 0; i--) {
+                        final OpenResource resource = resources.get(i);
+                        if (resource.m_depth == endDepth) {
+                            resources.remove(i);
+                            final Resource closed = resource.close();
+                            if (closed == null) {
+                                LOG.warn("extract: skipping a resource of group {}: the resource key can't be found", resource.m_paths.m_group.getName());
+                            } else {
+                                resource.m_result.m_resources.set(resource.m_index, closed);
+                            }
+                        }
+                    }
+                    stack.remove(endDepth - 1);
+                    break;
+                default:
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).m_timestamp = timestamps[i].m_value;
+        }
+        for (final GroupResult result : results) {
+            // drop the slots of the resources without a key
+            result.m_resources.removeAll(Collections.singleton(null));
+        }
+        return results;
+    }
+
+    private Element startElement(final XMLStreamReader reader) {
+        final String prefix = reader.getPrefix();
+        final String localName = reader.getLocalName();
+        final Element element = new Element(prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName);
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String attributePrefix = reader.getAttributePrefix(i);
+            final String attributeLocalName = reader.getAttributeLocalName(i);
+            final String name = attributePrefix == null || attributePrefix.isEmpty() ? attributeLocalName : attributePrefix + ':' + attributeLocalName;
+            if (!m_attributes.contains(name)) {
+                continue;
+            }
+            if (element.m_attributes == null) {
+                element.m_attributes = new HashMap<String, String>(4);
+            }
+            element.m_attributes.put(name, reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static void match(final Path[] paths, final Value[] values, final List<Element> stack, final int offset, final List<Capture> captures) {
+        for (int i = 0; i < paths.length; i++) {
+            match(paths[i], values[i], stack, offset, captures);
+        }
+    }
+
+    /**
+     * Matches a path relative to the element at the given depth against the
+     * element that has just been opened.
+     */
+    private static void match(final Path path, final Value value, final List<Element> stack, final int offset, final List<Capture> captures) {
+        final int depth = stack.size();
+        if (!value.isOpen() || offset + path.length() != depth || !path.matches(stack, offset)) {
+            return;
+        }
+        if (path.m_attribute == null) {
+            captures.add(new Capture(value, depth));
+        } else {
+            // the first matching element may not have the attribute, keep looking then
+            value.m_value = stack.get(depth - 1).getAttribute(path.m_attribute);
+        }
+    }
+}
@@ -28,9 +28,13 @@
 
 package org.opennms.protocols.xml.collector;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
+
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.protocols.xml.config.Request;
 import org.opennms.protocols.xml.config.XmlResourceUtils;
+import org.opennms.protocols.xml.config.XmlSource;
 import org.w3c.dom.Document;
 
 /**
@@ -49,6 +53,19 @@ public class MockDefaultXmlCollectionHandler extends DefaultXmlCollectionHandler
         return MockDocumentBuilder.getXmlDocument();
     }
 
+    /* (non-Javadoc)
+     * @see org.opennms.protocols.xml.collector.AbstractXmlCollectionHandler#fillCollectionSet(java.lang.String, org.opennms.protocols.xml.config.Request, org.opennms.netmgt.collection.api.CollectionAgent, org.opennms.protocols.xml.collector.XmlCollectionSet, org.opennms.protocols.xml.config.XmlSource, org.opennms.protocols.xml.collector.XmlStreamingExtractor)
+     */
+    @Override
+    protected void fillCollectionSet(String urlString, Request request, CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source, XmlStreamingExtractor extractor) throws Exception {
+        InputStream is = new FileInputStream(MockDocumentBuilder.m_xmlFileName);
+        try {
+            fillCollectionSet(agent, collectionSet, extractor.extract(is));
+        } finally {
+            is.close();
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.protocols.xml.collector.AbstractXmlCollectionHandler#parseUrl(java.lang.String, org.opennms.netmgt.collectd.CollectionAgent, java.lang.Integer)
      */
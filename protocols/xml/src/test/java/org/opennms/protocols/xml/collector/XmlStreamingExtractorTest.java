@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlResourceKey;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The Test Class for XmlStreamingExtractor.
+ * <p>The extracted values are checked against the XPath evaluation over the DOM.</p>
+ */
+public class XmlStreamingExtractorTest {
+    private static final Logger LOG = LoggerFactory.getLogger(XmlStreamingExtractorTest.class);
+
+    /**
+     * Test the supported subset of XPath.
+     */
+    @Test
+    public void testPaths() {
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("/measCollecFile/measData/measInfo[@measInfoId='dns|dns']/measValue", true));
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("/measCollecFile/fileFooter/measCollec/@endTime", true));
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("/dp:RootElement/dp:ChildElement", true));
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("r[@p=3]", false));
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("r[ @p = \"3\" ]", false));
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("@measObjLdn", false));
+        Assert.assertNotNull(XmlStreamingExtractor.Path.parse("cfm-iter-mep-summary/cfm-maintenance-domain-name", false));
+
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("measValue", true));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("//measValue", true));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("/a//b", true));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("/a/*", true));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("r[1]", false));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("r[@p>3]", false));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("text()", false));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("sum(r)", false));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("../r", false));
+        Assert.assertNull(XmlStreamingExtractor.Path.parse("div#cnnBody", false));
+    }
+
+    /**
+     * Test the sample 3GPP file.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void test3gppSample() throws Exception {
+        XmlSource source = new XmlSource();
+        source.addXmlGroup(createGroup("platform-system|resource", 5));
+        source.addXmlGroup(createGroup("gb|bssgp", 13));
+        source.addXmlGroup(createGroup("dns|dns", 10));
+        String file = "src/test/resources/A20111025.0030-0500-0045-0500_MME00001.xml";
+        InputStream is = new FileInputStream(file);
+        List<XmlStreamingExtractor.GroupResult> results;
+        try {
+            results = XmlStreamingExtractor.create(source).extract(is);
+        } finally {
+            is.close();
+        }
+        Assert.assertEquals("2011-10-25T00:45:00-05:00", results.get(0).getTimestamp());
+        Assert.assertTrue(results.get(2).getResources().size() > 0);
+        assertSameAsDom(source, parse(new FileInputStream(file)), results);
+    }
+
+    /**
+     * Test nested elements, multiple keys, mixed content and missing values.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testDocument() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n"
+                + "<dp:root xmlns:dp=\"urn:test\"><dp:entry a=\"1\" b=\"x\"><name>one</name><v><![CDATA[1]]>0</v><w k=\"2\">2<!-- c --></w></dp:entry>"
+                + "<dp:entry a=\"2\" b=\"y\"><name>two</name><w k=\"1\">9</w><w k=\"2.0\">20</w><v>20</v><v>21</v></dp:entry>"
+                + "<dp:entry a=\"3\"><v>30</v></dp:entry><dp:other><dp:entry a=\"4\"><name>four</name></dp:entry></dp:other></dp:root>";
+        XmlGroup group = new XmlGroup();
+        group.setName("entries");
+        group.setResourceType("entry");
+        group.setResourceXpath("/dp:root/dp:entry");
+        XmlResourceKey key = new XmlResourceKey();
+        key.addKeyXpath("name");
+        key.addKeyXpath("@a");
+        group.setXmlResourceKey(key);
+        group.addXmlObject(createObject("v", "v"));
+        group.addXmlObject(createObject("w", "w[@k=2]"));
+        group.addXmlObject(createObject("b", "@b"));
+        XmlSource source = new XmlSource();
+        source.addXmlGroup(group);
+
+        List<XmlStreamingExtractor.GroupResult> results = XmlStreamingExtractor.create(source).extract(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        List<XmlStreamingExtractor.Resource> resources = results.get(0).getResources();
+        Assert.assertEquals(2, resources.size());
+        Assert.assertEquals("one_1", resources.get(0).getName());
+        Assert.assertEquals("10", resources.get(0).getValue(0));
+        Assert.assertEquals("2", resources.get(0).getValue(1));
+        Assert.assertEquals("two_2", resources.get(1).getName());
+        Assert.assertEquals("20", resources.get(1).getValue(0));
+        Assert.assertEquals("20", resources.get(1).getValue(1));
+        Assert.assertEquals("y", resources.get(1).getValue(2));
+
+        // entries without a name are skipped, the DOM fails on them
+        group.setXmlResourceKey(null);
+        group.setKeyXpath("@a");
+        results = XmlStreamingExtractor.create(source).extract(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        Assert.assertEquals(3, results.get(0).getResources().size());
+        Assert.assertEquals("", results.get(0).getResources().get(2).getValue(2));
+        assertSameAsDom(source, parse(new ByteArrayInputStream(xml.getBytes("UTF-8"))), results);
+    }
+
+    /**
+     * Compares DOM and streaming on a synthetic 3GPP file with 5000
+     * resources of 20 values each, about 3 MB.
+     * <p>The timings and heap usage of both are logged, not asserted.</p>
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testLargeFile() throws Exception {
+        final int resources = 5000;
+        final int counters = 20;
+        byte[] file = create3gppFile(resources, counters);
+        XmlSource source = new XmlSource();
+        source.addXmlGroup(createGroup("bench|bench", counters));
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        List<XmlStreamingExtractor.GroupResult> results = XmlStreamingExtractor.create(source).extract(new ByteArrayInputStream(file));
+        long streaming = System.nanoTime() - start;
+        System.gc();
+        long streamingHeap = runtime.totalMemory() - runtime.freeMemory() - before;
+
+        Assert.assertEquals(resources, results.get(0).getResources().size());
+        Assert.assertEquals("system|/=/v=1/sg-name=SC" + (resources - 1) + "|", results.get(0).getResources().get(resources - 1).getName());
+        Assert.assertEquals(Integer.toString(resources - 1 + counters), results.get(0).getResources().get(resources - 1).getValue(counters - 1));
+
+        System.gc();
+        before = runtime.totalMemory() - runtime.freeMemory();
+        start = System.nanoTime();
+        Document doc = parse(new ByteArrayInputStream(file));
+        long domParse = System.nanoTime() - start;
+        System.gc();
+        long domHeap = runtime.totalMemory() - runtime.freeMemory() - before;
+
+        start = System.nanoTime();
+        assertSameAsDom(source, doc, results);
+        long domEvaluation = System.nanoTime() - start;
+
+        LOG.info("{} bytes: streaming {} ms keeping {} KiB of heap, DOM parse {} ms keeping {} KiB of heap, DOM XPath evaluation {} ms",
+                 file.length, streaming / 1000000, streamingHeap / 1024, domParse / 1000000, domHeap / 1024, domEvaluation / 1000000);
+    }
+
+    private static byte[] create3gppFile(int resources, int counters) throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<measCollecFile xmlns=\"http://www.3gpp.org/ftp/specs/archive/32_series/32.435#measCollec\">\n");
+        sb.append("  <measData>\n    <measInfo measInfoId=\"other|other\"><measValue measObjLdn=\"other\"><r p=\"1\">1</r></measValue></measInfo>\n");
+        sb.append("    <measInfo measInfoId=\"bench|bench\">\n");
+        for (int i = 0; i < resources; i++) {
+            sb.append("      <measValue measObjLdn=\"system|/=/v=1/sg-name=SC").append(i).append("|\">\n");
+            for (int p = 1; p <= counters; p++) {
+                sb.append("        <r p=\"").append(p).append("\">").append(i + p).append("</r>\n");
+            }
+            sb.append("        <suspect>false</suspect>\n      </measValue>\n");
+        }
+        sb.append("    </measInfo>\n  </measData>\n");
+        sb.append("  <fileFooter><measCollec endTime=\"2011-10-25T05:45:00Z\"/></fileFooter>\n</measCollecFile>\n");
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private static XmlGroup createGroup(String measInfoId, int counters) {
+        XmlGroup group = new XmlGroup();
+        group.setName(measInfoId);
+        group.setResourceType("measValue");
+        group.setResourceXpath("/measCollecFile/measData/measInfo[@measInfoId='" + measInfoId + "']/measValue");
+        group.setKeyXpath("@measObjLdn");
+        group.setTimestampXpath("/measCollecFile/fileFooter/measCollec/@endTime");
+        for (int p = 1; p <= counters; p++) {
+            group.addXmlObject(createObject("c" + p, "r[@p=" + p + "]"));
+        }
+        return group;
+    }
+
+    private static XmlObject createObject(String name, String xpath) {
+        XmlObject object = new XmlObject(name, "GAUGE");
+        object.setXpath(xpath);
+        return object;
+    }
+
+    /**
+     * Parses a document the way AbstractXmlCollectionHandler does.
+     */
+    private static Document parse(InputStream is) throws Exception {
+        try {
+            byte[] contents = org.apache.commons.io.IOUtils.toByteArray(is);
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setIgnoringComments(true);
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document doc = builder.parse(new ByteArrayInputStream(contents));
+            if (doc.getDocumentElement().getNamespaceURI() != null && doc.getDocumentElement().getPrefix() == null) {
+                factory.setNamespaceAware(false);
+                doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(contents));
+            }
+            return doc;
+        } finally {
+            is.close();
+        }
+    }
+
+    private static String value(Node node) {
+        return node.getNodeValue() == null ? node.getTextContent() : node.getNodeValue();
+    }
+
+    private static void assertSameAsDom(XmlSource source, Document doc, List<XmlStreamingExtractor.GroupResult> results) throws Exception {
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        xpath.setNamespaceContext(new DocumentNamespaceResolver(doc));
+        Assert.assertEquals(source.getXmlGroups().size(), results.size());
+        for (int g = 0; g < results.size(); g++) {
+            XmlGroup group = source.getXmlGroups().get(g);
+            XmlStreamingExtractor.GroupResult result = results.get(g);
+            if (group.getTimestampXpath() != null) {
+                Node ts = (Node) xpath.evaluate(group.getTimestampXpath(), doc, XPathConstants.NODE);
+                Assert.assertEquals(value(ts), result.getTimestamp());
+            }
+            NodeList nodes = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
+            Assert.assertEquals(nodes.getLength(), result.getResources().size());
+            for (int i = 0; i < nodes.getLength(); i++) {
+                XmlStreamingExtractor.Resource resource = result.getResources().get(i);
+                // a detached copy keeps the JDK from building a DTM of the whole document on each evaluation
+                Node node = nodes.item(i).cloneNode(true);
+                Assert.assertEquals(value((Node) xpath.evaluate(group.getKeyXpath(), node, XPathConstants.NODE)), resource.getName());
+                for (int k = 0; k < group.getXmlObjects().size(); k++) {
+                    String expected = (String) xpath.evaluate(group.getXmlObjects().get(k).getXpath(), node, XPathConstants.STRING);
+                    Assert.assertEquals(expected, resource.getValue(k));
+                }
+            }
+        }
+    }
+}